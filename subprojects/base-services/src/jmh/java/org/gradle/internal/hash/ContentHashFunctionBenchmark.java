@@ -0,0 +1,47 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.hash;
+
+import com.google.common.hash.Hasher;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+
+@State(Scope.Benchmark)
+public class ContentHashFunctionBenchmark {
+
+    @Param({"MD5", "MURMUR3"})
+    ContentHashFunction function;
+
+    @Param({"64", "8192", "1048576"})
+    int size;
+
+    private byte[] content;
+
+    @Setup(Level.Trial)
+    public void createContent() {
+        content = new byte[size];
+        new Random(size).nextBytes(content);
+    }
+
+    @Benchmark
+    public byte[] hash() {
+        Hasher hasher = function.newHasher();
+        hasher.putBytes(content);
+        return hasher.hash().asBytes();
+    }
+}
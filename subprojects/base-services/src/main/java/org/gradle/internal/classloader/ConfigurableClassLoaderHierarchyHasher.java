@@ -19,8 +19,8 @@ package org.gradle.internal.classloader;
 import com.google.common.base.Charsets;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hasher;
-import com.google.common.hash.Hashing;
 import org.gradle.api.Nullable;
+import org.gradle.internal.hash.ContentHashFunction;
 
 import java.util.Map;
 import java.util.WeakHashMap;
@@ -47,7 +47,7 @@ public class ConfigurableClassLoaderHierarchyHasher implements ClassLoaderHierar
     }
 
     private class Visitor extends ClassLoaderVisitor {
-        private final Hasher hasher = Hashing.md5().newHasher();
+        private final Hasher hasher = ContentHashFunction.current().newHasher();
         private boolean foundUnknown;
 
         @Override
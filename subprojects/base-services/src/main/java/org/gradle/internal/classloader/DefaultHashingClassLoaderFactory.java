@@ -18,8 +18,8 @@ package org.gradle.internal.classloader;
 import com.google.common.base.Charsets;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hasher;
-import com.google.common.hash.Hashing;
 import org.gradle.internal.classpath.ClassPath;
+import org.gradle.internal.hash.ContentHashFunction;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -73,7 +73,7 @@ public class DefaultHashingClassLoaderFactory extends DefaultClassLoaderFactory
     }
 
     private static HashCode calculateFilterSpecHash(FilteringClassLoader.Spec spec) {
-        Hasher hasher = Hashing.md5().newHasher();
+        Hasher hasher = ContentHashFunction.current().newHasher();
         addToHash(hasher, spec.getClassNames());
         addToHash(hasher, spec.getPackageNames());
         addToHash(hasher, spec.getPackagePrefixes());
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.internal.hash;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.gradle.api.Nullable;
+
+/**
+ * The 128-bit hash functions that can be used to hash content that is only used to track local state, such as file hashes and class loader hashes.
+ *
+ * The function to use is selected with the {@value #HASH_FUNCTION_PROPERTY} system property. Hashes calculated by different functions are not comparable,
+ * so any persistent state that contains hashes should be keyed by the {@link #getId()} of the function. Build cache keys are calculated from these hashes,
+ * so task cache keys include the id of any function other than MD5. Builds that select different functions do not share build cache entries.
+ */
+public enum ContentHashFunction {
+    MD5("md5", Hashing.md5(), "MD5"),
+    MURMUR3("murmur3", Hashing.murmur3_128(), null);
+
+    public static final String HASH_FUNCTION_PROPERTY = "org.gradle.internal.hash.function";
+
+    private static final ContentHashFunction CURRENT = select(System.getProperty(HASH_FUNCTION_PROPERTY));
+
+    private final String id;
+    private final HashFunction hashFunction;
+    private final String messageDigestAlgorithm;
+
+    ContentHashFunction(String id, HashFunction hashFunction, @Nullable String messageDigestAlgorithm) {
+        this.id = id;
+        this.hashFunction = hashFunction;
+        this.messageDigestAlgorithm = messageDigestAlgorithm;
+    }
+
+    /**
+     * Returns the function that has been selected for this process.
+     */
+    public static ContentHashFunction current() {
+        return CURRENT;
+    }
+
+    static ContentHashFunction select(String id) {
+        if (id == null) {
+            return MD5;
+        }
+        for (ContentHashFunction function : values()) {
+            if (function.id.equalsIgnoreCase(id)) {
+                return function;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown hash function '%s' specified by system property '%s'.", id, HASH_FUNCTION_PROPERTY));
+    }
+
+    /**
+     * An identifier for this function, which is stable across Gradle versions.
+     */
+    public String getId() {
+        return id;
+    }
+
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    /**
+     * Returns the name of the {@link java.security.MessageDigest} algorithm that calculates the same hashes as this function, or null when there is none.
+     * A message digest can be fed from a direct or mapped buffer without copying the content onto the heap.
+     */
+    @Nullable
+    public String getMessageDigestAlgorithm() {
+        return messageDigestAlgorithm;
+    }
+
+    public Hasher newHasher() {
+        return hashFunction.newHasher();
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.hash
+
+import spock.lang.Specification
+
+class ContentHashFunctionTest extends Specification {
+    def "uses md5 by default"() {
+        expect:
+        ContentHashFunction.select(null) == ContentHashFunction.MD5
+    }
+
+    def "selects function by id"() {
+        expect:
+        ContentHashFunction.select(id) == function
+
+        where:
+        id        | function
+        "md5"     | ContentHashFunction.MD5
+        "murmur3" | ContentHashFunction.MURMUR3
+        "MURMUR3" | ContentHashFunction.MURMUR3
+    }
+
+    def "fails for unknown function"() {
+        when:
+        ContentHashFunction.select("sha1")
+
+        then:
+        IllegalArgumentException e = thrown()
+        e.message == "Unknown hash function 'sha1' specified by system property 'org.gradle.internal.hash.function'."
+    }
+
+    def "all functions produce 128-bit hashes"() {
+        expect:
+        function.newHasher().putInt(12).hash().bits() == 128
+
+        where:
+        function << ContentHashFunction.values()
+    }
+}
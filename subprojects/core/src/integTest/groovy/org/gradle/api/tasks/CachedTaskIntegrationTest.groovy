@@ -18,7 +18,6 @@ package org.gradle.api.tasks
 
 import org.gradle.integtests.fixtures.AbstractIntegrationSpec
 import org.gradle.integtests.fixtures.DirectoryBuildCacheFixture
-import org.gradle.test.fixtures.archive.TarTestFixture
 
 class CachedTaskIntegrationTest extends AbstractIntegrationSpec implements DirectoryBuildCacheFixture {
     def setup() {
@@ -54,9 +53,11 @@ class CachedTaskIntegrationTest extends AbstractIntegrationSpec implements Direc
         then:
         def cacheFiles = listCacheFiles()
         cacheFiles.size() == 1
-        def cacheEntry = new TarTestFixture(cacheFiles[0])
-        cacheEntry.assertContainsFile("property-outputDir/output")
-        def metadata = cacheEntry.content("METADATA")
+        def cacheEntry = readCacheEntry(cacheFiles[0])
+        // Small files are stored uncompressed
+        cacheEntry.contents.contains("outputDir")
+        cacheEntry.contents.contains("output")
+        def metadata = new String(cacheEntry.metadata, "ISO-8859-1")
         metadata.contains("type=")
         metadata.contains("path=")
         metadata.contains("gradleVersion=")
@@ -78,7 +79,7 @@ class CachedTaskIntegrationTest extends AbstractIntegrationSpec implements Direc
         when:
         file("build").deleteDir()
         and:
-        corruptMetadata({ metadata -> metadata.text = "corrupt" })
+        corruptMetadata("corrupt".bytes)
         withBuildCache().fails("cacheable")
         then:
         failure.assertHasCause("Cached result format error, corrupted origin metadata.")
@@ -86,22 +87,34 @@ class CachedTaskIntegrationTest extends AbstractIntegrationSpec implements Direc
         when:
         file("build").deleteDir()
         and:
-        corruptMetadata({ metadata -> metadata.delete() })
+        def cacheEntry = listCacheFiles()[0]
+        cacheEntry.bytes = cacheEntry.bytes[0..<20] as byte[]
         withBuildCache().fails("cacheable")
         then:
-        failure.assertHasCause("Cached result format error, no origin metadata was found.")
+        failure.assertHasCause("Unexpected end of cache entry")
     }
 
-    def corruptMetadata(Closure corrupter) {
+    def corruptMetadata(byte[] metadata) {
         def cacheFiles = listCacheFiles()
         assert cacheFiles.size() == 1
         def cacheEntry = cacheFiles[0]
-        def tgzCacheEntry = temporaryFolder.file("cache.tgz")
-        cacheEntry.copyTo(tgzCacheEntry)
-        cacheEntry.delete()
-        def extractDir = temporaryFolder.file("extract")
-        tgzCacheEntry.untarTo(extractDir)
-        corrupter(extractDir.file("METADATA"))
-        extractDir.tgzTo(cacheEntry)
+        def entry = readCacheEntry(cacheEntry)
+        def bytes = new ByteArrayOutputStream()
+        def output = new DataOutputStream(bytes)
+        output.write(entry.header)
+        output.writeInt(metadata.length)
+        output.write(metadata)
+        output.write(entry.contents.getBytes("ISO-8859-1"))
+        cacheEntry.bytes = bytes.toByteArray()
+    }
+
+    static Map readCacheEntry(File cacheEntry) {
+        def input = new DataInputStream(new ByteArrayInputStream(cacheEntry.bytes))
+        // Magic number and format version
+        def header = new byte[8]
+        input.readFully(header)
+        def metadata = new byte[input.readInt()]
+        input.readFully(metadata)
+        return [header: header, metadata: metadata, contents: new String(input.bytes, "ISO-8859-1")]
     }
 }
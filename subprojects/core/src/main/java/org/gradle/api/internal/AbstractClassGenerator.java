@@ -16,17 +16,22 @@
 
 package org.gradle.api.internal;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.SetMultimap;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import groovy.lang.Closure;
 import groovy.lang.GroovyObject;
-import org.apache.commons.collections.map.AbstractReferenceMap;
-import org.apache.commons.collections.map.ReferenceMap;
 import org.gradle.api.Action;
 import org.gradle.api.GradleException;
 import org.gradle.api.NonExtensible;
 import org.gradle.api.Nullable;
 import org.gradle.api.plugins.ExtensionAware;
+import org.gradle.internal.UncheckedException;
 import org.gradle.internal.reflect.ClassDetails;
 import org.gradle.internal.reflect.ClassInspector;
 import org.gradle.internal.reflect.DirectInstantiator;
@@ -41,15 +46,16 @@ import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Generates a subclass of the target class to mix-in some DSL behaviour.
@@ -64,37 +70,62 @@ import java.util.concurrent.locks.ReentrantLock;
  * </ul>
  */
 public abstract class AbstractClassGenerator implements ClassGenerator {
-    private static final Map<Class<?>, Map<Class<?>, Class<?>>> GENERATED_CLASSES = new HashMap<Class<?>, Map<Class<?>, Class<?>>>();
-    private static final Lock CACHE_LOCK = new ReentrantLock();
+    // The generated classes, by type of generator and then by the ClassLoader of the source class. Classes for different ClassLoaders and different types
+    // are generated concurrently, and a given type is generated only once.
+    private static final ConcurrentMap<Class<?>, LoadingCache<ClassLoader, Cache<Class<?>, Class<?>>>> GENERATED_CLASSES = new ConcurrentHashMap<Class<?>, LoadingCache<ClassLoader, Cache<Class<?>, Class<?>>>>();
+    // Used in place of the bootstrap ClassLoader, which cannot be used as a key
+    private static final ClassLoader BOOTSTRAP_CLASSLOADER = new ClassLoader(null) {
+    };
     private static final Collection<String> SKIP_PROPERTIES = Arrays.asList("class", "metaClass", "conventionMapping", "convention", "asDynamicObject", "extensions");
 
     public <T> T newInstance(Class<T> type, Object... parameters) {
         return DirectInstantiator.instantiate(generate(type), parameters);
     }
 
-    public <T> Class<? extends T> generate(Class<T> type) {
-        try {
-            CACHE_LOCK.lock();
-            return generateUnderLock(type);
-        } finally {
-            CACHE_LOCK.unlock();
+    public <T> Class<? extends T> generate(final Class<T> type) {
+        final Cache<Class<?>, Class<?>> cache = getGeneratedClasses(type.getClassLoader());
+        Class<?> generatedClass = cache.getIfPresent(type);
+        if (generatedClass == null) {
+            try {
+                generatedClass = cache.get(type, new Callable<Class<?>>() {
+                    @Override
+                    public Class<?> call() {
+                        Class<? extends T> subclass = generateClass(type);
+                        cache.put(subclass, subclass);
+                        return subclass;
+                    }
+                });
+            } catch (ExecutionException e) {
+                throw UncheckedException.throwAsUncheckedException(e.getCause());
+            } catch (UncheckedExecutionException e) {
+                throw UncheckedException.throwAsUncheckedException(e.getCause());
+            } catch (ExecutionError e) {
+                throw UncheckedException.throwAsUncheckedException(e.getCause());
+            }
         }
+        return generatedClass.asSubclass(type);
     }
 
-    private <T> Class<? extends T> generateUnderLock(Class<T> type) {
-        Map<Class<?>, Class<?>> cache = GENERATED_CLASSES.get(getClass());
-        if (cache == null) {
-            // WeakHashMap won't work here. It keeps a strong reference to the mapping value, which is the generated class in this case
-            // However, the generated class has a strong reference to the source class (by extending it), so the keys will always be
-            // strongly reachable while this Class is strongly reachable. Use weak references for both key and value of the mapping instead.
-            cache = new ReferenceMap(AbstractReferenceMap.WEAK, AbstractReferenceMap.WEAK);
-            GENERATED_CLASSES.put(getClass(), cache);
-        }
-        Class<?> generatedClass = cache.get(type);
-        if (generatedClass != null) {
-            return generatedClass.asSubclass(type);
+    private Cache<Class<?>, Class<?>> getGeneratedClasses(@Nullable ClassLoader classLoader) {
+        LoadingCache<ClassLoader, Cache<Class<?>, Class<?>>> cachesForGenerator = GENERATED_CLASSES.get(getClass());
+        if (cachesForGenerator == null) {
+            // The generated class has a strong reference to the source class (by extending it) and to its ClassLoader, so use weak references for
+            // both the keys and the values of the mappings, to allow the ClassLoader to be collected.
+            cachesForGenerator = CacheBuilder.newBuilder().weakKeys().build(new CacheLoader<ClassLoader, Cache<Class<?>, Class<?>>>() {
+                @Override
+                public Cache<Class<?>, Class<?>> load(ClassLoader key) {
+                    return CacheBuilder.newBuilder().weakKeys().weakValues().build();
+                }
+            });
+            LoadingCache<ClassLoader, Cache<Class<?>, Class<?>>> existing = GENERATED_CLASSES.putIfAbsent(getClass(), cachesForGenerator);
+            if (existing != null) {
+                cachesForGenerator = existing;
+            }
         }
+        return cachesForGenerator.getUnchecked(classLoader == null ? BOOTSTRAP_CLASSLOADER : classLoader);
+    }
 
+    private <T> Class<? extends T> generateClass(Class<T> type) {
         if (Modifier.isPrivate(type.getModifiers())) {
             throw new GradleException(String.format("Cannot create a proxy class for private class '%s'.",
                     type.getSimpleName()));
@@ -104,11 +135,16 @@ public abstract class AbstractClassGenerator implements ClassGenerator {
                     type.getSimpleName()));
         }
 
-        Class<? extends T> subclass;
+        String cacheKey = cacheKeyFor(type);
+        Class<? extends T> subclass = cacheKey == null ? null : findPreviouslyGenerated(type, cacheKey);
+        if (subclass != null) {
+            return subclass;
+        }
+
         try {
             ClassMetaData classMetaData = inspectType(type);
 
-            ClassBuilder<T> builder = start(type, classMetaData);
+            ClassBuilder<T> builder = start(type, classMetaData, cacheKey);
 
             builder.startClass(classMetaData.isShouldImplementWithServiceRegistry());
 
@@ -218,13 +254,26 @@ public abstract class AbstractClassGenerator implements ClassGenerator {
         } catch (Throwable e) {
             throw new GradleException(String.format("Could not generate a proxy class for class %s.", type.getName()), e);
         }
-
-        cache.put(type, subclass);
-        cache.put(subclass, subclass);
         return subclass;
     }
 
-    protected abstract <T> ClassBuilder<T> start(Class<T> type, ClassMetaData classMetaData);
+    /**
+     * Returns the key under which the class generated for the given type is cached across builds, or null when the class is not cached.
+     */
+    @Nullable
+    protected String cacheKeyFor(Class<?> type) {
+        return null;
+    }
+
+    /**
+     * Returns the class generated for the given type by an earlier build, or null when the class needs to be generated.
+     */
+    @Nullable
+    protected <T> Class<? extends T> findPreviouslyGenerated(Class<T> type, String cacheKey) {
+        return null;
+    }
+
+    protected abstract <T> ClassBuilder<T> start(Class<T> type, ClassMetaData classMetaData, @Nullable String cacheKey);
 
     private ClassMetaData inspectType(Class<?> type) {
         boolean isConventionAware = type.getAnnotation(NoConventionMapping.class) == null;
@@ -43,6 +43,8 @@ import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.lang.annotation.Annotation;
 import java.lang.annotation.Inherited;
@@ -63,10 +65,48 @@ import static org.objectweb.asm.Type.VOID_TYPE;
 public class AsmBackedClassGenerator extends AbstractClassGenerator {
 
     private static final JavaMethod<ClassLoader, Class> DEFINE_CLASS_METHOD = JavaReflectionUtil.method(ClassLoader.class, Class.class, "defineClass", String.class, byte[].class, Integer.TYPE, Integer.TYPE);
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsmBackedClassGenerator.class);
+    // Change this whenever the bytecode generated for a given class changes, to invalidate the bytecode of generated classes stored on disk
+    private static final int GENERATOR_VERSION = 1;
+
+    private final GeneratedClassBytecodeCache bytecodeCache;
+
+    public AsmBackedClassGenerator() {
+        this(new GeneratedClassBytecodeCache(false, null));
+    }
+
+    public AsmBackedClassGenerator(GeneratedClassBytecodeCache bytecodeCache) {
+        this.bytecodeCache = bytecodeCache;
+    }
+
+    @Override
+    @Nullable
+    protected String cacheKeyFor(Class<?> type) {
+        return bytecodeCache.keyFor(type, GENERATOR_VERSION);
+    }
 
     @Override
-    protected <T> ClassBuilder<T> start(Class<T> type, ClassMetaData classMetaData) {
-        return new ClassBuilderImpl<T>(type, classMetaData);
+    protected <T> Class<? extends T> findPreviouslyGenerated(Class<T> type, String cacheKey) {
+        byte[] bytecode = bytecodeCache.load(cacheKey);
+        if (bytecode == null) {
+            return null;
+        }
+        try {
+            return defineClass(type, bytecode);
+        } catch (LinkageError e) {
+            // The stored bytecode is not usable, generate the class again
+            LOGGER.debug("Could not define generated class for {} from cached bytecode.", type.getName(), e);
+            return null;
+        }
+    }
+
+    @Override
+    protected <T> ClassBuilder<T> start(Class<T> type, ClassMetaData classMetaData, @Nullable String cacheKey) {
+        return new ClassBuilderImpl<T>(type, classMetaData, bytecodeCache, cacheKey);
+    }
+
+    private static <T> Class<? extends T> defineClass(Class<T> type, byte[] bytecode) {
+        return DEFINE_CLASS_METHOD.invoke(type.getClassLoader(), type.getName() + "_Decorated", bytecode, 0, bytecode.length);
     }
 
     private static class ClassBuilderImpl<T> implements ClassBuilder<T> {
@@ -131,9 +171,13 @@ public class AsmBackedClassGenerator extends AbstractClassGenerator {
         private final boolean conventionAware;
         private final boolean extensible;
         private final boolean providesOwnDynamicObject;
+        private final GeneratedClassBytecodeCache bytecodeCache;
+        private final String cacheKey;
 
-        private ClassBuilderImpl(Class<T> type, ClassMetaData classMetaData) {
+        private ClassBuilderImpl(Class<T> type, ClassMetaData classMetaData, GeneratedClassBytecodeCache bytecodeCache, @Nullable String cacheKey) {
             this.type = type;
+            this.bytecodeCache = bytecodeCache;
+            this.cacheKey = cacheKey;
 
             visitor = new ClassWriter(ClassWriter.COMPUTE_MAXS);
             typeName = type.getName() + "_Decorated";
@@ -948,7 +992,11 @@ public class AsmBackedClassGenerator extends AbstractClassGenerator {
             visitor.visitEnd();
 
             byte[] bytecode = visitor.toByteArray();
-            return DEFINE_CLASS_METHOD.invoke(type.getClassLoader(), typeName, bytecode, 0, bytecode.length);
+            Class<? extends T> generatedClass = defineClass(type, bytecode);
+            if (cacheKey != null) {
+                bytecodeCache.store(cacheKey, bytecode);
+            }
+            return generatedClass;
         }
 
         private void writeGenericReturnTypeFields() {
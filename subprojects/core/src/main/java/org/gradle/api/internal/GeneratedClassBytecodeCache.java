@@ -0,0 +1,204 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import org.gradle.api.Nullable;
+import org.gradle.util.GradleVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Stores the bytecode of generated classes on disk, so that later build processes can define these classes instead of generating them again.
+ *
+ * <p>The bytecode is keyed by the version of the generator, by the bytecode of the source class and all of its superclasses and interfaces, and by the bytecode of the
+ * types that these classes refer to from the signatures of their methods and from their annotations, along with the superclasses and interfaces of these types. The generator
+ * inspects these types, for example to find out whether a property is {@link Iterable}. Classes whose bytecode cannot be located, such as classes defined at runtime, are not cached.</p>
+ *
+ * <p>An instance is created for each Gradle user home directory, and stores the bytecode in a directory of that Gradle user home.</p>
+ */
+public class GeneratedClassBytecodeCache {
+    /**
+     * Enables the cache. Disabled by default.
+     */
+    public static final String GENERATED_CLASS_CACHE_PROPERTY = "org.gradle.internal.generated-class-cache";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GeneratedClassBytecodeCache.class);
+
+    private final boolean enabled;
+    private final File cacheDir;
+
+    public GeneratedClassBytecodeCache(File cacheDir) {
+        this(Boolean.getBoolean(GENERATED_CLASS_CACHE_PROPERTY), cacheDir);
+    }
+
+    GeneratedClassBytecodeCache(boolean enabled, @Nullable File cacheDir) {
+        this.enabled = enabled;
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * Calculates the key for the class generated for the given type, or returns null when the class cannot be cached.
+     */
+    @Nullable
+    public String keyFor(Class<?> type, int generatorVersion) {
+        if (!enabled || cacheDir == null) {
+            return null;
+        }
+        Hasher hasher = Hashing.md5().newHasher();
+        hasher.putUnencodedChars(GradleVersion.current().getVersion());
+        hasher.putInt(generatorVersion);
+        Set<Class<?>> seen = new HashSet<Class<?>>();
+        Set<Class<?>> hierarchy = new HashSet<Class<?>>();
+        if (!hashHierarchy(type, hasher, seen, hierarchy)) {
+            return null;
+        }
+        // Only the hierarchies of the referenced types are hashed, rather than the types they refer to in turn, as the generator does not inspect those
+        Set<Class<?>> referencedTypes = new HashSet<Class<?>>();
+        for (Class<?> current : hierarchy) {
+            for (Method method : current.getDeclaredMethods()) {
+                referencedTypes.add(method.getReturnType());
+                Collections.addAll(referencedTypes, method.getParameterTypes());
+                addAnnotationTypes(method.getDeclaredAnnotations(), referencedTypes);
+            }
+            addAnnotationTypes(current.getDeclaredAnnotations(), referencedTypes);
+        }
+        for (Class<?> referencedType : referencedTypes) {
+            while (referencedType.isArray()) {
+                referencedType = referencedType.getComponentType();
+            }
+            if (!hashHierarchy(referencedType, hasher, seen, new HashSet<Class<?>>())) {
+                return null;
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Hashes the bytecode of the given type and of its superclasses and interfaces that have not been hashed yet, and collects these types.
+     *
+     * @return false when the bytecode of one of these types cannot be located.
+     */
+    private static boolean hashHierarchy(Class<?> type, Hasher hasher, Set<Class<?>> seen, Set<Class<?>> hierarchy) {
+        Deque<Class<?>> queue = new ArrayDeque<Class<?>>();
+        queue.add(type);
+        while (!queue.isEmpty()) {
+            Class<?> current = queue.removeFirst();
+            if (!seen.add(current)) {
+                continue;
+            }
+            hierarchy.add(current);
+            ClassLoader classLoader = current.getClassLoader();
+            if (classLoader != null) {
+                // Classes of the bootstrap ClassLoader belong to the JVM, and do not change while the Gradle version stays the same
+                byte[] bytecode = readBytecode(classLoader, current);
+                if (bytecode == null) {
+                    return false;
+                }
+                hasher.putUnencodedChars(current.getName());
+                hasher.putInt(bytecode.length);
+                hasher.putBytes(bytecode);
+            }
+            if (current.getSuperclass() != null) {
+                queue.add(current.getSuperclass());
+            }
+            Collections.addAll(queue, current.getInterfaces());
+        }
+        return true;
+    }
+
+    private static void addAnnotationTypes(Annotation[] annotations, Set<Class<?>> types) {
+        for (Annotation annotation : annotations) {
+            types.add(annotation.annotationType());
+        }
+    }
+
+    /**
+     * Returns the bytecode stored for the given key, or null when there is none.
+     */
+    @Nullable
+    public byte[] load(String key) {
+        File file = fileFor(key);
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+        try {
+            return Files.toByteArray(file);
+        } catch (IOException e) {
+            LOGGER.debug("Could not read generated class from {}.", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the bytecode for the given key. Does not fail when the bytecode cannot be written, as the class can always be generated again.
+     */
+    public void store(String key, byte[] bytecode) {
+        File file = fileFor(key);
+        if (file == null) {
+            return;
+        }
+        try {
+            // Write to a temporary file and rename it, so that concurrent readers, possibly in other processes, never see a partially written file
+            file.getParentFile().mkdirs();
+            File tempFile = File.createTempFile(key, ".tmp", file.getParentFile());
+            Files.write(bytecode, tempFile);
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Could not write generated class to {}.", file, e);
+        }
+    }
+
+    @Nullable
+    private File fileFor(String key) {
+        File dir = cacheDir;
+        return dir == null ? null : new File(dir, key + ".class");
+    }
+
+    @Nullable
+    private static byte[] readBytecode(ClassLoader classLoader, Class<?> type) {
+        InputStream inputStream = classLoader.getResourceAsStream(type.getName().replace('.', '/') + ".class");
+        if (inputStream == null) {
+            return null;
+        }
+        try {
+            try {
+                return ByteStreams.toByteArray(inputStream);
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -16,6 +16,7 @@
 
 package org.gradle.api.internal.cache;
 
+import com.google.common.cache.CacheStats;
 import net.jcip.annotations.ThreadSafe;
 import org.gradle.api.Nullable;
 import org.gradle.api.Transformer;
@@ -41,4 +42,9 @@ public interface CrossBuildInMemoryCache<K, V> {
     void put(K key, V value);
 
     void clear();
+
+    /**
+     * Returns the hit, miss, load and eviction counts of this cache. Values that have been discarded by the garbage collector, or discarded to keep the cache within its maximum weight, are counted as evictions.
+     */
+    CacheStats getStats();
 }
@@ -16,17 +16,25 @@
 
 package org.gradle.api.internal.cache;
 
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 import net.jcip.annotations.ThreadSafe;
 import org.gradle.api.Nullable;
 import org.gradle.api.Transformer;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
 import org.gradle.initialization.SessionLifecycleListener;
+import org.gradle.internal.UncheckedException;
 import org.gradle.internal.event.ListenerManager;
 
 import java.lang.ref.SoftReference;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ExecutionException;
 
 /**
  * A factory for {@link CrossBuildInMemoryCache} instances.
@@ -35,9 +43,23 @@ import java.util.Set;
  * Note that this implementation currently retains strong references to keys and values during the whole lifetime of a build session.
  *
  * Uses a simple algorithm to collect unused values, by retaining strong references to all keys and values used during the current build session, and the previous build session. All other values are referenced only by soft references.
+ *
+ * The entries of a cache are split across a number of segments, each with its own lock, so that threads using different keys rarely wait for each other. A cache may be
+ * given a maximum weight, in which case the least recently used entries of a segment are discarded when the entries of that segment weigh more than their share of the maximum.
+ *
+ * The statistics of each cache are logged at debug level at the end of each build session.
  */
 @ThreadSafe
 public class CrossBuildInMemoryCacheFactory {
+    private static final Logger LOGGER = Logging.getLogger(CrossBuildInMemoryCacheFactory.class);
+    private static final int DEFAULT_SEGMENTS = 16;
+    private static final Weigher<Object, Object> SINGLE_WEIGHT = new Weigher<Object, Object>() {
+        @Override
+        public int weigh(Object key, Object value) {
+            return 1;
+        }
+    };
+
     private final ListenerManager listenerManager;
 
     public CrossBuildInMemoryCacheFactory(ListenerManager listenerManager) {
@@ -45,22 +67,49 @@ public class CrossBuildInMemoryCacheFactory {
     }
 
     /**
-     * Creates a new cache instance.
+     * Creates a new cache instance, with no maximum weight. Only use this for caches whose number of keys is bounded by other means, and use {@link #newCache(String, Weigher, long)} otherwise.
+     *
+     * Note: this should be used to create _only_ global scoped instances.
+     *
+     * @param displayName The name of the cache, used when logging its statistics.
+     */
+    public <K, V> CrossBuildInMemoryCache<K, V> newUnboundedCache(String displayName) {
+        return newCache(displayName, SINGLE_WEIGHT, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a new cache instance, that discards the least recently used entries when the total weight of its entries exceeds the given maximum.
      *
      * Note: this should be used to create _only_ global scoped instances.
+     *
+     * @param displayName The name of the cache, used when logging its statistics.
      */
-    public <K, V> CrossBuildInMemoryCache<K, V> newCache() {
-        DefaultCrossBuildInMemoryCache<K, V> cache = new DefaultCrossBuildInMemoryCache<K, V>();
+    public <K, V> CrossBuildInMemoryCache<K, V> newCache(String displayName, Weigher<? super K, ? super V> weigher, long maximumWeight) {
+        return newCache(displayName, weigher, maximumWeight, DEFAULT_SEGMENTS);
+    }
+
+    <K, V> CrossBuildInMemoryCache<K, V> newCache(String displayName, Weigher<? super K, ? super V> weigher, long maximumWeight, int segments) {
+        DefaultCrossBuildInMemoryCache<K, V> cache = new DefaultCrossBuildInMemoryCache<K, V>(displayName, weigher, maximumWeight, segments);
         listenerManager.addListener(cache);
         return cache;
     }
 
     private static class DefaultCrossBuildInMemoryCache<K, V> implements CrossBuildInMemoryCache<K, V>, SessionLifecycleListener {
-        private final Object lock = new Object();
-        private final Map<K, V> valuesForThisSession = new HashMap<K, V>();
-        // This is used only to retain strong references to the values
-        private final Set<V> valuesForPreviousSession = new HashSet<V>();
-        private final Map<K, SoftReference<V>> allValues = new HashMap<K, SoftReference<V>>();
+        private final String displayName;
+        private final Segment<K, V>[] segments;
+        private final Weigher<? super K, ? super V> weigher;
+
+        DefaultCrossBuildInMemoryCache(String displayName, Weigher<? super K, ? super V> weigher, long maximumWeight, int segmentCount) {
+            this.displayName = displayName;
+            this.weigher = weigher;
+            long maximumSegmentWeight = maximumWeight == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(1, (maximumWeight + segmentCount - 1) / segmentCount);
+            @SuppressWarnings("unchecked")
+            Segment<K, V>[] segments = new Segment[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                segments[i] = new Segment<K, V>(maximumSegmentWeight);
+            }
+            this.segments = segments;
+        }
 
         @Override
         public void afterStart() {
@@ -68,76 +117,222 @@ public class CrossBuildInMemoryCacheFactory {
 
         @Override
         public void beforeComplete() {
-            synchronized (lock) {
-                // Retain strong references to the values created for this session
-                valuesForPreviousSession.clear();
-                valuesForPreviousSession.addAll(valuesForThisSession.values());
-                valuesForThisSession.clear();
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("In-memory cache of {}: {}", displayName, getStats());
+            }
+            for (Segment<K, V> segment : segments) {
+                segment.sessionCompleted();
             }
         }
 
         @Override
         public void clear() {
-            synchronized (lock) {
-                valuesForThisSession.clear();
-                valuesForPreviousSession.clear();
-                allValues.clear();
+            for (Segment<K, V> segment : segments) {
+                segment.clear();
             }
         }
 
         @Nullable
         @Override
         public V get(K key) {
-            synchronized (lock) {
-                return getIfPresent(key);
-            }
+            return segmentFor(key).get(key);
         }
 
         @Override
         public V get(K key, Transformer<V, K> factory) {
-            synchronized (lock) {
-                V v = getIfPresent(key);
-                if (v != null) {
-                    return v;
+            Segment<K, V> segment = segmentFor(key);
+            while (true) {
+                PendingValue<V> pending;
+                boolean load;
+                synchronized (segment) {
+                    V v = segment.get(key);
+                    if (v != null) {
+                        return v;
+                    }
+                    pending = segment.pending.get(key);
+                    load = pending == null;
+                    if (load) {
+                        pending = new PendingValue<V>();
+                        segment.pending.put(key, pending);
+                    } else if (pending.thread == Thread.currentThread()) {
+                        // The factory for this key needs the value of this key, so create another instance rather than waiting forever
+                        return factory.transform(key);
+                    }
+                }
+                if (load) {
+                    return load(segment, key, factory, pending);
+                }
+                try {
+                    return Uninterruptibles.getUninterruptibly(pending.future);
+                } catch (ExecutionException e) {
+                    // The other thread failed to create the value, try again on this thread
                 }
+            }
+        }
 
-                // TODO - do not hold lock while computing value
+        // Creates the value without holding the lock of the segment, so that other keys of the segment can be used in the meantime
+        private V load(Segment<K, V> segment, K key, Transformer<V, K> factory, PendingValue<V> pending) {
+            long start = System.nanoTime();
+            V v;
+            try {
                 v = factory.transform(key);
-
-                allValues.put(key, new SoftReference<V>(v));
-                // Retain strong reference
-                valuesForThisSession.put(key, v);
-
-                return v;
+            } catch (Throwable t) {
+                synchronized (segment) {
+                    segment.pending.remove(key);
+                    segment.loadExceptionCount++;
+                    segment.totalLoadTime += System.nanoTime() - start;
+                }
+                pending.future.setException(t);
+                throw UncheckedException.throwAsUncheckedException(t);
+            }
+            synchronized (segment) {
+                segment.pending.remove(key);
+                segment.loadSuccessCount++;
+                segment.totalLoadTime += System.nanoTime() - start;
+                segment.put(key, v, weigher.weigh(key, v));
             }
+            pending.future.set(v);
+            return v;
         }
 
         @Override
         public void put(K key, V value) {
-            synchronized (lock) {
-                allValues.put(key, new SoftReference<V>(value));
-                valuesForThisSession.put(key, value);
+            Segment<K, V> segment = segmentFor(key);
+            int weight = weigher.weigh(key, value);
+            synchronized (segment) {
+                segment.put(key, value, weight);
             }
         }
 
-        // Caller must be holding lock
-        private V getIfPresent(K key) {
-            V v = valuesForThisSession.get(key);
-            if (v != null) {
-                return v;
+        @Override
+        public CacheStats getStats() {
+            long hitCount = 0;
+            long missCount = 0;
+            long loadSuccessCount = 0;
+            long loadExceptionCount = 0;
+            long totalLoadTime = 0;
+            long evictionCount = 0;
+            for (Segment<K, V> segment : segments) {
+                synchronized (segment) {
+                    hitCount += segment.hitCount;
+                    missCount += segment.missCount;
+                    loadSuccessCount += segment.loadSuccessCount;
+                    loadExceptionCount += segment.loadExceptionCount;
+                    totalLoadTime += segment.totalLoadTime;
+                    evictionCount += segment.evictionCount;
+                }
             }
+            return new CacheStats(hitCount, missCount, loadSuccessCount, loadExceptionCount, totalLoadTime, evictionCount);
+        }
+
+        private Segment<K, V> segmentFor(K key) {
+            // Spread the bits of the hash code, as keys such as file hashes may only differ in a few of them
+            int hash = key.hashCode();
+            hash ^= (hash >>> 20) ^ (hash >>> 12);
+            hash ^= (hash >>> 7) ^ (hash >>> 4);
+            return segments[(hash & Integer.MAX_VALUE) % segments.length];
+        }
+    }
+
+    /**
+     * The entries for some of the keys of a cache. All state is guarded by the segment itself.
+     */
+    private static class Segment<K, V> {
+        private final long maximumWeight;
+        // In access order, from the least recently used
+        private final LinkedHashMap<K, CacheEntry<V>> entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true);
+        private final Map<K, PendingValue<V>> pending = new HashMap<K, PendingValue<V>>();
+        private long totalWeight;
+        private int session;
+        private long hitCount;
+        private long missCount;
+        private long loadSuccessCount;
+        private long loadExceptionCount;
+        private long totalLoadTime;
+        private long evictionCount;
+
+        Segment(long maximumWeight) {
+            this.maximumWeight = maximumWeight;
+        }
 
-            SoftReference<V> reference = allValues.get(key);
-            if (reference != null) {
-                v = reference.get();
+        synchronized V get(K key) {
+            CacheEntry<V> entry = entries.get(key);
+            if (entry != null) {
+                V v = entry.get();
                 if (v != null) {
                     // Retain strong reference
-                    valuesForThisSession.put(key, v);
+                    entry.use(v, session);
+                    hitCount++;
                     return v;
                 }
+                // Discarded by the garbage collector
+                entries.remove(key);
+                totalWeight -= entry.weight;
+                evictionCount++;
             }
-
+            missCount++;
             return null;
         }
+
+        synchronized void put(K key, V value, int weight) {
+            CacheEntry<V> previous = entries.put(key, new CacheEntry<V>(value, weight, session));
+            if (previous != null) {
+                totalWeight -= previous.weight;
+            }
+            totalWeight += weight;
+            // Discard the least recently used entries, keeping at least the new entry
+            Iterator<CacheEntry<V>> iterator = entries.values().iterator();
+            while (totalWeight > maximumWeight && entries.size() > 1) {
+                CacheEntry<V> eldest = iterator.next();
+                iterator.remove();
+                totalWeight -= eldest.weight;
+                evictionCount++;
+            }
+        }
+
+        synchronized void sessionCompleted() {
+            // Retain strong references to the values used during the session that completed, until the end of the next session
+            for (CacheEntry<V> entry : entries.values()) {
+                if (entry.lastUsedSession < session) {
+                    entry.strongValue = null;
+                }
+            }
+            session++;
+        }
+
+        synchronized void clear() {
+            entries.clear();
+            totalWeight = 0;
+        }
+    }
+
+    private static class CacheEntry<V> {
+        private final SoftReference<V> softValue;
+        private final int weight;
+        // Null when the value has not been used for a while, and is only softly referenced
+        private V strongValue;
+        private int lastUsedSession;
+
+        CacheEntry(V value, int weight, int session) {
+            this.softValue = new SoftReference<V>(value);
+            this.strongValue = value;
+            this.weight = weight;
+            this.lastUsedSession = session;
+        }
+
+        @Nullable
+        V get() {
+            return strongValue != null ? strongValue : softValue.get();
+        }
+
+        void use(V value, int session) {
+            strongValue = value;
+            lastUsedSession = session;
+        }
+    }
+
+    private static class PendingValue<V> {
+        private final Thread thread = Thread.currentThread();
+        private final SettableFuture<V> future = SettableFuture.create();
     }
 }
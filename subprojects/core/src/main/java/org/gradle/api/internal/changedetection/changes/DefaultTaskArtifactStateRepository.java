@@ -39,6 +39,8 @@ import org.gradle.caching.internal.tasks.TaskOutputCachingBuildCacheKey;
 import org.gradle.internal.classloader.ClassLoaderHierarchyHasher;
 import org.gradle.internal.id.UniqueId;
 import org.gradle.internal.reflect.Instantiator;
+import org.gradle.internal.time.Timer;
+import org.gradle.internal.time.Timers;
 
 import java.io.File;
 import java.util.Collection;
@@ -77,6 +79,7 @@ public class DefaultTaskArtifactStateRepository implements TaskArtifactStateRepo
         private boolean upToDate;
         private TaskUpToDateState states;
         private IncrementalTaskInputsInternal taskInputs;
+        private Timer executionTimer;
 
         public TaskArtifactStateImpl(TaskInternal task, TaskHistoryRepository.History history) {
             this.task = task;
@@ -167,6 +170,7 @@ public class DefaultTaskArtifactStateRepository implements TaskArtifactStateRepo
         }
 
         public void beforeTask() {
+            executionTimer = Timers.startTimer();
         }
 
         public void afterTask() {
@@ -178,6 +182,9 @@ public class DefaultTaskArtifactStateRepository implements TaskArtifactStateRepo
                 getStates().newInputs(taskInputs.getDiscoveredInputs());
             }
             getStates().getAllTaskChanges().snapshotAfterTask();
+            if (executionTimer != null) {
+                history.getCurrentExecution().setExecutionTime(executionTimer.getElapsedMillis());
+            }
             history.update();
         }
 
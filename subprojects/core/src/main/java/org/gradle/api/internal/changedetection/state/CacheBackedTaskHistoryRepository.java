@@ -33,6 +33,7 @@ import org.gradle.cache.PersistentIndexedCache;
 import org.gradle.internal.id.UniqueId;
 import org.gradle.internal.scopeids.id.BuildScopeId;
 import org.gradle.internal.serialize.AbstractSerializer;
+import org.gradle.internal.serialize.BaseSerializerFactory;
 import org.gradle.internal.serialize.Decoder;
 import org.gradle.internal.serialize.Encoder;
 import org.gradle.internal.serialize.Serializer;
@@ -54,6 +55,8 @@ public class CacheBackedTaskHistoryRepository implements TaskHistoryRepository {
 
     private final FileSnapshotRepository snapshotRepository;
     private final PersistentIndexedCache<String, ImmutableList<TaskExecutionSnapshot>> taskHistoryCache;
+    // Kept apart from the history, so that the execution time can be read without decoding the snapshots
+    private final PersistentIndexedCache<String, Long> executionTimeCache;
     private final StringInterner stringInterner;
     private final BuildScopeId buildScopeId;
 
@@ -63,6 +66,7 @@ public class CacheBackedTaskHistoryRepository implements TaskHistoryRepository {
         this.buildScopeId = buildScopeId;
         TaskExecutionListSerializer serializer = new TaskExecutionListSerializer(stringInterner);
         taskHistoryCache = cacheAccess.createCache("taskHistory", String.class, serializer, 10000, false);
+        executionTimeCache = cacheAccess.createCache("taskExecutionTime", String.class, BaseSerializerFactory.LONG_SERIALIZER, 10000, false);
     }
 
     public History getHistory(final TaskInternal task) {
@@ -121,10 +125,19 @@ public class CacheBackedTaskHistoryRepository implements TaskHistoryRepository {
                     }
                 }
                 taskHistoryCache.put(task.getPath(), previousExecutions.snapshot());
+                if (currentExecution.getExecutionTime() >= 0) {
+                    executionTimeCache.put(task.getPath(), currentExecution.getExecutionTime());
+                }
             }
         };
     }
 
+    @Override
+    public long getPreviousExecutionTime(TaskInternal task) {
+        Long executionTime = executionTimeCache.get(task.getPath());
+        return executionTime == null ? -1 : executionTime;
+    }
+
     private TaskExecutionList loadPreviousExecutions(final TaskInternal task) {
         List<TaskExecutionSnapshot> history = taskHistoryCache.get(task.getPath());
         TaskExecutionList result = new TaskExecutionList();
@@ -371,18 +384,17 @@ public class CacheBackedTaskHistoryRepository implements TaskHistoryRepository {
 
                 int outputFilesCount = decoder.readSmallInt();
                 ImmutableSet.Builder<String> declaredOutputFilePathsBuilder = ImmutableSet.builder();
+                PathPrefixEncoding declaredOutputFilePaths = new PathPrefixEncoding();
                 for (int j = 0; j < outputFilesCount; j++) {
-                    declaredOutputFilePathsBuilder.add(stringInterner.intern(decoder.readString()));
+                    declaredOutputFilePathsBuilder.add(declaredOutputFilePaths.read(decoder, stringInterner));
                 }
-                ImmutableSet<String> declaredOutputFilePaths = declaredOutputFilePathsBuilder.build();
-
                 ImmutableSortedMap<String, ValueSnapshot> inputProperties = inputPropertiesSerializer.read(decoder);
 
                 return new TaskExecutionSnapshot(
                     buildId,
                     taskClass,
                     cacheableOutputProperties,
-                    declaredOutputFilePaths,
+                    declaredOutputFilePathsBuilder.build(),
                     taskClassLoaderHash,
                     taskActionsClassLoaderHashes,
                     inputProperties,
@@ -419,8 +431,9 @@ public class CacheBackedTaskHistoryRepository implements TaskHistoryRepository {
                     encoder.writeString(outputFile);
                 }
                 encoder.writeSmallInt(execution.getDeclaredOutputFilePaths().size());
+                PathPrefixEncoding declaredOutputFilePaths = new PathPrefixEncoding();
                 for (String outputFile : execution.getDeclaredOutputFilePaths()) {
-                    encoder.writeString(outputFile);
+                    declaredOutputFilePaths.write(encoder, outputFile);
                 }
                 inputPropertiesSerializer.write(encoder, execution.getInputProperties());
             }
@@ -18,10 +18,13 @@ package org.gradle.api.internal.changedetection.state;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Objects;
 import com.google.common.hash.HashCode;
+import org.gradle.api.Nullable;
 import org.gradle.api.file.FileTreeElement;
 import org.gradle.api.internal.cache.StringInterner;
 import org.gradle.api.internal.hash.FileHasher;
 import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.concurrent.Stoppable;
 import org.gradle.internal.nativeintegration.filesystem.FileMetadataSnapshot;
 import org.gradle.internal.nativeintegration.filesystem.FileSystem;
 import org.gradle.internal.resource.TextResource;
@@ -32,8 +35,11 @@ import org.gradle.internal.serialize.HashCodeSerializer;
 
 import java.io.File;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
-public class CachingFileHasher implements FileHasher {
+public class CachingFileHasher implements FileHasher, Stoppable {
     private final PersistentIndexedCache<String, FileInfo> cache;
     private final FileHasher delegate;
     private final FileSystem fileSystem;
@@ -91,8 +97,52 @@ public class CachingFileHasher implements FileHasher {
         return snapshot(file.getFile(), file.getSize(), file.getLastModified());
     }
 
+    @Override
+    public List<HashCode> hash(List<File> files, List<FileMetadataSnapshot> fileDetails) {
+        HashCode[] hashes = new HashCode[files.size()];
+        List<Integer> misses = new ArrayList<Integer>();
+        List<File> missedFiles = new ArrayList<File>();
+        List<FileMetadataSnapshot> missedFileDetails = new ArrayList<FileMetadataSnapshot>();
+        for (int i = 0; i < hashes.length; i++) {
+            File file = files.get(i);
+            FileMetadataSnapshot details = fileDetails.get(i);
+            FileInfo info = lookup(file.getAbsolutePath(), details.getLength(), details.getLastModified());
+            if (info != null) {
+                hashes[i] = info.getHash();
+            } else {
+                misses.add(i);
+                missedFiles.add(file);
+                missedFileDetails.add(details);
+            }
+        }
+        if (!misses.isEmpty()) {
+            // Hash all the files that have changed in one batch, so that the delegate can spread the work
+            List<HashCode> missedHashes = delegate.hash(missedFiles, missedFileDetails);
+            for (int i = 0; i < misses.size(); i++) {
+                FileMetadataSnapshot details = missedFileDetails.get(i);
+                FileInfo info = new FileInfo(missedHashes.get(i), details.getLength(), details.getLastModified());
+                cache.put(stringInterner.intern(missedFiles.get(i).getAbsolutePath()), info);
+                hashes[misses.get(i)] = info.getHash();
+            }
+        }
+        return Arrays.asList(hashes);
+    }
+
     private FileInfo snapshot(File file, long length, long timestamp) {
         String absolutePath = file.getAbsolutePath();
+        FileInfo info = lookup(absolutePath, length, timestamp);
+        if (info != null) {
+            return info;
+        }
+
+        HashCode hash = delegate.hash(file);
+        info = new FileInfo(hash, length, timestamp);
+        cache.put(stringInterner.intern(absolutePath), info);
+        return info;
+    }
+
+    @Nullable
+    private FileInfo lookup(String absolutePath, long length, long timestamp) {
         if (timestampInspector.timestampCanBeUsedToDetectFileChange(absolutePath, timestamp)) {
             FileInfo info = cache.get(absolutePath);
 
@@ -100,17 +150,18 @@ public class CachingFileHasher implements FileHasher {
                 return info;
             }
         }
-
-        HashCode hash = delegate.hash(file);
-        FileInfo info = new FileInfo(hash, length, timestamp);
-        cache.put(stringInterner.intern(absolutePath), info);
-        return info;
+        return null;
     }
 
     public void discard(String path) {
         cache.remove(path);
     }
 
+    @Override
+    public void stop() {
+        CompositeStoppable.stoppable(delegate).stop();
+    }
+
     @VisibleForTesting
     static class FileInfo {
         private final HashCode hash;
@@ -23,36 +23,83 @@ import org.gradle.cache.PersistentCache;
 import org.gradle.cache.PersistentIndexedCache;
 import org.gradle.cache.PersistentIndexedCacheParameters;
 import org.gradle.cache.internal.FileLockManager;
+import org.gradle.cache.internal.StripedPersistentIndexedCache;
+import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.hash.ContentHashFunction;
 import org.gradle.internal.serialize.Serializer;
 
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import static org.gradle.cache.internal.filelock.LockOptionsBuilder.mode;
 
+/**
+ * Stores the hashes of files across builds.
+ *
+ * <p>The cache can be partitioned into stripes by the hash of the key, using the {@value #STRIPES_PROPERTY} system property. Each stripe is stored in its own
+ * directory with its own lock, so that processes that hash different files do not contend for the lock of the whole cache.</p>
+ */
 public class CrossBuildFileHashCache implements Closeable, TaskHistoryStore {
-    private final PersistentCache cache;
+    /**
+     * The number of stripes to partition the cache into. Defaults to 1, which stores all entries in a single file.
+     */
+    public static final String STRIPES_PROPERTY = "org.gradle.internal.file-hash-cache.stripes";
+
+    private final List<PersistentCache> stripes;
     private final InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory;
 
     public CrossBuildFileHashCache(@Nullable File cacheDir, CacheRepository repository, InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory) {
+        this(cacheDir, repository, inMemoryCacheDecoratorFactory, Integer.getInteger(STRIPES_PROPERTY, 1));
+    }
+
+    CrossBuildFileHashCache(@Nullable File cacheDir, CacheRepository repository, InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory, int stripeCount) {
         this.inMemoryCacheDecoratorFactory = inMemoryCacheDecoratorFactory;
-        CacheBuilder cacheBuilder = cacheDir != null ? repository.cache(cacheDir) : repository.cache("fileHashes");
-        cache = cacheBuilder
+        if (stripeCount <= 1) {
+            stripes = Collections.singletonList(open(cacheDir != null ? repository.cache(cacheDir) : repository.cache("fileHashes")));
+        } else {
+            List<PersistentCache> caches = new ArrayList<PersistentCache>(stripeCount);
+            for (int i = 0; i < stripeCount; i++) {
+                String stripeName = "stripe-" + i;
+                caches.add(open(cacheDir != null ? repository.cache(new File(cacheDir, stripeName)) : repository.cache("fileHashes/" + stripeName)));
+            }
+            stripes = caches;
+        }
+    }
+
+    private static PersistentCache open(CacheBuilder cacheBuilder) {
+        return cacheBuilder
             .withDisplayName("file hash cache")
+            // Hashes calculated by different functions cannot be compared, so discard the entries when the function changes
+            .withProperties(Collections.singletonMap("hashFunction", ContentHashFunction.current().getId()))
             .withLockOptions(mode(FileLockManager.LockMode.None)) // Lock on demand
             .open();
     }
 
     @Override
     public <K, V> PersistentIndexedCache<K, V> createCache(String cacheName, Class<K> keyType, Serializer<V> valueSerializer, int maxEntriesToKeepInMemory, boolean cacheInMemoryForShortLivedProcesses) {
-        PersistentIndexedCacheParameters<K, V> parameters = new PersistentIndexedCacheParameters<K, V>(cacheName, keyType, valueSerializer)
-                .cacheDecorator(inMemoryCacheDecoratorFactory.decorator(maxEntriesToKeepInMemory, cacheInMemoryForShortLivedProcesses));
-        return cache.createCache(parameters);
+        if (stripes.size() == 1) {
+            return stripes.get(0).createCache(parameters(cacheName, keyType, valueSerializer, maxEntriesToKeepInMemory, cacheInMemoryForShortLivedProcesses));
+        }
+        // Share the entries kept in memory between the stripes
+        int maxEntriesPerStripe = Math.max(1, maxEntriesToKeepInMemory / stripes.size());
+        List<PersistentIndexedCache<K, V>> stripeCaches = new ArrayList<PersistentIndexedCache<K, V>>(stripes.size());
+        for (PersistentCache stripe : stripes) {
+            stripeCaches.add(stripe.createCache(parameters(cacheName, keyType, valueSerializer, maxEntriesPerStripe, cacheInMemoryForShortLivedProcesses)));
+        }
+        return new StripedPersistentIndexedCache<K, V>(stripeCaches);
+    }
+
+    private <K, V> PersistentIndexedCacheParameters<K, V> parameters(String cacheName, Class<K> keyType, Serializer<V> valueSerializer, int maxEntriesToKeepInMemory, boolean cacheInMemoryForShortLivedProcesses) {
+        return new PersistentIndexedCacheParameters<K, V>(cacheName, keyType, valueSerializer)
+            .cacheDecorator(inMemoryCacheDecoratorFactory.decorator(maxEntriesToKeepInMemory, cacheInMemoryForShortLivedProcesses));
     }
 
     @Override
     public void close() throws IOException {
-        cache.close();
+        CompositeStoppable.stoppable(stripes).stop();
     }
 }
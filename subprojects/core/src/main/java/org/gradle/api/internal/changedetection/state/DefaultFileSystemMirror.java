@@ -24,6 +24,7 @@ import org.gradle.internal.file.DefaultFileHierarchySet;
 import org.gradle.internal.file.FileHierarchySet;
 
 import java.io.File;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -118,11 +119,57 @@ public class DefaultFileSystemMirror implements FileSystemMirror, TaskOutputsGen
     public void beforeTaskOutputsGenerated() {
         // When the task outputs are generated, throw away all state for files that do not live in an append-only cache.
         // This is intentionally very simple, to be improved later
+        discardNonCachedState();
+    }
+
+    protected boolean isInCache(String path) {
+        return cachedDirectories.contains(path);
+    }
+
+    /**
+     * Discards any state about the given file, its ancestors and, when requested, its descendants. Does not touch state for files that live in an append-only cache.
+     */
+    protected void invalidate(String path, boolean includeDescendants) {
+        if (isInCache(path)) {
+            return;
+        }
+        // The file itself, plus any tree or snapshot rooted at one of its ancestors
+        for (File current = new File(path); current != null; current = current.getParentFile()) {
+            String currentPath = current.getPath();
+            files.remove(currentPath);
+            trees.remove(currentPath);
+            snapshots.remove(currentPath);
+        }
+        if (includeDescendants) {
+            String prefix = path + File.separatorChar;
+            removeDescendants(files, prefix);
+            removeDescendants(trees, prefix);
+            removeDescendants(snapshots, prefix);
+        }
+    }
+
+    private static void removeDescendants(Map<String, ?> map, String prefix) {
+        Iterator<String> iterator = map.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().startsWith(prefix)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    protected void discardNonCachedState() {
         files.clear();
         trees.clear();
         snapshots.clear();
     }
 
+    protected void discardAllState() {
+        discardNonCachedState();
+        cacheFiles.clear();
+        cacheTrees.clear();
+        cacheSnapshots.clear();
+    }
+
     @Override
     public void afterStart() {
     }
@@ -130,11 +177,6 @@ public class DefaultFileSystemMirror implements FileSystemMirror, TaskOutputsGen
     @Override
     public void beforeComplete() {
         // We throw away all state between builds
-        files.clear();
-        cacheFiles.clear();
-        trees.clear();
-        cacheTrees.clear();
-        snapshots.clear();
-        cacheSnapshots.clear();
+        discardAllState();
     }
 }
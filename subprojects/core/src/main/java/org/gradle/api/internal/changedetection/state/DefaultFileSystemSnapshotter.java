@@ -19,6 +19,7 @@ package org.gradle.api.internal.changedetection.state;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.hash.HashCode;
+import org.gradle.api.GradleException;
 import org.gradle.api.file.FileTreeElement;
 import org.gradle.api.file.FileVisitDetails;
 import org.gradle.api.file.FileVisitor;
@@ -35,11 +36,17 @@ import org.gradle.cache.internal.ProducerGuard;
 import org.gradle.caching.internal.BuildCacheHasher;
 import org.gradle.caching.internal.DefaultBuildCacheHasher;
 import org.gradle.internal.Factory;
+import org.gradle.internal.hash.ContentHashFunction;
 import org.gradle.internal.nativeintegration.filesystem.FileMetadataSnapshot;
 import org.gradle.internal.nativeintegration.filesystem.FileSystem;
+import org.gradle.internal.nativeintegration.filesystem.FileType;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Responsible for snapshotting various aspects of the file system.
@@ -97,7 +104,7 @@ public class DefaultFileSystemSnapshotter implements FileSystemSnapshotter {
                 Snapshot snapshot = fileSystemMirror.getContent(path);
                 if (snapshot == null) {
                     FileCollectionSnapshot fileCollectionSnapshot = snapshotter.snapshot(new SimpleFileCollection(file), TaskFilePropertyCompareStrategy.UNORDERED, TaskFilePropertySnapshotNormalizationStrategy.ABSOLUTE, ResourceNormalizationStrategy.NOT_CONFIGURED);
-                    DefaultBuildCacheHasher hasher = new DefaultBuildCacheHasher();
+                    DefaultBuildCacheHasher hasher = new DefaultBuildCacheHasher(ContentHashFunction.current());
                     fileCollectionSnapshot.appendToHasher(hasher);
                     HashCode hashCode = hasher.hash();
                     snapshot = new HashBackedSnapshot(hashCode);
@@ -119,8 +126,7 @@ public class DefaultFileSystemSnapshotter implements FileSystemSnapshotter {
                 FileTreeSnapshot snapshot = fileSystemMirror.getDirectoryTree(path);
                 if (snapshot == null) {
                     // Scan the directory
-                    snapshot = doSnapshot(directoryFileTreeFactory.create(dir));
-                    fileSystemMirror.putDirectory(snapshot);
+                    snapshot = doSnapshot(dir);
                 }
                 return snapshot;
             }
@@ -144,8 +150,7 @@ public class DefaultFileSystemSnapshotter implements FileSystemSnapshotter {
                 FileTreeSnapshot snapshot = fileSystemMirror.getDirectoryTree(path);
                 if (snapshot == null) {
                     // Scan the directory
-                    snapshot = doSnapshot(dirTree);
-                    fileSystemMirror.putDirectory(snapshot);
+                    snapshot = doSnapshot(dirTree.getDir());
                 }
                 return snapshot;
             }
@@ -159,11 +164,85 @@ public class DefaultFileSystemSnapshotter implements FileSystemSnapshotter {
         return elements;
     }
 
-    private FileTreeSnapshot doSnapshot(DirectoryFileTree directoryTree) {
-        String path = getPath(directoryTree.getDir());
-        List<FileSnapshot> elements = Lists.newArrayList();
-        directoryTree.visit(new FileVisitorImpl(elements));
-        return new DirectoryTreeDetails(path, ImmutableList.copyOf(elements));
+    private FileTreeSnapshot doSnapshot(File dir) {
+        // Only walk those sub-trees that are not known to the mirror, then hash all of the files that were found in one batch
+        List<File> files = Lists.newArrayList();
+        List<FileMetadataSnapshot> fileDetails = Lists.newArrayList();
+        DirectoryScan scan = scanHierarchy(dir, files, fileDetails);
+        List<HashCode> hashes = hasher.hash(files, fileDetails);
+
+        // Add the root first, so that the mirror sees the outermost directory before its descendants
+        List<HierarchicalDirectoryTreeDetails> scannedSubTrees = Lists.newArrayList();
+        HierarchicalDirectoryTreeDetails snapshot = scan.toSnapshot(files, fileDetails, hashes, scannedSubTrees);
+        fileSystemMirror.putDirectory(snapshot);
+        for (HierarchicalDirectoryTreeDetails subTree : scannedSubTrees) {
+            fileSystemMirror.putDirectory(subTree);
+        }
+        return snapshot;
+    }
+
+    private DirectoryScan scanHierarchy(File dir, List<File> files, List<FileMetadataSnapshot> fileDetails) {
+        return scanHierarchy(dir, files, fileDetails, new HashSet<String>());
+    }
+
+    /**
+     * Scans the given directory and those of its descendants that are not known to the mirror. Follows symbolic links in the same way as the directory walkers:
+     * a link to a directory that contains the link is not followed, and a link that cannot be followed is a failure.
+     *
+     * @param ancestors the canonical paths of the directories that contain the given directory.
+     */
+    private DirectoryScan scanHierarchy(File dir, List<File> files, List<FileMetadataSnapshot> fileDetails, Set<String> ancestors) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            if (dir.isDirectory() && !dir.canRead()) {
+                throw new GradleException(String.format("Could not list contents of directory '%s' as it is not readable.", dir));
+            }
+            throw new GradleException(String.format("Could not list contents of '%s'.", dir));
+        }
+        String canonicalPath = canonicalPathOf(dir);
+        ancestors.add(canonicalPath);
+        Arrays.sort(children);
+        List<File> directories = Lists.newArrayList();
+        int firstFile = files.size();
+        for (File child : children) {
+            FileMetadataSnapshot stat = fileSystem.stat(child);
+            switch (stat.getType()) {
+                case RegularFile:
+                    files.add(child);
+                    fileDetails.add(stat);
+                    break;
+                case Directory:
+                    if (!ancestors.contains(canonicalPathOf(child))) {
+                        directories.add(child);
+                    }
+                    break;
+                case Missing:
+                    // Listed by the parent but does not exist, so is either a link that points to nothing or has been removed while scanning
+                    throw new GradleException(String.format("Could not list contents of '%s'. Couldn't follow symbolic link.", child));
+                default:
+                    throw new IllegalArgumentException("Unrecognized file type: " + stat.getType());
+            }
+        }
+        DirectoryScan scan = new DirectoryScan(dir, firstFile, files.size());
+        for (File directory : directories) {
+            FileTreeSnapshot subTree = fileSystemMirror.getDirectoryTree(getPath(directory));
+            if (subTree instanceof HierarchicalDirectoryTreeDetails) {
+                // Unchanged since it was last scanned
+                scan.directories.add(subTree);
+            } else {
+                scan.directories.add(scanHierarchy(directory, files, fileDetails, ancestors));
+            }
+        }
+        ancestors.remove(canonicalPath);
+        return scan;
+    }
+
+    private static String canonicalPathOf(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            throw new GradleException(String.format("Could not read path '%s'.", file), e);
+        }
     }
 
     private String getPath(File file) {
@@ -206,6 +285,43 @@ public class DefaultFileSystemSnapshotter implements FileSystemSnapshotter {
         }
     }
 
+    /**
+     * The result of scanning a directory, whose files have not been hashed yet. The files of the directory are a contiguous range of the files found by the scan.
+     */
+    private class DirectoryScan {
+        private final File dir;
+        private final int firstFile;
+        private final int endFile;
+        // Either a HierarchicalDirectoryTreeDetails that has been reused, or a DirectoryScan
+        private final List<Object> directories = Lists.newArrayList();
+
+        DirectoryScan(File dir, int firstFile, int endFile) {
+            this.dir = dir;
+            this.firstFile = firstFile;
+            this.endFile = endFile;
+        }
+
+        HierarchicalDirectoryTreeDetails toSnapshot(List<File> files, List<FileMetadataSnapshot> fileDetails, List<HashCode> hashes, List<HierarchicalDirectoryTreeDetails> scannedSubTrees) {
+            ImmutableList.Builder<HierarchicalDirectoryTreeDetails.FileEntry> fileEntries = ImmutableList.builder();
+            for (int i = firstFile; i < endFile; i++) {
+                File file = files.get(i);
+                FileHashSnapshot content = new FileHashSnapshot(hashes.get(i), fileDetails.get(i).getLastModified());
+                fileEntries.add(new HierarchicalDirectoryTreeDetails.FileEntry(getPath(file), file.getName(), content));
+            }
+            ImmutableList.Builder<HierarchicalDirectoryTreeDetails> directoryEntries = ImmutableList.builder();
+            for (Object directory : directories) {
+                if (directory instanceof DirectoryScan) {
+                    HierarchicalDirectoryTreeDetails scanned = ((DirectoryScan) directory).toSnapshot(files, fileDetails, hashes, scannedSubTrees);
+                    scannedSubTrees.add(scanned);
+                    directoryEntries.add(scanned);
+                } else {
+                    directoryEntries.add((HierarchicalDirectoryTreeDetails) directory);
+                }
+            }
+            return new HierarchicalDirectoryTreeDetails(getPath(dir), dir.getName(), fileEntries.build(), directoryEntries.build());
+        }
+    }
+
     private class FileVisitorImpl implements FileVisitor {
         private final List<FileSnapshot> fileTreeElements;
 
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import org.gradle.api.file.RelativePath;
+import org.gradle.caching.internal.BuildCacheHasher;
+import org.gradle.caching.internal.DefaultBuildCacheHasher;
+import org.gradle.internal.hash.ContentHashFunction;
+
+import java.util.List;
+
+/**
+ * Represents the state of a directory tree as a hierarchy of directories. Each directory carries a hash that combines the names and contents of all of its descendants.
+ *
+ * The relative paths of the descendants are only calculated when they are requested, so that the snapshot of a directory can be reused as part of the snapshot of any of its ancestors.
+ */
+public class HierarchicalDirectoryTreeDetails implements FileTreeSnapshot {
+    // Interned path
+    private final String path;
+    private final String name;
+    private final List<FileEntry> files;
+    private final List<HierarchicalDirectoryTreeDetails> directories;
+    private final HashCode hash;
+    private volatile List<FileSnapshot> descendants;
+
+    public HierarchicalDirectoryTreeDetails(String path, String name, List<FileEntry> files, List<HierarchicalDirectoryTreeDetails> directories) {
+        this.path = path;
+        this.name = name;
+        this.files = files;
+        this.directories = directories;
+        BuildCacheHasher hasher = new DefaultBuildCacheHasher(ContentHashFunction.current());
+        hasher.putInt(files.size());
+        for (FileEntry file : files) {
+            hasher.putString(file.getName());
+            hasher.putBytes(file.getContent().getContentMd5().asBytes());
+        }
+        hasher.putInt(directories.size());
+        for (HierarchicalDirectoryTreeDetails directory : directories) {
+            hasher.putString(directory.getName());
+            hasher.putBytes(directory.getHash().asBytes());
+        }
+        this.hash = hasher.hash();
+    }
+
+    @Override
+    public String getPath() {
+        return path;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns a hash of the names and contents of all descendants of this directory.
+     */
+    public HashCode getHash() {
+        return hash;
+    }
+
+    @Override
+    public List<FileSnapshot> getDescendants() {
+        List<FileSnapshot> result = descendants;
+        if (result == null) {
+            ImmutableList.Builder<FileSnapshot> builder = ImmutableList.builder();
+            visitDescendants(RelativePath.EMPTY_ROOT, builder);
+            result = builder.build();
+            descendants = result;
+        }
+        return result;
+    }
+
+    private void visitDescendants(RelativePath relativePath, ImmutableList.Builder<FileSnapshot> builder) {
+        // Same order as the directory walkers: files first, then each directory followed by its contents
+        for (FileEntry file : files) {
+            builder.add(new RegularFileSnapshot(file.getPath(), relativePath.append(true, file.getName()), false, file.getContent()));
+        }
+        for (HierarchicalDirectoryTreeDetails directory : directories) {
+            RelativePath directoryPath = relativePath.append(false, directory.getName());
+            builder.add(new DirectoryFileSnapshot(directory.getPath(), directoryPath, false));
+            directory.visitDescendants(directoryPath, builder);
+        }
+    }
+
+    public static class FileEntry {
+        // Interned path
+        private final String path;
+        private final String name;
+        private final FileContentSnapshot content;
+
+        public FileEntry(String path, String name, FileContentSnapshot content) {
+            this.path = path;
+            this.name = name;
+            this.content = content;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public FileContentSnapshot getContent() {
+            return content;
+        }
+    }
+}
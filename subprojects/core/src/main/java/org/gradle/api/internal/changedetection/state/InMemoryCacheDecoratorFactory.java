@@ -49,7 +49,8 @@ public class InMemoryCacheDecoratorFactory {
 
     public InMemoryCacheDecoratorFactory(boolean longLivingProcess, CrossBuildInMemoryCacheFactory cacheFactory) {
         this.longLivingProcess = longLivingProcess;
-        caches = cacheFactory.newCache();
+        // Holds one entry per persistent cache, so needs no maximum. Discarding the entry of a cache that is still open would give that cache a second in-memory store
+        caches = cacheFactory.newUnboundedCache("persistent cache stores");
     }
 
     public CacheDecorator decorator(final int maxEntriesToKeepInMemory, final boolean cacheInMemoryForShortLivedProcesses) {
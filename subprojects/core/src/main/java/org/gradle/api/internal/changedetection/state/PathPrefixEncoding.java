@@ -0,0 +1,64 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import org.gradle.api.internal.cache.StringInterner;
+import org.gradle.internal.serialize.Decoder;
+import org.gradle.internal.serialize.Encoder;
+
+import java.io.IOException;
+
+/**
+ * Encodes a sequence of paths relative to each other: each path is written as the length of the prefix it shares with the previous path, followed by the remaining characters.
+ * Paths of a file tree are visited in order, so most of each path is shared with the one before it.
+ *
+ * <p>An instance keeps track of the previous path, so a new instance must be used for each sequence, and paths must be read in the order they were written.</p>
+ */
+class PathPrefixEncoding {
+    private String previousPath = "";
+
+    public void write(Encoder encoder, String path) throws IOException {
+        int prefixLength = commonPrefixLength(previousPath, path);
+        encoder.writeSmallInt(prefixLength);
+        encoder.writeString(path.substring(prefixLength));
+        previousPath = path;
+    }
+
+    public String read(Decoder decoder, StringInterner stringInterner) throws IOException {
+        int prefixLength = decoder.readSmallInt();
+        String suffix = decoder.readString();
+        if (prefixLength > previousPath.length()) {
+            throw new IOException("Unable to read serialized path. Unrecognized value found in the data stream.");
+        }
+        String path = stringInterner.intern(prefixLength == 0 ? suffix : previousPath.substring(0, prefixLength).concat(suffix));
+        previousPath = path;
+        return path;
+    }
+
+    private static int commonPrefixLength(String a, String b) {
+        int max = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < max && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        // Do not split a surrogate pair between the prefix and the suffix
+        if (i > 0 && Character.isHighSurrogate(a.charAt(i - 1))) {
+            i--;
+        }
+        return i;
+    }
+}
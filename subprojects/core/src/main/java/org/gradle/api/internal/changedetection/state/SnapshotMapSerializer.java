@@ -17,6 +17,7 @@
 package org.gradle.api.internal.changedetection.state;
 
 import com.google.common.base.Objects;
+import com.google.common.hash.HashCode;
 import org.gradle.api.internal.cache.StringInterner;
 import org.gradle.internal.serialize.AbstractSerializer;
 import org.gradle.internal.serialize.Decoder;
@@ -27,15 +28,25 @@ import java.io.IOException;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+/**
+ * Serializes file snapshots in a compact form. Absolute paths are front-coded against the previous path, the file and normalization kind of each entry share a single byte,
+ * 128 bit content hashes are written as raw bytes and normalized paths that are a suffix of the absolute path are written as a length.
+ */
 public class SnapshotMapSerializer extends AbstractSerializer<Map<String, NormalizedFileSnapshot>> {
-    private static final byte DIR_SNAPSHOT = 1;
-    private static final byte MISSING_FILE_SNAPSHOT = 2;
-    private static final byte REGULAR_FILE_SNAPSHOT = 3;
+    private static final int DIR_SNAPSHOT = 1;
+    private static final int MISSING_FILE_SNAPSHOT = 2;
+    private static final int REGULAR_FILE_SNAPSHOT = 3;
+    private static final int REGULAR_FILE_SNAPSHOT_WITH_128_BIT_HASH = 4;
+
+    private static final int NO_NORMALIZATION = 1;
+    private static final int DEFAULT_NORMALIZATION = 2;
+    private static final int INDEXED_NORMALIZATION = 3;
+    private static final int IGNORED_PATH_NORMALIZATION = 4;
+    private static final int DEFAULT_NORMALIZATION_SUFFIX_OF_ABSOLUTE_PATH = 5;
 
-    private static final byte NO_NORMALIZATION = 1;
-    private static final byte DEFAULT_NORMALIZATION = 2;
-    private static final byte INDEXED_NORMALIZATION = 3;
-    private static final byte IGNORED_PATH_NORMALIZATION = 4;
+    private static final int FILE_SNAPSHOT_KIND_MASK = 0x07;
+    private static final int NORMALIZATION_KIND_SHIFT = 3;
+    private static final int HASH_128_BIT_LENGTH = 16;
 
     private final HashCodeSerializer hashCodeSerializer = new HashCodeSerializer();
     private final StringInterner stringInterner;
@@ -48,8 +59,9 @@ public class SnapshotMapSerializer extends AbstractSerializer<Map<String, Normal
     public Map<String, NormalizedFileSnapshot> read(Decoder decoder) throws Exception {
         int snapshotsCount = decoder.readSmallInt();
         Map<String, NormalizedFileSnapshot> snapshots = new LinkedHashMap<String, NormalizedFileSnapshot>(snapshotsCount);
+        PathPrefixEncoding paths = new PathPrefixEncoding();
         for (int i = 0; i < snapshotsCount; i++) {
-            String absolutePath = stringInterner.intern(decoder.readString());
+            String absolutePath = paths.read(decoder, stringInterner);
             NormalizedFileSnapshot snapshot = readSnapshot(absolutePath, decoder, stringInterner);
             snapshots.put(absolutePath, snapshot);
         }
@@ -57,7 +69,8 @@ public class SnapshotMapSerializer extends AbstractSerializer<Map<String, Normal
     }
 
     private NormalizedFileSnapshot readSnapshot(String absolutePath, Decoder decoder, StringInterner stringInterner) throws IOException {
-        byte fileSnapshotKind = decoder.readByte();
+        int kinds = decoder.readByte() & 0xFF;
+        int fileSnapshotKind = kinds & FILE_SNAPSHOT_KIND_MASK;
         FileContentSnapshot snapshot;
         switch (fileSnapshotKind) {
             case DIR_SNAPSHOT:
@@ -69,17 +82,26 @@ public class SnapshotMapSerializer extends AbstractSerializer<Map<String, Normal
             case REGULAR_FILE_SNAPSHOT:
                 snapshot = new FileHashSnapshot(hashCodeSerializer.read(decoder));
                 break;
+            case REGULAR_FILE_SNAPSHOT_WITH_128_BIT_HASH:
+                byte[] hash = new byte[HASH_128_BIT_LENGTH];
+                decoder.readBytes(hash);
+                snapshot = new FileHashSnapshot(HashCode.fromBytes(hash));
+                break;
             default:
                 throw new RuntimeException("Unable to read serialized file snapshot. Unrecognized value found in the data stream.");
         }
 
-        int normalizedSnapshotKind = decoder.readByte();
+        int normalizedSnapshotKind = kinds >>> NORMALIZATION_KIND_SHIFT;
         switch (normalizedSnapshotKind) {
             case NO_NORMALIZATION:
                 return new NonNormalizedFileSnapshot(absolutePath, snapshot);
             case DEFAULT_NORMALIZATION:
                 String normalizedPath = stringInterner.intern(decoder.readString());
                 return new DefaultNormalizedFileSnapshot(normalizedPath, snapshot);
+            case DEFAULT_NORMALIZATION_SUFFIX_OF_ABSOLUTE_PATH:
+                int suffixLength = decoder.readSmallInt();
+                String suffix = stringInterner.intern(absolutePath.substring(absolutePath.length() - suffixLength));
+                return new DefaultNormalizedFileSnapshot(suffix, snapshot);
             case INDEXED_NORMALIZATION:
                 int index = decoder.readSmallInt();
                 return new IndexedNormalizedFileSnapshot(absolutePath, index, snapshot);
@@ -93,10 +115,11 @@ public class SnapshotMapSerializer extends AbstractSerializer<Map<String, Normal
     @Override
     public void write(Encoder encoder, Map<String, NormalizedFileSnapshot> value) throws Exception {
         encoder.writeSmallInt(value.size());
-        for (String key : value.keySet()) {
-            encoder.writeString(key);
-            NormalizedFileSnapshot snapshot = value.get(key);
-            writeSnapshot(encoder, snapshot);
+        PathPrefixEncoding paths = new PathPrefixEncoding();
+        for (Map.Entry<String, NormalizedFileSnapshot> entry : value.entrySet()) {
+            String absolutePath = entry.getKey();
+            paths.write(encoder, absolutePath);
+            writeSnapshot(encoder, absolutePath, entry.getValue());
         }
     }
 
@@ -115,31 +138,54 @@ public class SnapshotMapSerializer extends AbstractSerializer<Map<String, Normal
         return Objects.hashCode(super.hashCode(), hashCodeSerializer);
     }
 
-    private void writeSnapshot(Encoder encoder, NormalizedFileSnapshot value) throws IOException {
+    private void writeSnapshot(Encoder encoder, String absolutePath, NormalizedFileSnapshot value) throws IOException {
         FileContentSnapshot snapshot = value.getSnapshot();
+        int fileSnapshotKind;
+        HashCode hash = null;
         if (snapshot instanceof DirContentSnapshot) {
-            encoder.writeByte(DIR_SNAPSHOT);
+            fileSnapshotKind = DIR_SNAPSHOT;
         } else if (snapshot instanceof MissingFileContentSnapshot) {
-            encoder.writeByte(MISSING_FILE_SNAPSHOT);
+            fileSnapshotKind = MISSING_FILE_SNAPSHOT;
         } else if (snapshot instanceof FileHashSnapshot) {
-            encoder.writeByte(REGULAR_FILE_SNAPSHOT);
-            hashCodeSerializer.write(encoder, snapshot.getContentMd5());
+            hash = snapshot.getContentMd5();
+            fileSnapshotKind = hash.bits() == HASH_128_BIT_LENGTH * 8 ? REGULAR_FILE_SNAPSHOT_WITH_128_BIT_HASH : REGULAR_FILE_SNAPSHOT;
         } else {
             throw new AssertionError();
         }
 
+        int normalizedSnapshotKind;
         if (value instanceof NonNormalizedFileSnapshot) {
-            encoder.writeByte(NO_NORMALIZATION);
+            normalizedSnapshotKind = NO_NORMALIZATION;
         } else if (value instanceof DefaultNormalizedFileSnapshot) {
-            encoder.writeByte(DEFAULT_NORMALIZATION);
-            encoder.writeString(value.getNormalizedPath());
+            normalizedSnapshotKind = absolutePath.endsWith(value.getNormalizedPath()) ? DEFAULT_NORMALIZATION_SUFFIX_OF_ABSOLUTE_PATH : DEFAULT_NORMALIZATION;
         } else if (value instanceof IndexedNormalizedFileSnapshot) {
-            encoder.writeByte(INDEXED_NORMALIZATION);
-            encoder.writeSmallInt(((IndexedNormalizedFileSnapshot) value).getIndex());
+            normalizedSnapshotKind = INDEXED_NORMALIZATION;
         } else if (value instanceof IgnoredPathFileSnapshot) {
-            encoder.writeByte(IGNORED_PATH_NORMALIZATION);
+            normalizedSnapshotKind = IGNORED_PATH_NORMALIZATION;
         } else {
             throw new AssertionError();
         }
+
+        encoder.writeByte((byte) (fileSnapshotKind | normalizedSnapshotKind << NORMALIZATION_KIND_SHIFT));
+
+        if (fileSnapshotKind == REGULAR_FILE_SNAPSHOT_WITH_128_BIT_HASH) {
+            encoder.writeBytes(hash.asBytes());
+        } else if (fileSnapshotKind == REGULAR_FILE_SNAPSHOT) {
+            hashCodeSerializer.write(encoder, hash);
+        }
+
+        switch (normalizedSnapshotKind) {
+            case DEFAULT_NORMALIZATION:
+                encoder.writeString(value.getNormalizedPath());
+                break;
+            case DEFAULT_NORMALIZATION_SUFFIX_OF_ABSOLUTE_PATH:
+                encoder.writeSmallInt(value.getNormalizedPath().length());
+                break;
+            case INDEXED_NORMALIZATION:
+                encoder.writeSmallInt(((IndexedNormalizedFileSnapshot) value).getIndex());
+                break;
+            default:
+                break;
+        }
     }
 }
@@ -36,6 +36,7 @@ public abstract class TaskExecution {
     private Iterable<String> outputPropertyNamesForCacheKey;
     private ImmutableSet<String> declaredOutputFilePaths;
     private TaskExecutionHistory.OverlappingOutputs detectedOverlappingOutputs;
+    private long executionTime = -1;
 
     public UniqueId getBuildId() {
         return buildId;
@@ -119,6 +120,17 @@ public abstract class TaskExecution {
 
     public abstract void setDiscoveredInputFilesSnapshot(FileCollectionSnapshot inputFilesSnapshot);
 
+    /**
+     * Returns the time it took to execute the task, in milliseconds, or -1 when not known.
+     */
+    public long getExecutionTime() {
+        return executionTime;
+    }
+
+    public void setExecutionTime(long executionTime) {
+        this.executionTime = executionTime;
+    }
+
     public TaskExecutionHistory.OverlappingOutputs getDetectedOverlappingOutputs() {
         return detectedOverlappingOutputs;
     }
@@ -21,6 +21,12 @@ import org.gradle.api.internal.TaskInternal;
 public interface TaskHistoryRepository {
     History getHistory(TaskInternal task);
 
+    /**
+     * Returns the time it took to execute the given task the last time it was executed, in milliseconds, or -1 when not known.
+     * This is cheaper than {@link #getHistory(TaskInternal)}, as it does not inspect the task's outputs.
+     */
+    long getPreviousExecutionTime(TaskInternal task);
+
     interface History {
         @Nullable
         TaskExecution getPreviousExecution();
@@ -0,0 +1,324 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.gradle.api.Action;
+import org.gradle.api.internal.file.FileSystemSubset;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.classpath.CachedJarFileStore;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.file.DefaultFileHierarchySet;
+import org.gradle.internal.file.FileHierarchySet;
+import org.gradle.internal.filewatch.FileWatcher;
+import org.gradle.internal.filewatch.FileWatcherEvent;
+import org.gradle.internal.filewatch.FileWatcherFactory;
+import org.gradle.internal.filewatch.FileWatcherListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A {@link DefaultFileSystemMirror} that retains its state between builds, for as long as the daemon lives.
+ *
+ * <p>Every file and directory tree that is added to the mirror is registered with a {@link FileWatcher}, and the file system events
+ * reported by the watcher are used to discard the state that has become stale. When the watcher reports that events have been lost,
+ * or when the watcher stops, all state is discarded so that the next build performs a full scan.</p>
+ *
+ * <p>Directory trees are registered as they are added. Individual files are registered in batches, as there are usually many of them and each registration
+ * is relatively expensive. Once a batch has been registered, the files whose snapshot no longer matches the file system are discarded, as changes made to these
+ * files before they were registered have not been reported.</p>
+ *
+ * <p>As events are delivered asynchronously, events for changes made in between builds may still be on their way when the next build starts. At the start
+ * of the build, a sentinel file is written and the build waits until the event for it has been received. Events are delivered in order, so this means that
+ * the events for all earlier changes have been received as well.</p>
+ *
+ * <p>State is still discarded when task outputs are generated, as file system events are delivered asynchronously.</p>
+ */
+public class WatchingFileSystemMirror extends DefaultFileSystemMirror implements FileWatcherListener, Stoppable {
+    public static final String RETAIN_STATE_PROPERTY = "org.gradle.internal.filesystem.retain";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WatchingFileSystemMirror.class);
+    private static final int MAX_PENDING_FILES = 1000;
+    private static final long SENTINEL_TIMEOUT_MILLIS = 5000;
+
+    private final FileWatcherFactory fileWatcherFactory;
+    private final File sentinel;
+    private final long sentinelTimeoutMillis;
+    private final Object lock = new Object();
+    private FileWatcher fileWatcher;
+    private FileHierarchySet watchedRoots = DefaultFileHierarchySet.of();
+    // Files that have been added to the mirror but not registered with the watcher yet
+    private final List<FileSnapshot> pendingFiles = new ArrayList<FileSnapshot>();
+    private final Object sentinelLock = new Object();
+    private long sentinelWritten;
+    private long sentinelReceived;
+
+    public WatchingFileSystemMirror(List<CachedJarFileStore> fileStores, FileWatcherFactory fileWatcherFactory, File sentinelDir) {
+        this(fileStores, fileWatcherFactory, sentinelDir, SENTINEL_TIMEOUT_MILLIS);
+    }
+
+    WatchingFileSystemMirror(List<CachedJarFileStore> fileStores, FileWatcherFactory fileWatcherFactory, File sentinelDir, long sentinelTimeoutMillis) {
+        super(fileStores);
+        this.fileWatcherFactory = fileWatcherFactory;
+        // Several daemons may share the directory
+        this.sentinel = new File(sentinelDir, "sentinel-" + UUID.randomUUID());
+        this.sentinelTimeoutMillis = sentinelTimeoutMillis;
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(RETAIN_STATE_PROPERTY);
+    }
+
+    @Override
+    public void putFile(FileSnapshot file) {
+        super.putFile(file);
+        String path = file.getPath();
+        if (isInCache(path)) {
+            // Append-only, no need to watch
+            return;
+        }
+        synchronized (lock) {
+            if (watchedRoots.contains(path)) {
+                return;
+            }
+            watchedRoots = watchedRoots.plus(new File(path));
+            pendingFiles.add(file);
+            if (pendingFiles.size() >= MAX_PENDING_FILES) {
+                registerPendingFiles();
+            }
+        }
+    }
+
+    @Override
+    public void putContent(String path, Snapshot snapshot) {
+        watch(path);
+        super.putContent(path, snapshot);
+    }
+
+    @Override
+    public void putDirectory(FileTreeSnapshot directory) {
+        watch(directory.getPath());
+        super.putDirectory(directory);
+    }
+
+    private void watch(String path) {
+        if (isInCache(path)) {
+            // Append-only, no need to watch
+            return;
+        }
+        synchronized (lock) {
+            if (watchedRoots.contains(path)) {
+                return;
+            }
+            File file = new File(path);
+            if (register(FileSystemSubset.builder().add(file).build())) {
+                watchedRoots = watchedRoots.plus(file);
+            }
+        }
+    }
+
+    /**
+     * Registers the pending files with the watcher in one go, then discards those that have changed since they were added.
+     */
+    private void registerPendingFiles() {
+        if (pendingFiles.isEmpty()) {
+            return;
+        }
+        FileSystemSubset.Builder builder = FileSystemSubset.builder();
+        for (FileSnapshot file : pendingFiles) {
+            builder.add(new File(file.getPath()));
+        }
+        if (register(builder.build())) {
+            for (FileSnapshot file : pendingFiles) {
+                if (!isUpToDate(file)) {
+                    invalidate(file.getPath(), true);
+                }
+            }
+        }
+        pendingFiles.clear();
+    }
+
+    private boolean register(FileSystemSubset subset) {
+        try {
+            if (fileWatcher == null) {
+                fileWatcher = fileWatcherFactory.watch(new Action<Throwable>() {
+                    @Override
+                    public void execute(Throwable throwable) {
+                        LOGGER.debug("Watching the file system failed, discarding file system state.", throwable);
+                        watcherStopped();
+                    }
+                }, this);
+                sentinel.getParentFile().mkdirs();
+                fileWatcher.watch(FileSystemSubset.builder().add(sentinel).build());
+            }
+            fileWatcher.watch(subset);
+            return true;
+        } catch (IOException e) {
+            LOGGER.debug("Could not watch {}, discarding file system state.", subset, e);
+            stopWatching();
+            return false;
+        }
+    }
+
+    private static boolean isUpToDate(FileSnapshot snapshot) {
+        File file = new File(snapshot.getPath());
+        switch (snapshot.getType()) {
+            case RegularFile:
+                FileContentSnapshot content = snapshot.getContent();
+                return file.isFile() && content instanceof FileHashSnapshot && ((FileHashSnapshot) content).getLastModified() == file.lastModified();
+            case Directory:
+                return file.isDirectory();
+            case Missing:
+                return !file.exists();
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public void onChange(FileWatcher watcher, FileWatcherEvent event) {
+        File file = event.getFile();
+        if (event.getType() == FileWatcherEvent.Type.UNDEFINED || file == null) {
+            // Some events have been lost, so rescan everything
+            LOGGER.debug("File system events overflowed, discarding file system state.");
+            discardNonCachedState();
+            return;
+        }
+        if (file.equals(sentinel)) {
+            sentinelChanged();
+            return;
+        }
+        // A file or directory that has been created or deleted may have had descendants
+        boolean includeDescendants = event.getType() != FileWatcherEvent.Type.MODIFY;
+        invalidate(file.getAbsolutePath(), includeDescendants);
+    }
+
+    @Override
+    public void afterStart() {
+        synchronized (lock) {
+            if (fileWatcher == null) {
+                return;
+            }
+            if (!fileWatcher.isRunning()) {
+                // Watcher stopped in between builds, so we may have missed some changes
+                stopWatching();
+                return;
+            }
+        }
+        if (!awaitEventsBeforeStart()) {
+            LOGGER.debug("Did not receive file system events in time, discarding file system state.");
+            discardNonCachedState();
+        }
+    }
+
+    /**
+     * Writes the sentinel file and waits until the event for it has been received.
+     */
+    private boolean awaitEventsBeforeStart() {
+        long expected;
+        synchronized (sentinelLock) {
+            expected = ++sentinelWritten;
+        }
+        try {
+            Files.write(String.valueOf(expected), sentinel, Charsets.UTF_8);
+        } catch (IOException e) {
+            LOGGER.debug("Could not write {}.", sentinel, e);
+            return false;
+        }
+        long deadline = System.currentTimeMillis() + sentinelTimeoutMillis;
+        synchronized (sentinelLock) {
+            while (sentinelReceived < expected) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    sentinelLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    throw UncheckedException.throwAsUncheckedException(e);
+                }
+            }
+        }
+        return true;
+    }
+
+    private void sentinelChanged() {
+        String content;
+        try {
+            content = Files.toString(sentinel, Charsets.UTF_8);
+        } catch (IOException e) {
+            // Deleted or being written
+            return;
+        }
+        long received;
+        try {
+            received = Long.parseLong(content);
+        } catch (NumberFormatException e) {
+            // Partially written, the event for the completed write is still to come
+            return;
+        }
+        synchronized (sentinelLock) {
+            if (received > sentinelReceived) {
+                sentinelReceived = received;
+                sentinelLock.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void beforeComplete() {
+        synchronized (lock) {
+            registerPendingFiles();
+            if (fileWatcher != null && fileWatcher.isRunning()) {
+                // Keep all state for the next build
+                return;
+            }
+            stopWatching();
+        }
+    }
+
+    private void watcherStopped() {
+        synchronized (lock) {
+            fileWatcher = null;
+            watchedRoots = DefaultFileHierarchySet.of();
+            pendingFiles.clear();
+            discardAllState();
+        }
+    }
+
+    private void stopWatching() {
+        if (fileWatcher != null) {
+            fileWatcher.stop();
+        }
+        watcherStopped();
+    }
+
+    @Override
+    public void stop() {
+        synchronized (lock) {
+            stopWatching();
+        }
+        sentinel.delete();
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.file.archive;
+
+import org.gradle.util.GFileUtils;
+
+import java.io.File;
+
+/**
+ * The directory that the entries of an archive are expanded into, so that entries that have been expanded by an earlier visit can be used again without expanding them.
+ *
+ * <p>There is one directory for each archive. The length and modification time of the archive that the entries were expanded from are kept in a stamp file next
+ * to the directory, and the directory is emptied when the archive has changed since.</p>
+ */
+class ExpandedArchiveDirectory {
+    private ExpandedArchiveDirectory() {
+    }
+
+    /**
+     * Empties the given directory when it contains entries of an earlier version of the given archive.
+     */
+    static void prepare(File expandedDir, File archive) {
+        File stampFile = new File(expandedDir.getParentFile(), expandedDir.getName() + ".stamp");
+        String stamp = archive.length() + ":" + archive.lastModified();
+        if (stampFile.isFile() && stamp.equals(GFileUtils.readFileQuietly(stampFile))) {
+            return;
+        }
+        // Entries that cannot be deleted are still expanded again, as their modification time does not match
+        GFileUtils.deleteQuietly(expandedDir);
+        GFileUtils.writeFile(stamp, stampFile, "UTF-8");
+    }
+
+    /**
+     * Returns true when the given entry has already been expanded to the given file, and the file has not been changed since.
+     */
+    static boolean isExpanded(File file, boolean directory, long size, long lastModified) {
+        if (directory) {
+            return file.isDirectory();
+        }
+        return file.isFile() && file.length() == size && file.lastModified() == lastModified;
+    }
+
+    /**
+     * Records that the given entry has been expanded to the given file.
+     */
+    static void expanded(File file, boolean directory, long lastModified) {
+        if (!directory) {
+            file.setLastModified(lastModified);
+        }
+    }
+}
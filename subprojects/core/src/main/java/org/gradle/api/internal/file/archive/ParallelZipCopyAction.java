@@ -0,0 +1,425 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.file.archive;
+
+import org.apache.tools.zip.UnixStat;
+import org.apache.tools.zip.Zip64RequiredException;
+import org.apache.tools.zip.ZipEncodingHelper;
+import org.apache.tools.zip.ZipEntry;
+import org.apache.tools.zip.ZipLong;
+import org.apache.tools.zip.ZipUtil;
+import org.gradle.api.GradleException;
+import org.gradle.api.Nullable;
+import org.gradle.api.UncheckedIOException;
+import org.gradle.api.file.FileCopyDetails;
+import org.gradle.api.internal.DocumentationRegistry;
+import org.gradle.api.internal.file.CopyActionProcessingStreamAction;
+import org.gradle.api.internal.file.copy.CopyAction;
+import org.gradle.api.internal.file.copy.CopyActionProcessingStream;
+import org.gradle.api.internal.file.copy.FileCopyDetailsInternal;
+import org.gradle.api.internal.tasks.SimpleWorkResult;
+import org.gradle.api.tasks.WorkResult;
+import org.gradle.api.tasks.bundling.Zip;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.StoppableExecutor;
+import org.gradle.internal.work.WorkerLeaseRegistry;
+import org.gradle.util.GUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Builds a ZIP file with deflated entries, compressing the entries on multiple threads.
+ *
+ * <p>The content of each entry is read on the calling thread, in the order the entries are visited, and compressed by a pool of threads. The compressed entries are written
+ * to the archive in the order they were visited, so that the archive does not depend on the number of threads. Entries that are too large to be buffered are compressed
+ * on the calling thread while they are read. Each thread of the pool holds a worker lease while it compresses an entry, so that the number of threads doing work
+ * across the build stays within the maximum number of workers.</p>
+ *
+ * <p>When the archive already exists, an entry whose name, time, size and checksum match an entry of the existing archive reuses the compressed data of that entry,
+ * once the data has been inflated and found to be the same as the content of the entry. Inflating is much cheaper than compressing.</p>
+ *
+ * <p>The Zip64 extensions are not supported.</p>
+ */
+public class ParallelZipCopyAction implements CopyAction {
+    private static final int MAX_BUFFERED_ENTRY_SIZE = 4 * 1024 * 1024;
+    private static final long MAX_PENDING_BYTES = 64 * 1024 * 1024;
+
+    private final File zipFile;
+    private final DocumentationRegistry documentationRegistry;
+    private final String encoding;
+    private final boolean preserveFileTimestamps;
+    private final ExecutorFactory executorFactory;
+    private final int maxThreads;
+    private final WorkerLeaseRegistry.WorkerLease parentWorkerLease;
+
+    public ParallelZipCopyAction(File zipFile, DocumentationRegistry documentationRegistry, @Nullable String encoding, boolean preserveFileTimestamps, ExecutorFactory executorFactory, int maxThreads,
+                                 WorkerLeaseRegistry.WorkerLease parentWorkerLease) {
+        this.zipFile = zipFile;
+        this.documentationRegistry = documentationRegistry;
+        this.encoding = encoding;
+        this.preserveFileTimestamps = preserveFileTimestamps;
+        this.executorFactory = executorFactory;
+        this.maxThreads = maxThreads;
+        this.parentWorkerLease = parentWorkerLease;
+    }
+
+    public WorkResult execute(final CopyActionProcessingStream stream) {
+        File previousZipFile = new File(zipFile.getParentFile(), zipFile.getName() + ".previous");
+        PreviousZipArchive previousArchive = null;
+        if (zipFile.isFile() && (!previousZipFile.exists() || previousZipFile.delete()) && zipFile.renameTo(previousZipFile)) {
+            previousArchive = PreviousZipArchive.open(previousZipFile);
+        }
+
+        RawZipWriter writer;
+        try {
+            writer = new RawZipWriter(zipFile, isUtf8(encoding));
+        } catch (Exception e) {
+            closePrevious(previousArchive, previousZipFile);
+            throw new GradleException(String.format("Could not create ZIP '%s'.", zipFile), e);
+        }
+
+        StoppableExecutor executor = executorFactory.create("Compress ZIP entries", maxThreads);
+        try {
+            StreamAction action = new StreamAction(writer, executor, previousArchive);
+            stream.process(action);
+            action.writeCompletedEntries(true);
+            writer.finish();
+        } catch (Zip64RequiredException e) {
+            throw zip64Required(e);
+        } catch (UncheckedIOException e) {
+            if (e.getCause() instanceof Zip64RequiredException) {
+                throw zip64Required(e.getCause());
+            }
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            CompositeStoppable.stoppable(executor, writer).stop();
+            closePrevious(previousArchive, previousZipFile);
+        }
+
+        return new SimpleWorkResult(true);
+    }
+
+    private RuntimeException zip64Required(Throwable e) {
+        return new org.gradle.api.tasks.bundling.internal.Zip64RequiredException(
+            String.format("%s\n\nTo build this archive, please enable the zip64 extension.\nSee: %s", e.getMessage(), documentationRegistry.getDslRefForProperty(Zip.class, "zip64"))
+        );
+    }
+
+    private static void closePrevious(@Nullable PreviousZipArchive previousArchive, File previousZipFile) {
+        if (previousArchive != null) {
+            previousArchive.close();
+        }
+        previousZipFile.delete();
+    }
+
+    private static boolean isUtf8(@Nullable String encoding) {
+        Charset charset = encoding == null ? Charset.defaultCharset() : Charset.forName(encoding);
+        return charset.name().equals("UTF-8");
+    }
+
+    private long getArchiveTimeFor(FileCopyDetails details) {
+        return preserveFileTimestamps ? details.getLastModified() : GUtil.CONSTANT_TIME_FOR_ZIP_ENTRIES;
+    }
+
+    private class StreamAction implements CopyActionProcessingStreamAction {
+        private final RawZipWriter writer;
+        private final StoppableExecutor executor;
+        private final PreviousZipArchive previousArchive;
+        private final Deque<PendingEntry> pendingEntries = new ArrayDeque<PendingEntry>();
+        private long pendingBytes;
+
+        StreamAction(RawZipWriter writer, StoppableExecutor executor, @Nullable PreviousZipArchive previousArchive) {
+            this.writer = writer;
+            this.executor = executor;
+            this.previousArchive = previousArchive;
+        }
+
+        public void processFile(FileCopyDetailsInternal details) {
+            try {
+                if (details.isDirectory()) {
+                    visitDir(details);
+                } else {
+                    visitFile(details);
+                }
+                writeCompletedEntries(false);
+            } catch (Zip64RequiredException e) {
+                throw UncheckedException.throwAsUncheckedException(e);
+            } catch (Exception e) {
+                throw new GradleException(String.format("Could not add %s to ZIP '%s'.", details, zipFile), e);
+            }
+        }
+
+        private void visitFile(FileCopyDetails fileDetails) throws IOException {
+            String path = fileDetails.getRelativePath().getPathString();
+            EntryContent content = new EntryContent(path, fileDetails);
+            fileDetails.copyTo(content);
+            content.close();
+            if (content.streamed) {
+                return;
+            }
+
+            byte[] data = content.buffer.toByteArray();
+            final RawZipWriter.Entry entry = content.entry;
+            entry.crc = content.crc.getValue();
+            entry.size = data.length;
+            byte[] previousData = previousArchive == null ? null : previousArchive.getDeflatedData(entry.name, entry.dosTime, entry.crc, entry.size);
+            Future<byte[]> compressed = executor.submit(new DeflateAction(data, previousData, parentWorkerLease));
+            pendingEntries.add(new PendingEntry(entry, compressed, data.length));
+            pendingBytes += data.length;
+        }
+
+        private void visitDir(FileCopyDetails dirDetails) throws IOException {
+            // Trailing slash in name indicates that entry is a directory
+            RawZipWriter.Entry entry = newEntry(dirDetails.getRelativePath().getPathString() + '/', RawZipWriter.STORED, dirDetails, UnixStat.DIR_FLAG);
+            pendingEntries.add(new PendingEntry(entry, new byte[0], 0));
+        }
+
+        private RawZipWriter.Entry newEntry(String path, int method, FileCopyDetails details, int typeFlag) throws IOException {
+            ZipEntry archiveEntry = new ZipEntry(path);
+            archiveEntry.setUnixMode(typeFlag | details.getMode());
+            ByteBuffer encodedName = ZipEncodingHelper.getZipEncoding(encoding).encode(path);
+            byte[] name = new byte[encodedName.limit() - encodedName.position()];
+            System.arraycopy(encodedName.array(), encodedName.arrayOffset() + encodedName.position(), name, 0, name.length);
+            long dosTime = ZipLong.getValue(ZipUtil.toDosTime(getArchiveTimeFor(details)));
+            return new RawZipWriter.Entry(details.toString(), name, method, dosTime, archiveEntry.getExternalAttributes(), 0, 0);
+        }
+
+        /**
+         * Writes the entries at the head of the queue that have been compressed. Waits for entries to be compressed when there is too much data waiting, or when asked to write all entries.
+         */
+        void writeCompletedEntries(boolean all) throws IOException {
+            while (!pendingEntries.isEmpty()) {
+                PendingEntry next = pendingEntries.peek();
+                if (!all && !next.isDone() && pendingBytes <= MAX_PENDING_BYTES) {
+                    return;
+                }
+                pendingEntries.remove();
+                pendingBytes -= next.uncompressedLength;
+                byte[] data = next.getCompressed();
+                writer.writeEntry(next.entry, data, 0, data.length);
+            }
+        }
+
+        /**
+         * Receives the content of a file entry. Buffers the content until it becomes too large, and then writes the entry directly to the archive, compressing it on the calling thread.
+         */
+        private class EntryContent extends OutputStream {
+            private final RawZipWriter.Entry entry;
+            private final CRC32 crc = new CRC32();
+            private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            private Deflater deflater;
+            private byte[] deflateBuffer;
+            private long size;
+            private long compressedSize;
+            private boolean streamed;
+
+            EntryContent(String path, FileCopyDetails details) throws IOException {
+                this.entry = newEntry(path, RawZipWriter.DEFLATED, details, UnixStat.FILE_FLAG);
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                crc.update(bytes, offset, length);
+                size += length;
+                if (!streamed && buffer.size() + length <= MAX_BUFFERED_ENTRY_SIZE) {
+                    buffer.write(bytes, offset, length);
+                    return;
+                }
+                if (!streamed) {
+                    startStreaming();
+                }
+                deflate(bytes, offset, length);
+            }
+
+            private void startStreaming() throws IOException {
+                // Entries must be written in order
+                writeCompletedEntries(true);
+                streamed = true;
+                writer.startStreamedEntry(entry);
+                deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+                deflateBuffer = new byte[64 * 1024];
+                byte[] buffered = buffer.toByteArray();
+                buffer = null;
+                deflate(buffered, 0, buffered.length);
+            }
+
+            private void deflate(byte[] bytes, int offset, int length) throws IOException {
+                deflater.setInput(bytes, offset, length);
+                while (!deflater.needsInput()) {
+                    writeDeflated();
+                }
+            }
+
+            private void writeDeflated() throws IOException {
+                int count = deflater.deflate(deflateBuffer, 0, deflateBuffer.length);
+                writer.writeStreamedData(deflateBuffer, 0, count);
+                compressedSize += count;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (!streamed) {
+                    return;
+                }
+                try {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        writeDeflated();
+                    }
+                    writer.finishStreamedEntry(crc.getValue(), compressedSize, size);
+                } finally {
+                    deflater.end();
+                }
+            }
+        }
+    }
+
+    private static class PendingEntry {
+        private final RawZipWriter.Entry entry;
+        private final Future<byte[]> compressed;
+        private final byte[] data;
+        private final long uncompressedLength;
+
+        PendingEntry(RawZipWriter.Entry entry, Future<byte[]> compressed, long uncompressedLength) {
+            this.entry = entry;
+            this.compressed = compressed;
+            this.data = null;
+            this.uncompressedLength = uncompressedLength;
+        }
+
+        PendingEntry(RawZipWriter.Entry entry, byte[] data, long uncompressedLength) {
+            this.entry = entry;
+            this.compressed = null;
+            this.data = data;
+            this.uncompressedLength = uncompressedLength;
+        }
+
+        boolean isDone() {
+            return compressed == null || compressed.isDone();
+        }
+
+        byte[] getCompressed() {
+            if (compressed == null) {
+                return data;
+            }
+            try {
+                return compressed.get();
+            } catch (InterruptedException e) {
+                throw UncheckedException.throwAsUncheckedException(e);
+            } catch (ExecutionException e) {
+                throw UncheckedException.throwAsUncheckedException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Compresses the content of an entry, or reuses the compressed data of the previous archive when it inflates to the same content.
+     */
+    private static class DeflateAction implements Callable<byte[]> {
+        private final byte[] data;
+        private final byte[] previousData;
+        private final WorkerLeaseRegistry.WorkerLease parentWorkerLease;
+
+        DeflateAction(byte[] data, @Nullable byte[] previousData, WorkerLeaseRegistry.WorkerLease parentWorkerLease) {
+            this.data = data;
+            this.previousData = previousData;
+            this.parentWorkerLease = parentWorkerLease;
+        }
+
+        @Override
+        public byte[] call() {
+            WorkerLeaseRegistry.WorkerLeaseCompletion workerLease = parentWorkerLease.startChild();
+            try {
+                if (previousData != null && inflatesTo(previousData, data)) {
+                    return previousData;
+                }
+                return deflate(data);
+            } finally {
+                workerLease.leaseFinish();
+            }
+        }
+
+        private static boolean inflatesTo(byte[] compressed, byte[] expected) {
+            Inflater inflater = new Inflater(true);
+            try {
+                // The extra byte lets the inflater see the end of the data, as for entries of ZIP files that were not written by Java
+                byte[] input = new byte[compressed.length + 1];
+                System.arraycopy(compressed, 0, input, 0, compressed.length);
+                inflater.setInput(input);
+                byte[] actual = new byte[expected.length];
+                int length = 0;
+                while (length < actual.length && !inflater.finished()) {
+                    int count = inflater.inflate(actual, length, actual.length - length);
+                    if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        return false;
+                    }
+                    length += count;
+                }
+                if (length != actual.length || !Arrays.equals(actual, expected)) {
+                    return false;
+                }
+                // Nothing must remain
+                return inflater.finished() || inflater.inflate(new byte[1]) == 0 && inflater.finished();
+            } catch (DataFormatException e) {
+                return false;
+            } finally {
+                inflater.end();
+            }
+        }
+
+        private static byte[] deflate(byte[] data) {
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                deflater.setInput(data);
+                deflater.finish();
+                ByteArrayOutputStream result = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+                byte[] buffer = new byte[Math.min(64 * 1024, Math.max(1024, data.length))];
+                while (!deflater.finished()) {
+                    int count = deflater.deflate(buffer);
+                    result.write(buffer, 0, count);
+                }
+                return result.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.file.archive;
+
+import org.gradle.api.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Provides access to the compressed data of the deflated entries of a previously built ZIP file, so that this data can be copied to a new archive without compressing it again.
+ *
+ * <p>Entries are looked up using the encoded bytes of their name. Archives that cannot be read, or that use Zip64 extensions, are treated as having no entries.</p>
+ */
+class PreviousZipArchive implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PreviousZipArchive.class);
+    private static final int END_OF_CENTRAL_DIRECTORY_SIG = 0x06054b50;
+    private static final int CENTRAL_FILE_HEADER_SIG = 0x02014b50;
+    private static final int LOCAL_FILE_HEADER_SIG = 0x04034b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int ENCRYPTED_FLAG = 1;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private final RandomAccessFile file;
+    private final Map<String, Entry> entries;
+
+    private PreviousZipArchive(RandomAccessFile file, Map<String, Entry> entries) {
+        this.file = file;
+        this.entries = entries;
+    }
+
+    /**
+     * Opens the given archive, returning null when it cannot be used.
+     */
+    @Nullable
+    static PreviousZipArchive open(File zipFile) {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(zipFile, "r");
+            Map<String, Entry> entries = readCentralDirectory(file);
+            if (entries != null) {
+                return new PreviousZipArchive(file, entries);
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Could not read previous ZIP file {}.", zipFile, e);
+        }
+        closeQuietly(file);
+        return null;
+    }
+
+    /**
+     * Returns the compressed data of the deflated entry with the given name, when it has the given time, checksum and size. Returns null otherwise.
+     * Different content can have the same checksum, so the caller needs to check that the data inflates to the expected content before using it.
+     */
+    @Nullable
+    byte[] getDeflatedData(byte[] name, long dosTime, long crc, long size) {
+        Entry entry = entries.get(key(name, 0, name.length));
+        if (entry == null || entry.dosTime != dosTime || entry.crc != crc || entry.size != size) {
+            return null;
+        }
+        try {
+            byte[] header = new byte[30];
+            file.seek(entry.localHeaderOffset);
+            file.readFully(header);
+            ByteBuffer localHeader = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+            if (localHeader.getInt(0) != LOCAL_FILE_HEADER_SIG) {
+                return null;
+            }
+            long dataOffset = entry.localHeaderOffset + 30 + (localHeader.getShort(26) & 0xFFFF) + (localHeader.getShort(28) & 0xFFFF);
+            byte[] data = new byte[(int) entry.compressedSize];
+            file.seek(dataOffset);
+            file.readFully(data);
+            return data;
+        } catch (IOException e) {
+            LOGGER.debug("Could not read entry from previous ZIP file.", e);
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        closeQuietly(file);
+    }
+
+    @Nullable
+    private static Map<String, Entry> readCentralDirectory(RandomAccessFile file) throws IOException {
+        long length = file.length();
+        if (length < END_OF_CENTRAL_DIRECTORY_SIZE) {
+            return null;
+        }
+        int tailLength = (int) Math.min(length, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+        byte[] tail = new byte[tailLength];
+        file.seek(length - tailLength);
+        file.readFully(tail);
+        ByteBuffer tailBuffer = ByteBuffer.wrap(tail).order(ByteOrder.LITTLE_ENDIAN);
+        int endPos = -1;
+        for (int pos = tailLength - END_OF_CENTRAL_DIRECTORY_SIZE; pos >= 0; pos--) {
+            if (tailBuffer.getInt(pos) == END_OF_CENTRAL_DIRECTORY_SIG) {
+                endPos = pos;
+                break;
+            }
+        }
+        if (endPos < 0) {
+            return null;
+        }
+        int entryCount = tailBuffer.getShort(endPos + 10) & 0xFFFF;
+        long centralDirectorySize = tailBuffer.getInt(endPos + 12) & 0xFFFFFFFFL;
+        long centralDirectoryOffset = tailBuffer.getInt(endPos + 16) & 0xFFFFFFFFL;
+        if (centralDirectoryOffset == ZIP64_MAGIC || centralDirectoryOffset + centralDirectorySize > length) {
+            return null;
+        }
+
+        byte[] centralDirectory = new byte[(int) centralDirectorySize];
+        file.seek(centralDirectoryOffset);
+        file.readFully(centralDirectory);
+        ByteBuffer buffer = ByteBuffer.wrap(centralDirectory).order(ByteOrder.LITTLE_ENDIAN);
+        Map<String, Entry> entries = new HashMap<String, Entry>(entryCount * 2);
+        int pos = 0;
+        for (int i = 0; i < entryCount; i++) {
+            if (pos + 46 > centralDirectory.length || buffer.getInt(pos) != CENTRAL_FILE_HEADER_SIG) {
+                return null;
+            }
+            int flags = buffer.getShort(pos + 8) & 0xFFFF;
+            int method = buffer.getShort(pos + 10) & 0xFFFF;
+            long dosTime = buffer.getInt(pos + 12) & 0xFFFFFFFFL;
+            long crc = buffer.getInt(pos + 16) & 0xFFFFFFFFL;
+            long compressedSize = buffer.getInt(pos + 20) & 0xFFFFFFFFL;
+            long size = buffer.getInt(pos + 24) & 0xFFFFFFFFL;
+            int nameLength = buffer.getShort(pos + 28) & 0xFFFF;
+            int extraLength = buffer.getShort(pos + 30) & 0xFFFF;
+            int commentLength = buffer.getShort(pos + 32) & 0xFFFF;
+            long localHeaderOffset = buffer.getInt(pos + 42) & 0xFFFFFFFFL;
+            if (pos + 46 + nameLength > centralDirectory.length) {
+                return null;
+            }
+            boolean usable = method == RawZipWriter.DEFLATED
+                && (flags & ENCRYPTED_FLAG) == 0
+                && compressedSize != ZIP64_MAGIC && size != ZIP64_MAGIC && localHeaderOffset != ZIP64_MAGIC
+                && localHeaderOffset + compressedSize < length;
+            if (usable) {
+                entries.put(key(centralDirectory, pos + 46, nameLength), new Entry(dosTime, crc, compressedSize, size, localHeaderOffset));
+            }
+            pos += 46 + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    private static String key(byte[] bytes, int offset, int length) {
+        // Use the raw bytes of the name, so that entries match regardless of the encoding used
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) (bytes[offset + i] & 0xFF);
+        }
+        return new String(chars);
+    }
+
+    private static void closeQuietly(@Nullable RandomAccessFile file) {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    private static class Entry {
+        final long dosTime;
+        final long crc;
+        final long compressedSize;
+        final long size;
+        final long localHeaderOffset;
+
+        Entry(long dosTime, long crc, long compressedSize, long size, long localHeaderOffset) {
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.file.archive;
+
+import org.apache.tools.zip.Zip64RequiredException;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a ZIP file whose entries have already been compressed. Does not support the Zip64 extensions, and fails when the archive would need them.
+ *
+ * <p>Entries whose compressed size is not known up front can be streamed, in which case the sizes and checksum follow the data in a data descriptor.</p>
+ */
+class RawZipWriter implements Closeable {
+    static final int STORED = 0;
+    static final int DEFLATED = 8;
+
+    private static final long LOCAL_FILE_HEADER_SIG = 0x04034b50L;
+    private static final long DATA_DESCRIPTOR_SIG = 0x08074b50L;
+    private static final long CENTRAL_FILE_HEADER_SIG = 0x02014b50L;
+    private static final long END_OF_CENTRAL_DIRECTORY_SIG = 0x06054b50L;
+    private static final int UTF8_FLAG = 1 << 11;
+    private static final int DATA_DESCRIPTOR_FLAG = 1 << 3;
+    private static final int PLATFORM_UNIX = 3;
+    private static final int MIN_VERSION = 10;
+    private static final int DEFLATE_MIN_VERSION = 20;
+    private static final long MAX_VALUE = 0xFFFFFFFFL;
+    private static final int MAX_ENTRIES = 0xFFFF;
+
+    private final OutputStream outputStream;
+    private final boolean utf8Names;
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private final byte[] buffer = new byte[46];
+    private long written;
+    private Entry streamedEntry;
+
+    RawZipWriter(File zipFile, boolean utf8Names) throws IOException {
+        this.outputStream = new BufferedOutputStream(new FileOutputStream(zipFile), 64 * 1024);
+        this.utf8Names = utf8Names;
+    }
+
+    /**
+     * Writes an entry with the given data, which has already been compressed using the given method.
+     */
+    void writeEntry(Entry entry, byte[] data, int offset, int length) throws IOException {
+        entry.compressedSize = length;
+        checkSizes(entry);
+        writeLocalFileHeader(entry);
+        writeOut(data, offset, length);
+    }
+
+    /**
+     * Starts an entry whose data is written using {@link #writeStreamedData(byte[], int, int)}, and is finished using {@link #finishStreamedEntry(long, long, long)}.
+     */
+    void startStreamedEntry(Entry entry) throws IOException {
+        entry.flags |= DATA_DESCRIPTOR_FLAG;
+        writeLocalFileHeader(entry);
+        streamedEntry = entry;
+    }
+
+    void writeStreamedData(byte[] data, int offset, int length) throws IOException {
+        writeOut(data, offset, length);
+    }
+
+    void finishStreamedEntry(long crc, long compressedSize, long size) throws IOException {
+        Entry entry = streamedEntry;
+        streamedEntry = null;
+        entry.crc = crc;
+        entry.compressedSize = compressedSize;
+        entry.size = size;
+        checkSizes(entry);
+        putInt(DATA_DESCRIPTOR_SIG, 0);
+        putInt(crc, 4);
+        putInt(compressedSize, 8);
+        putInt(size, 12);
+        writeOut(buffer, 0, 16);
+    }
+
+    /**
+     * Writes the central directory. Does not close the file.
+     */
+    void finish() throws IOException {
+        if (entries.size() > MAX_ENTRIES) {
+            throw new Zip64RequiredException("archive contains more than 65535 entries.");
+        }
+        long centralDirectoryOffset = written;
+        for (Entry entry : entries) {
+            writeCentralFileHeader(entry);
+        }
+        long centralDirectorySize = written - centralDirectoryOffset;
+        if (written > MAX_VALUE) {
+            throw new Zip64RequiredException("archive's size exceeds the limit of 4GByte.");
+        }
+        putInt(END_OF_CENTRAL_DIRECTORY_SIG, 0);
+        putShort(0, 4);
+        putShort(0, 6);
+        putShort(entries.size(), 8);
+        putShort(entries.size(), 10);
+        putInt(centralDirectorySize, 12);
+        putInt(centralDirectoryOffset, 16);
+        putShort(0, 20);
+        writeOut(buffer, 0, 22);
+        outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        outputStream.close();
+    }
+
+    private void checkSizes(Entry entry) throws Zip64RequiredException {
+        if (entry.size > MAX_VALUE || entry.compressedSize > MAX_VALUE) {
+            throw new Zip64RequiredException(entry.displayName + "'s size exceeds the limit of 4GByte.");
+        }
+    }
+
+    private void writeLocalFileHeader(Entry entry) throws IOException {
+        if (written > MAX_VALUE) {
+            throw new Zip64RequiredException("archive's size exceeds the limit of 4GByte.");
+        }
+        if (utf8Names) {
+            entry.flags |= UTF8_FLAG;
+        }
+        entry.localHeaderOffset = written;
+        entries.add(entry);
+
+        boolean streamed = (entry.flags & DATA_DESCRIPTOR_FLAG) != 0;
+        putInt(LOCAL_FILE_HEADER_SIG, 0);
+        putShort(versionNeeded(entry), 4);
+        putShort(entry.flags, 6);
+        putShort(entry.method, 8);
+        putInt(entry.dosTime, 10);
+        putInt(streamed ? 0 : entry.crc, 14);
+        putInt(streamed ? 0 : entry.compressedSize, 18);
+        putInt(streamed ? 0 : entry.size, 22);
+        putShort(entry.name.length, 26);
+        putShort(0, 28);
+        writeOut(buffer, 0, 30);
+        writeOut(entry.name, 0, entry.name.length);
+    }
+
+    private void writeCentralFileHeader(Entry entry) throws IOException {
+        putInt(CENTRAL_FILE_HEADER_SIG, 0);
+        putShort((PLATFORM_UNIX << 8) | DEFLATE_MIN_VERSION, 4);
+        putShort(versionNeeded(entry), 6);
+        putShort(entry.flags, 8);
+        putShort(entry.method, 10);
+        putInt(entry.dosTime, 12);
+        putInt(entry.crc, 16);
+        putInt(entry.compressedSize, 20);
+        putInt(entry.size, 24);
+        putShort(entry.name.length, 28);
+        putShort(0, 30);
+        putShort(0, 32);
+        putShort(0, 34);
+        putShort(0, 36);
+        putInt(entry.externalAttributes, 38);
+        putInt(entry.localHeaderOffset, 42);
+        writeOut(buffer, 0, 46);
+        writeOut(entry.name, 0, entry.name.length);
+    }
+
+    private static int versionNeeded(Entry entry) {
+        return entry.method == DEFLATED || (entry.flags & DATA_DESCRIPTOR_FLAG) != 0 ? DEFLATE_MIN_VERSION : MIN_VERSION;
+    }
+
+    private void writeOut(byte[] data, int offset, int length) throws IOException {
+        outputStream.write(data, offset, length);
+        written += length;
+    }
+
+    private void putShort(int value, int offset) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+    }
+
+    private void putInt(long value, int offset) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+        buffer[offset + 2] = (byte) (value >>> 16);
+        buffer[offset + 3] = (byte) (value >>> 24);
+    }
+
+    /**
+     * The meta-data of an entry.
+     */
+    static class Entry {
+        final String displayName;
+        final byte[] name;
+        final int method;
+        final long dosTime;
+        final long externalAttributes;
+        long crc;
+        long size;
+        long compressedSize;
+        int flags;
+        long localHeaderOffset;
+
+        Entry(String displayName, byte[] name, int method, long dosTime, long externalAttributes, long crc, long size) {
+            this.displayName = displayName;
+            this.name = name;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.externalAttributes = externalAttributes;
+            this.crc = crc;
+            this.size = size;
+        }
+    }
+}
@@ -53,8 +53,12 @@ public class TarFileTree implements MinimalFileTree, FileSystemMirroringFileTree
         this.chmod = chmod;
         this.stat = stat;
         this.directoryFileTreeFactory = directoryFileTreeFactory;
+        this.tmpDir = tmpDir;
+    }
+
+    private File getExpandedDir() {
         String expandDirName = resource.getBaseName() + "_" + HashUtil.createCompactMD5(resource.getURI().toString());
-        this.tmpDir = new File(tmpDir, expandDirName);
+        return new File(tmpDir, expandDirName);
     }
 
     public String getDisplayName() {
@@ -62,7 +66,7 @@ public class TarFileTree implements MinimalFileTree, FileSystemMirroringFileTree
     }
 
     public DirectoryFileTree getMirror() {
-        return directoryFileTreeFactory.create(tmpDir);
+        return directoryFileTreeFactory.create(getExpandedDir());
     }
 
     public void visit(FileVisitor visitor) {
@@ -90,13 +94,20 @@ public class TarFileTree implements MinimalFileTree, FileSystemMirroringFileTree
 
     private void visitImpl(FileVisitor visitor, InputStream inputStream) throws IOException {
         AtomicBoolean stopFlag = new AtomicBoolean();
+        File expandedDir = getExpandedDir();
+        // Entries can only be reused when the TAR file is a local file, as otherwise there is no way to tell whether it has changed
+        File backingFile = getBackingFile();
+        boolean reuseExpanded = backingFile != null;
+        if (reuseExpanded) {
+            ExpandedArchiveDirectory.prepare(expandedDir, backingFile);
+        }
         NoCloseTarInputStream tar = new NoCloseTarInputStream(inputStream);
         TarEntry entry;
         while (!stopFlag.get() && (entry = tar.getNextEntry()) != null) {
             if (entry.isDirectory()) {
-                visitor.visitDir(new DetailsImpl(entry, tar, stopFlag, chmod));
+                visitor.visitDir(new DetailsImpl(entry, tar, expandedDir, reuseExpanded, stopFlag, chmod));
             } else {
-                visitor.visitFile(new DetailsImpl(entry, tar, stopFlag, chmod));
+                visitor.visitFile(new DetailsImpl(entry, tar, expandedDir, reuseExpanded, stopFlag, chmod));
             }
         }
     }
@@ -114,14 +125,18 @@ public class TarFileTree implements MinimalFileTree, FileSystemMirroringFileTree
     private class DetailsImpl extends AbstractFileTreeElement implements FileVisitDetails {
         private final TarEntry entry;
         private final NoCloseTarInputStream tar;
+        private final File expandedDir;
+        private final boolean reuseExpanded;
         private final AtomicBoolean stopFlag;
         private File file;
         private boolean read;
 
-        public DetailsImpl(TarEntry entry, NoCloseTarInputStream tar, AtomicBoolean stopFlag, Chmod chmod) {
+        public DetailsImpl(TarEntry entry, NoCloseTarInputStream tar, File expandedDir, boolean reuseExpanded, AtomicBoolean stopFlag, Chmod chmod) {
             super(chmod);
             this.entry = entry;
             this.tar = tar;
+            this.expandedDir = expandedDir;
+            this.reuseExpanded = reuseExpanded;
             this.stopFlag = stopFlag;
         }
 
@@ -135,15 +150,22 @@ public class TarFileTree implements MinimalFileTree, FileSystemMirroringFileTree
 
         public File getFile() {
             if (file == null) {
-                file = new File(tmpDir, entry.getName());
-                if (file.exists()) {
-                    file.setWritable(true);
+                file = new File(expandedDir, entry.getName());
+                if (!reuseExpanded || !isExpanded(file)) {
+                    if (file.exists()) {
+                        file.setWritable(true);
+                    }
+                    copyTo(file);
+                    ExpandedArchiveDirectory.expanded(file, entry.isDirectory(), getLastModified());
                 }
-                copyTo(file);
             }
             return file;
         }
 
+        private boolean isExpanded(File file) {
+            return ExpandedArchiveDirectory.isExpanded(file, entry.isDirectory(), entry.getSize(), getLastModified());
+        }
+
         public long getLastModified() {
             return entry.getModTime().getTime();
         }
@@ -157,7 +179,7 @@ public class TarFileTree implements MinimalFileTree, FileSystemMirroringFileTree
         }
 
         public InputStream open() {
-            if (read && file != null) {
+            if (file != null && (read || tar.getCurrent() != entry)) {
                 return GFileUtils.openInputStream(file);
             }
             if (read || tar.getCurrent() != entry) {
@@ -49,8 +49,12 @@ public class ZipFileTree implements MinimalFileTree, FileSystemMirroringFileTree
         this.zipFile = zipFile;
         this.chmod = chmod;
         this.directoryFileTreeFactory = directoryFileTreeFactory;
+        this.tmpDir = tmpDir;
+    }
+
+    private File getExpandedDir() {
         String expandDirName = zipFile.getName() + "_" + HashUtil.createCompactMD5(zipFile.getAbsolutePath());
-        this.tmpDir = new File(tmpDir, expandDirName);
+        return new File(tmpDir, expandDirName);
     }
 
     public String getDisplayName() {
@@ -58,7 +62,7 @@ public class ZipFileTree implements MinimalFileTree, FileSystemMirroringFileTree
     }
 
     public DirectoryFileTree getMirror() {
-        return directoryFileTreeFactory.create(tmpDir);
+        return directoryFileTreeFactory.create(getExpandedDir());
     }
 
     public void visit(FileVisitor visitor) {
@@ -70,8 +74,10 @@ public class ZipFileTree implements MinimalFileTree, FileSystemMirroringFileTree
         }
 
         AtomicBoolean stopFlag = new AtomicBoolean();
+        File expandedDir = getExpandedDir();
 
         try {
+            ExpandedArchiveDirectory.prepare(expandedDir, zipFile);
             ZipFile zip = new ZipFile(zipFile);
             try {
                 // The iteration order of zip.getEntries() is based on the hash of the zip entry. This isn't much use
@@ -86,9 +92,9 @@ public class ZipFileTree implements MinimalFileTree, FileSystemMirroringFileTree
                 while (!stopFlag.get() && sortedEntries.hasNext()) {
                     ZipEntry entry = sortedEntries.next();
                     if (entry.isDirectory()) {
-                        visitor.visitDir(new DetailsImpl(entry, zip, stopFlag, chmod));
+                        visitor.visitDir(new DetailsImpl(entry, zip, expandedDir, stopFlag, chmod));
                     } else {
-                        visitor.visitFile(new DetailsImpl(entry, zip, stopFlag, chmod));
+                        visitor.visitFile(new DetailsImpl(entry, zip, expandedDir, stopFlag, chmod));
                     }
                 }
             } finally {
@@ -106,13 +112,15 @@ public class ZipFileTree implements MinimalFileTree, FileSystemMirroringFileTree
     private class DetailsImpl extends AbstractFileTreeElement implements FileVisitDetails {
         private final ZipEntry entry;
         private final ZipFile zip;
+        private final File expandedDir;
         private final AtomicBoolean stopFlag;
         private File file;
 
-        public DetailsImpl(ZipEntry entry, ZipFile zip, AtomicBoolean stopFlag, Chmod chmod) {
+        public DetailsImpl(ZipEntry entry, ZipFile zip, File expandedDir, AtomicBoolean stopFlag, Chmod chmod) {
             super(chmod);
             this.entry = entry;
             this.zip = zip;
+            this.expandedDir = expandedDir;
             this.stopFlag = stopFlag;
         }
 
@@ -126,15 +134,22 @@ public class ZipFileTree implements MinimalFileTree, FileSystemMirroringFileTree
 
         public File getFile() {
             if (file == null) {
-                file = new File(tmpDir, entry.getName());
-                if (file.exists()) {
-                    file.setWritable(true);
+                file = new File(expandedDir, entry.getName());
+                if (!isExpanded(file)) {
+                    if (file.exists()) {
+                        file.setWritable(true);
+                    }
+                    copyTo(file);
+                    ExpandedArchiveDirectory.expanded(file, entry.isDirectory(), entry.getTime());
                 }
-                copyTo(file);
             }
             return file;
         }
 
+        private boolean isExpanded(File file) {
+            return ExpandedArchiveDirectory.isExpanded(file, entry.isDirectory(), entry.getSize(), entry.getTime());
+        }
+
         public long getLastModified() {
             return entry.getTime();
         }
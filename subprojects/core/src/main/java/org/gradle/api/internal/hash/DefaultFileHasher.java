@@ -21,26 +21,51 @@ import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import org.gradle.api.UncheckedIOException;
 import org.gradle.api.file.FileTreeElement;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.hash.ContentHashFunction;
 import org.gradle.internal.nativeintegration.filesystem.FileMetadataSnapshot;
+import org.gradle.internal.os.OperatingSystem;
 import org.gradle.internal.resource.TextResource;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ArrayBlockingQueue;
 
 public class DefaultFileHasher implements FileHasher {
     private static final byte[] SIGNATURE = Hashing.md5().hashString(DefaultFileHasher.class.getName(), Charsets.UTF_8).asBytes();
+    // Files at least this large are memory mapped rather than read into a buffer.
+    // Not done on Windows, where a mapped file cannot be deleted until the mapping is garbage collected
+    private static final long MAPPED_THRESHOLD = OperatingSystem.current().isWindows() ? Long.MAX_VALUE : 1024 * 1024;
+    private static final long MAPPED_REGION_SIZE = 64 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
     private final Queue<byte[]> buffers = new ArrayBlockingQueue<byte[]>(16);
+    private final Queue<ByteBuffer> directBuffers = new ArrayBlockingQueue<ByteBuffer>(16);
+    private final ContentHashFunction hashFunction;
+
+    public DefaultFileHasher() {
+        this(ContentHashFunction.current());
+    }
+
+    public DefaultFileHasher(ContentHashFunction hashFunction) {
+        this.hashFunction = hashFunction;
+    }
 
     @Override
     public HashCode hash(InputStream inputStream) {
         try {
             return doHash(inputStream);
         } catch (IOException e) {
-            throw new UncheckedIOException("Failed to create MD5 hash for file content.", e);
+            throw new UncheckedIOException("Failed to create hash for file content.", e);
         }
     }
 
@@ -54,10 +79,14 @@ public class DefaultFileHasher implements FileHasher {
     @Override
     public HashCode hash(File file) {
         try {
-            InputStream inputStream = new FileInputStream(file);
-            return doHash(inputStream);
+            FileInputStream inputStream = new FileInputStream(file);
+            try {
+                return doHash(inputStream.getChannel());
+            } finally {
+                inputStream.close();
+            }
         } catch (IOException e) {
-            throw new UncheckedIOException(String.format("Failed to create MD5 hash for file '%s'.", file), e);
+            throw new UncheckedIOException(String.format("Failed to create hash for file '%s'.", file), e);
         }
     }
 
@@ -82,6 +111,63 @@ public class DefaultFileHasher implements FileHasher {
         }
     }
 
+    private HashCode doHash(FileChannel channel) throws IOException {
+        if (hashFunction.getMessageDigestAlgorithm() != null) {
+            return doDigest(channel);
+        }
+        byte[] buffer = takeBuffer();
+        try {
+            Hasher hasher = createFileHasher();
+            long size = channel.size();
+            if (size >= MAPPED_THRESHOLD) {
+                for (long position = 0; position < size; position += MAPPED_REGION_SIZE) {
+                    MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPED_REGION_SIZE, size - position));
+                    while (region.hasRemaining()) {
+                        int count = Math.min(buffer.length, region.remaining());
+                        region.get(buffer, 0, count);
+                        hasher.putBytes(buffer, 0, count);
+                    }
+                }
+            } else {
+                ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+                while (true) {
+                    int nread = channel.read(byteBuffer);
+                    if (nread < 0) {
+                        break;
+                    }
+                    hasher.putBytes(buffer, 0, nread);
+                    byteBuffer.clear();
+                }
+            }
+            return hasher.hash();
+        } finally {
+            returnBuffer(buffer);
+        }
+    }
+
+    private HashCode doDigest(FileChannel channel) throws IOException {
+        // Produces the same hash as createFileHasher(), without copying the content onto the heap
+        MessageDigest digest = createMessageDigest();
+        long size = channel.size();
+        if (size >= MAPPED_THRESHOLD) {
+            for (long position = 0; position < size; position += MAPPED_REGION_SIZE) {
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPED_REGION_SIZE, size - position)));
+            }
+        } else {
+            ByteBuffer buffer = takeDirectBuffer();
+            try {
+                while (channel.read(buffer) >= 0) {
+                    buffer.flip();
+                    digest.update(buffer);
+                    buffer.clear();
+                }
+            } finally {
+                returnDirectBuffer(buffer);
+            }
+        }
+        return HashCode.fromBytes(digest.digest());
+    }
+
     private void returnBuffer(byte[] buffer) {
         // Retain buffer if there is capacity in the queue, otherwise discard
         buffers.offer(buffer);
@@ -90,7 +176,21 @@ public class DefaultFileHasher implements FileHasher {
     private byte[] takeBuffer() {
         byte[] buffer = buffers.poll();
         if (buffer == null) {
-            buffer = new byte[8192];
+            buffer = new byte[BUFFER_SIZE];
+        }
+        return buffer;
+    }
+
+    private void returnDirectBuffer(ByteBuffer buffer) {
+        // Retain buffer if there is capacity in the queue, otherwise discard
+        buffer.clear();
+        directBuffers.offer(buffer);
+    }
+
+    private ByteBuffer takeDirectBuffer() {
+        ByteBuffer buffer = directBuffers.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
         }
         return buffer;
     }
@@ -105,9 +205,28 @@ public class DefaultFileHasher implements FileHasher {
         return hash(fileDetails.getFile());
     }
 
-    private static Hasher createFileHasher() {
-        Hasher hasher = Hashing.md5().newHasher();
+    @Override
+    public List<HashCode> hash(List<File> files, List<FileMetadataSnapshot> fileDetails) {
+        List<HashCode> hashes = new ArrayList<HashCode>(files.size());
+        for (File file : files) {
+            hashes.add(hash(file));
+        }
+        return hashes;
+    }
+
+    private Hasher createFileHasher() {
+        Hasher hasher = hashFunction.newHasher();
         hasher.putBytes(SIGNATURE);
         return hasher;
     }
+
+    private MessageDigest createMessageDigest() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance(hashFunction.getMessageDigestAlgorithm());
+            digest.update(SIGNATURE);
+            return digest;
+        } catch (NoSuchAlgorithmException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+    }
 }
@@ -22,6 +22,7 @@ import org.gradle.internal.resource.TextResource;
 
 import java.io.File;
 import java.io.InputStream;
+import java.util.List;
 
 public interface FileHasher {
     /**
@@ -48,4 +49,11 @@ public interface FileHasher {
      * Returns the hash of the current content of the given file, assuming the given file metadata. The provided file must exist and be a file (rather than, say, a directory).
      */
     HashCode hash(File file, FileMetadataSnapshot fileDetails);
+
+    /**
+     * Returns the hashes of the current content of the given files, assuming the given file metadata, in the same order as the files. The provided files must exist and be files (rather than, say, directories).
+     *
+     * Implementations may hash the files concurrently.
+     */
+    List<HashCode> hash(List<File> files, List<FileMetadataSnapshot> fileDetails);
 }
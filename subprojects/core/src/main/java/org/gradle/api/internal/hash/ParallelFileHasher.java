@@ -0,0 +1,151 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.hash;
+
+import com.google.common.hash.HashCode;
+import org.gradle.api.file.FileTreeElement;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.concurrent.StoppableExecutor;
+import org.gradle.internal.exceptions.DefaultMultiCauseException;
+import org.gradle.internal.nativeintegration.filesystem.FileMetadataSnapshot;
+import org.gradle.internal.resource.TextResource;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link FileHasher} that hashes batches of files using a bounded pool of threads. The calling thread takes part in the work, so that a batch always makes progress.
+ */
+public class ParallelFileHasher implements FileHasher, Stoppable {
+    // Batches smaller than this are not worth handing off to other threads
+    private static final int MIN_PARALLEL_BATCH_SIZE = 4;
+
+    private final FileHasher delegate;
+    private final ExecutorFactory executorFactory;
+    private final int maxThreads;
+    private StoppableExecutor executor;
+
+    public ParallelFileHasher(FileHasher delegate, ExecutorFactory executorFactory) {
+        this(delegate, executorFactory, Runtime.getRuntime().availableProcessors());
+    }
+
+    ParallelFileHasher(FileHasher delegate, ExecutorFactory executorFactory, int maxThreads) {
+        this.delegate = delegate;
+        this.executorFactory = executorFactory;
+        this.maxThreads = maxThreads;
+    }
+
+    @Override
+    public HashCode hash(InputStream inputStream) {
+        return delegate.hash(inputStream);
+    }
+
+    @Override
+    public HashCode hash(TextResource resource) {
+        return delegate.hash(resource);
+    }
+
+    @Override
+    public HashCode hash(File file) {
+        return delegate.hash(file);
+    }
+
+    @Override
+    public HashCode hash(FileTreeElement fileDetails) {
+        return delegate.hash(fileDetails);
+    }
+
+    @Override
+    public HashCode hash(File file, FileMetadataSnapshot fileDetails) {
+        return delegate.hash(file, fileDetails);
+    }
+
+    @Override
+    public List<HashCode> hash(final List<File> files, final List<FileMetadataSnapshot> fileDetails) {
+        int workers = Math.min(maxThreads, files.size() / MIN_PARALLEL_BATCH_SIZE);
+        if (workers <= 1) {
+            return delegate.hash(files, fileDetails);
+        }
+
+        final HashCode[] hashes = new HashCode[files.size()];
+        final AtomicInteger next = new AtomicInteger();
+        Callable<Void> worker = new Callable<Void>() {
+            @Override
+            public Void call() {
+                try {
+                    for (int i = next.getAndIncrement(); i < hashes.length; i = next.getAndIncrement()) {
+                        hashes[i] = delegate.hash(files.get(i), fileDetails.get(i));
+                    }
+                } finally {
+                    // Stop the other workers from picking up more files if this worker failed
+                    next.set(hashes.length);
+                }
+                return null;
+            }
+        };
+
+        StoppableExecutor executor = getExecutor();
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(workers - 1);
+        for (int i = 1; i < workers; i++) {
+            futures.add(executor.submit(worker));
+        }
+        List<Throwable> failures = new ArrayList<Throwable>();
+        try {
+            worker.call();
+        } catch (Throwable t) {
+            failures.add(t);
+        }
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                failures.add(e);
+            } catch (ExecutionException e) {
+                failures.add(e.getCause());
+            }
+        }
+        if (failures.size() == 1) {
+            throw UncheckedException.throwAsUncheckedException(failures.get(0));
+        } else if (failures.size() > 1) {
+            throw new DefaultMultiCauseException("Could not hash files.", failures);
+        }
+        return Arrays.asList(hashes);
+    }
+
+    private synchronized StoppableExecutor getExecutor() {
+        if (executor == null) {
+            executor = executorFactory.create("File hasher", maxThreads);
+        }
+        return executor;
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.stop();
+            executor = null;
+        }
+    }
+}
@@ -73,6 +73,7 @@ import org.gradle.api.resources.ResourceHandler;
 import org.gradle.api.resources.normalization.ResourceNormalizationHandler;
 import org.gradle.api.tasks.WorkResult;
 import org.gradle.configuration.ScriptPluginFactory;
+import org.gradle.configuration.project.ParallelProjectConfiguration;
 import org.gradle.configuration.project.ProjectConfigurationActionContainer;
 import org.gradle.configuration.project.ProjectEvaluator;
 import org.gradle.groovy.scripts.ScriptSource;
@@ -124,6 +125,7 @@ import java.util.TreeSet;
 import java.util.concurrent.Callable;
 
 import static com.google.common.base.Strings.isNullOrEmpty;
+import static java.util.Collections.singleton;
 import static java.util.Collections.singletonMap;
 import static org.gradle.util.ConfigureUtil.configureUsing;
 import static org.gradle.util.GUtil.addMaps;
@@ -323,7 +325,7 @@ public class DefaultProject extends AbstractPluginAware implements ProjectIntern
 
     @Override
     public ProjectInternal getRootProject() {
-        return rootProject;
+        return getParallelProjectConfiguration().accessed(rootProject);
     }
 
     @Override
@@ -372,7 +374,7 @@ public class DefaultProject extends AbstractPluginAware implements ProjectIntern
 
     @Override
     public ProjectInternal getParent() {
-        return parent;
+        return getParallelProjectConfiguration().accessed(parent);
     }
 
     @Override
@@ -402,6 +404,7 @@ public class DefaultProject extends AbstractPluginAware implements ProjectIntern
 
     @Override
     public void setDescription(String description) {
+        assertCanMutate();
         this.description = description;
     }
 
@@ -412,12 +415,13 @@ public class DefaultProject extends AbstractPluginAware implements ProjectIntern
         } else if (this == rootProject) {
             return "";
         }
-        group = rootProject.getName() + (getParent() == rootProject ? "" : "." + getParent().getPath().substring(1).replace(':', '.'));
+        group = rootProject.getName() + (parent == rootProject ? "" : "." + parent.getPath().substring(1).replace(':', '.'));
         return group;
     }
 
     @Override
     public void setGroup(Object group) {
+        assertCanMutate();
         this.group = group;
     }
 
@@ -428,6 +432,7 @@ public class DefaultProject extends AbstractPluginAware implements ProjectIntern
 
     @Override
     public void setVersion(Object version) {
+        assertCanMutate();
         this.version = version;
     }
 
@@ -438,6 +443,7 @@ public class DefaultProject extends AbstractPluginAware implements ProjectIntern
 
     @Override
     public void setStatus(Object status) {
+        assertCanMutate();
         this.status = status;
     }
 
@@ -453,6 +459,7 @@ public class DefaultProject extends AbstractPluginAware implements ProjectIntern
 
     @Override
     public void setDefaultTasks(List<String> defaultTasks) {
+        assertCanMutate();
         this.defaultTasks = defaultTasks;
     }
 
@@ -596,7 +603,7 @@ public class DefaultProject extends AbstractPluginAware implements ProjectIntern
         if (isNullOrEmpty(path)) {
             throw new InvalidUserDataException("A path must be specified!");
         }
-        return getProjectRegistry().getProject(absoluteProjectPath(path));
+        return getParallelProjectConfiguration().accessed(getProjectRegistry().getProject(absoluteProjectPath(path)));
     }
 
     @Override
@@ -611,12 +618,16 @@ public class DefaultProject extends AbstractPluginAware implements ProjectIntern
 
     @Override
     public void subprojects(Action<? super Project> action) {
-        getProjectConfigurator().subprojects(getSubprojects(), action);
+        Set<Project> subprojects = getSubprojects();
+        getParallelProjectConfiguration().assertCanConfigure(subprojects);
+        getProjectConfigurator().subprojects(subprojects, action);
     }
 
     @Override
     public void allprojects(Action<? super Project> action) {
-        getProjectConfigurator().allprojects(getAllprojects(), action);
+        Set<Project> allprojects = getAllprojects();
+        getParallelProjectConfiguration().assertCanConfigure(allprojects);
+        getProjectConfigurator().allprojects(allprojects, action);
     }
 
     @Override
@@ -674,6 +685,7 @@ public class DefaultProject extends AbstractPluginAware implements ProjectIntern
         if (defaultTasks == null) {
             throw new InvalidUserDataException("Default tasks must not be null!");
         }
+        assertCanMutate();
         this.defaultTasks = new ArrayList<String>();
         for (String defaultTask : defaultTasks) {
             if (defaultTask == null) {
@@ -708,6 +720,7 @@ public class DefaultProject extends AbstractPluginAware implements ProjectIntern
 
     @Override
     public void setBuildDir(Object path) {
+        assertCanMutate();
         buildDir = path;
         buildDirCached = null;
     }
@@ -729,12 +742,19 @@ public class DefaultProject extends AbstractPluginAware implements ProjectIntern
         return evaluationDependsOn(projectToEvaluate);
     }
 
-    private Project evaluationDependsOn(DefaultProject projectToEvaluate) {
-        if (projectToEvaluate.getState().getExecuting()) {
-            throw new CircularReferenceException(String.format("Circular referencing during evaluation for %s.",
-                projectToEvaluate));
-        }
-        return projectToEvaluate.evaluate();
+    private Project evaluationDependsOn(final DefaultProject projectToEvaluate) {
+        // When projects are configured in parallel, wait for the thread that is configuring the other project
+        getParallelProjectConfiguration().withProjectLock(projectToEvaluate, new Runnable() {
+            @Override
+            public void run() {
+                if (projectToEvaluate.getState().getExecuting()) {
+                    throw new CircularReferenceException(String.format("Circular referencing during evaluation for %s.",
+                        projectToEvaluate));
+                }
+                projectToEvaluate.evaluate();
+            }
+        });
+        return projectToEvaluate;
     }
 
     @Override
@@ -935,21 +955,25 @@ public class DefaultProject extends AbstractPluginAware implements ProjectIntern
 
     @Override
     public void beforeEvaluate(Action<? super Project> action) {
+        assertCanMutate();
         evaluationListener.add("beforeEvaluate", action);
     }
 
     @Override
     public void afterEvaluate(Action<? super Project> action) {
+        assertCanMutate();
         evaluationListener.add("afterEvaluate", action);
     }
 
     @Override
     public void beforeEvaluate(Closure closure) {
+        assertCanMutate();
         evaluationListener.add(new ClosureBackedMethodInvocationDispatch("beforeEvaluate", closure));
     }
 
     @Override
     public void afterEvaluate(Closure closure) {
+        assertCanMutate();
         evaluationListener.add(new ClosureBackedMethodInvocationDispatch("afterEvaluate", closure));
     }
 
@@ -989,6 +1013,7 @@ public class DefaultProject extends AbstractPluginAware implements ProjectIntern
 
     @Override
     public void setProperty(String name, Object value) {
+        assertCanMutate();
         extensibleDynamicObject.setProperty(name, value);
     }
 
@@ -1091,22 +1116,30 @@ public class DefaultProject extends AbstractPluginAware implements ProjectIntern
 
     @Override
     public void subprojects(Closure configureClosure) {
-        getProjectConfigurator().subprojects(getSubprojects(), configureClosure);
+        Set<Project> subprojects = getSubprojects();
+        getParallelProjectConfiguration().assertCanConfigure(subprojects);
+        getProjectConfigurator().subprojects(subprojects, configureClosure);
     }
 
     @Override
     public void allprojects(Closure configureClosure) {
-        getProjectConfigurator().allprojects(getAllprojects(), configureClosure);
+        Set<Project> allprojects = getAllprojects();
+        getParallelProjectConfiguration().assertCanConfigure(allprojects);
+        getProjectConfigurator().allprojects(allprojects, configureClosure);
     }
 
     @Override
     public Project project(String path, Closure configureClosure) {
-        return getProjectConfigurator().project(project(path), configureClosure);
+        ProjectInternal project = project(path);
+        getParallelProjectConfiguration().assertCanConfigure(singleton(project));
+        return getProjectConfigurator().project(project, configureClosure);
     }
 
     @Override
     public Project project(String path, Action<? super Project> configureAction) {
-        return getProjectConfigurator().project(project(path), configureAction);
+        ProjectInternal project = project(path);
+        getParallelProjectConfiguration().assertCanConfigure(singleton(project));
+        return getProjectConfigurator().project(project, configureAction);
     }
 
     @Override
@@ -1124,45 +1157,54 @@ public class DefaultProject extends AbstractPluginAware implements ProjectIntern
 
     @Override
     public void configurations(Closure configureClosure) {
+        assertCanMutate();
         ((Configurable<?>) getConfigurations()).configure(configureClosure);
     }
 
     @Override
     public void repositories(Closure configureClosure) {
+        assertCanMutate();
         ConfigureUtil.configure(configureClosure, getRepositories());
     }
 
     @Override
     public void dependencies(Closure configureClosure) {
+        assertCanMutate();
         ConfigureUtil.configure(configureClosure, getDependencies());
     }
 
     @Override
     public void artifacts(Closure configureClosure) {
+        assertCanMutate();
         ConfigureUtil.configure(configureClosure, getArtifacts());
     }
 
     @Override
     public void artifacts(Action<? super ArtifactHandler> configureAction) {
+        assertCanMutate();
         configureAction.execute(getArtifacts());
     }
 
     @Override
     public void buildscript(Closure configureClosure) {
+        assertCanMutate();
         ConfigureUtil.configure(configureClosure, getBuildscript());
     }
 
     @Override
     public Task task(String task) {
+        assertCanMutate();
         return taskContainer.create(task);
     }
 
     public Task task(Object task) {
+        assertCanMutate();
         return taskContainer.create(task.toString());
     }
 
     @Override
     public Task task(String task, Closure configureClosure) {
+        assertCanMutate();
         return taskContainer.create(task).configure(configureClosure);
     }
 
@@ -1172,6 +1214,7 @@ public class DefaultProject extends AbstractPluginAware implements ProjectIntern
 
     @Override
     public Task task(Map options, String task) {
+        assertCanMutate();
         return taskContainer.create(addMaps(options, singletonMap(Task.TASK_NAME, task)));
     }
 
@@ -1181,6 +1224,7 @@ public class DefaultProject extends AbstractPluginAware implements ProjectIntern
 
     @Override
     public Task task(Map options, String task, Closure configureClosure) {
+        assertCanMutate();
         return taskContainer.create(addMaps(options, singletonMap(Task.TASK_NAME, task))).configure(configureClosure);
     }
 
@@ -1210,6 +1254,7 @@ public class DefaultProject extends AbstractPluginAware implements ProjectIntern
 
     @Override
     protected DefaultObjectConfigurationAction createObjectConfigurationAction() {
+        assertCanMutate();
         return new DefaultObjectConfigurationAction(getFileResolver(), getScriptPluginFactory(), getScriptHandlerFactory(), getBaseClassLoaderScope(), this);
     }
 
@@ -1293,6 +1338,15 @@ public class DefaultProject extends AbstractPluginAware implements ProjectIntern
         throw new UnsupportedOperationException();
     }
 
+    @Inject
+    protected ParallelProjectConfiguration getParallelProjectConfiguration() {
+        throw new UnsupportedOperationException();
+    }
+
+    private void assertCanMutate() {
+        getParallelProjectConfiguration().assertCanMutate(this);
+    }
+
     @Override
     public void addDeferredConfiguration(Runnable configuration) {
         getDeferredProjectConfiguration().add(configuration);
@@ -19,6 +19,7 @@ import org.apache.tools.zip.ZipOutputStream;
 import org.gradle.api.Incubating;
 import org.gradle.api.InvalidUserDataException;
 import org.gradle.api.internal.DocumentationRegistry;
+import org.gradle.api.internal.file.archive.ParallelZipCopyAction;
 import org.gradle.api.internal.file.archive.ZipCopyAction;
 import org.gradle.api.internal.file.copy.CopyAction;
 import org.gradle.api.internal.file.copy.DefaultZipCompressor;
@@ -26,6 +27,8 @@ import org.gradle.api.internal.file.copy.ZipCompressor;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.Optional;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.work.WorkerLeaseRegistry;
 
 import java.nio.charset.Charset;
 
@@ -39,6 +42,7 @@ public class Zip extends AbstractArchiveTask {
     private ZipEntryCompression entryCompression = ZipEntryCompression.DEFLATED;
     private boolean allowZip64;
     private String metadataCharset;
+    private boolean parallelEntryCompression;
 
     public Zip() {
         setExtension(ZIP_EXTENSION);
@@ -60,6 +64,12 @@ public class Zip extends AbstractArchiveTask {
     @Override
     protected CopyAction createCopyAction() {
         DocumentationRegistry documentationRegistry = getServices().get(DocumentationRegistry.class);
+        if (parallelEntryCompression && entryCompression == ZipEntryCompression.DEFLATED && !allowZip64) {
+            ExecutorFactory executorFactory = getServices().get(ExecutorFactory.class);
+            int maxThreads = getProject().getGradle().getStartParameter().getMaxWorkerCount();
+            WorkerLeaseRegistry.WorkerLease workerLease = getServices().get(WorkerLeaseRegistry.class).getCurrentWorkerLease();
+            return new ParallelZipCopyAction(getArchivePath(), documentationRegistry, metadataCharset, isPreserveFileTimestamps(), executorFactory, maxThreads, workerLease);
+        }
         return new ZipCopyAction(getArchivePath(), getCompressor(), documentationRegistry, metadataCharset, isPreserveFileTimestamps());
     }
 
@@ -111,6 +121,33 @@ public class Zip extends AbstractArchiveTask {
         return allowZip64;
     }
 
+    /**
+     * Whether the entries of the archive are compressed on multiple threads. The entries are written to the archive in the same order as
+     * when compressing them on a single thread. When the archive already exists, entries that have not changed reuse their compressed
+     * content from the existing archive. Defaults to {@code false}.
+     * <p>
+     * This only has an effect when the entries are {@link ZipEntryCompression#DEFLATED} and the {@link #isZip64() zip64} extension is not enabled.
+     * The number of threads is limited by the maximum number of workers of the build.
+     *
+     * @since 4.1
+     */
+    @Input
+    @Incubating
+    public boolean isParallelEntryCompression() {
+        return parallelEntryCompression;
+    }
+
+    /**
+     * Sets whether the entries of the archive are compressed on multiple threads.
+     *
+     * @see #isParallelEntryCompression()
+     * @since 4.1
+     */
+    @Incubating
+    public void setParallelEntryCompression(boolean parallelEntryCompression) {
+        this.parallelEntryCompression = parallelEntryCompression;
+    }
+
     /**
      * The character set used to encode ZIP metadata like file names.
      * Defaults to the platform's default character set.
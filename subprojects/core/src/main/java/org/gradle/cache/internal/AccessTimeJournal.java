@@ -0,0 +1,180 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import org.gradle.api.UncheckedIOException;
+import org.gradle.util.GFileUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Tracks when the entries of a cache were last used, without modifying the entries themselves.
+ *
+ * <p>Accesses are collected in memory and appended to a journal file by {@link #flush()}, one {@code <name> <timestamp>} line per entry. The journal is
+ * opened in append mode, so that several processes can record their accesses without holding a lock. The journal is read and compacted by the cleanup
+ * of the cache, see {@link FixedSizeOldestCacheCleanup}.</p>
+ */
+public class AccessTimeJournal {
+    private final File journalFile;
+    private final ConcurrentMap<String, Long> pendingAccesses = new ConcurrentHashMap<String, Long>();
+
+    public AccessTimeJournal(File journalFile) {
+        this.journalFile = journalFile;
+    }
+
+    public File getJournalFile() {
+        return journalFile;
+    }
+
+    public void recordAccess(String name, long timestamp) {
+        pendingAccesses.put(name, timestamp);
+    }
+
+    /**
+     * Appends the accesses recorded since the last flush to the journal.
+     */
+    public synchronized void flush() {
+        if (pendingAccesses.isEmpty()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        Iterator<Map.Entry<String, Long>> iterator = pendingAccesses.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            lines.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+            iterator.remove();
+        }
+        GFileUtils.parentMkdirs(journalFile);
+        try {
+            // Write all lines with a single call, so that the lines of concurrent writers are not interleaved
+            OutputStream outputStream = new FileOutputStream(journalFile, true);
+            try {
+                outputStream.write(lines.toString().getBytes(Charsets.UTF_8));
+            } finally {
+                outputStream.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not write to access time journal %s.", journalFile), e);
+        }
+    }
+
+    /**
+     * Reads the latest access time of each entry in the journal. Incomplete lines, for example from a writer that crashed, are ignored.
+     */
+    public Map<String, Long> readAccessTimes() {
+        return read().getAccessTimes();
+    }
+
+    /**
+     * Reads the latest access time of each entry in the journal, along with the number of lines of the journal.
+     */
+    public Contents read() {
+        Map<String, Long> accessTimes = Maps.newHashMap();
+        int lineCount = 0;
+        if (!journalFile.isFile()) {
+            return new Contents(accessTimes, lineCount);
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), Charsets.UTF_8));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lineCount++;
+                    int separator = line.indexOf(' ');
+                    if (separator <= 0) {
+                        continue;
+                    }
+                    long timestamp;
+                    try {
+                        timestamp = Long.parseLong(line.substring(separator + 1));
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+                    String name = line.substring(0, separator);
+                    Long previous = accessTimes.get(name);
+                    if (previous == null || previous < timestamp) {
+                        accessTimes.put(name, timestamp);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not read access time journal %s.", journalFile), e);
+        }
+        return new Contents(accessTimes, lineCount);
+    }
+
+    /**
+     * Replaces the contents of the journal with the given access times.
+     *
+     * <p>The new journal is written to a temporary file and renamed into place. Accesses appended by other processes while the journal is being rewritten
+     * may be lost, in which case the cleanup falls back to the time the entry was created.</p>
+     */
+    public synchronized void rewrite(Map<String, Long> accessTimes) {
+        StringBuilder lines = new StringBuilder();
+        for (Map.Entry<String, Long> entry : accessTimes.entrySet()) {
+            lines.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+        File tempFile = new File(journalFile.getParentFile(), journalFile.getName() + ".tmp");
+        GFileUtils.writeFile(lines.toString(), tempFile, Charsets.UTF_8.name());
+        if (!tempFile.renameTo(journalFile)) {
+            // Cannot replace an existing file on some platforms
+            GFileUtils.deleteQuietly(journalFile);
+            if (!tempFile.renameTo(journalFile)) {
+                GFileUtils.deleteQuietly(tempFile);
+                throw new UncheckedIOException(String.format("Could not rewrite access time journal %s.", journalFile));
+            }
+        }
+    }
+
+    public static class Contents {
+        private final Map<String, Long> accessTimes;
+        private final int lineCount;
+
+        Contents(Map<String, Long> accessTimes, int lineCount) {
+            this.accessTimes = accessTimes;
+            this.lineCount = lineCount;
+        }
+
+        /**
+         * The latest access time of each entry.
+         */
+        public Map<String, Long> getAccessTimes() {
+            return accessTimes;
+        }
+
+        /**
+         * The number of lines of the journal, which is larger than the number of entries when entries have been accessed more than once.
+         */
+        public int getLineCount() {
+            return lineCount;
+        }
+    }
+}
@@ -19,10 +19,31 @@ package org.gradle.cache.internal;
 import org.gradle.api.Nullable;
 import org.gradle.api.Transformer;
 import org.gradle.internal.Factory;
+import org.gradle.internal.UncheckedException;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies updates to the backing cache asynchronously, using write-behind.
+ *
+ * <p>Pending updates are coalesced per key, so only the latest value for a key is written to the backing cache. All pending updates are applied
+ * by a single action on the {@link AsyncCacheAccess}, so that they are written as a batch while the cache lock is held. At most one such action is
+ * queued at a time, so submitting an update does not block when the work queue is full of updates. Reads see pending updates.</p>
+ */
 public class AsyncCacheAccessDecoratedCache<K, V> implements MultiProcessSafeAsyncPersistentIndexedCache<K, V> {
     private final AsyncCacheAccess asyncCacheAccess;
     private final MultiProcessSafePersistentIndexedCache<K, V> persistentCache;
+    private final Object lock = new Object();
+    private Map<K, PendingUpdate<V>> pendingUpdates = new LinkedHashMap<K, PendingUpdate<V>>();
+    private final Runnable applyPendingUpdates = new Runnable() {
+        @Override
+        public void run() {
+            applyPendingUpdates();
+        }
+    };
 
     public AsyncCacheAccessDecoratedCache(AsyncCacheAccess asyncCacheAccess, MultiProcessSafePersistentIndexedCache<K, V> persistentCache) {
         this.asyncCacheAccess = asyncCacheAccess;
@@ -37,6 +58,13 @@ public class AsyncCacheAccessDecoratedCache<K, V> implements MultiProcessSafeAsy
     @Nullable
     @Override
     public V get(final K key) {
+        synchronized (lock) {
+            PendingUpdate<V> pendingUpdate = pendingUpdates.get(key);
+            if (pendingUpdate != null) {
+                return pendingUpdate.value;
+            }
+        }
+        // Any update to this key has been handed to the worker by now, and the worker applies it before running this read
         return asyncCacheAccess.read(new Factory<V>() {
             @Override
             public V create() {
@@ -52,30 +80,79 @@ public class AsyncCacheAccessDecoratedCache<K, V> implements MultiProcessSafeAsy
 
     @Override
     public void putLater(final K key, final V value, final Runnable completion) {
-        asyncCacheAccess.enqueue(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    persistentCache.put(key, value);
-                } finally {
-                    completion.run();
-                }
-            }
-        });
+        addPendingUpdate(key, value, false, completion);
     }
 
     @Override
     public void removeLater(final K key, final Runnable completion) {
-        asyncCacheAccess.enqueue(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    persistentCache.remove(key);
-                } finally {
+        addPendingUpdate(key, null, true, completion);
+    }
+
+    private void addPendingUpdate(K key, @Nullable V value, boolean remove, Runnable completion) {
+        boolean schedule;
+        synchronized (lock) {
+            schedule = pendingUpdates.isEmpty();
+            PendingUpdate<V> pendingUpdate = pendingUpdates.get(key);
+            if (pendingUpdate == null) {
+                pendingUpdate = new PendingUpdate<V>();
+                pendingUpdates.put(key, pendingUpdate);
+            }
+            pendingUpdate.value = value;
+            pendingUpdate.remove = remove;
+            pendingUpdate.completions.add(completion);
+        }
+        if (schedule) {
+            try {
+                asyncCacheAccess.enqueue(applyPendingUpdates);
+            } catch (RuntimeException e) {
+                // Nothing will apply the pending updates, so discard them, including those added by other threads since, and run their completions
+                Map<K, PendingUpdate<V>> discarded;
+                synchronized (lock) {
+                    discarded = pendingUpdates;
+                    pendingUpdates = new LinkedHashMap<K, PendingUpdate<V>>();
+                }
+                for (PendingUpdate<V> update : discarded.values()) {
+                    for (Runnable discardedCompletion : update.completions) {
+                        try {
+                            discardedCompletion.run();
+                        } catch (RuntimeException completionFailure) {
+                            // Report the failure to enqueue, which caused the discard
+                        }
+                    }
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void applyPendingUpdates() {
+        Map<K, PendingUpdate<V>> updates;
+        synchronized (lock) {
+            updates = pendingUpdates;
+            pendingUpdates = new LinkedHashMap<K, PendingUpdate<V>>();
+        }
+        Throwable failure = null;
+        for (Map.Entry<K, PendingUpdate<V>> entry : updates.entrySet()) {
+            PendingUpdate<V> update = entry.getValue();
+            try {
+                if (update.remove) {
+                    persistentCache.remove(entry.getKey());
+                } else {
+                    persistentCache.put(entry.getKey(), update.value);
+                }
+            } catch (Throwable t) {
+                if (failure == null) {
+                    failure = t;
+                }
+            } finally {
+                for (Runnable completion : update.completions) {
                     completion.run();
                 }
             }
-        });
+        }
+        if (failure != null) {
+            throw UncheckedException.throwAsUncheckedException(failure);
+        }
     }
 
     @Override
@@ -92,4 +169,10 @@ public class AsyncCacheAccessDecoratedCache<K, V> implements MultiProcessSafeAsy
     public void beforeLockRelease(FileLock.State currentCacheState) {
         persistentCache.beforeLockRelease(currentCacheState);
     }
+
+    private static class PendingUpdate<V> {
+        final List<Runnable> completions = new ArrayList<Runnable>(1);
+        V value;
+        boolean remove;
+    }
 }
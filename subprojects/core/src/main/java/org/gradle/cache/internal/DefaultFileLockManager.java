@@ -44,6 +44,10 @@ import static org.gradle.internal.UncheckedException.throwAsUncheckedException;
 public class DefaultFileLockManager implements FileLockManager {
     private static final Logger LOGGER = Logging.getLogger(DefaultFileLockManager.class);
     public static final int DEFAULT_LOCK_TIMEOUT = 60000;
+    // Polling for a contended lock starts with a short interval, so that a released lock is picked up quickly, and backs off to the maximum
+    private static final long MIN_LOCK_POLL_INTERVAL_MS = 10;
+    private static final long MAX_LOCK_POLL_INTERVAL_MS = 200;
+    private static final long PING_INTERVAL_MS = 200;
 
     private final Set<File> lockedFiles = new CopyOnWriteArraySet<File>();
     private final ProcessMetaDataProvider metaDataProvider;
@@ -52,6 +56,7 @@ public class DefaultFileLockManager implements FileLockManager {
     private final FileLockContentionHandler fileLockContentionHandler;
     private final long shortTimeoutMs = 10000;
     private final TimeProvider timeProvider = new TrueTimeProvider();
+    private final FileLockStatistics statistics = new FileLockStatistics();
 
     public DefaultFileLockManager(ProcessMetaDataProvider metaDataProvider, FileLockContentionHandler fileLockContentionHandler) {
         this(metaDataProvider, DEFAULT_LOCK_TIMEOUT, fileLockContentionHandler);
@@ -90,9 +95,22 @@ public class DefaultFileLockManager implements FileLockManager {
         }
     }
 
-    public void allowContention(FileLock fileLock, Runnable whenContended) {
-        DefaultFileLock internalLock = (DefaultFileLock) fileLock;
-        fileLockContentionHandler.start(internalLock.lockId, whenContended);
+    public void allowContention(FileLock fileLock, final Runnable whenContended) {
+        final DefaultFileLock internalLock = (DefaultFileLock) fileLock;
+        fileLockContentionHandler.start(internalLock.lockId, new Runnable() {
+            @Override
+            public void run() {
+                internalLock.releaseRequested = true;
+                whenContended.run();
+            }
+        });
+    }
+
+    /**
+     * Returns the statistics of the locks acquired by this manager.
+     */
+    public FileLockStatistics getStatistics() {
+        return statistics;
     }
 
     private class DefaultFileLock extends AbstractFileAccess implements FileLock {
@@ -106,6 +124,9 @@ public class DefaultFileLockManager implements FileLockManager {
         private LockState lockState;
         private int port;
         private final long lockId;
+        private int lockAttempts;
+        private int pingsSent;
+        private volatile boolean releaseRequested;
 
         public DefaultFileLock(File target, LockOptions options, String displayName, String operationDisplayName, int port) throws Throwable {
             this.port = port;
@@ -202,6 +223,9 @@ public class DefaultFileLockManager implements FileLockManager {
         }
 
         public void close() {
+            if (lock != null && releaseRequested) {
+                statistics.lockReleasedOnRequest();
+            }
             CompositeStoppable stoppable = new CompositeStoppable();
             stoppable.add(new Stoppable() {
                 public void stop() {
@@ -292,6 +316,7 @@ public class DefaultFileLockManager implements FileLockManager {
                     // Just read the state region
                     lockState = lockFileAccess.readLockState();
                 }
+                statistics.lockAcquired(lockAttempts > 1, timer.getElapsedMillis(), pingsSent);
                 LOGGER.debug("Lock acquired on {}.", displayName);
                 lock = stateRegionLock;
                 return lockState;
@@ -318,22 +343,28 @@ public class DefaultFileLockManager implements FileLockManager {
         }
 
         private java.nio.channels.FileLock lockStateRegion(LockMode lockMode, final CountdownTimer timer) throws IOException, InterruptedException {
+            long pollIntervalMs = MIN_LOCK_POLL_INTERVAL_MS;
+            CountdownTimer pingTimer = null;
             do {
+                lockAttempts++;
                 java.nio.channels.FileLock fileLock = lockFileAccess.tryLockState(lockMode == LockMode.Shared);
                 if (fileLock != null) {
                     return fileLock;
                 }
-                if (port != -1) { //we don't like the assumption about the port very much
+                if (port != -1 && (pingTimer == null || pingTimer.hasExpired())) { //we don't like the assumption about the port very much
                     LockInfo lockInfo = readInformationRegion(timer);
                     if (lockInfo.port != -1) {
                         LOGGER.debug("The file lock is held by a different Gradle process (pid: {}, operation: {}). Will attempt to ping owner at port {}", lockInfo.pid, lockInfo.operation, lockInfo.port);
                         fileLockContentionHandler.pingOwner(lockInfo.port, lockInfo.lockId, displayName);
+                        pingsSent++;
                     } else {
                         LOGGER.debug("The file lock is held by a different Gradle process. I was unable to read on which port the owner listens for lock access requests.");
                     }
+                    pingTimer = Timers.startTimer(PING_INTERVAL_MS);
                 }
                 //TODO SF we should inform on the progress/status bar that we're waiting
-                Thread.sleep(200L);
+                Thread.sleep(pollIntervalMs);
+                pollIntervalMs = Math.min(pollIntervalMs * 2, MAX_LOCK_POLL_INTERVAL_MS);
             } while (!timer.hasExpired());
             return null;
         }
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the file locks acquired by a {@link DefaultFileLockManager}, and how much these contended with locks held by other lock managers.
+ */
+@ThreadSafe
+public class FileLockStatistics {
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong contendedAcquisitions = new AtomicLong();
+    private final AtomicLong waitMillis = new AtomicLong();
+    private final AtomicLong releaseRequestsSent = new AtomicLong();
+    private final AtomicLong releasesOnRequest = new AtomicLong();
+
+    void lockAcquired(boolean contended, long waitMillis, int releaseRequestsSent) {
+        acquisitions.incrementAndGet();
+        if (contended) {
+            contendedAcquisitions.incrementAndGet();
+            this.waitMillis.addAndGet(waitMillis);
+        }
+        this.releaseRequestsSent.addAndGet(releaseRequestsSent);
+    }
+
+    void lockReleasedOnRequest() {
+        releasesOnRequest.incrementAndGet();
+    }
+
+    /**
+     * The number of locks acquired.
+     */
+    public long getAcquisitions() {
+        return acquisitions.get();
+    }
+
+    /**
+     * The number of locks that could not be acquired at the first attempt, as they were held by another lock manager.
+     */
+    public long getContendedAcquisitions() {
+        return contendedAcquisitions.get();
+    }
+
+    /**
+     * The total time spent waiting to acquire contended locks.
+     */
+    public long getWaitMillis() {
+        return waitMillis.get();
+    }
+
+    /**
+     * The number of requests sent to other lock managers to release a lock.
+     */
+    public long getReleaseRequestsSent() {
+        return releaseRequestsSent.get();
+    }
+
+    /**
+     * The number of locks released after another lock manager requested them.
+     */
+    public long getReleasesOnRequest() {
+        return releasesOnRequest.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d locks acquired, %d contended, waited %d ms, sent %d release requests, released %d locks on request",
+            getAcquisitions(), getContendedAcquisitions(), getWaitMillis(), getReleaseRequestsSent(), getReleasesOnRequest());
+    }
+}
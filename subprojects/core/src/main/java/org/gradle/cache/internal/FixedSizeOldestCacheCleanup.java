@@ -18,6 +18,7 @@ package org.gradle.cache.internal;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import org.apache.commons.io.FileUtils;
 import org.gradle.api.Action;
@@ -31,26 +32,29 @@ import org.gradle.internal.operations.RunnableBuildOperation;
 import org.gradle.internal.progress.BuildOperationDescriptor;
 
 import java.io.File;
-import java.io.FilenameFilter;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Deletes the least recently used entries of a cache until the cache fits into the target size.
+ *
+ * <p>Entries are ordered by the access times recorded in the given {@link AccessTimeJournal}, falling back to the last modification time of entries
+ * that have not been accessed since they were created. Entries can be stored in the base directory of the cache or in its sub-directories.</p>
+ */
 public final class FixedSizeOldestCacheCleanup implements Action<PersistentCache> {
     private static final Logger LOGGER = Logging.getLogger(FixedSizeOldestCacheCleanup.class);
-    private static final Comparator<File> NEWEST_FIRST = Ordering.natural().onResultOf(new Function<File, Comparable>() {
-        @Override
-        public Comparable apply(File input) {
-            return input.lastModified();
-        }
-    }).reverse();
+    private static final int MAX_JOURNAL_LINES_PER_ENTRY = 2;
 
     private final BuildOperationExecutor buildOperationExecutor;
     private final long targetSizeInMB;
+    private final AccessTimeJournal journal;
 
-    public FixedSizeOldestCacheCleanup(BuildOperationExecutor buildOperationExecutor, long targetSizeInMB) {
+    public FixedSizeOldestCacheCleanup(BuildOperationExecutor buildOperationExecutor, long targetSizeInMB, AccessTimeJournal journal) {
         this.buildOperationExecutor = buildOperationExecutor;
         this.targetSizeInMB = targetSizeInMB;
+        this.journal = journal;
     }
 
     @Override
@@ -82,11 +86,13 @@ public final class FixedSizeOldestCacheCleanup implements Action<PersistentCache
             }
         });
 
+        AccessTimeJournal.Contents journalContents = journal.read();
+        final Map<String, Long> accessTimes = journalContents.getAccessTimes();
         if (filesEligibleForCleanup.length > 0) {
             final List<File> filesForDeletion = buildOperationExecutor.call(new CallableBuildOperation<List<File>>() {
                 @Override
                 public List<File> call(BuildOperationContext context) {
-                    return findFilesToDelete(persistentCache, filesEligibleForCleanup);
+                    return findFilesToDelete(persistentCache, filesEligibleForCleanup, accessTimes);
                 }
 
                 @Override
@@ -109,10 +115,17 @@ public final class FixedSizeOldestCacheCleanup implements Action<PersistentCache
                 });
             }
         }
+        compactJournal(filesEligibleForCleanup, journalContents);
     }
 
-    List<File> findFilesToDelete(final PersistentCache persistentCache, File[] filesEligibleForCleanup) {
-        Arrays.sort(filesEligibleForCleanup, NEWEST_FIRST);
+    List<File> findFilesToDelete(final PersistentCache persistentCache, File[] filesEligibleForCleanup, final Map<String, Long> accessTimes) {
+        Comparator<File> newestFirst = Ordering.natural().onResultOf(new Function<File, Comparable>() {
+            @Override
+            public Comparable apply(File input) {
+                return lastAccessTime(input, accessTimes);
+            }
+        }).reverse();
+        Arrays.sort(filesEligibleForCleanup, newestFirst);
 
         // All sizes are in bytes
         long totalSize = 0;
@@ -133,14 +146,49 @@ public final class FixedSizeOldestCacheCleanup implements Action<PersistentCache
         return filesForDeletion;
     }
 
+    private static long lastAccessTime(File file, Map<String, Long> accessTimes) {
+        Long accessTime = accessTimes.get(file.getName());
+        long lastModified = file.lastModified();
+        return accessTime != null && accessTime > lastModified ? accessTime : lastModified;
+    }
+
     File[] findEligibleFiles(File cacheDir) {
-        // TODO: This doesn't descend subdirectories.
-        return cacheDir.listFiles(new FilenameFilter() {
-            @Override
-            public boolean accept(File dir, String name) {
-                return canBeDeleted(name);
+        List<File> eligibleFiles = Lists.newArrayList();
+        findEligibleFiles(cacheDir, eligibleFiles);
+        return eligibleFiles.toArray(new File[0]);
+    }
+
+    private void findEligibleFiles(File dir, List<File> eligibleFiles) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                findEligibleFiles(file, eligibleFiles);
+            } else if (canBeDeleted(file.getName())) {
+                eligibleFiles.add(file);
             }
-        });
+        }
+    }
+
+    /**
+     * Rewrites the journal when it has entries that no longer exist, or when it has many more lines than entries, as an entry that is used in every build
+     * gets another line in every build.
+     */
+    private void compactJournal(File[] filesEligibleForCleanup, AccessTimeJournal.Contents journalContents) {
+        Map<String, Long> accessTimes = journalContents.getAccessTimes();
+        // Only keep the access times of the entries that still exist
+        Map<String, Long> retainedAccessTimes = Maps.newHashMap();
+        for (File file : filesEligibleForCleanup) {
+            Long accessTime = accessTimes.get(file.getName());
+            if (accessTime != null && file.exists()) {
+                retainedAccessTimes.put(file.getName(), accessTime);
+            }
+        }
+        if (retainedAccessTimes.size() < accessTimes.size() || journalContents.getLineCount() > MAX_JOURNAL_LINES_PER_ENTRY * Math.max(1, retainedAccessTimes.size())) {
+            journal.rewrite(retainedAccessTimes);
+        }
     }
 
     void cleanupFiles(final PersistentCache persistentCache, final List<File> filesForDeletion) {
@@ -153,8 +201,10 @@ public final class FixedSizeOldestCacheCleanup implements Action<PersistentCache
         long removedSize = 0;
         for (File file : files) {
             try {
+                // Entries are read without holding a lock, so an entry that is currently being read may not be deletable on some platforms
+                long size = file.length();
                 if (file.delete()) {
-                    removedSize += file.length();
+                    removedSize += size;
                 }
             } catch (Exception e) {
                 LOGGER.debug("Could not clean up cache " + file, e);
@@ -164,6 +214,6 @@ public final class FixedSizeOldestCacheCleanup implements Action<PersistentCache
     }
 
     boolean canBeDeleted(String name) {
-        return !(name.endsWith(".properties") || name.endsWith(".lock"));
+        return !(name.endsWith(".properties") || name.endsWith(".lock") || name.startsWith(journal.getJournalFile().getName()));
     }
 }
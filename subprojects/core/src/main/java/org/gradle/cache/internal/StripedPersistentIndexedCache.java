@@ -0,0 +1,72 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal;
+
+import com.google.common.collect.ImmutableList;
+import org.gradle.api.Transformer;
+import org.gradle.cache.PersistentIndexedCache;
+
+import java.util.List;
+
+/**
+ * A cache that partitions its entries by the hash of their key into stripes. Each stripe is a separate cache, usually backed by its own file and
+ * cross-process lock, so that processes that use different keys do not contend for the same lock.
+ *
+ * <p>A key is always mapped to the same stripe, so each entry is stored in exactly one stripe.</p>
+ */
+public class StripedPersistentIndexedCache<K, V> implements PersistentIndexedCache<K, V> {
+    private final List<PersistentIndexedCache<K, V>> stripes;
+
+    public StripedPersistentIndexedCache(List<? extends PersistentIndexedCache<K, V>> stripes) {
+        if (stripes.isEmpty()) {
+            throw new IllegalArgumentException("At least one stripe is required.");
+        }
+        this.stripes = ImmutableList.copyOf(stripes);
+    }
+
+    @Override
+    public V get(K key) {
+        return stripeFor(key).get(key);
+    }
+
+    @Override
+    public V get(K key, Transformer<? extends V, ? super K> producer) {
+        return stripeFor(key).get(key, producer);
+    }
+
+    @Override
+    public void put(K key, V value) {
+        stripeFor(key).put(key, value);
+    }
+
+    @Override
+    public void remove(K key) {
+        stripeFor(key).remove(key);
+    }
+
+    PersistentIndexedCache<K, V> stripeFor(K key) {
+        return stripes.get(stripeIndex(key.hashCode(), stripes.size()));
+    }
+
+    /**
+     * Maps the given key hash to a stripe. Mixes the high bits of the hash into the low bits first, so that keys whose hash codes only differ in their high bits are spread over the stripes.
+     */
+    static int stripeIndex(int hashCode, int stripeCount) {
+        int hash = hashCode ^ (hashCode >>> 16);
+        return (hash & Integer.MAX_VALUE) % stripeCount;
+    }
+}
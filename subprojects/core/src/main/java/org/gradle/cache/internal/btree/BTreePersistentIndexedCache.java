@@ -17,6 +17,7 @@ package org.gradle.cache.internal.btree;
 
 import org.gradle.api.UncheckedIOException;
 import org.gradle.internal.io.StreamByteBuffer;
+import org.gradle.internal.os.OperatingSystem;
 import org.gradle.internal.serialize.Serializer;
 import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
 import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
@@ -65,7 +66,7 @@ public class BTreePersistentIndexedCache<K, V> {
         this.serializer = valueSerializer;
         this.maxChildIndexEntries = maxChildIndexEntries;
         this.minIndexChildNodes = maxChildIndexEntries / 2;
-        BlockStore cachingStore = new CachingBlockStore(new FileBackedBlockStore(cacheFile), IndexBlock.class, FreeListBlockStore.FreeListBlock.class);
+        BlockStore cachingStore = new CachingBlockStore(createFileStore(cacheFile), IndexBlock.class, FreeListBlockStore.FreeListBlock.class);
         store = new StateCheckBlockStore(new FreeListBlockStore(cachingStore, maxFreeListEntries));
         try {
             open();
@@ -74,6 +75,15 @@ public class BTreePersistentIndexedCache<K, V> {
         }
     }
 
+    private static BlockStore createFileStore(File cacheFile) {
+        // Mapping only saves the seek and read calls of each lookup. Lookups are still serialized by the layers above the file store
+        // Not mapped on Windows, where a mapped file cannot be truncated or deleted until the mapping is garbage collected
+        if (OperatingSystem.current().isWindows()) {
+            return new FileBackedBlockStore(cacheFile);
+        }
+        return new MappedFileBlockStore(cacheFile);
+    }
+
     @Override
     public String toString() {
         return "cache " + cacheFile.getName() + " (" + cacheFile + ")";
@@ -0,0 +1,355 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.btree;
+
+import com.google.common.io.CountingInputStream;
+import org.gradle.api.UncheckedIOException;
+import org.gradle.internal.io.StreamByteBuffer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link BlockStore} that reads blocks from a memory mapping of the cache file, using the same file format as {@link FileBackedBlockStore}.
+ *
+ * <p>Reads do not seek and do not share any buffers, so blocks can be read by multiple threads concurrently without locking. Blocks that have been
+ * appended since the file was last mapped are read using positional reads on the file channel. Writes and allocation of new blocks are serialized.
+ * The file is mapped again once enough data has been appended to it.</p>
+ *
+ * <p>Closing or clearing the store must not happen concurrently with reads.</p>
+ *
+ * <p>{@link BTreePersistentIndexedCache} still accesses its store from one thread at a time, through a {@link CachingBlockStore} that is not thread-safe,
+ * so using this store there only reduces the cost of reading a block and does not allow concurrent lookups.</p>
+ */
+public class MappedFileBlockStore implements BlockStore {
+    private static final long MIN_REMAP_GROWTH = 256 * 1024;
+    private static final long MAX_MAPPED_SIZE = Integer.MAX_VALUE;
+
+    private final File cacheFile;
+    private final Object writeLock = new Object();
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private Factory factory;
+    private long nextBlock;
+    private volatile long currentFileSize;
+    private volatile ByteBuffer mapped;
+
+    public MappedFileBlockStore(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    @Override
+    public String toString() {
+        return "cache '" + cacheFile + "'";
+    }
+
+    public void open(Runnable runnable, Factory factory) {
+        this.factory = factory;
+        try {
+            cacheFile.getParentFile().mkdirs();
+            file = new RandomAccessFile(cacheFile, "rw");
+            channel = file.getChannel();
+            currentFileSize = file.length();
+            nextBlock = currentFileSize;
+            mapped = null;
+            remapIfRequired();
+            if (currentFileSize == 0) {
+                runnable.run();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void close() {
+        mapped = null;
+        try {
+            file.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void clear() {
+        synchronized (writeLock) {
+            mapped = null;
+            try {
+                file.setLength(0);
+                currentFileSize = 0;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            nextBlock = 0;
+        }
+    }
+
+    public void attach(BlockPayload block) {
+        if (block.getBlock() == null) {
+            block.setBlock(new BlockImpl(block));
+        }
+    }
+
+    public void remove(BlockPayload block) {
+        BlockImpl blockImpl = (BlockImpl) block.getBlock();
+        blockImpl.detach();
+    }
+
+    public void flush() {
+    }
+
+    public <T extends BlockPayload> T readFirst(Class<T> payloadType) {
+        return read(BlockPointer.pos(0), payloadType);
+    }
+
+    public <T extends BlockPayload> T read(BlockPointer pos, Class<T> payloadType) {
+        assert !pos.isNull();
+        try {
+            T payload = payloadType.cast(factory.create(payloadType));
+            BlockImpl block = new BlockImpl(payload, pos);
+            block.read();
+            return payload;
+        } catch (CorruptedCacheException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void write(BlockPayload block) {
+        BlockImpl blockImpl = (BlockImpl) block.getBlock();
+        try {
+            synchronized (writeLock) {
+                blockImpl.write();
+                remapIfRequired();
+            }
+        } catch (CorruptedCacheException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long alloc(long length) {
+        synchronized (writeLock) {
+            long pos = nextBlock;
+            nextBlock += length;
+            return pos;
+        }
+    }
+
+    /**
+     * Maps the file again when the part of the file that is not mapped has grown large enough. Called while holding the write lock, or during open.
+     */
+    private void remapIfRequired() throws IOException {
+        ByteBuffer current = mapped;
+        long mappedSize = current == null ? 0 : current.capacity();
+        long targetSize = Math.min(currentFileSize, MAX_MAPPED_SIZE);
+        if (targetSize - mappedSize < Math.max(MIN_REMAP_GROWTH, mappedSize / 8)) {
+            return;
+        }
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, targetSize);
+    }
+
+    /**
+     * Returns a buffer containing the given region of the file. Safe to call from multiple threads.
+     */
+    private ByteBuffer region(long pos, int length) throws IOException {
+        ByteBuffer current = mapped;
+        if (current != null && pos + length <= current.capacity()) {
+            ByteBuffer region = current.duplicate();
+            region.limit((int) (pos + length));
+            region.position((int) pos);
+            return region;
+        }
+        ByteBuffer region = ByteBuffer.allocate(length);
+        while (region.hasRemaining()) {
+            int nread = channel.read(region, pos + region.position());
+            if (nread < 0) {
+                throw new EOFException();
+            }
+        }
+        region.flip();
+        return region;
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    private final class BlockImpl extends Block {
+        private static final int HEADER_SIZE = 1 + INT_SIZE; // type, payload size
+        private static final int TAIL_SIZE = INT_SIZE;
+
+        private BlockPointer pos;
+        private int payloadSize;
+
+        private BlockImpl(BlockPayload payload, BlockPointer pos) {
+            this(payload);
+            setPos(pos);
+        }
+
+        public BlockImpl(BlockPayload payload) {
+            super(payload);
+            pos = null;
+            payloadSize = -1;
+        }
+
+        @Override
+        public boolean hasPos() {
+            return pos != null;
+        }
+
+        @Override
+        public BlockPointer getPos() {
+            if (pos == null) {
+                pos = BlockPointer.pos(alloc(getSize()));
+            }
+            return pos;
+        }
+
+        @Override
+        public void setPos(BlockPointer pos) {
+            assert this.pos == null && !pos.isNull();
+            this.pos = pos;
+        }
+
+        public int getSize() {
+            if (payloadSize < 0) {
+                payloadSize = getPayload().getSize();
+            }
+            return payloadSize + HEADER_SIZE + TAIL_SIZE;
+        }
+
+        @Override
+        public void setSize(int size) {
+            int newPayloadSize = size - HEADER_SIZE - TAIL_SIZE;
+            assert newPayloadSize >= payloadSize;
+            payloadSize = newPayloadSize;
+        }
+
+        public void write() throws Exception {
+            long pos = getPos().getPos();
+
+            StreamByteBuffer buffer = new StreamByteBuffer();
+            DataOutputStream outputStream = new DataOutputStream(buffer.getOutputStream());
+
+            BlockPayload payload = getPayload();
+
+            // Write header
+            outputStream.writeByte(payload.getType());
+            outputStream.writeInt(payloadSize);
+            long finalSize = pos + HEADER_SIZE + TAIL_SIZE + payloadSize;
+
+            // Write body
+            payload.write(outputStream);
+
+            // Write count
+            long bytesWritten = outputStream.size() - HEADER_SIZE;
+            if (bytesWritten > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Block payload exceeds maximum size");
+            }
+            outputStream.writeInt((int) bytesWritten);
+            outputStream.flush();
+
+            ByteBuffer contents = ByteBuffer.wrap(buffer.readAsByteArray());
+            while (contents.hasRemaining()) {
+                channel.write(contents, pos + contents.position());
+            }
+
+            // Pad
+            if (currentFileSize < finalSize) {
+                file.setLength(finalSize);
+                currentFileSize = finalSize;
+            }
+        }
+
+        public void read() throws Exception {
+            long pos = getPos().getPos();
+            assert pos >= 0;
+            long fileSize = currentFileSize;
+            if (pos + HEADER_SIZE >= fileSize) {
+                throw blockCorruptedException();
+            }
+
+            ByteBuffer header = region(pos, HEADER_SIZE);
+
+            BlockPayload payload = getPayload();
+
+            // Read header
+            byte type = header.get();
+            if (type != payload.getType()) {
+                throw blockCorruptedException();
+            }
+
+            // Read body
+            payloadSize = header.getInt();
+            if (payloadSize < 0 || pos + HEADER_SIZE + TAIL_SIZE + payloadSize > fileSize) {
+                throw blockCorruptedException();
+            }
+            CountingInputStream countingInputStream = new CountingInputStream(new ByteBufferInputStream(region(pos + HEADER_SIZE, payloadSize + TAIL_SIZE)));
+            DataInputStream inputStream = new DataInputStream(countingInputStream);
+            payload.read(inputStream);
+
+            // Read and verify count
+            long actualCount = countingInputStream.getCount();
+            long count = inputStream.readInt();
+            if (actualCount != count) {
+                throw blockCorruptedException();
+            }
+        }
+
+        public RuntimeException blockCorruptedException() {
+            return new CorruptedCacheException(String.format("Corrupted %s found in %s.", this,
+                    MappedFileBlockStore.this));
+        }
+    }
+
+}
@@ -19,16 +19,26 @@ package org.gradle.caching.internal;
 import com.google.common.base.Charsets;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hasher;
-import com.google.common.hash.Hashing;
+import org.gradle.internal.hash.ContentHashFunction;
 
 /**
  * A hasher used for build cache keys.
  *
  * In order to avoid collisions we prepend the length of the next bytes to the underlying
  * hasher (see this <a href="http://crypto.stackexchange.com/a/10065">answer</a> on stackexchange).
+ *
+ * Uses MD5 by default, as the keys are shared with other machines. Hashes that only describe local state can use the {@link ContentHashFunction#current() selected} content hash function instead.
  */
 public class DefaultBuildCacheHasher implements BuildCacheHasher {
-    private final Hasher hasher = Hashing.md5().newHasher();
+    private final Hasher hasher;
+
+    public DefaultBuildCacheHasher() {
+        this(ContentHashFunction.MD5);
+    }
+
+    public DefaultBuildCacheHasher(ContentHashFunction hashFunction) {
+        this.hasher = hashFunction.newHasher();
+    }
 
     @Override
     public DefaultBuildCacheHasher putByte(byte b) {
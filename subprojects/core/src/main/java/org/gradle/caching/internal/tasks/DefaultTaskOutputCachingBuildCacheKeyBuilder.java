@@ -23,6 +23,7 @@ import com.google.common.hash.HashCode;
 import org.gradle.api.Nullable;
 import org.gradle.caching.internal.BuildCacheHasher;
 import org.gradle.caching.internal.DefaultBuildCacheHasher;
+import org.gradle.internal.hash.ContentHashFunction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,6 +48,18 @@ public class DefaultTaskOutputCachingBuildCacheKeyBuilder {
         return this;
     }
 
+    /**
+     * Appends the function that calculated the hashes of the input files, as hashes calculated by different functions are not comparable.
+     * MD5 is not appended, so that the keys of builds that use the default function do not change.
+     */
+    public DefaultTaskOutputCachingBuildCacheKeyBuilder appendContentHashFunction(ContentHashFunction hashFunction) {
+        if (hashFunction != ContentHashFunction.MD5) {
+            hasher.putString(hashFunction.getId());
+        }
+        log("contentHashFunction", hashFunction.getId());
+        return this;
+    }
+
     public DefaultTaskOutputCachingBuildCacheKeyBuilder appendClassloaderHash(@Nullable HashCode hashCode) {
         classLoaderHash = hashCode;
         if (hashCode != null) {
@@ -0,0 +1,1003 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.tasks;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import org.apache.commons.io.FileUtils;
+import org.apache.tools.zip.UnixStat;
+import org.gradle.api.GradleException;
+import org.gradle.api.JavaVersion;
+import org.gradle.api.UncheckedIOException;
+import org.gradle.api.file.FileVisitDetails;
+import org.gradle.api.file.FileVisitor;
+import org.gradle.api.file.RelativePath;
+import org.gradle.api.internal.file.TemporaryFileProvider;
+import org.gradle.api.internal.file.collections.DefaultDirectoryWalkerFactory;
+import org.gradle.api.internal.tasks.CacheableTaskOutputFilePropertySpec.OutputType;
+import org.gradle.api.internal.tasks.ResolvedTaskOutputFilePropertySpec;
+import org.gradle.api.internal.tasks.TaskFilePropertySpec;
+import org.gradle.api.specs.Specs;
+import org.gradle.caching.internal.tasks.origin.TaskOutputOriginMetadata;
+import org.gradle.caching.internal.tasks.origin.TaskOutputOriginReader;
+import org.gradle.caching.internal.tasks.origin.TaskOutputOriginWriter;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.concurrent.StoppableExecutor;
+import org.gradle.internal.nativeplatform.filesystem.FileSystem;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Packages task output into a format that can be unpacked without inflating and copying every file through the heap.
+ *
+ * <p>A cache entry starts with a magic number and the origin metadata, followed by segments of records, one record per file, directory or missing output.
+ * Each segment starts with its length and ends with an empty header. Each record consists of a length-prefixed header and, for files, the contents of the file. Compression is chosen per file: the first buffer read from each file is deflated as a sample,
+ * and only files that compress well are stored deflated. All other files, such as jars and images, are stored as-is.</p>
+ *
+ * <p>When the entry is read from a local file, stored file contents are copied straight from the cache entry to the output with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}. Entries read from any other stream, for example a remote cache,
+ * are unpacked by copying the stream.</p>
+ *
+ * <p>The records are grouped into segments. When parallel packing is enabled with the {@value #PARALLEL_PACKING_PROPERTY} system property, and a task has several
+ * output properties or an output directory with sub-directories, each property and each group of top-level sub-directories is packed into its own segment in parallel.
+ * The first segment is streamed straight to the cache entry, without a length. The other segments are written to temporary files and appended once their length is known.
+ * Segments that contain the roots of the output properties are marked as such, so that a local cache entry can be unpacked in parallel as well: first the segment without
+ * a length, then the other segments that contain the property roots, then the remaining segments.</p>
+ */
+public class DirectTaskOutputPacker implements TaskOutputPacker, Stoppable {
+    /**
+     * Enables packing and unpacking cache entries on multiple threads. Disabled by default.
+     */
+    public static final String PARALLEL_PACKING_PROPERTY = "org.gradle.internal.build-cache.parallel-packing";
+
+    private static final int MAGIC = 0x47424345;
+    private static final byte KIND_FILE = 1;
+    private static final byte KIND_DIRECTORY = 2;
+    private static final byte KIND_MISSING = 3;
+    private static final byte STORED = 0;
+    private static final byte DEFLATED = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Files smaller than this are not worth compressing
+    private static final int MIN_COMPRESSIBLE_SIZE = 512;
+    // Files are stored deflated only when the sample shrinks to this ratio or less
+    private static final double MAX_COMPRESSION_RATIO = 0.9;
+
+    private final DefaultDirectoryWalkerFactory directoryWalkerFactory;
+    private final FileSystem fileSystem;
+    private final TemporaryFileProvider temporaryFileProvider;
+    private final ExecutorFactory executorFactory;
+    private final int maxThreads;
+    private StoppableExecutor executor;
+
+    public DirectTaskOutputPacker(FileSystem fileSystem, TemporaryFileProvider temporaryFileProvider, ExecutorFactory executorFactory, int maxThreads) {
+        this.directoryWalkerFactory = new DefaultDirectoryWalkerFactory(JavaVersion.current(), fileSystem);
+        this.fileSystem = fileSystem;
+        this.temporaryFileProvider = temporaryFileProvider;
+        this.executorFactory = executorFactory;
+        this.maxThreads = maxThreads;
+    }
+
+    @Override
+    public void pack(Set<ResolvedTaskOutputFilePropertySpec> propertySpecs, OutputStream output, TaskOutputOriginWriter writeOrigin) {
+        try {
+            EntryWriter writer = new EntryWriter(output);
+            ByteArrayOutputStream metadata = new ByteArrayOutputStream();
+            writeOrigin.execute(metadata);
+            writer.writeHeader(metadata.toByteArray());
+            List<Segment> segments = planSegments(propertySpecs);
+            if (maxThreads > 1 && segments.size() > 1) {
+                packInParallel(segments, writer);
+            } else {
+                writer.writeSegmentCount(1);
+                writer.startSegment(-1, false);
+                for (Segment segment : segments) {
+                    segment.pack(writer);
+                }
+                writer.finishSegment();
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<Segment> planSegments(Set<ResolvedTaskOutputFilePropertySpec> propertySpecs) {
+        List<Segment> segments = Lists.newArrayList();
+        for (final ResolvedTaskOutputFilePropertySpec propertySpec : propertySpecs) {
+            final File outputFile = propertySpec.getOutputFile();
+            if (outputFile == null) {
+                continue;
+            }
+            if (maxThreads <= 1 || propertySpec.getOutputType() != OutputType.DIRECTORY || !outputFile.isDirectory()) {
+                segments.add(new Segment(propertySpec, false) {
+                    @Override
+                    void doPack(EntryWriter writer) throws IOException {
+                        packProperty(propertySpec, writer);
+                    }
+                });
+                continue;
+            }
+
+            // Pack the root of the directory and its direct children, and distribute the contents of the sub-directories over separate segments
+            File[] children = outputFile.listFiles();
+            if (children == null) {
+                throw new UncheckedIOException(String.format("Could not list contents of directory '%s'.", outputFile));
+            }
+            Arrays.sort(children);
+            final List<File> files = Lists.newArrayList();
+            final List<File> directories = Lists.newArrayList();
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    directories.add(child);
+                } else {
+                    files.add(child);
+                }
+            }
+            segments.add(new Segment(propertySpec, false) {
+                @Override
+                void doPack(EntryWriter writer) throws IOException {
+                    String propertyName = propertySpec.getPropertyName();
+                    writer.writeDirectory(propertyName, "", UnixStat.DEFAULT_DIR_PERM, outputFile.lastModified());
+                    for (File file : files) {
+                        writer.writeFile(propertyName, file.getName(), fileSystem.getUnixMode(file), file.lastModified(), file, file.length());
+                    }
+                }
+            });
+            int groups = Math.min(maxThreads, directories.size());
+            for (int group = 0; group < groups; group++) {
+                final List<File> groupDirectories = Lists.newArrayList();
+                for (int i = group; i < directories.size(); i += groups) {
+                    groupDirectories.add(directories.get(i));
+                }
+                segments.add(new Segment(propertySpec, true) {
+                    @Override
+                    void doPack(EntryWriter writer) throws IOException {
+                        for (File directory : groupDirectories) {
+                            walk(propertySpec.getPropertyName(), directory, new RelativePath(false, directory.getName()), writer);
+                        }
+                    }
+                });
+            }
+        }
+        return segments;
+    }
+
+    private void packInParallel(final List<Segment> segments, final EntryWriter writer) throws IOException {
+        final List<File> segmentFiles = Lists.newArrayListWithCapacity(segments.size() - 1);
+        try {
+            writer.writeSegmentCount(segments.size());
+            List<Callable<Void>> actions = Lists.newArrayListWithCapacity(segments.size());
+            // The calling thread streams the first segment straight to the output, while the other segments are written to temporary files
+            final Segment first = segments.get(0);
+            actions.add(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    writer.startSegment(-1, first.isNested());
+                    first.pack(writer);
+                    writer.finishSegment();
+                    return null;
+                }
+            });
+            for (final Segment segment : segments.subList(1, segments.size())) {
+                final File segmentFile = temporaryFileProvider.createTemporaryFile("cache-entry", ".segment");
+                segmentFiles.add(segmentFile);
+                actions.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        OutputStream output = new FileOutputStream(segmentFile);
+                        try {
+                            EntryWriter segmentWriter = new EntryWriter(output);
+                            segment.pack(segmentWriter);
+                            segmentWriter.finishSegment();
+                            segmentWriter.flush();
+                        } finally {
+                            output.close();
+                        }
+                        return null;
+                    }
+                });
+            }
+            runAll(actions);
+
+            for (int i = 0; i < segmentFiles.size(); i++) {
+                File segmentFile = segmentFiles.get(i);
+                writer.startSegment(segmentFile.length(), segments.get(i + 1).isNested());
+                writer.writeSegmentContents(segmentFile);
+            }
+        } finally {
+            for (File segmentFile : segmentFiles) {
+                FileUtils.deleteQuietly(segmentFile);
+            }
+        }
+    }
+
+    private void packProperty(ResolvedTaskOutputFilePropertySpec propertySpec, EntryWriter writer) throws IOException {
+        String propertyName = propertySpec.getPropertyName();
+        File outputFile = propertySpec.getOutputFile();
+        if (!outputFile.exists()) {
+            writer.writeMissing(propertyName);
+            return;
+        }
+        switch (propertySpec.getOutputType()) {
+            case DIRECTORY:
+                if (!outputFile.isDirectory()) {
+                    throw new IllegalArgumentException(String.format("Expected '%s' to be a directory", outputFile));
+                }
+                writer.writeDirectory(propertyName, "", UnixStat.DEFAULT_DIR_PERM, outputFile.lastModified());
+                walk(propertyName, outputFile, RelativePath.EMPTY_ROOT, writer);
+                break;
+            case FILE:
+                if (!outputFile.isFile()) {
+                    throw new IllegalArgumentException(String.format("Expected '%s' to be a file", outputFile));
+                }
+                writer.writeFile(propertyName, "", fileSystem.getUnixMode(outputFile), outputFile.lastModified(), outputFile, outputFile.length());
+                break;
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    private void walk(final String propertyName, File directory, RelativePath relativePath, final EntryWriter writer) {
+        if (!relativePath.getPathString().isEmpty()) {
+            try {
+                writer.writeDirectory(propertyName, relativePath.getPathString(), fileSystem.getUnixMode(directory), directory.lastModified());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        directoryWalkerFactory.create().walkDir(directory, relativePath, new FileVisitor() {
+            @Override
+            public void visitDir(FileVisitDetails dirDetails) {
+                try {
+                    writer.writeDirectory(propertyName, dirDetails.getRelativePath().getPathString(), dirDetails.getMode(), dirDetails.getLastModified());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public void visitFile(FileVisitDetails fileDetails) {
+                try {
+                    writer.writeFile(propertyName, fileDetails.getRelativePath().getPathString(), fileDetails.getMode(), fileDetails.getLastModified(), fileDetails.getFile(), fileDetails.getSize());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }, Specs.satisfyAll(), new AtomicBoolean(), false);
+    }
+
+    @Override
+    public TaskOutputOriginMetadata unpack(Set<ResolvedTaskOutputFilePropertySpec> propertySpecs, InputStream input, TaskOutputOriginReader readOrigin) {
+        final Map<String, ResolvedTaskOutputFilePropertySpec> propertySpecsMap = Maps.uniqueIndex(propertySpecs, new Function<TaskFilePropertySpec, String>() {
+            @Override
+            public String apply(TaskFilePropertySpec propertySpec) {
+                return propertySpec.getPropertyName();
+            }
+        });
+        try {
+            EntryReader reader;
+            FileChannel channel = null;
+            if (input instanceof FileInputStream) {
+                channel = ((FileInputStream) input).getChannel();
+                reader = new ChannelEntryReader(channel, channel.position());
+            } else {
+                reader = new StreamEntryReader(input);
+            }
+            checkFormat(reader.readInt(), reader.readInt());
+            TaskOutputOriginMetadata originMetadata = readOrigin.execute(new ByteArrayInputStream(reader.readBlock()));
+            int segmentCount = reader.readInt();
+            if (channel != null && maxThreads > 1 && segmentCount > 1) {
+                unpackInParallel(propertySpecsMap, channel, ((ChannelEntryReader) reader).getPosition(), segmentCount);
+            } else {
+                for (int i = 0; i < segmentCount; i++) {
+                    reader.readLong();
+                    reader.readBoolean();
+                    unpackSegment(propertySpecsMap, reader);
+                }
+            }
+            return originMetadata;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void unpackInParallel(final Map<String, ResolvedTaskOutputFilePropertySpec> propertySpecs, final FileChannel channel, long position, int segmentCount) throws IOException {
+        List<Callable<Void>> rootSegments = Lists.newArrayList();
+        List<Callable<Void>> nestedSegments = Lists.newArrayList();
+        ChannelEntryReader reader = new ChannelEntryReader(channel, position);
+        for (int i = 0; i < segmentCount; i++) {
+            long length = reader.readLong();
+            boolean nested = reader.readBoolean();
+            if (length < 0) {
+                // The end of a segment without a length is only found by reading it, so unpack it right away
+                if (nested || !rootSegments.isEmpty() || !nestedSegments.isEmpty()) {
+                    throw new IllegalStateException("Cached result format error, segment without length.");
+                }
+                unpackSegment(propertySpecs, reader);
+                continue;
+            }
+            final long start = reader.getPosition();
+            Callable<Void> action = new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    unpackSegment(propertySpecs, new ChannelEntryReader(channel, start));
+                    return null;
+                }
+            };
+            if (nested) {
+                nestedSegments.add(action);
+            } else {
+                rootSegments.add(action);
+            }
+            reader.skip(length);
+        }
+        // The roots of the output properties are cleaned up before their contents are unpacked
+        runAll(rootSegments);
+        runAll(nestedSegments);
+    }
+
+    private void unpackSegment(Map<String, ResolvedTaskOutputFilePropertySpec> propertySpecs, EntryReader reader) throws IOException {
+        byte[] header;
+        while ((header = reader.readHeader()) != null) {
+            unpackEntry(propertySpecs, new DataInputStream(new ByteArrayInputStream(header)), reader);
+        }
+    }
+
+    private void runAll(List<Callable<Void>> actions) {
+        if (actions.isEmpty()) {
+            return;
+        }
+        List<Future<Void>> futures = Lists.newArrayListWithCapacity(actions.size() - 1);
+        if (actions.size() > 1) {
+            StoppableExecutor executor = getExecutor();
+            for (Callable<Void> action : actions.subList(1, actions.size())) {
+                futures.add(executor.submit(action));
+            }
+        }
+        // The calling thread takes part in the work
+        Throwable failure = null;
+        try {
+            actions.get(0).call();
+        } catch (Throwable t) {
+            failure = t;
+        }
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            } catch (InterruptedException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw UncheckedException.throwAsUncheckedException(failure);
+        }
+    }
+
+    private synchronized StoppableExecutor getExecutor() {
+        if (executor == null) {
+            executor = executorFactory.create("Build cache entry packer", maxThreads);
+        }
+        return executor;
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.stop();
+            executor = null;
+        }
+    }
+
+    private void unpackEntry(Map<String, ResolvedTaskOutputFilePropertySpec> propertySpecs, DataInputStream header, EntryReader reader) throws IOException {
+        byte kind = header.readByte();
+        String propertyName = header.readUTF();
+        String childPath = header.readUTF();
+        ResolvedTaskOutputFilePropertySpec propertySpec = propertySpecs.get(propertyName);
+        if (propertySpec == null) {
+            throw new IllegalStateException(String.format("No output property '%s' registered", propertyName));
+        }
+        File propertyRoot = propertySpec.getOutputFile();
+        if (propertyRoot == null) {
+            throw new IllegalStateException("Optional property should have a value: " + propertySpec.getPropertyName());
+        }
+
+        if (kind == KIND_MISSING) {
+            if (!TaskOutputPackerUtils.makeDirectory(propertyRoot.getParentFile())) {
+                // Make sure output is removed if it exists already
+                if (propertyRoot.exists()) {
+                    FileUtils.forceDelete(propertyRoot);
+                }
+            }
+            return;
+        }
+        if (kind != KIND_FILE && kind != KIND_DIRECTORY) {
+            throw new IllegalStateException("Cached result format error, invalid entry kind: " + kind);
+        }
+
+        File outputFile;
+        if (childPath.isEmpty()) {
+            // We are handling the root of the property here
+            OutputType outputType = propertySpec.getOutputType();
+            if (kind == KIND_DIRECTORY && outputType != OutputType.DIRECTORY) {
+                throw new IllegalStateException("Property should be an output directory property: " + propertySpec.getPropertyName());
+            }
+            if (kind == KIND_FILE && outputType == OutputType.DIRECTORY) {
+                throw new IllegalStateException("Property should be an output file property: " + propertySpec.getPropertyName());
+            }
+            TaskOutputPackerUtils.ensureDirectoryForProperty(outputType, propertyRoot);
+            outputFile = propertyRoot;
+        } else {
+            outputFile = new File(propertyRoot, childPath);
+        }
+
+        int mode = header.readInt();
+        long lastModified = header.readLong();
+        if (kind == KIND_DIRECTORY) {
+            FileUtils.forceMkdir(outputFile);
+        } else {
+            byte compression = header.readByte();
+            long size = header.readLong();
+            reader.readFile(outputFile, compression == DEFLATED, size);
+        }
+
+        //noinspection OctalInteger
+        fileSystem.chmod(outputFile, mode & 0777);
+        if (!outputFile.setLastModified(lastModified)) {
+            throw new UnsupportedOperationException(String.format("Could not set modification time for '%s'", outputFile));
+        }
+    }
+
+    /**
+     * Decides whether a file is stored deflated, from a sample taken from the start of its contents. The sample is the whole file for files smaller than the buffer size.
+     */
+    @VisibleForTesting
+    static boolean isCompressible(byte[] sample, int sampleSize) {
+        if (sampleSize < MIN_COMPRESSIBLE_SIZE) {
+            return false;
+        }
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(sample, 0, sampleSize);
+            deflater.finish();
+            byte[] buffer = new byte[sampleSize];
+            long compressedSize = 0;
+            while (!deflater.finished()) {
+                compressedSize += deflater.deflate(buffer);
+            }
+            return compressedSize <= sampleSize * MAX_COMPRESSION_RATIO;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static class EntryWriter {
+        private final OutputStream rawOutput;
+        private final DataOutputStream output;
+        private final ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        private final DataOutputStream header = new DataOutputStream(headerBytes);
+        private final byte[] firstBuffer = new byte[BUFFER_SIZE];
+
+        EntryWriter(OutputStream output) {
+            this.rawOutput = output;
+            this.output = new DataOutputStream(new BufferedOutputStream(output, BUFFER_SIZE));
+        }
+
+        void writeHeader(byte[] metadata) throws IOException {
+            output.writeInt(MAGIC);
+            output.writeInt(CACHE_ENTRY_FORMAT);
+            output.writeInt(metadata.length);
+            output.write(metadata);
+        }
+
+        void writeSegmentCount(int count) throws IOException {
+            output.writeInt(count);
+        }
+
+        /**
+         * Starts a segment. The length is -1 when the length of the segment is not known up front, in which case the segment cannot be skipped.
+         */
+        void startSegment(long length, boolean nested) throws IOException {
+            output.writeLong(length);
+            output.writeBoolean(nested);
+        }
+
+        void writeSegmentContents(File segmentFile) throws IOException {
+            FileInputStream input = new FileInputStream(segmentFile);
+            try {
+                writeStored(firstBuffer, 0, input, segmentFile, segmentFile.length());
+            } finally {
+                input.close();
+            }
+        }
+
+        void finishSegment() throws IOException {
+            // A zero-length header marks the end of the segment
+            output.writeInt(0);
+        }
+
+        void flush() throws IOException {
+            output.flush();
+        }
+
+        void writeMissing(String propertyName) throws IOException {
+            startHeader(KIND_MISSING, propertyName, "");
+            finishHeader();
+        }
+
+        void writeDirectory(String propertyName, String childPath, int mode, long lastModified) throws IOException {
+            startHeader(KIND_DIRECTORY, propertyName, childPath);
+            header.writeInt(UnixStat.DIR_FLAG | mode);
+            header.writeLong(lastModified);
+            finishHeader();
+        }
+
+        void writeFile(String propertyName, String childPath, int mode, long lastModified, File file, long size) throws IOException {
+            FileInputStream input = new FileInputStream(file);
+            try {
+                // The first buffer of the contents decides whether the file is compressed, so that the file is only read once
+                int firstSize = ByteStreams.read(input, firstBuffer, 0, (int) Math.min(size, firstBuffer.length));
+                boolean compress = isCompressible(firstBuffer, firstSize);
+                startHeader(KIND_FILE, propertyName, childPath);
+                header.writeInt(UnixStat.FILE_FLAG | mode);
+                header.writeLong(lastModified);
+                header.writeByte(compress ? DEFLATED : STORED);
+                header.writeLong(size);
+                finishHeader();
+
+                if (compress) {
+                    writeDeflated(firstBuffer, firstSize, input, file, size);
+                } else {
+                    writeStored(firstBuffer, firstSize, input, file, size);
+                }
+            } finally {
+                input.close();
+            }
+        }
+
+        /**
+         * Writes the given first bytes, followed by the remaining contents of the input.
+         */
+        private void writeStored(byte[] first, int firstSize, FileInputStream input, File file, long size) throws IOException {
+            output.write(first, 0, firstSize);
+            long remaining = size - firstSize;
+            long copied;
+            if (rawOutput instanceof FileOutputStream) {
+                output.flush();
+                copied = transfer(input.getChannel(), firstSize, remaining, ((FileOutputStream) rawOutput).getChannel());
+            } else {
+                copied = ByteStreams.copy(ByteStreams.limit(input, remaining), output);
+            }
+            if (copied != remaining) {
+                throw new IllegalStateException(String.format("File '%s' changed while it was being packed", file));
+            }
+        }
+
+        private void writeDeflated(byte[] first, int firstSize, InputStream input, File file, long size) throws IOException {
+            // Deflated data is written in length-prefixed chunks, so that the reader knows where the file ends without inflating it
+            ChunkedOutputStream chunkedOutput = new ChunkedOutputStream(output);
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                DeflaterOutputStream deflaterOutput = new DeflaterOutputStream(chunkedOutput, deflater, BUFFER_SIZE);
+                deflaterOutput.write(first, 0, firstSize);
+                long remaining = size - firstSize;
+                long copied = ByteStreams.copy(ByteStreams.limit(input, remaining), deflaterOutput);
+                if (copied != remaining) {
+                    throw new IllegalStateException(String.format("File '%s' changed while it was being packed", file));
+                }
+                deflaterOutput.finish();
+                chunkedOutput.finish();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        private void startHeader(byte kind, String propertyName, String childPath) throws IOException {
+            headerBytes.reset();
+            header.writeByte(kind);
+            header.writeUTF(propertyName);
+            header.writeUTF(childPath);
+        }
+
+        private void finishHeader() throws IOException {
+            header.flush();
+            output.writeInt(headerBytes.size());
+            headerBytes.writeTo(output);
+        }
+    }
+
+    private abstract static class Segment {
+        private final ResolvedTaskOutputFilePropertySpec propertySpec;
+        private final boolean nested;
+
+        Segment(ResolvedTaskOutputFilePropertySpec propertySpec, boolean nested) {
+            this.propertySpec = propertySpec;
+            this.nested = nested;
+        }
+
+        /**
+         * Whether this segment only contains entries below the root of its property, and so needs to be unpacked after the root.
+         */
+        boolean isNested() {
+            return nested;
+        }
+
+        void pack(EntryWriter writer) {
+            try {
+                doPack(writer);
+            } catch (Exception ex) {
+                throw new GradleException(String.format("Could not pack property '%s': %s", propertySpec.getPropertyName(), ex.getMessage()), ex);
+            }
+        }
+
+        abstract void doPack(EntryWriter writer) throws IOException;
+    }
+
+    private abstract static class EntryReader {
+        abstract int readInt() throws IOException;
+
+        abstract long readLong() throws IOException;
+
+        abstract boolean readBoolean() throws IOException;
+
+        abstract byte[] readBlock() throws IOException;
+
+        /**
+         * Returns the next header, or {@code null} when the end of the segment has been reached.
+         */
+        byte[] readHeader() throws IOException {
+            byte[] header = readBlock();
+            return header.length == 0 ? null : header;
+        }
+
+        abstract void readFile(File target, boolean deflated, long size) throws IOException;
+    }
+
+    private static class StreamEntryReader extends EntryReader {
+        private final DataInputStream input;
+
+        StreamEntryReader(InputStream input) {
+            this.input = new DataInputStream(new BufferedInputStream(input, BUFFER_SIZE));
+        }
+
+        @Override
+        int readInt() throws IOException {
+            return input.readInt();
+        }
+
+        @Override
+        long readLong() throws IOException {
+            return input.readLong();
+        }
+
+        @Override
+        boolean readBoolean() throws IOException {
+            return input.readBoolean();
+        }
+
+        @Override
+        byte[] readBlock() throws IOException {
+            byte[] block = new byte[input.readInt()];
+            input.readFully(block);
+            return block;
+        }
+
+        @Override
+        void readFile(File target, boolean deflated, long size) throws IOException {
+            OutputStream output = new FileOutputStream(target);
+            try {
+                if (deflated) {
+                    inflate(new ChunkedInputStream(input), output, target, size);
+                } else if (ByteStreams.copy(ByteStreams.limit(input, size), output) != size) {
+                    throw new EOFException("Unexpected end of cache entry while reading " + target);
+                }
+            } finally {
+                output.close();
+            }
+        }
+    }
+
+    /**
+     * Reads from a file channel using positional reads only, so that several readers can share the same channel.
+     */
+    private static class ChannelEntryReader extends EntryReader {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(8);
+        private long position;
+
+        ChannelEntryReader(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        long getPosition() {
+            return position;
+        }
+
+        void skip(long count) {
+            position += count;
+        }
+
+        @Override
+        int readInt() throws IOException {
+            buffer.clear().limit(4);
+            readFully(buffer);
+            return buffer.getInt(0);
+        }
+
+        @Override
+        long readLong() throws IOException {
+            buffer.clear().limit(8);
+            readFully(buffer);
+            return buffer.getLong(0);
+        }
+
+        @Override
+        boolean readBoolean() throws IOException {
+            buffer.clear().limit(1);
+            readFully(buffer);
+            return buffer.get(0) != 0;
+        }
+
+        @Override
+        byte[] readBlock() throws IOException {
+            ByteBuffer block = ByteBuffer.allocate(readInt());
+            readFully(block);
+            return block.array();
+        }
+
+        private void readFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new EOFException("Unexpected end of cache entry");
+                }
+                position += read;
+            }
+        }
+
+        @Override
+        void readFile(File target, boolean deflated, long size) throws IOException {
+            FileOutputStream output = new FileOutputStream(target);
+            try {
+                if (deflated) {
+                    ChunkedInputStream chunkedInput = new ChunkedInputStream(new DataInputStream(new BufferedInputStream(new ChannelInputStream(channel, position), BUFFER_SIZE)));
+                    inflate(chunkedInput, output, target, size);
+                    // The buffered stream may have read past the end of the file contents
+                    position += chunkedInput.getConsumed();
+                } else {
+                    if (transfer(channel, position, size, output.getChannel()) != size) {
+                        throw new EOFException("Unexpected end of cache entry while reading " + target);
+                    }
+                    position += size;
+                }
+            } finally {
+                output.close();
+            }
+        }
+    }
+
+    /**
+     * An input stream over a file channel that uses positional reads, and so does not move the position of the channel.
+     */
+    private static class ChannelInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+
+        ChannelInputStream(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = read(single, 0, 1);
+            return read < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            int read = channel.read(ByteBuffer.wrap(bytes, offset, length), position);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+    }
+
+    private static long transfer(FileChannel source, long position, long size, WritableByteChannel target) throws IOException {
+        long transferred = 0;
+        while (transferred < size) {
+            long count = source.transferTo(position + transferred, size - transferred, target);
+            if (count <= 0) {
+                break;
+            }
+            transferred += count;
+        }
+        return transferred;
+    }
+
+    private static void checkFormat(int magic, int format) {
+        if (magic != MAGIC) {
+            throw new IllegalStateException("Cached result format error, not a cache entry.");
+        }
+        if (format != CACHE_ENTRY_FORMAT) {
+            throw new IllegalStateException(String.format("Cached result format error, unsupported format version %d.", format));
+        }
+    }
+
+    private static void inflate(ChunkedInputStream input, OutputStream output, File target, long size) throws IOException {
+        Inflater inflater = new Inflater(true);
+        try {
+            if (ByteStreams.copy(new InflaterInputStream(input, inflater, BUFFER_SIZE), output) != size) {
+                throw new EOFException("Unexpected end of cache entry while reading " + target);
+            }
+            // Skip to the terminating chunk, which the inflater does not need to read
+            ByteStreams.copy(input, ByteStreams.nullOutputStream());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Writes data as a sequence of length-prefixed chunks, terminated by an empty chunk.
+     */
+    private static class ChunkedOutputStream extends OutputStream {
+        private final DataOutputStream output;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int count;
+
+        ChunkedOutputStream(DataOutputStream output) {
+            this.output = output;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flushChunk();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (count == buffer.length) {
+                    flushChunk();
+                }
+                int chunk = Math.min(length, buffer.length - count);
+                System.arraycopy(bytes, offset, buffer, count, chunk);
+                count += chunk;
+                offset += chunk;
+                length -= chunk;
+            }
+        }
+
+        private void flushChunk() throws IOException {
+            if (count > 0) {
+                output.writeInt(count);
+                output.write(buffer, 0, count);
+                count = 0;
+            }
+        }
+
+        void finish() throws IOException {
+            flushChunk();
+            output.writeInt(0);
+        }
+    }
+
+    /**
+     * Reads data written by {@link ChunkedOutputStream}, stopping at the terminating chunk.
+     */
+    private static class ChunkedInputStream extends InputStream {
+        private final DataInputStream input;
+        private int remaining;
+        private boolean finished;
+        private long consumed;
+
+        ChunkedInputStream(DataInputStream input) {
+            this.input = input;
+        }
+
+        long getConsumed() {
+            return consumed;
+        }
+
+        private boolean nextChunk() throws IOException {
+            while (remaining == 0 && !finished) {
+                remaining = input.readInt();
+                consumed += 4;
+                finished = remaining == 0;
+            }
+            return !finished;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextChunk()) {
+                return -1;
+            }
+            int b = input.read();
+            if (b < 0) {
+                throw new EOFException("Unexpected end of cache entry");
+            }
+            remaining--;
+            consumed++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!nextChunk()) {
+                return -1;
+            }
+            int read = input.read(bytes, offset, Math.min(length, remaining));
+            if (read < 0) {
+                throw new EOFException("Unexpected end of cache entry");
+            }
+            remaining -= read;
+            consumed += read;
+            return read;
+        }
+    }
+}
@@ -21,6 +21,7 @@ import org.gradle.api.internal.changedetection.state.FileCollectionSnapshot;
 import org.gradle.api.internal.changedetection.state.TaskExecution;
 import org.gradle.api.internal.changedetection.state.ValueSnapshot;
 import org.gradle.caching.internal.DefaultBuildCacheHasher;
+import org.gradle.internal.hash.ContentHashFunction;
 
 import java.util.List;
 import java.util.Map;
@@ -35,6 +36,7 @@ public class TaskCacheKeyCalculator {
         List<HashCode> taskActionsClassLoaderHashes = execution.getTaskActionsClassLoaderHashes();
 
         builder.appendTaskClass(execution.getTaskClass());
+        builder.appendContentHashFunction(ContentHashFunction.current());
         builder.appendClassloaderHash(taskClassLoaderHash);
         builder.appendActionsClassloaderHashes(taskActionsClassLoaderHashes);
 
@@ -26,13 +26,13 @@ import java.io.OutputStream;
 import java.util.Set;
 
 public interface TaskOutputPacker {
-    // Initial format version
+    // Format 1 was a gzipped tar archive, format 2 is written by DirectTaskOutputPacker
     // NOTE: This should be changed whenever we change the way we pack a cache entry, such as
-    // - changing from gzip to bzip2.
+    // - changing the compression of stored files.
     // - adding/removing properties to the origin metadata
     // - using a different format for the origin metadata
     // - any major changes of the layout of a cache entry
-    int CACHE_ENTRY_FORMAT = 1;
+    int CACHE_ENTRY_FORMAT = 2;
 
     void pack(Set<ResolvedTaskOutputFilePropertySpec> propertySpecs, OutputStream output, TaskOutputOriginWriter writeOrigin);
 
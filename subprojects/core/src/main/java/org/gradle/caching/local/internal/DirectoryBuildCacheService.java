@@ -22,20 +22,19 @@ import org.gradle.api.UncheckedIOException;
 import org.gradle.cache.CacheBuilder;
 import org.gradle.cache.CacheRepository;
 import org.gradle.cache.PersistentCache;
+import org.gradle.cache.internal.AccessTimeJournal;
 import org.gradle.cache.internal.FixedSizeOldestCacheCleanup;
 import org.gradle.caching.BuildCacheEntryReader;
 import org.gradle.caching.BuildCacheEntryWriter;
 import org.gradle.caching.BuildCacheException;
 import org.gradle.caching.BuildCacheKey;
 import org.gradle.caching.BuildCacheService;
-import org.gradle.internal.Factory;
 import org.gradle.internal.operations.BuildOperationExecutor;
-import org.gradle.internal.resource.local.LocallyAvailableResource;
-import org.gradle.internal.resource.local.PathKeyFileStore;
 import org.gradle.util.GFileUtils;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -43,15 +42,28 @@ import java.io.OutputStream;
 import static org.gradle.cache.internal.FileLockManager.LockMode.None;
 import static org.gradle.cache.internal.filelock.LockOptionsBuilder.mode;
 
+/**
+ * A build cache that stores entries in a local directory.
+ *
+ * <p>Entries are sharded into sub-directories by the first characters of their key. Entries are never modified once they have been published:
+ * a new entry is written to a temporary file in its shard and then renamed into place, so loading an entry does not need to hold a lock.
+ * Instead of touching entries when they are loaded, the accesses are recorded in an {@link AccessTimeJournal}, which is used to find the least
+ * recently used entries during cleanup.</p>
+ */
 public class DirectoryBuildCacheService implements BuildCacheService {
-    private final PathKeyFileStore fileStore;
+    private static final int SHARD_PREFIX_LENGTH = 2;
+    private static final String JOURNAL_FILE_NAME = "access.journal";
+
+    private final File baseDir;
+    private final AccessTimeJournal journal;
     private final PersistentCache persistentCache;
 
     public DirectoryBuildCacheService(CacheRepository cacheRepository, BuildOperationExecutor buildOperationExecutor, File baseDir, long targetCacheSize) {
-        this.fileStore = new PathKeyFileStore(baseDir);
+        this.baseDir = baseDir;
+        this.journal = new AccessTimeJournal(new File(baseDir, JOURNAL_FILE_NAME));
         this.persistentCache = cacheRepository
             .cache(checkDirectory(baseDir))
-            .withCleanup(new FixedSizeOldestCacheCleanup(buildOperationExecutor, targetCacheSize))
+            .withCleanup(new FixedSizeOldestCacheCleanup(buildOperationExecutor, targetCacheSize, journal))
             .withDisplayName("Build cache")
             .withLockOptions(mode(None))
             .withCrossVersionCache(CacheBuilder.LockTarget.DefaultTarget)
@@ -77,42 +89,43 @@ public class DirectoryBuildCacheService implements BuildCacheService {
         return directory;
     }
 
-    @Override
-    public boolean load(final BuildCacheKey key, final BuildCacheEntryReader reader) throws BuildCacheException {
-        // We need to lock here because garbage collection can be under way in another process
-        return persistentCache.withFileLock(new Factory<Boolean>() {
-            @Override
-            public Boolean create() {
-                LocallyAvailableResource resource = fileStore.get(key.getHashCode());
-                if (resource == null) {
-                    return false;
-                }
-
-                try {
-                    // Mark as recently used
-                    GFileUtils.touch(resource.getFile());
+    private File getShardDir(String hashCode) {
+        return new File(baseDir, hashCode.substring(0, Math.min(SHARD_PREFIX_LENGTH, hashCode.length())));
+    }
 
-                    Closer closer = Closer.create();
-                    FileInputStream stream = closer.register(new FileInputStream(resource.getFile()));
-                    try {
-                        reader.readFrom(stream);
-                        return true;
-                    } finally {
-                        closer.close();
-                    }
-                } catch (IOException ex) {
-                    throw new UncheckedIOException(ex);
-                }
+    @Override
+    public boolean load(BuildCacheKey key, BuildCacheEntryReader reader) throws BuildCacheException {
+        String hashCode = key.getHashCode();
+        File entry = new File(getShardDir(hashCode), hashCode);
+        try {
+            FileInputStream stream;
+            try {
+                stream = new FileInputStream(entry);
+            } catch (FileNotFoundException e) {
+                // Not in the cache, or removed by a concurrent cleanup
+                return false;
+            }
+            journal.recordAccess(hashCode, System.currentTimeMillis());
+            try {
+                reader.readFrom(stream);
+                return true;
+            } finally {
+                stream.close();
             }
-        });
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
     }
 
     @Override
-    public void store(final BuildCacheKey key, final BuildCacheEntryWriter result) throws BuildCacheException {
-        final String hashCode = key.getHashCode();
-        final File tempFile;
+    public void store(BuildCacheKey key, BuildCacheEntryWriter result) throws BuildCacheException {
+        String hashCode = key.getHashCode();
+        File shardDir = getShardDir(hashCode);
+        GFileUtils.mkdirs(shardDir);
+        File tempFile;
         try {
-            tempFile = File.createTempFile(hashCode, ".part", persistentCache.getBaseDir());
+            // Create the temporary file in the shard, so that it can be renamed into place atomically
+            tempFile = File.createTempFile(hashCode, ".part", shardDir);
         } catch (IOException ex) {
             throw new UncheckedIOException(ex);
         }
@@ -129,12 +142,14 @@ public class DirectoryBuildCacheService implements BuildCacheService {
             } catch (IOException ex) {
                 throw new UncheckedIOException(ex);
             }
-            persistentCache.useCache(new Runnable() {
-                @Override
-                public void run() {
-                    fileStore.move(hashCode, tempFile);
+            File entry = new File(shardDir, hashCode);
+            if (!tempFile.renameTo(entry)) {
+                // Renaming over an existing entry fails on some platforms, and deleting it fails while it is being read.
+                // Entries with the same key are interchangeable, so keep the existing one in that case.
+                if (!(entry.delete() && tempFile.renameTo(entry)) && !entry.isFile()) {
+                    throw new UncheckedIOException(String.format("Could not move temporary file %s to %s.", tempFile, entry));
                 }
-            });
+            }
         } finally {
             FileUtils.deleteQuietly(tempFile);
         }
@@ -142,6 +157,10 @@ public class DirectoryBuildCacheService implements BuildCacheService {
 
     @Override
     public void close() throws IOException {
-        persistentCache.close();
+        try {
+            journal.flush();
+        } finally {
+            persistentCache.close();
+        }
     }
 }
@@ -17,23 +17,36 @@ package org.gradle.configuration;
 
 import org.gradle.StartParameter;
 import org.gradle.api.internal.GradleInternal;
+import org.gradle.api.internal.project.ProjectInternal;
 import org.gradle.execution.ProjectConfigurer;
 import org.gradle.util.SingleMessageLogger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+
 public class DefaultBuildConfigurer implements BuildConfigurer {
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultBuildConfigurer.class);
     private final ProjectConfigurer projectConfigurer;
+    private final ProjectConfigurationCache projectConfigurationCache;
 
-    public DefaultBuildConfigurer(ProjectConfigurer projectConfigurer) {
+    public DefaultBuildConfigurer(ProjectConfigurer projectConfigurer, ProjectConfigurationCache projectConfigurationCache) {
         this.projectConfigurer = projectConfigurer;
+        this.projectConfigurationCache = projectConfigurationCache;
     }
 
     public void configure(GradleInternal gradle) {
         maybeInformAboutIncubatingMode(gradle);
         if (gradle.getStartParameter().isConfigureOnDemand()) {
             projectConfigurer.configure(gradle.getRootProject());
+            return;
+        }
+        List<ProjectInternal> projectsToConfigure = projectConfigurationCache.getProjectsToConfigure(gradle);
+        if (projectsToConfigure != null) {
+            projectConfigurer.configure(gradle.getRootProject());
+            for (ProjectInternal project : projectsToConfigure) {
+                projectConfigurer.configure(project);
+            }
         } else {
             projectConfigurer.configureHierarchy(gradle.getRootProject());
         }
@@ -0,0 +1,345 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.configuration;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.gradle.StartParameter;
+import org.gradle.TaskExecutionRequest;
+import org.gradle.api.Nullable;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.internal.GradleInternal;
+import org.gradle.api.internal.hash.FileHasher;
+import org.gradle.api.internal.project.ProjectInternal;
+import org.gradle.cache.CacheRepository;
+import org.gradle.cache.PersistentCache;
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.cache.PersistentIndexedCacheParameters;
+import org.gradle.cache.internal.FileLockManager;
+import org.gradle.groovy.scripts.Script;
+import org.gradle.groovy.scripts.ScriptExecutionListener;
+import org.gradle.groovy.scripts.ScriptSource;
+import org.gradle.initialization.buildsrc.BuildSrcClassPathListener;
+import org.gradle.internal.classpath.ClassPath;
+import org.gradle.internal.serialize.AbstractSerializer;
+import org.gradle.internal.serialize.Decoder;
+import org.gradle.internal.serialize.Encoder;
+import org.gradle.internal.serialize.HashCodeSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.gradle.cache.internal.filelock.LockOptionsBuilder.mode;
+
+/**
+ * Remembers which projects the task graph of a build needs, so that a later build that requests the same tasks, with the same scripts, properties and environment,
+ * only configures those projects.
+ *
+ * <p>When a build configures all of its projects, the files of the scripts that were executed, the build files of all projects and a few other files that influence
+ * the configuration of the build are recorded, together with the projects that own the tasks of the task graph. A later build with the same request uses this entry
+ * when none of these files has changed. It configures the root project, then the recorded projects and their parents, and leaves the other projects to be configured
+ * on demand, in the same way as when configuration on demand is enabled. So, like configuration on demand, this is only suitable for builds whose projects are decoupled.</p>
+ */
+public class ProjectConfigurationCache implements ScriptExecutionListener, BuildSrcClassPathListener {
+    /**
+     * Enables the cache. Disabled by default.
+     *
+     * <p>The cache only tracks the executed scripts, the init scripts, the settings file, the build files and {@code gradle.properties} files of all projects, the class path
+     * built from buildSrc, and the requested tasks, properties and environment. A cached entry can be wrong when the configuration of the build depends on anything else, in particular:</p>
+     * <ul>
+     *     <li>files other than these that are read by build logic, such as a version file or a plugin configuration file;</li>
+     *     <li>directory listings in the settings file, such as projects included for each sub-directory that contains a build file;</li>
+     *     <li>scripts that configure other projects but were not executed by the build that stored the entry, for example because they are applied conditionally.</li>
+     * </ul>
+     */
+    public static final String CONFIGURATION_CACHE_PROPERTY = "org.gradle.internal.configuration-cache";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProjectConfigurationCache.class);
+    private static final HashCode MISSING_FILE = HashCode.fromInt(0);
+
+    private final CacheRepository cacheRepository;
+    private final FileHasher fileHasher;
+    private final boolean enabled;
+    private final Set<File> executedScripts = new LinkedHashSet<File>();
+    private final List<File> buildSrcClassPath = new ArrayList<File>();
+    private boolean uncacheable;
+    private boolean used;
+
+    public ProjectConfigurationCache(CacheRepository cacheRepository, FileHasher fileHasher) {
+        this(cacheRepository, fileHasher, Boolean.getBoolean(CONFIGURATION_CACHE_PROPERTY));
+    }
+
+    ProjectConfigurationCache(CacheRepository cacheRepository, FileHasher fileHasher, boolean enabled) {
+        this.cacheRepository = cacheRepository;
+        this.fileHasher = fileHasher;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public synchronized void scriptClassLoaded(ScriptSource source, Class<? extends Script> scriptClass) {
+        File file = source.getResource().getFile();
+        if (file == null) {
+            // Cannot tell whether a script that is not backed by a file changes
+            uncacheable = true;
+        } else {
+            executedScripts.add(file);
+        }
+    }
+
+    @Override
+    public synchronized void buildSrcClassPathResolved(ClassPath classPath) {
+        buildSrcClassPath.clear();
+        buildSrcClassPath.addAll(classPath.getAsFiles());
+    }
+
+    /**
+     * Returns true when the projects of this build were configured using an entry of this cache, rather than all being configured up front.
+     */
+    public boolean isUsed() {
+        return used;
+    }
+
+    /**
+     * Returns the projects to configure for the given build, in the order they should be configured, or null when all projects should be configured.
+     */
+    @Nullable
+    public List<ProjectInternal> getProjectsToConfigure(final GradleInternal gradle) {
+        if (!isApplicable(gradle)) {
+            return null;
+        }
+        Entry entry = withCache(gradle, new CacheAction<Entry>() {
+            @Override
+            public Entry execute(PersistentIndexedCache<String, Entry> cache) {
+                return cache.get(requestKey(gradle));
+            }
+        });
+        if (entry == null) {
+            LOGGER.info("No cached project configuration found for this build.");
+            return null;
+        }
+        for (Map.Entry<String, HashCode> input : entry.inputs.entrySet()) {
+            if (!hash(new File(input.getKey())).equals(input.getValue())) {
+                LOGGER.info("Cached project configuration is out of date as {} has changed.", input.getKey());
+                return null;
+            }
+        }
+
+        Set<ProjectInternal> projects = new TreeSet<ProjectInternal>();
+        for (String path : entry.projectPaths) {
+            ProjectInternal project = gradle.getRootProject().findProject(path);
+            if (project == null) {
+                return null;
+            }
+            for (ProjectInternal current = project; current != null; current = current.getParent()) {
+                projects.add(current);
+            }
+        }
+        used = true;
+        LOGGER.info("Using cached project configuration, configuring {} of {} projects.", projects.size(), gradle.getRootProject().getAllprojects().size());
+        return new ArrayList<ProjectInternal>(projects);
+    }
+
+    /**
+     * Records the projects that own the tasks of the task graph of the given build, when all of its projects were configured.
+     */
+    public void store(final GradleInternal gradle) {
+        if (!isApplicable(gradle) || used) {
+            return;
+        }
+        final Entry entry;
+        synchronized (this) {
+            if (uncacheable) {
+                LOGGER.info("Not caching project configuration, as scripts that are not files were executed.");
+                return;
+            }
+            entry = new Entry(hashInputs(gradle), projectPathsOf(gradle.getTaskGraph().getAllTasks()));
+        }
+        withCache(gradle, new CacheAction<Void>() {
+            @Override
+            public Void execute(PersistentIndexedCache<String, Entry> cache) {
+                cache.put(requestKey(gradle), entry);
+                return null;
+            }
+        });
+    }
+
+    private boolean isApplicable(GradleInternal gradle) {
+        return enabled && gradle.getParent() == null && gradle.getIncludedBuilds().isEmpty() && !gradle.getStartParameter().isConfigureOnDemand();
+    }
+
+    private Map<String, HashCode> hashInputs(GradleInternal gradle) {
+        Set<File> inputs = new LinkedHashSet<File>(executedScripts);
+        File rootDir = gradle.getRootProject().getProjectDir();
+        inputs.add(new File(rootDir, "settings.gradle"));
+        inputs.add(new File(rootDir, Project.GRADLE_PROPERTIES));
+        inputs.addAll(gradle.getStartParameter().getAllInitScripts());
+        for (File file : buildSrcClassPath) {
+            addFiles(file, inputs);
+        }
+        inputs.add(new File(gradle.getStartParameter().getGradleUserHomeDir(), Project.GRADLE_PROPERTIES));
+        for (Project project : gradle.getRootProject().getAllprojects()) {
+            inputs.add(project.getBuildFile());
+            inputs.add(new File(project.getProjectDir(), Project.GRADLE_PROPERTIES));
+        }
+        Map<String, HashCode> hashes = new TreeMap<String, HashCode>();
+        for (File input : inputs) {
+            hashes.put(input.getAbsolutePath(), hash(input));
+        }
+        return hashes;
+    }
+
+    private static void addFiles(File file, Set<File> files) {
+        File[] children = file.listFiles();
+        if (children == null) {
+            files.add(file);
+            return;
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            addFiles(child, files);
+        }
+    }
+
+    private HashCode hash(File file) {
+        return file.isFile() ? fileHasher.hash(file) : MISSING_FILE;
+    }
+
+    private static List<String> projectPathsOf(Iterable<Task> tasks) {
+        Set<String> paths = new TreeSet<String>();
+        for (Task task : tasks) {
+            paths.add(task.getProject().getPath());
+        }
+        return new ArrayList<String>(paths);
+    }
+
+    /**
+     * Calculates the key of a build request, from the requested tasks, the properties and the environment of the build, and the locations of the init scripts and the buildSrc class path.
+     */
+    private synchronized String requestKey(GradleInternal gradle) {
+        StartParameter startParameter = gradle.getStartParameter();
+        Hasher hasher = Hashing.md5().newHasher();
+        hasher.putUnencodedChars(gradle.getDefaultProject().getPath());
+        for (TaskExecutionRequest request : startParameter.getTaskRequests()) {
+            hasher.putUnencodedChars(String.valueOf(request.getProjectPath()));
+            putStrings(hasher, request.getArgs());
+        }
+        putStrings(hasher, new TreeSet<String>(startParameter.getExcludedTaskNames()));
+        hasher.putBoolean(startParameter.isBuildProjectDependencies());
+        putMap(hasher, startParameter.getProjectProperties());
+        putMap(hasher, startParameter.getSystemPropertiesArgs());
+        putMap(hasher, System.getenv());
+        putStrings(hasher, absolutePaths(startParameter.getAllInitScripts()));
+        putStrings(hasher, absolutePaths(buildSrcClassPath));
+        return hasher.hash().toString();
+    }
+
+    private static List<String> absolutePaths(List<File> files) {
+        List<String> paths = new ArrayList<String>(files.size());
+        for (File file : files) {
+            paths.add(file.getAbsolutePath());
+        }
+        return paths;
+    }
+
+    private static void putStrings(Hasher hasher, Iterable<String> values) {
+        for (String value : values) {
+            hasher.putInt(value.length());
+            hasher.putUnencodedChars(value);
+        }
+        hasher.putInt(-1);
+    }
+
+    private static void putMap(Hasher hasher, Map<String, String> values) {
+        for (Map.Entry<String, String> entry : new TreeMap<String, String>(values).entrySet()) {
+            putStrings(hasher, Collections.singletonList(entry.getKey()));
+            putStrings(hasher, Collections.singletonList(entry.getValue()));
+        }
+        hasher.putInt(-1);
+    }
+
+    private <T> T withCache(GradleInternal gradle, CacheAction<T> action) {
+        PersistentCache cache = cacheRepository
+            .cache(gradle, "projectConfiguration")
+            .withDisplayName("project configuration cache")
+            .withLockOptions(mode(FileLockManager.LockMode.None)) // Lock on demand
+            .open();
+        try {
+            return action.execute(cache.createCache(new PersistentIndexedCacheParameters<String, Entry>("projectConfiguration", String.class, new EntrySerializer())));
+        } finally {
+            cache.close();
+        }
+    }
+
+    private interface CacheAction<T> {
+        T execute(PersistentIndexedCache<String, Entry> cache);
+    }
+
+    private static class Entry {
+        final Map<String, HashCode> inputs;
+        final List<String> projectPaths;
+
+        Entry(Map<String, HashCode> inputs, List<String> projectPaths) {
+            this.inputs = inputs;
+            this.projectPaths = projectPaths;
+        }
+    }
+
+    private static class EntrySerializer extends AbstractSerializer<Entry> {
+        private final HashCodeSerializer hashCodeSerializer = new HashCodeSerializer();
+
+        @Override
+        public Entry read(Decoder decoder) throws IOException {
+            int inputCount = decoder.readSmallInt();
+            Map<String, HashCode> inputs = new TreeMap<String, HashCode>();
+            for (int i = 0; i < inputCount; i++) {
+                inputs.put(decoder.readString(), hashCodeSerializer.read(decoder));
+            }
+            int projectCount = decoder.readSmallInt();
+            List<String> projectPaths = new ArrayList<String>(projectCount);
+            for (int i = 0; i < projectCount; i++) {
+                projectPaths.add(decoder.readString());
+            }
+            return new Entry(inputs, projectPaths);
+        }
+
+        @Override
+        public void write(Encoder encoder, Entry value) throws IOException {
+            encoder.writeSmallInt(value.inputs.size());
+            for (Map.Entry<String, HashCode> input : value.inputs.entrySet()) {
+                encoder.writeString(input.getKey());
+                hashCodeSerializer.write(encoder, input.getValue());
+            }
+            encoder.writeSmallInt(value.projectPaths.size());
+            for (String path : value.projectPaths) {
+                encoder.writeString(path);
+            }
+        }
+    }
+}
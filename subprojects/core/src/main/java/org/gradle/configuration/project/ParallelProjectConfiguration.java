@@ -0,0 +1,234 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.configuration.project;
+
+import org.gradle.StartParameter;
+import org.gradle.api.CircularReferenceException;
+import org.gradle.api.InvalidUserCodeException;
+import org.gradle.api.Project;
+import org.gradle.api.internal.project.ProjectIdentifier;
+import org.gradle.api.internal.project.ProjectInternal;
+import org.gradle.internal.resources.ResourceLock;
+import org.gradle.internal.work.WorkerLeaseService;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coordinates the configuration of projects on multiple threads, for builds whose projects are decoupled from each other.
+ *
+ * <p>A thread that configures a project holds the project lock of that project. When the project depends on the evaluation of another project, the thread acquires
+ * the lock of that project as well, so that it waits for another thread that is configuring that project. A circular wait fails instead of blocking forever.
+ * Configuring a project other than the project being configured, or one of its descendants, fails fast.</p>
+ *
+ * <p>A project that is looked up from the configuration of another project, which is not one of its ancestors, is marked as accessed. When it has not been configured yet, it is configured
+ * while holding its lock before it is returned, as with {@link Project#evaluationDependsOn(String)}, so that the lookup does not observe a partially configured project. Changing an accessed
+ * project from the configuration of a project other than that project or one of its ancestors fails fast, as the other project may be looked up and changed from several threads at the same time.</p>
+ *
+ * <p>Parallel configuration is only used when parallel project execution is enabled, as project locks are not separate from each other otherwise.</p>
+ */
+public class ParallelProjectConfiguration {
+    /**
+     * Enables the configuration of projects in parallel. Disabled by default.
+     */
+    public static final String PARALLEL_CONFIGURATION_PROPERTY = "org.gradle.internal.parallel-configuration";
+
+    private final WorkerLeaseService workerLeaseService;
+    private final boolean enabled;
+    private final ThreadLocal<ProjectInternal> configuring = new ThreadLocal<ProjectInternal>();
+    private final Map<ProjectInternal, Thread> lockOwners = new HashMap<ProjectInternal, Thread>();
+    private final Map<Thread, ProjectInternal> waitingFor = new HashMap<Thread, ProjectInternal>();
+    private final Set<ProjectInternal> accessed = Collections.newSetFromMap(new ConcurrentHashMap<ProjectInternal, Boolean>());
+
+    public ParallelProjectConfiguration(WorkerLeaseService workerLeaseService, StartParameter startParameter) {
+        this(workerLeaseService, startParameter.isParallelProjectExecutionEnabled() && Boolean.getBoolean(PARALLEL_CONFIGURATION_PROPERTY));
+    }
+
+    ParallelProjectConfiguration(WorkerLeaseService workerLeaseService, boolean enabled) {
+        this.workerLeaseService = workerLeaseService;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Evaluates the given project while holding its lock. Called from the threads that configure projects in parallel.
+     */
+    public void configure(final ProjectInternal project) {
+        runWithLock(project, new Runnable() {
+            @Override
+            public void run() {
+                project.evaluate();
+            }
+        });
+    }
+
+    /**
+     * Runs the given action while holding the lock of the given project, when the current thread is configuring another project in parallel. Runs the action directly otherwise.
+     */
+    public void withProjectLock(ProjectInternal project, Runnable action) {
+        if (configuring.get() == null || isLockedByCurrentThread(project)) {
+            action.run();
+        } else {
+            runWithLock(project, action);
+        }
+    }
+
+    /**
+     * Fails when the current thread is configuring a project in parallel, and the given projects are not that project or its descendants.
+     */
+    public void assertCanConfigure(Iterable<? extends Project> projects) {
+        ProjectInternal current = configuring.get();
+        if (current == null) {
+            return;
+        }
+        for (Project project : projects) {
+            if (!isSelfOrDescendant(current, (ProjectInternal) project)) {
+                throw new InvalidUserCodeException(String.format("%s cannot configure %s, as projects are configured in parallel. Configure it from a common parent project instead, or disable parallel configuration.",
+                    current.getDisplayName(), project.getDisplayName()));
+            }
+        }
+    }
+
+    /**
+     * Marks the given project as accessed and configures it when it has not been configured yet, when the current thread is configuring a project in parallel and the given project is not
+     * that project or one of its descendants.
+     *
+     * @return the given project.
+     * @throws CircularReferenceException when configuring the given project waits for the project being configured by the current thread.
+     */
+    public <T extends ProjectInternal> T accessed(T project) {
+        ProjectInternal current = configuring.get();
+        if (current != null && project != null && !isSelfOrDescendant(current, project)) {
+            accessed.add(project);
+            configureAccessed(project);
+        }
+        return project;
+    }
+
+    private void configureAccessed(final ProjectInternal project) {
+        if (project.getState().getExecuted()) {
+            return;
+        }
+        // Configures the parent projects first, as the evaluation of a project may use them
+        ProjectInternal parent = project.getParent();
+        if (parent != null) {
+            configureAccessed(parent);
+        }
+        withProjectLock(project, new Runnable() {
+            @Override
+            public void run() {
+                // Another thread may have configured the project while this thread was waiting for its lock
+                if (!project.getState().getExecuted()) {
+                    project.evaluate();
+                }
+            }
+        });
+    }
+
+    /**
+     * Fails when the given project has been marked as accessed, and the current thread is configuring a project in parallel that is not the given project or one of its ancestors.
+     */
+    public void assertCanMutate(ProjectInternal project) {
+        if (accessed.isEmpty() || !accessed.contains(project)) {
+            return;
+        }
+        ProjectInternal current = configuring.get();
+        if (current != null && !isSelfOrDescendant(current, project)) {
+            throw new InvalidUserCodeException(String.format("%s cannot change %s, as projects are configured in parallel. Change it from %s or one of its parent projects instead, or disable parallel configuration.",
+                current.getDisplayName(), project.getDisplayName(), project.getDisplayName()));
+        }
+    }
+
+    private void runWithLock(final ProjectInternal project, final Runnable action) {
+        final Thread thread = Thread.currentThread();
+        synchronized (this) {
+            if (waitsForCurrentThread(project, thread)) {
+                throw new CircularReferenceException(String.format("Circular referencing during evaluation for %s.", project));
+            }
+            waitingFor.put(thread, project);
+        }
+        try {
+            workerLeaseService.withLocks(getLock(project)).execute(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (ParallelProjectConfiguration.this) {
+                        waitingFor.remove(thread);
+                        lockOwners.put(project, thread);
+                    }
+                    ProjectInternal previous = configuring.get();
+                    configuring.set(project);
+                    try {
+                        action.run();
+                    } finally {
+                        configuring.set(previous);
+                        synchronized (ParallelProjectConfiguration.this) {
+                            lockOwners.remove(project);
+                        }
+                    }
+                }
+            });
+        } finally {
+            synchronized (this) {
+                waitingFor.remove(thread);
+            }
+        }
+    }
+
+    /**
+     * Returns true when the thread that holds the lock of the given project waits, directly or through other threads, for a lock held by the given thread.
+     */
+    private boolean waitsForCurrentThread(ProjectInternal project, Thread thread) {
+        Set<Thread> visited = new HashSet<Thread>();
+        Thread owner = lockOwners.get(project);
+        while (owner != null && visited.add(owner)) {
+            if (owner == thread) {
+                return true;
+            }
+            ProjectInternal awaited = waitingFor.get(owner);
+            if (awaited == null) {
+                return false;
+            }
+            owner = lockOwners.get(awaited);
+        }
+        return false;
+    }
+
+    private synchronized boolean isLockedByCurrentThread(ProjectInternal project) {
+        return lockOwners.get(project) == Thread.currentThread();
+    }
+
+    private ResourceLock getLock(ProjectInternal project) {
+        return workerLeaseService.getProjectLock(project.getGradle().getIdentityPath().toString(), project.getIdentityPath().toString());
+    }
+
+    private static boolean isSelfOrDescendant(ProjectInternal ancestor, ProjectInternal project) {
+        // Walks the identifiers, as looking up the parent project marks it as accessed
+        for (ProjectIdentifier current = project; current != null; current = current.getParentIdentifier()) {
+            if (current == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
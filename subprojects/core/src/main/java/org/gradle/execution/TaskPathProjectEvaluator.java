@@ -16,16 +16,30 @@
 
 package org.gradle.execution;
 
+import org.gradle.api.Action;
 import org.gradle.api.BuildCancelledException;
 import org.gradle.api.Project;
 import org.gradle.api.internal.project.ProjectInternal;
+import org.gradle.configuration.project.ParallelProjectConfiguration;
 import org.gradle.initialization.BuildCancellationToken;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.BuildOperationQueue;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.internal.progress.BuildOperationDescriptor;
+
+import java.util.ArrayList;
+import java.util.List;
 
 public class TaskPathProjectEvaluator implements ProjectConfigurer {
     private final BuildCancellationToken cancellationToken;
+    private final ParallelProjectConfiguration parallelProjectConfiguration;
+    private final BuildOperationExecutor buildOperationExecutor;
 
-    public TaskPathProjectEvaluator(BuildCancellationToken cancellationToken) {
+    public TaskPathProjectEvaluator(BuildCancellationToken cancellationToken, ParallelProjectConfiguration parallelProjectConfiguration, BuildOperationExecutor buildOperationExecutor) {
         this.cancellationToken = cancellationToken;
+        this.parallelProjectConfiguration = parallelProjectConfiguration;
+        this.buildOperationExecutor = buildOperationExecutor;
     }
 
     public void configure(ProjectInternal project) {
@@ -58,11 +72,48 @@ public class TaskPathProjectEvaluator implements ProjectConfigurer {
 
     public void configureHierarchy(ProjectInternal project) {
         configure(project);
+        if (parallelProjectConfiguration.isEnabled()) {
+            configureSubprojectsInParallel(project);
+            return;
+        }
         for (Project sub : project.getSubprojects()) {
             configure((ProjectInternal) sub);
         }
     }
 
+    /**
+     * Configures the subprojects of the given project one level at a time, so that each project is configured after its parent. The projects of each level are configured in parallel.
+     */
+    private void configureSubprojectsInParallel(ProjectInternal project) {
+        List<ProjectInternal> level = childrenOf(project);
+        while (!level.isEmpty()) {
+            final List<ProjectInternal> projects = level;
+            buildOperationExecutor.runAll(new Action<BuildOperationQueue<ConfigureProjectInParallel>>() {
+                @Override
+                public void execute(BuildOperationQueue<ConfigureProjectInParallel> queue) {
+                    for (ProjectInternal project : projects) {
+                        queue.add(new ConfigureProjectInParallel(project));
+                    }
+                }
+            });
+            if (cancellationToken.isCancellationRequested()) {
+                throw new BuildCancelledException();
+            }
+            level = new ArrayList<ProjectInternal>();
+            for (ProjectInternal parent : projects) {
+                level.addAll(childrenOf(parent));
+            }
+        }
+    }
+
+    private static List<ProjectInternal> childrenOf(ProjectInternal project) {
+        List<ProjectInternal> children = new ArrayList<ProjectInternal>();
+        for (Project child : project.getChildProjects().values()) {
+            children.add((ProjectInternal) child);
+        }
+        return children;
+    }
+
     @Override
     public void configureHierarchyFully(ProjectInternal project) {
         configureFully(project);
@@ -70,4 +121,25 @@ public class TaskPathProjectEvaluator implements ProjectConfigurer {
             configureFully((ProjectInternal) sub);
         }
     }
+
+    private class ConfigureProjectInParallel implements RunnableBuildOperation {
+        private final ProjectInternal project;
+
+        ConfigureProjectInParallel(ProjectInternal project) {
+            this.project = project;
+        }
+
+        @Override
+        public void run(BuildOperationContext context) {
+            if (cancellationToken.isCancellationRequested()) {
+                return;
+            }
+            parallelProjectConfiguration.configure(project);
+        }
+
+        @Override
+        public BuildOperationDescriptor.Builder description() {
+            return BuildOperationDescriptor.displayName("Configure " + project.getDisplayName() + " in parallel");
+        }
+    }
 }
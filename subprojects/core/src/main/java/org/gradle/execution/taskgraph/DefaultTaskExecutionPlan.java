@@ -19,9 +19,11 @@ package org.gradle.execution.taskgraph;
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.base.StandardSystemProperty;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import org.gradle.api.Action;
@@ -34,6 +36,7 @@ import org.gradle.api.Transformer;
 import org.gradle.api.UncheckedIOException;
 import org.gradle.api.internal.GradleInternal;
 import org.gradle.api.internal.TaskInternal;
+import org.gradle.api.internal.changedetection.state.TaskHistoryRepository;
 import org.gradle.api.internal.project.ProjectInternal;
 import org.gradle.api.internal.tasks.CachingTaskDependencyResolveContext;
 import org.gradle.api.internal.tasks.TaskContainerInternal;
@@ -44,6 +47,7 @@ import org.gradle.api.specs.Specs;
 import org.gradle.execution.MultipleBuildFailures;
 import org.gradle.execution.TaskFailureHandler;
 import org.gradle.initialization.BuildCancellationToken;
+import org.gradle.internal.Factory;
 import org.gradle.internal.Pair;
 import org.gradle.internal.UncheckedException;
 import org.gradle.internal.graph.CachingDirectedGraphWalker;
@@ -66,13 +70,13 @@ import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -86,15 +90,39 @@ import static org.gradle.internal.resources.ResourceLockState.Disposition.*;
 /**
  * A reusable implementation of TaskExecutionPlan. The {@link #addToTaskGraph(java.util.Collection)} and {@link #clear()} methods are NOT threadsafe, and callers must synchronize access to these
  * methods.
+ *
+ * Workers pick tasks from a queue of tasks whose dependencies may have completed, which is updated as tasks complete. By default, tasks are picked in the
+ * order of the execution plan. When a task history is provided, tasks are instead picked by the expected time of the longest chain of tasks that wait
+ * for them, using the execution times recorded in the task history, so that tasks on the critical path of the build start as early as possible.
+ * In this mode, should-run-after ordering is only used to break ties.
  */
 public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
     private final static Logger LOGGER = Logging.getLogger(DefaultTaskExecutionPlan.class);
 
+    /**
+     * Enables scheduling of tasks by the length of their critical path when set to {@code true}.
+     */
+    public static final String CRITICAL_PATH_SCHEDULING_PROPERTY = "org.gradle.internal.tasks.scheduling.criticalpath";
+
     private final Set<TaskInfo> tasksInUnknownState = new LinkedHashSet<TaskInfo>();
     private final Set<TaskInfo> entryTasks = new LinkedHashSet<TaskInfo>();
     private final TaskDependencyGraph graph = new TaskDependencyGraph();
     private final LinkedHashMap<Task, TaskInfo> executionPlan = new LinkedHashMap<Task, TaskInfo>();
-    private final List<TaskInfo> executionQueue = new LinkedList<TaskInfo>();
+    private final Set<TaskInfo> executionQueue = new LinkedHashSet<TaskInfo>();
+    private final ListMultimap<TaskInfo, TaskInfo> dependents = ArrayListMultimap.create();
+    private final Map<TaskInfo, Integer> executionOrder = Maps.newHashMap();
+    private final Map<TaskInfo, Long> remainingExecutionTimes = Maps.newHashMap();
+    private final TreeSet<TaskInfo> readyQueue = new TreeSet<TaskInfo>(new Comparator<TaskInfo>() {
+        @Override
+        public int compare(TaskInfo task1, TaskInfo task2) {
+            // Longest remaining execution time first, then in plan order
+            int result = remainingExecutionTime(task2).compareTo(remainingExecutionTime(task1));
+            if (result != 0) {
+                return result;
+            }
+            return executionOrder.get(task1).compareTo(executionOrder.get(task2));
+        }
+    });
     private final Map<Project, ResourceLock> projectLocks = Maps.newHashMap();
     private final List<Throwable> failures = new ArrayList<Throwable>();
     private Spec<? super Task> filter = Specs.satisfyAll();
@@ -106,12 +134,21 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
     private final Map<Task, Set<String>> canonicalizedOutputCache = Maps.newIdentityHashMap();
     private final ResourceLockCoordinationService coordinationService;
     private final WorkerLeaseService workerLeaseService;
+    private final Factory<? extends TaskHistoryRepository> taskHistoryRepository;
     private boolean tasksCancelled;
 
     public DefaultTaskExecutionPlan(BuildCancellationToken cancellationToken, ResourceLockCoordinationService coordinationService, WorkerLeaseService workerLeaseService) {
+        this(cancellationToken, coordinationService, workerLeaseService, null);
+    }
+
+    /**
+     * @param taskHistoryRepository The task history to use to prioritize tasks on the critical path, or null to execute tasks in plan order.
+     */
+    public DefaultTaskExecutionPlan(BuildCancellationToken cancellationToken, ResourceLockCoordinationService coordinationService, WorkerLeaseService workerLeaseService, @Nullable Factory<? extends TaskHistoryRepository> taskHistoryRepository) {
         this.cancellationToken = cancellationToken;
         this.coordinationService = coordinationService;
         this.workerLeaseService = workerLeaseService;
+        this.taskHistoryRepository = taskHistoryRepository;
     }
 
     public void addToTaskGraph(Collection<? extends Task> tasks) {
@@ -332,7 +369,62 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
         }
         executionQueue.clear();
         executionQueue.addAll(executionPlan.values());
+        prepareReadyQueue();
+    }
+
+    private void prepareReadyQueue() {
+        dependents.clear();
+        executionOrder.clear();
+        remainingExecutionTimes.clear();
+        readyQueue.clear();
+        for (TaskInfo taskInfo : executionQueue) {
+            executionOrder.put(taskInfo, executionOrder.size());
+            for (TaskInfo dependency : Iterables.concat(taskInfo.getDependencySuccessors(), taskInfo.getMustSuccessors())) {
+                dependents.put(dependency, taskInfo);
+            }
+        }
+        if (taskHistoryRepository != null) {
+            calculateRemainingExecutionTimes(taskHistoryRepository.create());
+        }
+        // Tasks that cannot run yet are dropped from the queue when they are first considered
+        readyQueue.addAll(executionQueue);
+    }
+
+    private void calculateRemainingExecutionTimes(TaskHistoryRepository taskHistoryRepository) {
+        Map<TaskInfo, Long> executionTimes = Maps.newHashMap();
+        long knownExecutionTime = 0;
+        int knownCount = 0;
+        for (TaskInfo taskInfo : executionQueue) {
+            long executionTime = taskHistoryRepository.getPreviousExecutionTime(taskInfo.getTask());
+            if (executionTime >= 0) {
+                executionTimes.put(taskInfo, executionTime);
+                knownExecutionTime += executionTime;
+                knownCount++;
+            }
+        }
+        // Assume that tasks that have not been executed before take an average amount of time
+        long defaultExecutionTime = knownCount == 0 ? 1 : Math.max(1, knownExecutionTime / knownCount);
 
+        // The plan is ordered so that every task comes after the tasks it waits for, so visit the tasks in reverse
+        List<TaskInfo> tasks = Lists.newArrayList(executionQueue);
+        for (int i = tasks.size() - 1; i >= 0; i--) {
+            TaskInfo taskInfo = tasks.get(i);
+            long longestDependent = 0;
+            for (TaskInfo dependent : dependents.get(taskInfo)) {
+                longestDependent = Math.max(longestDependent, remainingExecutionTime(dependent));
+            }
+            Long executionTime = executionTimes.get(taskInfo);
+            remainingExecutionTimes.put(taskInfo, (executionTime == null ? defaultExecutionTime : executionTime) + longestDependent);
+        }
+    }
+
+    private Long remainingExecutionTime(TaskInfo taskInfo) {
+        Long remainingExecutionTime = remainingExecutionTimes.get(taskInfo);
+        return remainingExecutionTime == null ? 0L : remainingExecutionTime;
+    }
+
+    private void queueDependents(TaskInfo taskInfo) {
+        readyQueue.addAll(dependents.get(taskInfo));
     }
 
     private void maybeRemoveProcessedShouldRunAfterEdge(Deque<GraphEdge> walkedShouldRunAfterEdges, TaskInfo taskNode) {
@@ -477,6 +569,10 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
                 entryTasks.clear();
                 executionPlan.clear();
                 executionQueue.clear();
+                dependents.clear();
+                executionOrder.clear();
+                remainingExecutionTimes.clear();
+                readyQueue.clear();
                 projectLocks.clear();
                 failures.clear();
                 canonicalizedOutputCache.clear();
@@ -543,10 +639,13 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
 
     private TaskInfo selectNextTask(final WorkerLease workerLease) {
         final AtomicReference<TaskInfo> selected = new AtomicReference<TaskInfo>();
-        final Iterator<TaskInfo> iterator = executionQueue.iterator();
+        final Iterator<TaskInfo> iterator = readyQueue.iterator();
         while (iterator.hasNext()) {
             final TaskInfo taskInfo = iterator.next();
-            if (taskInfo.isReady() && taskInfo.allDependenciesComplete()) {
+            if (!taskInfo.isReady() || !taskInfo.allDependenciesComplete()) {
+                // The task is queued again when one of its dependencies completes
+                iterator.remove();
+            } else {
                 coordinationService.withStateLock(new Transformer<ResourceLockState.Disposition, ResourceLockState>() {
                     @Override
                     public ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
@@ -558,11 +657,13 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
 
                         selected.set(taskInfo);
                         iterator.remove();
+                        executionQueue.remove(taskInfo);
                         if (taskInfo.allDependenciesSuccessful()) {
                             taskInfo.startExecution();
                             recordTaskStarted(taskInfo);
                         } else {
                             taskInfo.skipExecution();
+                            queueDependents(taskInfo);
                         }
                         return FINISHED;
                     }
@@ -702,6 +803,7 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
 
                 taskInfo.finishExecution();
                 recordTaskCompleted(taskInfo);
+                queueDependents(taskInfo);
                 return FINISHED;
             }
         });
@@ -728,6 +830,9 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
 
                 if (node.isMustNotRun() || node.isRequired()) {
                     node.enforceRun();
+                    if (executionQueue.contains(node)) {
+                        readyQueue.add(node);
+                    }
                 }
             }
         }
@@ -762,6 +867,10 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
                 aborted = true;
             }
         }
+        if (aborted) {
+            // Enforced tasks may now be able to run
+            readyQueue.addAll(executionQueue);
+        }
         return aborted;
     }
 
@@ -15,6 +15,7 @@
  */
 package org.gradle.groovy.scripts.internal;
 
+import com.google.common.cache.Weigher;
 import com.google.common.hash.HashCode;
 import groovy.lang.Script;
 import org.codehaus.groovy.ast.ClassNode;
@@ -27,12 +28,21 @@ import org.gradle.groovy.scripts.ScriptSource;
 import org.gradle.internal.Cast;
 
 public class CrossBuildInMemoryCachingScriptClassCache {
+    // Each compiled script retains its own class loader, and the class loader of the scope it was compiled for, so bounds the number of scripts rather than their size
+    private static final long MAXIMUM_SCRIPTS = 20000;
+    private static final Weigher<ScriptCacheKey, CachedCompiledScript> SCRIPT_COUNT = new Weigher<ScriptCacheKey, CachedCompiledScript>() {
+        @Override
+        public int weigh(ScriptCacheKey key, CachedCompiledScript value) {
+            return 1;
+        }
+    };
+
     private final CrossBuildInMemoryCache<ScriptCacheKey, CachedCompiledScript> cachedCompiledScripts;
     private final FileHasher hasher;
 
     public CrossBuildInMemoryCachingScriptClassCache(FileHasher hasher, CrossBuildInMemoryCacheFactory cacheFactory) {
         this.hasher = hasher;
-        cachedCompiledScripts = cacheFactory.newCache();
+        cachedCompiledScripts = cacheFactory.newCache("compiled scripts", SCRIPT_COUNT, MAXIMUM_SCRIPTS);
     }
 
     public <T extends Script, M> CompiledScript<T, M> getOrCompile(ScriptSource source, ClassLoader classLoader,
@@ -24,6 +24,7 @@ import org.gradle.api.internal.ExceptionAnalyser;
 import org.gradle.api.internal.GradleInternal;
 import org.gradle.api.internal.SettingsInternal;
 import org.gradle.configuration.BuildConfigurer;
+import org.gradle.configuration.ProjectConfigurationCache;
 import org.gradle.execution.BuildConfigurationActionExecuter;
 import org.gradle.execution.BuildExecuter;
 import org.gradle.execution.TaskGraphExecuter;
@@ -197,7 +198,7 @@ public class DefaultGradleLauncher implements GradleLauncher {
         public void run(BuildOperationContext context) {
             buildConfigurer.configure(gradle);
 
-            if (!isConfigureOnDemand()) {
+            if (!isConfiguredOnDemand()) {
                 projectsEvaluated();
             }
 
@@ -220,9 +221,10 @@ public class DefaultGradleLauncher implements GradleLauncher {
                 throw ex;
             }
 
-            if (isConfigureOnDemand()) {
+            if (isConfiguredOnDemand()) {
                 projectsEvaluated();
             }
+            getProjectConfigurationCache().store(gradle);
 
             // make requested tasks available from according build operation.
             TaskGraphExecuter taskGraph = gradle.getTaskGraph();
@@ -259,8 +261,12 @@ public class DefaultGradleLauncher implements GradleLauncher {
         });
     }
 
-    private boolean isConfigureOnDemand() {
-        return gradle.getStartParameter().isConfigureOnDemand();
+    private boolean isConfiguredOnDemand() {
+        return gradle.getStartParameter().isConfigureOnDemand() || getProjectConfigurationCache().isUsed();
+    }
+
+    private ProjectConfigurationCache getProjectConfigurationCache() {
+        return buildServices.get(ProjectConfigurationCache.class);
     }
 
     private void projectsEvaluated() {
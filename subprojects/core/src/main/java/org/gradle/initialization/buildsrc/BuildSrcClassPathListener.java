@@ -0,0 +1,29 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.initialization.buildsrc;
+
+import org.gradle.internal.classpath.ClassPath;
+
+/**
+ * Notified when the buildSrc project of a build has been built.
+ */
+public interface BuildSrcClassPathListener {
+    /**
+     * Called with the class path that the buildSrc project contributes to the scripts of the build. The class path is empty when there is no buildSrc project.
+     */
+    void buildSrcClassPathResolved(ClassPath classPath);
+}
@@ -85,12 +85,14 @@ import org.gradle.configuration.DefaultBuildConfigurer;
 import org.gradle.configuration.DefaultInitScriptProcessor;
 import org.gradle.configuration.DefaultScriptPluginFactory;
 import org.gradle.configuration.ImportsReader;
+import org.gradle.configuration.ProjectConfigurationCache;
 import org.gradle.configuration.ScriptPluginFactory;
 import org.gradle.configuration.ScriptPluginFactorySelector;
 import org.gradle.configuration.project.BuildScriptProcessor;
 import org.gradle.configuration.project.ConfigureActionsProjectEvaluator;
 import org.gradle.configuration.project.DelayedConfigurationActions;
 import org.gradle.configuration.project.LifecycleProjectEvaluator;
+import org.gradle.configuration.project.ParallelProjectConfiguration;
 import org.gradle.configuration.project.PluginsProjectConfigureActions;
 import org.gradle.configuration.project.ProjectEvaluator;
 import org.gradle.execution.ProjectConfigurer;
@@ -129,6 +131,7 @@ import org.gradle.initialization.SettingsProcessor;
 import org.gradle.initialization.StackTraceSanitizingExceptionAnalyser;
 import org.gradle.initialization.buildsrc.BuildSourceBuilder;
 import org.gradle.initialization.buildsrc.BuildSrcBuildListenerFactory;
+import org.gradle.initialization.buildsrc.BuildSrcClassPathListener;
 import org.gradle.initialization.buildsrc.BuildSrcProjectConfigurationAction;
 import org.gradle.initialization.layout.BuildLayoutFactory;
 import org.gradle.internal.actor.ActorFactory;
@@ -319,7 +322,7 @@ public class BuildScopeServices extends DefaultServiceRegistry {
                                                                 ClassLoaderScopeRegistry classLoaderScopeRegistry, CacheRepository cacheRepository,
                                                                 BuildLoader buildLoader, BuildOperationExecutor buildOperationExecutor,
                                                                 ServiceRegistry serviceRegistry, CachedClasspathTransformer cachedClasspathTransformer,
-                                                                CachingServiceLocator cachingServiceLocator) {
+                                                                CachingServiceLocator cachingServiceLocator, ListenerManager listenerManager) {
         return new DefaultSettingsLoaderFactory(
             new DefaultSettingsFinder(new BuildLayoutFactory()),
             settingsProcessor,
@@ -332,7 +335,8 @@ public class BuildScopeServices extends DefaultServiceRegistry {
                 new BuildSrcBuildListenerFactory(
                     PluginsProjectConfigureActions.of(
                         BuildSrcProjectConfigurationAction.class,
-                        cachingServiceLocator))),
+                        cachingServiceLocator)),
+                listenerManager.getBroadcaster(BuildSrcClassPathListener.class)),
             buildLoader,
             serviceRegistry
         );
@@ -382,12 +386,16 @@ public class BuildScopeServices extends DefaultServiceRegistry {
         );
     }
 
-    protected ProjectConfigurer createProjectConfigurer(BuildCancellationToken cancellationToken) {
-        return new TaskPathProjectEvaluator(cancellationToken);
+    protected ProjectConfigurer createProjectConfigurer(BuildCancellationToken cancellationToken, ParallelProjectConfiguration parallelProjectConfiguration, BuildOperationExecutor buildOperationExecutor) {
+        return new TaskPathProjectEvaluator(cancellationToken, parallelProjectConfiguration, buildOperationExecutor);
     }
 
-    protected BuildConfigurer createBuildConfigurer(ProjectConfigurer projectConfigurer) {
-        return new DefaultBuildConfigurer(projectConfigurer);
+    protected ProjectConfigurationCache createProjectConfigurationCache(CacheRepository cacheRepository, FileHasher fileHasher) {
+        return new ProjectConfigurationCache(cacheRepository, fileHasher);
+    }
+
+    protected BuildConfigurer createBuildConfigurer(ProjectConfigurer projectConfigurer, ProjectConfigurationCache projectConfigurationCache) {
+        return new DefaultBuildConfigurer(projectConfigurer, projectConfigurationCache);
     }
 
     protected ProjectAccessListener createProjectAccessListener() {
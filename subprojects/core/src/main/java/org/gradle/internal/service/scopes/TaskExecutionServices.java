@@ -40,6 +40,7 @@ import org.gradle.api.internal.changedetection.state.TaskHistoryRepository;
 import org.gradle.api.internal.changedetection.state.TaskHistoryStore;
 import org.gradle.api.internal.changedetection.state.ValueSnapshotter;
 import org.gradle.api.internal.file.FileCollectionFactory;
+import org.gradle.api.internal.file.TemporaryFileProvider;
 import org.gradle.api.internal.project.taskfactory.FileSnapshottingPropertyAnnotationHandler;
 import org.gradle.api.internal.tasks.TaskExecuter;
 import org.gradle.api.internal.tasks.execution.CatchExceptionTaskExecuter;
@@ -60,8 +61,7 @@ import org.gradle.api.invocation.Gradle;
 import org.gradle.cache.CacheRepository;
 import org.gradle.caching.BuildCacheService;
 import org.gradle.caching.internal.BuildCacheServiceProvider;
-import org.gradle.caching.internal.tasks.GZipTaskOutputPacker;
-import org.gradle.caching.internal.tasks.TarTaskOutputPacker;
+import org.gradle.caching.internal.tasks.DirectTaskOutputPacker;
 import org.gradle.caching.internal.tasks.TaskCacheKeyCalculator;
 import org.gradle.caching.internal.tasks.TaskOutputCachingListener;
 import org.gradle.caching.internal.tasks.TaskOutputPacker;
@@ -161,15 +161,13 @@ public class TaskExecutionServices {
         return new DefaultFileCollectionSnapshotterRegistry(snapshotters.build());
     }
 
-    TaskArtifactStateRepository createTaskArtifactStateRepository(Instantiator instantiator, TaskHistoryStore cacheAccess, StartParameter startParameter, StringInterner stringInterner, FileCollectionFactory fileCollectionFactory, ClassLoaderHierarchyHasher classLoaderHierarchyHasher, FileCollectionSnapshotterRegistry fileCollectionSnapshotterRegistry, TaskCacheKeyCalculator cacheKeyCalculator, ValueSnapshotter valueSnapshotter, BuildScopeId buildScopeId) {
-        OutputFilesSnapshotter outputFilesSnapshotter = new OutputFilesSnapshotter();
-
+    TaskHistoryRepository createTaskHistoryRepository(TaskHistoryStore cacheAccess, StringInterner stringInterner, FileCollectionSnapshotterRegistry fileCollectionSnapshotterRegistry, BuildScopeId buildScopeId) {
         SerializerRegistry serializerRegistry = new DefaultSerializerRegistry();
         for (FileCollectionSnapshotter snapshotter : fileCollectionSnapshotterRegistry.getAllSnapshotters()) {
             snapshotter.registerSerializers(serializerRegistry);
         }
 
-        TaskHistoryRepository taskHistoryRepository = new CacheBackedTaskHistoryRepository(
+        return new CacheBackedTaskHistoryRepository(
             cacheAccess,
             new CacheBackedFileSnapshotRepository(cacheAccess,
                 serializerRegistry.build(FileCollectionSnapshot.class),
@@ -178,6 +176,10 @@ public class TaskExecutionServices {
             stringInterner,
             buildScopeId
         );
+    }
+
+    TaskArtifactStateRepository createTaskArtifactStateRepository(Instantiator instantiator, TaskHistoryRepository taskHistoryRepository, StartParameter startParameter, FileCollectionFactory fileCollectionFactory, ClassLoaderHierarchyHasher classLoaderHierarchyHasher, FileCollectionSnapshotterRegistry fileCollectionSnapshotterRegistry, TaskCacheKeyCalculator cacheKeyCalculator, ValueSnapshotter valueSnapshotter) {
+        OutputFilesSnapshotter outputFilesSnapshotter = new OutputFilesSnapshotter();
 
         return new ShortCircuitTaskArtifactStateRepository(
             startParameter,
@@ -204,10 +206,9 @@ public class TaskExecutionServices {
         return new TaskPlanExecutorFactory(parallelThreads, executorFactory, workerLeaseService).create();
     }
 
-    TaskOutputPacker createTaskResultPacker(FileSystem fileSystem) {
-        return new GZipTaskOutputPacker(
-            new TarTaskOutputPacker(fileSystem)
-        );
+    TaskOutputPacker createTaskResultPacker(FileSystem fileSystem, TemporaryFileProvider temporaryFileProvider, ExecutorFactory executorFactory, StartParameter startParameter) {
+        int maxThreads = Boolean.getBoolean(DirectTaskOutputPacker.PARALLEL_PACKING_PROPERTY) ? startParameter.getMaxWorkerCount() : 1;
+        return new DirectTaskOutputPacker(fileSystem, temporaryFileProvider, executorFactory, maxThreads);
     }
 
     TaskOutputOriginFactory createTaskOutputOriginFactory(TimeProvider timeProvider, InetAddressFactory inetAddressFactory, GradleInternal gradleInternal, BuildScopeId buildScopeId) {
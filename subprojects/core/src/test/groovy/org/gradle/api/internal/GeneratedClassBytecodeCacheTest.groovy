@@ -0,0 +1,163 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal
+
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class GeneratedClassBytecodeCacheTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    File cacheDir
+    GeneratedClassBytecodeCache cache
+
+    def setup() {
+        cacheDir = tmpDir.file("generated-classes")
+        cache = new GeneratedClassBytecodeCache(true, cacheDir)
+    }
+
+    def "stores bytecode of generated class and defines class from stored bytecode in later process"() {
+        def generator = new AsmBackedClassGenerator(cache)
+
+        when:
+        def type = isolatedBeanType()
+        def generated = generator.generate(type)
+
+        then:
+        cacheDir.list().length == 1
+        generated.superclass == type
+
+        when:
+        def stored = cacheDir.listFiles()[0]
+        stored.lastModified = 0
+        def otherType = isolatedBeanType()
+        def fromCache = generator.generate(otherType)
+        def bean = fromCache.newInstance()
+        bean.prop = "value"
+
+        then:
+        cacheDir.list().length == 1
+        stored.lastModified() == 0
+        fromCache.superclass == otherType
+        bean instanceof DynamicObjectAware
+        bean.prop == "value"
+    }
+
+    def "does not cache classes when disabled or no directory is attached"() {
+        expect:
+        new GeneratedClassBytecodeCache(false, cacheDir).keyFor(Bean, 1) == null
+        new GeneratedClassBytecodeCache(true, null).keyFor(Bean, 1) == null
+    }
+
+    def "key changes with generator version"() {
+        expect:
+        cache.keyFor(Bean, 1) == cache.keyFor(Bean, 1)
+        cache.keyFor(Bean, 1) != cache.keyFor(Bean, 2)
+        cache.keyFor(Bean, 1) != cache.keyFor(OtherBean, 1)
+    }
+
+    def "does not cache class whose bytecode cannot be located"() {
+        def type = new GroovyClassLoader(getClass().classLoader).parseClass("class RuntimeBean { String prop }")
+
+        expect:
+        cache.keyFor(type, 1) == null
+    }
+
+    def "key changes when bytecode of a property type changes"() {
+        def type = isolatedType(PropertyBean)
+        def changed = isolatedType(PropertyBean, [(Bean.name): OtherBean.name])
+
+        expect:
+        cache.keyFor(type, 1) != null
+        cache.keyFor(type, 1) == cache.keyFor(isolatedType(PropertyBean), 1)
+        cache.keyFor(type, 1) != cache.keyFor(changed, 1)
+    }
+
+    def "does not cache class whose property type bytecode cannot be located"() {
+        def type = isolatedType(PropertyBean, [(Bean.name): null])
+
+        expect:
+        cache.keyFor(type, 1) == null
+    }
+
+    def "loads stored bytecode"() {
+        expect:
+        cache.load("missing") == null
+
+        when:
+        cache.store("key", [1, 2, 3] as byte[])
+
+        then:
+        cache.load("key") == [1, 2, 3] as byte[]
+    }
+
+    /**
+     * Loads {@link Bean} using a new ClassLoader, to simulate a later build process.
+     */
+    private Class<?> isolatedBeanType() {
+        return isolatedType(Bean)
+    }
+
+    /**
+     * Loads the given type and {@link Bean} using a new ClassLoader. The ClassLoader serves the bytecode of the classes named by the values of the given map as
+     * the class file resources of the classes named by the keys, or no resource when the value is null.
+     */
+    private Class<?> isolatedType(Class<?> type, Map<String, String> resources = [:]) {
+        def parent = getClass().classLoader
+        def loader = new ClassLoader(parent) {
+            @Override
+            protected synchronized Class<?> loadClass(String name, boolean resolve) {
+                if (name != type.name && name != Bean.name) {
+                    return super.loadClass(name, resolve)
+                }
+                def loaded = findLoadedClass(name)
+                if (loaded == null) {
+                    def bytecode = parent.getResourceAsStream(resourceName(name)).bytes
+                    loaded = defineClass(name, bytecode, 0, bytecode.length)
+                }
+                return loaded
+            }
+
+            @Override
+            InputStream getResourceAsStream(String name) {
+                def entry = resources.find { resourceName(it.key) == name }
+                if (entry == null) {
+                    return super.getResourceAsStream(name)
+                }
+                return entry.value == null ? null : parent.getResourceAsStream(resourceName(entry.value))
+            }
+        }
+        return loader.loadClass(type.name)
+    }
+
+    private static String resourceName(String className) {
+        return className.replace('.', '/') + ".class"
+    }
+
+    static class Bean {
+        String prop
+    }
+
+    static class OtherBean {
+        String prop
+    }
+
+    static class PropertyBean {
+        Bean prop
+    }
+}
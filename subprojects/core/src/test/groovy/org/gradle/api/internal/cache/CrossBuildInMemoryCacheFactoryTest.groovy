@@ -16,11 +16,15 @@
 
 package org.gradle.api.internal.cache
 
+import com.google.common.cache.Weigher
 import org.gradle.api.Transformer
 import org.gradle.initialization.SessionLifecycleListener
 import org.gradle.internal.event.DefaultListenerManager
 import spock.lang.Specification
 
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+
 class CrossBuildInMemoryCacheFactoryTest extends Specification {
     def listenerManager = new DefaultListenerManager()
     def factory = new CrossBuildInMemoryCacheFactory(listenerManager)
@@ -34,7 +38,7 @@ class CrossBuildInMemoryCacheFactoryTest extends Specification {
         transformer.transform("a") >> a
         transformer.transform("b") >> b
 
-        def cache = factory.newCache()
+        def cache = factory.newUnboundedCache("test")
 
         expect:
         cache.get("a", transformer) == a
@@ -49,7 +53,7 @@ class CrossBuildInMemoryCacheFactoryTest extends Specification {
         def transformer = Mock(Transformer)
 
         given:
-        def cache = factory.newCache()
+        def cache = factory.newUnboundedCache("test")
         cache.put("c", c)
 
         when:
@@ -80,7 +84,7 @@ class CrossBuildInMemoryCacheFactoryTest extends Specification {
         given:
         transformer.transform("a") >> a
 
-        def cache = factory.newCache()
+        def cache = factory.newUnboundedCache("test")
         cache.get("a", transformer)
         cache.put("b", b)
 
@@ -94,7 +98,7 @@ class CrossBuildInMemoryCacheFactoryTest extends Specification {
         def transformer = Mock(Transformer)
 
         when:
-        def cache = factory.newCache()
+        def cache = factory.newUnboundedCache("test")
         cache.get("a", transformer)
         cache.get("b", transformer)
 
@@ -112,4 +116,89 @@ class CrossBuildInMemoryCacheFactoryTest extends Specification {
         then:
         0 * transformer._
     }
+
+    def "discards least recently used entries when maximum weight is exceeded"() {
+        def transformer = Mock(Transformer)
+        def weigher = { key, value -> value.size() } as Weigher
+
+        given:
+        def cache = factory.newCache("test", weigher, 4, 1)
+        cache.put("a", "aa")
+        cache.put("b", "b")
+        cache.get("a")
+
+        when:
+        cache.put("c", "cc")
+
+        then:
+        cache.get("b") == null
+        cache.get("a") == "aa"
+        cache.get("c") == "cc"
+        cache.stats.evictionCount() == 1
+
+        when:
+        cache.put("d", "dd")
+
+        then:
+        cache.get("a") == null
+        cache.get("c") == "cc"
+        cache.get("d") == "dd"
+        cache.stats.evictionCount() == 2
+
+        when:
+        cache.get("a", transformer)
+
+        then:
+        1 * transformer.transform("a") >> "aa"
+    }
+
+    def "records hits, misses and loads"() {
+        def transformer = Stub(Transformer) {
+            transform(_) >> { String key -> key.toUpperCase() }
+        }
+
+        given:
+        def cache = factory.newUnboundedCache("test")
+
+        when:
+        cache.get("a", transformer)
+        cache.get("a", transformer)
+        cache.get("a")
+        cache.get("b")
+
+        then:
+        def stats = cache.stats
+        stats.hitCount() == 2
+        stats.missCount() == 2
+        stats.loadSuccessCount() == 1
+        stats.evictionCount() == 0
+    }
+
+    def "can use other entries while creating an entry"() {
+        def started = new CountDownLatch(1)
+        def release = new CountDownLatch(1)
+        def cache = factory.newCache("test", Stub(Weigher), Long.MAX_VALUE, 1)
+        def transformer = Stub(Transformer) {
+            transform("a") >> {
+                started.countDown()
+                release.await()
+                return "A"
+            }
+            transform("b") >> "B"
+        }
+
+        when:
+        def results = new CopyOnWriteArrayList()
+        def loader = new Thread({ results << cache.get("a", transformer) })
+        loader.start()
+        started.await()
+        def b = cache.get("b", transformer)
+        release.countDown()
+        loader.join()
+
+        then:
+        b == "B"
+        results == ["A"]
+        cache.get("a") == "A"
+    }
 }
@@ -81,6 +81,7 @@ class DefaultTaskArtifactStateRepositoryTest extends AbstractProjectBuilderSpec
     }
     DefaultGenericFileCollectionSnapshotter fileCollectionSnapshotter
     DefaultTaskArtifactStateRepository repository
+    TaskHistoryRepository taskHistoryRepository
     DefaultFileSystemMirror fileSystemMirror
     TaskCacheKeyCalculator cacheKeyCalculator = Mock(TaskCacheKeyCalculator)
 
@@ -100,10 +101,25 @@ class DefaultTaskArtifactStateRepositoryTest extends AbstractProjectBuilderSpec
         }
         SerializerRegistry serializerRegistry = new DefaultSerializerRegistry();
         fileCollectionSnapshotter.registerSerializers(serializerRegistry);
-        TaskHistoryRepository taskHistoryRepository = new CacheBackedTaskHistoryRepository(cacheAccess, new CacheBackedFileSnapshotRepository(cacheAccess, serializerRegistry.build(FileCollectionSnapshot), new RandomLongIdGenerator()), stringInterner, buildScopeId)
+        taskHistoryRepository = new CacheBackedTaskHistoryRepository(cacheAccess, new CacheBackedFileSnapshotRepository(cacheAccess, serializerRegistry.build(FileCollectionSnapshot), new RandomLongIdGenerator()), stringInterner, buildScopeId)
         repository = new DefaultTaskArtifactStateRepository(taskHistoryRepository, DirectInstantiator.INSTANCE, outputFilesSnapshotter, new DefaultFileCollectionSnapshotterRegistry([fileCollectionSnapshotter]), TestFiles.fileCollectionFactory(), classLoaderHierarchyHasher, cacheKeyCalculator, new ValueSnapshotter())
     }
 
+    def "records the execution time of an executed task"() {
+        expect:
+        taskHistoryRepository.getPreviousExecutionTime(task) == -1
+
+        when:
+        def state = repository.getStateFor(task)
+        state.isUpToDate([])
+        state.beforeTask()
+        task.execute()
+        state.afterTask()
+
+        then:
+        taskHistoryRepository.getPreviousExecutionTime(task) >= 0
+    }
+
     def artifactsAreNotUpToDateWhenCacheIsEmpty() {
         expect:
         outOfDate(task)
@@ -227,4 +227,28 @@ class CachingFileHasherTest extends Specification {
         1 * target.hash(resource) >> hash
         0 * _._
     }
+
+    def hashesOnlyFilesWhoseHashIsNotCachedInOneBatch() {
+        def cachedFile = tmpDir.createFile("cached")
+        def cachedDetails = DefaultFileMetadata.file(123, 456)
+        def fileDetails = DefaultFileMetadata.file(124, 457)
+
+        when:
+        def result = hasher.hash([cachedFile, file], [cachedDetails, fileDetails])
+
+        then:
+        result == [oldHash, hash]
+
+        and:
+        1 * timeStampInspector.timestampCanBeUsedToDetectFileChange(cachedFile.absolutePath, 123) >> true
+        1 * cache.get(cachedFile.absolutePath) >> new FileInfo(oldHash, 456, 123)
+        1 * timeStampInspector.timestampCanBeUsedToDetectFileChange(file.absolutePath, 124) >> false
+        1 * target.hash([file], [fileDetails]) >> [hash]
+        1 * cache.put(file.absolutePath, _) >> { String key, FileInfo fileInfo ->
+            assert fileInfo.hash == hash
+            assert fileInfo.length == 457
+            assert fileInfo.timestamp == 124
+        }
+        0 * _._
+    }
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.changedetection.state
+
+import org.gradle.cache.CacheBuilder
+import org.gradle.cache.CacheRepository
+import org.gradle.cache.PersistentCache
+import org.gradle.cache.PersistentIndexedCache
+import org.gradle.cache.internal.StripedPersistentIndexedCache
+import org.gradle.internal.serialize.Serializer
+import spock.lang.Specification
+
+class CrossBuildFileHashCacheTest extends Specification {
+    def repository = Mock(CacheRepository)
+    def decoratorFactory = Stub(InMemoryCacheDecoratorFactory)
+    def cacheDir = new File("fileHashes")
+
+    def "stores all entries in a single cache by default"() {
+        def persistentCache = Mock(PersistentCache)
+        def indexedCache = Stub(PersistentIndexedCache)
+
+        when:
+        def cache = new CrossBuildFileHashCache(cacheDir, repository, decoratorFactory, 1)
+        def created = cache.createCache("fileHashes", String, Stub(Serializer), 400, true)
+
+        then:
+        1 * repository.cache(cacheDir) >> builder(persistentCache)
+        1 * persistentCache.createCache({ it.cacheName == "fileHashes" }) >> indexedCache
+        created.is(indexedCache)
+    }
+
+    def "partitions the cache into stripes with their own directory"() {
+        def stripe1 = Mock(PersistentCache)
+        def stripe2 = Mock(PersistentCache)
+        def indexedCache1 = Stub(PersistentIndexedCache)
+        def indexedCache2 = Stub(PersistentIndexedCache)
+
+        when:
+        def cache = new CrossBuildFileHashCache(cacheDir, repository, decoratorFactory, 2)
+        def created = cache.createCache("fileHashes", String, Stub(Serializer), 400, true)
+
+        then:
+        1 * repository.cache(new File(cacheDir, "stripe-0")) >> builder(stripe1)
+        1 * repository.cache(new File(cacheDir, "stripe-1")) >> builder(stripe2)
+        1 * stripe1.createCache({ it.cacheName == "fileHashes" }) >> indexedCache1
+        1 * stripe2.createCache({ it.cacheName == "fileHashes" }) >> indexedCache2
+        created instanceof StripedPersistentIndexedCache
+
+        when:
+        cache.close()
+
+        then:
+        1 * stripe1.close()
+        1 * stripe2.close()
+    }
+
+    def "uses a cache per stripe in the user home when no directory is given"() {
+        when:
+        new CrossBuildFileHashCache(null, repository, decoratorFactory, 2)
+
+        then:
+        1 * repository.cache("fileHashes/stripe-0") >> builder(Stub(PersistentCache))
+        1 * repository.cache("fileHashes/stripe-1") >> builder(Stub(PersistentCache))
+    }
+
+    private CacheBuilder builder(PersistentCache persistentCache) {
+        def builder = Stub(CacheBuilder)
+        builder.withDisplayName(_) >> builder
+        builder.withProperties(_) >> builder
+        builder.withLockOptions(_) >> builder
+        builder.open() >> persistentCache
+        return builder
+    }
+}
@@ -62,4 +62,31 @@ class DefaultFileCollectionSnapshotSerializerTest extends SerializerSpec {
         then:
         out.snapshots.keySet() as List == ['/3', '/2', '/1']
     }
+
+    def "reads and writes snapshots with shared path prefixes and different normalizations"() {
+        when:
+        def md5 = Hashing.md5().hashString("foo", Charsets.UTF_8)
+        def sha1 = Hashing.sha1().hashString("bar", Charsets.UTF_8)
+        DefaultFileCollectionSnapshot out = serialize(new DefaultFileCollectionSnapshot([
+            "/root/dir": new DefaultNormalizedFileSnapshot("dir", DirContentSnapshot.getInstance()),
+            "/root/dir/a.txt": new DefaultNormalizedFileSnapshot("dir/a.txt", new FileHashSnapshot(md5)),
+            "/root/dir/b.txt": new DefaultNormalizedFileSnapshot("other/b.txt", new FileHashSnapshot(sha1)),
+            "/root/dir/sub/c.txt": new NonNormalizedFileSnapshot("/root/dir/sub/c.txt", MissingFileContentSnapshot.getInstance()),
+            "/root/lib.jar": new IndexedNormalizedFileSnapshot("/root/lib.jar", 6, new FileHashSnapshot(md5)),
+            "/other": new IgnoredPathFileSnapshot(DirContentSnapshot.getInstance())
+        ], ORDERED, true), serializer)
+
+        then:
+        out.snapshots.keySet() as List == ["/root/dir", "/root/dir/a.txt", "/root/dir/b.txt", "/root/dir/sub/c.txt", "/root/lib.jar", "/other"]
+        out.snapshots["/root/dir"].normalizedPath == "dir"
+        out.snapshots["/root/dir/a.txt"].normalizedPath == "dir/a.txt"
+        out.snapshots["/root/dir/a.txt"].snapshot.contentMd5 == md5
+        out.snapshots["/root/dir/b.txt"].normalizedPath == "other/b.txt"
+        out.snapshots["/root/dir/b.txt"].snapshot.contentMd5 == sha1
+        out.snapshots["/root/dir/sub/c.txt"] instanceof NonNormalizedFileSnapshot
+        out.snapshots["/root/dir/sub/c.txt"].normalizedPath == "/root/dir/sub/c.txt"
+        out.snapshots["/root/lib.jar"] instanceof IndexedNormalizedFileSnapshot
+        out.snapshots["/root/lib.jar"].normalizedPath == "lib.jar"
+        out.snapshots["/other"] instanceof IgnoredPathFileSnapshot
+    }
 }
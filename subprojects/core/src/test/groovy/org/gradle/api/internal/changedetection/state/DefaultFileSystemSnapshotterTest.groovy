@@ -16,12 +16,15 @@
 
 package org.gradle.api.internal.changedetection.state
 
+import org.gradle.api.GradleException
 import org.gradle.api.internal.cache.StringInterner
 import org.gradle.api.internal.file.TestFiles
 import org.gradle.api.internal.hash.DefaultFileHasher
 import org.gradle.caching.internal.DefaultBuildCacheHasher
 import org.gradle.internal.nativeintegration.filesystem.FileType
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.util.Requires
+import org.gradle.util.TestPrecondition
 import org.junit.Rule
 import spock.lang.Specification
 
@@ -198,6 +201,83 @@ class DefaultFileSystemSnapshotterTest extends Specification {
         hash(snapshot) != hash(snapshot2)
     }
 
+    def "rescans only the sub-trees of a directory hierarchy that have changed"() {
+        def d = tmpDir.createDir("d")
+        def changed = d.createFile("d1/f1")
+        d.createFile("d2/f2")
+
+        given:
+        def snapshot = snapshotter.snapshotDirectoryTree(d)
+        def unchangedSubTree = fileSystemMirror.getDirectoryTree(d.file("d2").path)
+
+        when:
+        changed << "some other content"
+        fileSystemMirror.invalidate(changed.path, false)
+        def snapshot2 = snapshotter.snapshotDirectoryTree(d)
+
+        then:
+        !snapshot2.is(snapshot)
+        snapshot2.hash != snapshot.hash
+        fileSystemMirror.getDirectoryTree(d.file("d2").path).is(unchangedSubTree)
+        snapshot2.descendants*.relativePath*.pathString == ["d1", "d1/f1", "d2", "d2/f2"]
+    }
+
+    @Requires(TestPrecondition.SYMLINKS)
+    def "does not follow symbolic link to a directory that contains the link"() {
+        def d = tmpDir.createDir("d")
+        d.createFile("d1/f1")
+        d.file("d1/loop").createLink(d)
+        d.file("d1/self").createLink(d.file("d1"))
+
+        when:
+        def snapshot = snapshotter.snapshotDirectoryTree(d)
+
+        then:
+        snapshot.descendants*.relativePath*.pathString == ["d1", "d1/f1"]
+    }
+
+    @Requires(TestPrecondition.SYMLINKS)
+    def "follows symbolic link to a directory that does not contain the link"() {
+        def d = tmpDir.createDir("d")
+        def other = tmpDir.createDir("other")
+        other.createFile("f")
+        d.file("link").createLink(other)
+
+        when:
+        def snapshot = snapshotter.snapshotDirectoryTree(d)
+
+        then:
+        snapshot.descendants*.relativePath*.pathString == ["link", "link/f"]
+    }
+
+    @Requires(TestPrecondition.SYMLINKS)
+    def "fails on symbolic link that points to nothing"() {
+        def d = tmpDir.createDir("d")
+        d.createFile("f")
+        def link = d.file("dangling")
+        link.createLink(tmpDir.file("missing"))
+
+        when:
+        snapshotter.snapshotDirectoryTree(d)
+
+        then:
+        def e = thrown(GradleException)
+        e.message == "Could not list contents of '${link}'. Couldn't follow symbolic link."
+    }
+
+    def "directory hierarchies with the same contents have the same hash"() {
+        def d1 = tmpDir.createDir("d1")
+        d1.createFile("sub/f").text = "content"
+        def d2 = tmpDir.createDir("d2")
+        d2.createFile("sub/f").text = "content"
+        def d3 = tmpDir.createDir("d3")
+        d3.createFile("sub/g").text = "content"
+
+        expect:
+        snapshotter.snapshotDirectoryTree(d1).hash == snapshotter.snapshotDirectoryTree(d2).hash
+        snapshotter.snapshotDirectoryTree(d1).hash != snapshotter.snapshotDirectoryTree(d3).hash
+    }
+
     def hash(Snapshot snapshot) {
         def builder = new DefaultBuildCacheHasher()
         snapshot.appendToHasher(builder)
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state
+
+import com.google.common.hash.HashCode
+import org.gradle.api.internal.file.FileSystemSubset
+import org.gradle.internal.filewatch.FileWatcher
+import org.gradle.internal.filewatch.FileWatcherEvent
+import org.gradle.internal.filewatch.FileWatcherFactory
+import org.gradle.internal.nativeintegration.filesystem.FileType
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class WatchingFileSystemMirrorTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+
+    def watcher = Mock(FileWatcher)
+    def watcherFactory = Mock(FileWatcherFactory)
+    File sentinelDir
+    WatchingFileSystemMirror mirror
+
+    def setup() {
+        sentinelDir = tmpDir.file("sentinel")
+        mirror = new WatchingFileSystemMirror([], watcherFactory, sentinelDir, 1000)
+    }
+
+    def "retains state between builds while the watcher is running"() {
+        def file = tmpDir.file("a")
+        def fileSnapshot = snapshot(file.path)
+
+        when:
+        mirror.putFile(fileSnapshot)
+        mirror.beforeComplete()
+
+        then:
+        1 * watcherFactory.watch(_, mirror) >> watcher
+        1 * watcher.watch({ it.contains(file) })
+        _ * watcher.running >> true
+
+        when:
+        def delivery = deliverSentinelEvent()
+        mirror.afterStart()
+        delivery.join()
+
+        then:
+        _ * watcher.running >> true
+        mirror.getFile(file.path) == fileSnapshot
+    }
+
+    def "discards state when the event for the sentinel file is not received at the start of the build"() {
+        def file = tmpDir.file("a")
+        def fileSnapshot = snapshot(file.path)
+        watcherFactory.watch(_, _) >> watcher
+        watcher.running >> true
+
+        given:
+        mirror.putFile(fileSnapshot)
+        mirror.beforeComplete()
+
+        when:
+        mirror.afterStart()
+
+        then:
+        mirror.getFile(file.path) == null
+    }
+
+    def "registers files in one batch at the end of the build"() {
+        def file1 = tmpDir.file("a")
+        def file2 = tmpDir.file("dir/b")
+
+        when:
+        mirror.putFile(snapshot(file1.path))
+        mirror.putFile(snapshot(file2.path))
+
+        then:
+        0 * watcherFactory._
+        0 * watcher._
+
+        when:
+        mirror.beforeComplete()
+
+        then:
+        1 * watcherFactory.watch(_, mirror) >> watcher
+        1 * watcher.watch({ isSentinel(it) })
+        1 * watcher.watch({ it.contains(file1) && it.contains(file2) })
+    }
+
+    def "discards files that have changed before they were registered"() {
+        def changed = tmpDir.createFile("changed")
+        def unchanged = tmpDir.createFile("unchanged")
+        def changedSnapshot = snapshot(changed)
+        def unchangedSnapshot = snapshot(unchanged)
+        watcherFactory.watch(_, _) >> watcher
+        watcher.running >> true
+
+        given:
+        mirror.putFile(changedSnapshot)
+        mirror.putFile(unchangedSnapshot)
+
+        when:
+        changed.lastModified = changed.lastModified() - 2000
+        mirror.beforeComplete()
+
+        then:
+        mirror.getFile(changed.path) == null
+        mirror.getFile(unchanged.path) == unchangedSnapshot
+    }
+
+    def "discards state at the end of the build when the watcher has stopped"() {
+        def file = tmpDir.file("a")
+        def fileSnapshot = snapshot(file.path)
+        watcherFactory.watch(_, _) >> watcher
+
+        when:
+        mirror.putFile(fileSnapshot)
+        mirror.beforeComplete()
+
+        then:
+        _ * watcher.running >> false
+        mirror.getFile(file.path) == null
+    }
+
+    def "discards state for changed file and the trees that contain it"() {
+        def dir = tmpDir.file("dir")
+        def file = dir.file("a")
+        def other = tmpDir.file("other")
+        def tree = Stub(FileTreeSnapshot) {
+            getPath() >> dir.path
+        }
+        def content = Stub(Snapshot)
+        watcherFactory.watch(_, _) >> watcher
+
+        given:
+        mirror.putDirectory(tree)
+        mirror.putFile(snapshot(file.path))
+        mirror.putContent(dir.path, content)
+        mirror.putFile(snapshot(other.path))
+
+        when:
+        mirror.onChange(watcher, FileWatcherEvent.modify(file))
+
+        then:
+        mirror.getFile(file.path) == null
+        mirror.getDirectoryTree(dir.path) == null
+        mirror.getContent(dir.path) == null
+        mirror.getFile(other.path) != null
+    }
+
+    def "discards state for descendants of deleted directory"() {
+        def dir = tmpDir.file("dir")
+        def file = dir.file("sub/a")
+        watcherFactory.watch(_, _) >> watcher
+
+        given:
+        mirror.putFile(snapshot(file.path))
+
+        when:
+        mirror.onChange(watcher, FileWatcherEvent.delete(dir))
+
+        then:
+        mirror.getFile(file.path) == null
+    }
+
+    def "discards all state when events overflow"() {
+        def file = tmpDir.file("a")
+        watcherFactory.watch(_, _) >> watcher
+
+        given:
+        mirror.putFile(snapshot(file.path))
+
+        when:
+        mirror.onChange(watcher, FileWatcherEvent.undefined())
+
+        then:
+        mirror.getFile(file.path) == null
+    }
+
+    def "does not watch paths already covered by a watched directory"() {
+        def dir = tmpDir.file("dir")
+        def tree = Stub(FileTreeSnapshot) {
+            getPath() >> dir.path
+        }
+
+        when:
+        mirror.putDirectory(tree)
+        mirror.putFile(snapshot(dir.file("a").path))
+        mirror.beforeComplete()
+
+        then:
+        1 * watcherFactory.watch(_, _) >> watcher
+        1 * watcher.watch({ isSentinel(it) })
+        1 * watcher.watch({ it.contains(dir) })
+        0 * watcher.watch(_)
+    }
+
+    def "stops watcher when stopped"() {
+        watcherFactory.watch(_, _) >> watcher
+        mirror.putDirectory(Stub(FileTreeSnapshot) {
+            getPath() >> tmpDir.file("a").path
+        })
+
+        when:
+        mirror.stop()
+
+        then:
+        1 * watcher.stop()
+    }
+
+    private Thread deliverSentinelEvent() {
+        return Thread.start {
+            while (sentinelDir.listFiles()?.find { it.text } == null) {
+                Thread.sleep(10)
+            }
+            mirror.onChange(watcher, FileWatcherEvent.modify(sentinelDir.listFiles()[0]))
+        }
+    }
+
+    private boolean isSentinel(FileSystemSubset subset) {
+        def roots = subset.roots as List
+        return roots.size() == 1 && roots[0].parentFile == sentinelDir
+    }
+
+    private FileSnapshot snapshot(String path) {
+        return Stub(FileSnapshot) {
+            getPath() >> path
+            getType() >> FileType.Missing
+        }
+    }
+
+    private FileSnapshot snapshot(File file) {
+        def content = new FileHashSnapshot(HashCode.fromInt(1), file.lastModified())
+        return Stub(FileSnapshot) {
+            getPath() >> file.path
+            getType() >> FileType.RegularFile
+            getContent() >> content
+        }
+    }
+}
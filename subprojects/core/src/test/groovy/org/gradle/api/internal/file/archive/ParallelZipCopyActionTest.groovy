@@ -0,0 +1,294 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.file.archive
+
+import org.apache.tools.zip.ZipFile
+import org.apache.tools.zip.ZipLong
+import org.apache.tools.zip.ZipOutputStream
+import org.apache.tools.zip.ZipUtil
+import org.gradle.api.file.RelativePath
+import org.gradle.api.internal.DocumentationRegistry
+import org.gradle.api.internal.file.CopyActionProcessingStreamAction
+import org.gradle.api.internal.file.copy.CopyActionProcessingStream
+import org.gradle.api.internal.file.copy.FileCopyDetailsInternal
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.work.WorkerLeaseRegistry
+import org.gradle.test.fixtures.archive.ZipTestFixture
+import org.gradle.test.fixtures.file.TestFile
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.util.GUtil
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.zip.CRC32
+import java.util.zip.Deflater
+
+import static org.hamcrest.Matchers.equalTo
+
+class ParallelZipCopyActionTest extends Specification {
+    @Rule
+    public final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def executorFactory = new DefaultExecutorFactory()
+    def workerLease = Stub(WorkerLeaseRegistry.WorkerLease) {
+        startChild() >> Stub(WorkerLeaseRegistry.WorkerLeaseCompletion)
+    }
+    TestFile zipFile
+    ParallelZipCopyAction visitor
+
+    def setup() {
+        zipFile = tmpDir.getTestDirectory().file("test.zip")
+        visitor = new ParallelZipCopyAction(zipFile, new DocumentationRegistry(), 'UTF-8', false, executorFactory, 4, workerLease)
+    }
+
+    def cleanup() {
+        executorFactory.stop()
+    }
+
+    def "creates zip file"() {
+        given:
+        zip(dir("dir"), file("dir/file1"), file("file2"))
+
+        when:
+        TestFile expandDir = tmpDir.getTestDirectory().file("expanded")
+        zipFile.unzipTo(expandDir)
+
+        then:
+        expandDir.file("dir/file1").assertContents(equalTo("contents of dir/file1"))
+        expandDir.file("file2").assertContents(equalTo("contents of file2"))
+    }
+
+    def "writes entries in the order they are visited"() {
+        def files = (1..200).collect { file("dir/file${it}") }
+
+        when:
+        zip(files as FileCopyDetailsInternal[])
+
+        then:
+        new ZipTestFixture(zipFile).hasDescendantsInOrder(files.collect { it.relativePath.pathString } as String[])
+    }
+
+    def "zip file contains expected permissions"() {
+        given:
+        zip(dir("dir"), file("file"))
+
+        expect:
+        def zipFixture = new ZipTestFixture(zipFile)
+        zipFixture.assertFileMode("dir/", 2)
+        zipFixture.assertFileMode("file", 1)
+    }
+
+    def "streams entries that are too large to buffer"() {
+        def content = new byte[10 * 1024 * 1024]
+        new Random(12).nextBytes(content)
+
+        when:
+        zip(file("small1"), file("large", content), file("small2"))
+
+        then:
+        def zip = new ZipFile(zipFile)
+        try {
+            assert zip.entries.collect { it.name } == ["small1", "large", "small2"]
+            assert zip.getInputStream(zip.getEntry("large")).bytes == content
+            assert zip.getInputStream(zip.getEntry("small2")).text == "contents of small2"
+        } finally {
+            zip.close()
+        }
+    }
+
+    def "reuses compressed content of unchanged entries of previous archive"() {
+        given:
+        previousZip(["unchanged": "contents of unchanged", "changed": "old contents"])
+
+        when:
+        zip(file("unchanged"), file("changed"), file("added"))
+
+        then:
+        def zip = new ZipFile(zipFile)
+        try {
+            assert zip.getEntry("unchanged").compressedSize == storedDeflateSize("unchanged")
+            assert zip.getEntry("changed").compressedSize != storedDeflateSize("changed")
+            assert zip.getInputStream(zip.getEntry("changed")).text == "contents of changed"
+            assert zip.getInputStream(zip.getEntry("unchanged")).text == "contents of unchanged"
+        } finally {
+            zip.close()
+        }
+        !tmpDir.file("test.zip.previous").exists()
+    }
+
+    def "does not reuse compressed content of previous entry with same checksum and size that inflates to different content"() {
+        given:
+        def content = "contents of entry".bytes
+        def crc = new CRC32()
+        crc.update(content)
+        def writer = new RawZipWriter(zipFile, true)
+        try {
+            def dosTime = ZipLong.getValue(ZipUtil.toDosTime(GUtil.CONSTANT_TIME_FOR_ZIP_ENTRIES))
+            def entry = new RawZipWriter.Entry("entry", "entry".bytes, RawZipWriter.DEFLATED, dosTime, 0, crc.value, content.length)
+            def otherContent = deflate("CONTENTS OF ENTRY".bytes)
+            writer.writeEntry(entry, otherContent, 0, otherContent.length)
+            writer.finish()
+        } finally {
+            writer.close()
+        }
+
+        when:
+        zip(file("entry", content))
+
+        then:
+        def zip = new ZipFile(zipFile)
+        try {
+            assert zip.getInputStream(zip.getEntry("entry")).bytes == content
+        } finally {
+            zip.close()
+        }
+    }
+
+    def "compresses entries while holding a worker lease"() {
+        def completion = Mock(WorkerLeaseRegistry.WorkerLeaseCompletion)
+        def workerLease = Mock(WorkerLeaseRegistry.WorkerLease)
+        visitor = new ParallelZipCopyAction(zipFile, new DocumentationRegistry(), 'UTF-8', false, executorFactory, 4, workerLease)
+
+        when:
+        zip(file("file1"), file("file2"))
+
+        then:
+        2 * workerLease.startChild() >> completion
+        2 * completion.leaseFinish()
+    }
+
+    def "wraps failure to open output file"() {
+        given:
+        def invalidZipFile = tmpDir.createDir("test.zip")
+        visitor = new ParallelZipCopyAction(invalidZipFile, new DocumentationRegistry(), 'UTF-8', false, executorFactory, 4, workerLease)
+
+        when:
+        zip()
+
+        then:
+        def e = thrown(Exception)
+        e.message == String.format("Could not create ZIP '%s'.", zipFile)
+    }
+
+    def "wraps failure to add element"() {
+        given:
+        Throwable failure = new RuntimeException("broken")
+        def brokenFile = brokenFile("dir/file1", failure)
+
+        when:
+        zip(brokenFile)
+
+        then:
+        def e = thrown(Exception)
+        e.message == String.format("Could not add $brokenFile to ZIP '%s'.", zipFile)
+        e.cause.is(failure)
+    }
+
+    private void zip(final FileCopyDetailsInternal... files) {
+        visitor.execute(new CopyActionProcessingStream() {
+            void process(CopyActionProcessingStreamAction action) {
+                for (FileCopyDetailsInternal f : files) {
+                    action.processFile(f)
+                }
+            }
+        })
+    }
+
+    /**
+     * Writes an archive whose entries are deflated without compression, so that reused entries can be recognized by their compressed size.
+     */
+    private void previousZip(Map<String, String> entries) {
+        def outputStream = new ZipOutputStream(zipFile)
+        try {
+            outputStream.level = Deflater.NO_COMPRESSION
+            entries.each { name, content ->
+                def entry = new org.apache.tools.zip.ZipEntry(name)
+                entry.time = org.gradle.util.GUtil.CONSTANT_TIME_FOR_ZIP_ENTRIES
+                outputStream.putNextEntry(entry)
+                outputStream.write(content.bytes)
+                outputStream.closeEntry()
+            }
+        } finally {
+            outputStream.close()
+        }
+    }
+
+    private static byte[] deflate(byte[] content) {
+        def deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true)
+        try {
+            deflater.input = content
+            deflater.finish()
+            def result = new ByteArrayOutputStream()
+            def buffer = new byte[1024]
+            while (!deflater.finished()) {
+                result.write(buffer, 0, deflater.deflate(buffer))
+            }
+            return result.toByteArray()
+        } finally {
+            deflater.end()
+        }
+    }
+
+    private static long storedDeflateSize(String name) {
+        def deflater = new Deflater(Deflater.NO_COMPRESSION, true)
+        try {
+            deflater.input = "contents of $name".bytes
+            deflater.finish()
+            def buffer = new byte[1024]
+            long size = 0
+            while (!deflater.finished()) {
+                size += deflater.deflate(buffer)
+            }
+            return size
+        } finally {
+            deflater.end()
+        }
+    }
+
+    private FileCopyDetailsInternal file(final String path, byte[] content = "contents of $path".bytes) {
+        def mock = Mock(FileCopyDetailsInternal)
+        mock.getRelativePath() >> RelativePath.parse(false, path)
+        mock.getLastModified() >> 1000L
+        mock.isDirectory() >> false
+        mock.getMode() >> 1
+        mock.copyTo(_ as OutputStream) >> { OutputStream out ->
+            out.write(content)
+        }
+        mock
+    }
+
+    private FileCopyDetailsInternal dir(final String path) {
+        def mock = Mock(FileCopyDetailsInternal)
+        mock.getRelativePath() >> RelativePath.parse(false, path)
+        mock.getLastModified() >> 1000L
+        mock.isDirectory() >> true
+        mock.getMode() >> 2
+        mock
+    }
+
+    private FileCopyDetailsInternal brokenFile(final String path, final Throwable failure) {
+        def mock = Mock(FileCopyDetailsInternal)
+        mock.getRelativePath() >> RelativePath.parse(false, path)
+        mock.getLastModified() >> 1000L
+        mock.isDirectory() >> false
+        mock.getMode() >> 1
+        mock.copyTo(_ as OutputStream) >> { OutputStream out ->
+            failure.fillInStackTrace()
+            throw failure
+        }
+        mock
+    }
+}
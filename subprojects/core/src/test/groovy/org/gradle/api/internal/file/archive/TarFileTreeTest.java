@@ -17,6 +17,8 @@ package org.gradle.api.internal.file.archive;
 
 import org.gradle.api.GradleException;
 import org.gradle.api.InvalidUserDataException;
+import org.gradle.api.file.EmptyFileVisitor;
+import org.gradle.api.file.FileVisitDetails;
 import org.gradle.api.internal.file.FileResource;
 import org.gradle.api.internal.file.MaybeCompressedFileResource;
 import org.gradle.api.resources.MissingResourceException;
@@ -26,6 +28,7 @@ import org.gradle.util.Resources;
 import org.junit.Rule;
 import org.junit.Test;
 
+import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -35,6 +38,7 @@ import static org.gradle.api.internal.file.TestFiles.fileSystem;
 import static org.gradle.api.tasks.AntBuilderAwareUtil.assertSetContainsForAllTypes;
 import static org.gradle.util.WrapUtil.toList;
 import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
@@ -154,4 +158,60 @@ public class TarFileTreeTest {
 
         assertVisitsPermissions(tree, expected);
     }
+
+    @Test
+    public void reusesEntriesExpandedByEarlierVisit() {
+        rootDir.file("subdir/file1.txt").write("content");
+        rootDir.tarTo(tarFile);
+
+        TestFile file = new TestFile(expandedFiles().get("subdir/file1.txt"));
+        long lastModified = file.lastModified();
+        file.write("CONTENT");
+        file.setLastModified(lastModified);
+
+        assertThat(expandedFiles().get("subdir/file1.txt"), equalTo((File) file));
+        file.assertContents(equalTo("CONTENT"));
+    }
+
+    @Test
+    public void expandsEntryAgainWhenExpandedFileHasBeenEditedInPlace() {
+        rootDir.file("subdir/file1.txt").write("content");
+        rootDir.tarTo(tarFile);
+
+        TestFile file = new TestFile(expandedFiles().get("subdir/file1.txt"));
+        file.write("CONTENT");
+        file.setLastModified(file.lastModified() + 2000);
+
+        assertThat(expandedFiles().get("subdir/file1.txt"), equalTo((File) file));
+        file.assertContents(equalTo("content"));
+    }
+
+    @Test
+    public void expandsEntriesAgainWhenArchiveHasChanged() {
+        rootDir.file("subdir/file1.txt").write("content");
+        rootDir.file("subdir/file2.txt").write("content");
+        rootDir.tarTo(tarFile);
+        Map<String, File> original = expandedFiles();
+
+        rootDir.file("subdir/file1.txt").write("changed");
+        rootDir.file("subdir/file2.txt").delete();
+        rootDir.tarTo(tarFile);
+        tarFile.setLastModified(tarFile.lastModified() + 2000);
+
+        TestFile file = new TestFile(expandedFiles().get("subdir/file1.txt"));
+        assertThat(file, equalTo((File) original.get("subdir/file1.txt")));
+        file.assertContents(equalTo("changed"));
+        assertFalse(original.get("subdir/file2.txt").exists());
+    }
+
+    private Map<String, File> expandedFiles() {
+        final Map<String, File> files = new HashMap<String, File>();
+        tree.visit(new EmptyFileVisitor() {
+            @Override
+            public void visitFile(FileVisitDetails fileDetails) {
+                files.put(fileDetails.getPath(), fileDetails.getFile());
+            }
+        });
+        return files;
+    }
 }
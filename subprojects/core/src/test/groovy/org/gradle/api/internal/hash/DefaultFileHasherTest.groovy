@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.hash
+
+import org.gradle.internal.hash.ContentHashFunction
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class DefaultFileHasherTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def hasher = new DefaultFileHasher()
+
+    def "hash of file is the same as the hash of its content"() {
+        def file = tmpDir.file("file")
+        file.bytes = content
+
+        expect:
+        hasher.hash(file) == hasher.hash(new ByteArrayInputStream(content))
+
+        where:
+        content << [new byte[0], "some text".bytes, bytes(100 * 1024), bytes(3 * 1024 * 1024 + 17)]
+    }
+
+    def "files with different content have different hashes"() {
+        def file1 = tmpDir.file("file1")
+        file1.text = "some text"
+        def file2 = tmpDir.file("file2")
+        file2.text = "some other text"
+
+        expect:
+        hasher.hash(file1) != hasher.hash(file2)
+        hasher.hash([file1, file2], [null, null]) == [hasher.hash(file1), hasher.hash(file2)]
+    }
+
+    def "can use a different hash function"() {
+        def file = tmpDir.file("file")
+        file.bytes = content
+        def murmurHasher = new DefaultFileHasher(ContentHashFunction.MURMUR3)
+
+        expect:
+        murmurHasher.hash(file) == murmurHasher.hash(new ByteArrayInputStream(content))
+        murmurHasher.hash(file) != new DefaultFileHasher(ContentHashFunction.MD5).hash(file)
+
+        where:
+        content << ["some text".bytes, bytes(3 * 1024 * 1024 + 17)]
+    }
+
+    private static byte[] bytes(int size) {
+        def bytes = new byte[size]
+        new Random(size).nextBytes(bytes)
+        return bytes
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.hash
+
+import org.gradle.api.UncheckedIOException
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.exceptions.DefaultMultiCauseException
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class ParallelFileHasherTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def executorFactory = new DefaultExecutorFactory()
+    def delegate = new DefaultFileHasher()
+    def hasher = new ParallelFileHasher(delegate, executorFactory, 4)
+
+    def cleanup() {
+        hasher.stop()
+        executorFactory.stop()
+    }
+
+    def "hashes batch of files in order"() {
+        def files = (1..100).collect {
+            def file = tmpDir.file("file$it")
+            file.text = "content $it"
+            file
+        }
+
+        expect:
+        hasher.hash(files, files.collect { null }) == files.collect { delegate.hash(it) }
+    }
+
+    def "hashes small batch on the calling thread"() {
+        def delegate = Mock(FileHasher)
+        def hasher = new ParallelFileHasher(delegate, executorFactory, 4)
+        def files = [tmpDir.file("a"), tmpDir.file("b")]
+
+        when:
+        hasher.hash(files, [null, null])
+
+        then:
+        1 * delegate.hash(files, [null, null])
+        0 * _._
+    }
+
+    def "propagates failure to hash a file"() {
+        def files = (1..20).collect { tmpDir.createFile("file$it") }
+        files[13].delete()
+
+        when:
+        hasher.hash(files, files.collect { null })
+
+        then:
+        UncheckedIOException e = thrown()
+        e.message.contains(files[13].name)
+    }
+
+    def "collects failures of all workers"() {
+        def files = (1..16).collect { tmpDir.file("file$it") }
+        def allStarted = new CountDownLatch(4)
+        def delegate = Stub(FileHasher) {
+            hash(_ as File, _) >> { File file, details ->
+                allStarted.countDown()
+                allStarted.await(5, TimeUnit.SECONDS)
+                throw new RuntimeException("broken $file.name")
+            }
+        }
+        def hasher = new ParallelFileHasher(delegate, executorFactory, 4)
+
+        when:
+        hasher.hash(files, files.collect { null })
+
+        then:
+        DefaultMultiCauseException e = thrown()
+        e.causes*.message.sort() == (1..4).collect { "broken file$it" }.sort()
+
+        cleanup:
+        hasher.stop()
+    }
+}
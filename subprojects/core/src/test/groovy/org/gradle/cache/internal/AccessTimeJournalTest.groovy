@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal
+
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class AccessTimeJournalTest extends Specification {
+    @Rule TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider()
+    def journalFile = temporaryFolder.file("cache/access.journal")
+    def journal = new AccessTimeJournal(journalFile)
+
+    def "reads latest access time of each entry"() {
+        when:
+        journal.recordAccess("a", 100)
+        journal.recordAccess("b", 200)
+        journal.flush()
+        journal.recordAccess("a", 300)
+        journal.flush()
+
+        then:
+        journal.readAccessTimes() == [a: 300L, b: 200L]
+        journal.read().lineCount == 3
+    }
+
+    def "appends to journal written by other instances"() {
+        def other = new AccessTimeJournal(journalFile)
+
+        when:
+        journal.recordAccess("a", 100)
+        journal.flush()
+        other.recordAccess("b", 200)
+        other.flush()
+
+        then:
+        journal.readAccessTimes() == [a: 100L, b: 200L]
+    }
+
+    def "ignores incomplete lines"() {
+        journalFile.text = "a 100\nb\n 200\nc 3"
+
+        expect:
+        journal.readAccessTimes() == [a: 100L, c: 3L]
+    }
+
+    def "returns no access times when journal does not exist"() {
+        expect:
+        journal.readAccessTimes().isEmpty()
+    }
+
+    def "replaces contents of journal when rewritten"() {
+        journal.recordAccess("a", 100)
+        journal.recordAccess("b", 200)
+        journal.flush()
+
+        when:
+        journal.rewrite([b: 200L])
+
+        then:
+        journal.readAccessTimes() == [b: 200L]
+        journalFile.parentFile.list() as List == ["access.journal"]
+    }
+}
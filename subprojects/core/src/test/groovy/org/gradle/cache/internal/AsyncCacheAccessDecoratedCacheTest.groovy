@@ -0,0 +1,158 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal
+
+import org.gradle.internal.Factory
+import spock.lang.Specification
+
+class AsyncCacheAccessDecoratedCacheTest extends Specification {
+    def queued = []
+    def asyncCacheAccess = new AsyncCacheAccess() {
+        @Override
+        void enqueue(Runnable task) {
+            queued << task
+        }
+
+        @Override
+        def <T> T read(Factory<T> task) {
+            flush()
+            return task.create()
+        }
+
+        @Override
+        void flush() {
+            def tasks = new ArrayList<Runnable>(queued)
+            queued.clear()
+            tasks*.run()
+        }
+    }
+    def persistentCache = Mock(MultiProcessSafePersistentIndexedCache)
+    def cache = new AsyncCacheAccessDecoratedCache<String, String>(asyncCacheAccess, persistentCache)
+
+    def "coalesces pending updates to the same key"() {
+        def completion1 = Mock(Runnable)
+        def completion2 = Mock(Runnable)
+        def completion3 = Mock(Runnable)
+
+        when:
+        cache.putLater("a", "1", completion1)
+        cache.putLater("b", "2", completion2)
+        cache.putLater("a", "3", completion3)
+
+        then:
+        queued.size() == 1
+        0 * _
+
+        when:
+        asyncCacheAccess.flush()
+
+        then:
+        1 * persistentCache.put("a", "3")
+        1 * persistentCache.put("b", "2")
+        1 * completion1.run()
+        1 * completion2.run()
+        1 * completion3.run()
+        0 * _
+    }
+
+    def "removal replaces pending update"() {
+        when:
+        cache.putLater("a", "1", {})
+        cache.removeLater("a", {})
+        asyncCacheAccess.flush()
+
+        then:
+        1 * persistentCache.remove("a")
+        0 * persistentCache.put(_, _)
+    }
+
+    def "reads see pending updates without waiting for them to be applied"() {
+        when:
+        cache.putLater("a", "1", {})
+        cache.removeLater("b", {})
+
+        then:
+        cache.get("a") == "1"
+        cache.get("b") == null
+        queued.size() == 1
+        0 * persistentCache._
+    }
+
+    def "reads fetch from backing cache once updates have been applied"() {
+        given:
+        persistentCache.get("a") >> "2"
+
+        when:
+        cache.putLater("a", "1", {})
+        asyncCacheAccess.flush()
+
+        then:
+        cache.get("a") == "2"
+    }
+
+    def "schedules another batch for updates made after a batch has been applied"() {
+        when:
+        cache.putLater("a", "1", {})
+        asyncCacheAccess.flush()
+        cache.putLater("a", "2", {})
+
+        then:
+        queued.size() == 1
+
+        when:
+        asyncCacheAccess.flush()
+
+        then:
+        1 * persistentCache.put("a", "2")
+    }
+
+    def "applies remaining updates and runs all completions when an update fails"() {
+        def failure = new RuntimeException()
+        def completion1 = Mock(Runnable)
+        def completion2 = Mock(Runnable)
+
+        when:
+        cache.putLater("a", "1", completion1)
+        cache.putLater("b", "2", completion2)
+        asyncCacheAccess.flush()
+
+        then:
+        1 * persistentCache.put("a", "1") >> { throw failure }
+        1 * persistentCache.put("b", "2")
+        1 * completion1.run()
+        1 * completion2.run()
+        def e = thrown(RuntimeException)
+        e == failure
+    }
+
+    def "runs completions of discarded updates when the updates cannot be enqueued"() {
+        def failure = new RuntimeException()
+        def asyncCacheAccess = Mock(AsyncCacheAccess)
+        def cache = new AsyncCacheAccessDecoratedCache<String, String>(asyncCacheAccess, persistentCache)
+        def completion = Mock(Runnable)
+
+        when:
+        cache.putLater("a", "1", completion)
+
+        then:
+        1 * asyncCacheAccess.enqueue(_) >> { throw failure }
+        1 * completion.run()
+        0 * persistentCache._
+        def e = thrown(RuntimeException)
+        e == failure
+    }
+}
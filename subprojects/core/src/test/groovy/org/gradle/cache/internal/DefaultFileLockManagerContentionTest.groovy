@@ -67,6 +67,27 @@ class DefaultFileLockManagerContentionTest extends ConcurrentSpec {
         lockMode << [Exclusive, Shared]
     }
 
+    def "counts contended lock acquisitions and locks released on request"() {
+        given:
+        def file = tmpDir.file("lock-file.bin")
+        def lock = createLock(Exclusive, file)
+        manager.allowContention(lock, { lock.close() } as Runnable)
+
+        when:
+        createLock(Exclusive, file, manager2)
+
+        then:
+        manager.statistics.acquisitions == 1
+        manager.statistics.contendedAcquisitions == 0
+        manager.statistics.releasesOnRequest == 1
+
+        and:
+        manager2.statistics.acquisitions == 1
+        manager2.statistics.contendedAcquisitions == 1
+        manager2.statistics.releaseRequestsSent >= 1
+        manager2.statistics.releasesOnRequest == 0
+    }
+
     @Unroll
     def "cannot acquire lock with mode #lockMode while another lock manager in same process is holding shared lock"() {
         given:
@@ -83,6 +104,22 @@ class DefaultFileLockManagerContentionTest extends ConcurrentSpec {
         lockMode << [Exclusive, Shared]
     }
 
+    def "requests the lock from the owner at most once per ping interval while waiting for it"() {
+        given:
+        def file = tmpDir.file("lock-file.bin")
+        def contentionHandler3 = Mock(FileLockContentionHandler)
+        def manager3 = new DefaultFileLockManager(Stub(ProcessMetaDataProvider), 1000, contentionHandler3, new LongIdGenerator())
+        createLock(Exclusive, file)
+
+        when:
+        createLock(Exclusive, file, manager3)
+
+        then:
+        thrown(LockTimeoutException)
+        1 * contentionHandler3.reservePort() >> 1234
+        (1..6) * contentionHandler3.pingOwner(_, _, _)
+    }
+
     FileLock createLock(LockMode lockMode, File file, FileLockManager lockManager = manager) {
         def lock = lockManager.lock(file, LockOptionsBuilder.mode(lockMode), "foo", "operation")
         openedLocks << lock
@@ -27,14 +27,19 @@ import spock.lang.Subject
 class FixedSizeOldestCacheCleanupTest extends Specification {
     @Rule TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider()
     def cacheDir = temporaryFolder.file("cache-dir").createDir()
-    def persistentCache = Mock(PersistentCache)
-    def cleanupAction = new FixedSizeOldestCacheCleanup(new TestBuildOperationExecutor(),10)
+    def persistentCache = Mock(PersistentCache) {
+        getBaseDir() >> cacheDir
+    }
+    def journal = new AccessTimeJournal(cacheDir.file("access.journal"))
+    def cleanupAction = new FixedSizeOldestCacheCleanup(new TestBuildOperationExecutor(), 10, journal)
 
     def "filters for cache entry files"() {
         expect:
         !cleanupAction.canBeDeleted("cache.properties")
         !cleanupAction.canBeDeleted("gc.properties")
         !cleanupAction.canBeDeleted("cache.lock")
+        !cleanupAction.canBeDeleted("access.journal")
+        !cleanupAction.canBeDeleted("access.journal.tmp")
 
         cleanupAction.canBeDeleted("0"*32)
         cleanupAction.canBeDeleted("ABCDEFABCDEFABCDEFABCDEFABCDEF00")
@@ -54,6 +59,18 @@ class FixedSizeOldestCacheCleanupTest extends Specification {
         eligibleFiles.containsAll(cacheEntries)
     }
 
+    def "finds eligible files in sub-directories"() {
+        def cacheEntries = [
+            createCacheEntry(1024, 0, "00"),
+            createCacheEntry(2048, 0, "ff"),
+        ]
+        cacheDir.file("cache.lock").touch()
+        expect:
+        def eligibleFiles = Arrays.asList(cleanupAction.findEligibleFiles(cacheDir))
+        eligibleFiles.size() == cacheEntries.size()
+        eligibleFiles.containsAll(cacheEntries)
+    }
+
     def "finds files to delete when cache is larger than limit"() {
         def cacheEntries = [
             createCacheEntry(1024, 1000), // 1KB, newest file
@@ -62,12 +79,77 @@ class FixedSizeOldestCacheCleanupTest extends Specification {
             createCacheEntry(1024*1024*10, 0), // 10MB, oldest file
         ]
         expect:
-        def filesToDelete = cleanupAction.findFilesToDelete(persistentCache, cacheEntries as File[])
+        def filesToDelete = cleanupAction.findFilesToDelete(persistentCache, cacheEntries as File[], [:])
         filesToDelete.size() == 1
         // we should only delete the last one
         filesToDelete[0] == cacheEntries.last()
     }
 
+    def "uses access times from journal to find files to delete"() {
+        def recentlyUsed = createCacheEntry(1024*1024*10, 0) // 10MB, oldest file
+        def cacheEntries = [
+            createCacheEntry(1024, 1000), // 1KB, newest file
+            recentlyUsed,
+            createCacheEntry(1024*1024*5, 250), // 5MB
+        ]
+        expect:
+        def filesToDelete = cleanupAction.findFilesToDelete(persistentCache, cacheEntries as File[], [(recentlyUsed.name): 2000L])
+        filesToDelete.size() == 1
+        filesToDelete[0] == cacheEntries.last()
+    }
+
+    def "removes deleted entries from journal"() {
+        def retained = createCacheEntry(1024, 1000)
+        def deleted = createCacheEntry(1024*1024*11, 0)
+        journal.recordAccess(retained.name, 2000)
+        journal.recordAccess(deleted.name, 500)
+        journal.recordAccess("unknown", 500)
+        journal.flush()
+
+        when:
+        cleanupAction.execute(persistentCache)
+
+        then:
+        retained.assertExists()
+        deleted.assertDoesNotExist()
+        journal.readAccessTimes() == [(retained.name): 2000L]
+    }
+
+    def "compacts journal with repeated accesses when no entries are deleted"() {
+        def entry1 = createCacheEntry(1024, 1000)
+        def entry2 = createCacheEntry(1024, 1000)
+        (1..5).each {
+            journal.recordAccess(entry1.name, 2000 + it)
+            journal.recordAccess(entry2.name, 3000 + it)
+            journal.flush()
+        }
+
+        when:
+        cleanupAction.execute(persistentCache)
+
+        then:
+        entry1.assertExists()
+        entry2.assertExists()
+        journal.read().lineCount == 2
+        journal.readAccessTimes() == [(entry1.name): 2005L, (entry2.name): 3005L]
+    }
+
+    def "does not rewrite journal with few repeated accesses"() {
+        def entry = createCacheEntry(1024, 1000)
+        journal.recordAccess(entry.name, 2000)
+        journal.flush()
+        journal.recordAccess(entry.name, 3000)
+        journal.flush()
+        journal.journalFile.lastModified = 0
+
+        when:
+        cleanupAction.execute(persistentCache)
+
+        then:
+        journal.journalFile.lastModified() == 0
+        journal.read().lineCount == 2
+    }
+
     def "finds no files to delete when cache is smaller than limit"() {
         def cacheEntries = [
             createCacheEntry(1024), // 1KB
@@ -75,7 +157,7 @@ class FixedSizeOldestCacheCleanupTest extends Specification {
             createCacheEntry(1024*1024*5), // 5MB
         ]
         expect:
-        def filesToDelete = cleanupAction.findFilesToDelete(persistentCache, cacheEntries as File[])
+        def filesToDelete = cleanupAction.findFilesToDelete(persistentCache, cacheEntries as File[], [:])
         filesToDelete.size() == 0
     }
 
@@ -93,8 +175,9 @@ class FixedSizeOldestCacheCleanupTest extends Specification {
         }
     }
 
-    def createCacheEntry(int size, int timestamp=0) {
-        def cacheEntry = cacheDir.file(String.format("%032x", size))
+    def createCacheEntry(int size, int timestamp=0, String shard=".") {
+        def cacheEntry = cacheDir.file(shard, String.format("%032x", size))
+        cacheEntry.parentFile.mkdirs()
         def data = new byte[size]
         new Random().nextBytes(data)
         cacheEntry.bytes = data
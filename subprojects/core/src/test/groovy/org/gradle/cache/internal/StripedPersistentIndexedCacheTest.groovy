@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.cache.internal
+
+import org.gradle.api.Transformer
+import org.gradle.cache.PersistentIndexedCache
+import spock.lang.Specification
+
+class StripedPersistentIndexedCacheTest extends Specification {
+    def stripe1 = Mock(PersistentIndexedCache)
+    def stripe2 = Mock(PersistentIndexedCache)
+    def cache = new StripedPersistentIndexedCache<String, String>([stripe1, stripe2])
+
+    def "maps each key to a single stripe"() {
+        def keys = (0..100).collect { "/some/file-${it}".toString() }
+
+        expect:
+        keys.every { cache.stripeFor(it).is(cache.stripeFor(it)) }
+        keys.collect { cache.stripeFor(it) }.toSet() == [stripe1, stripe2].toSet()
+    }
+
+    def "forwards operations to the stripe of the key"() {
+        def key = "key"
+        def stripe = cache.stripeFor(key)
+        def producer = Stub(Transformer)
+
+        when:
+        def value = cache.get(key)
+        def produced = cache.get(key, producer)
+        cache.put(key, "value")
+        cache.remove(key)
+
+        then:
+        1 * stripe.get(key) >> "value"
+        1 * stripe.get(key, producer) >> "produced"
+        1 * stripe.put(key, "value")
+        1 * stripe.remove(key)
+        0 * _
+
+        and:
+        value == "value"
+        produced == "produced"
+    }
+
+    def "spreads hash codes that only differ in their high bits"() {
+        expect:
+        StripedPersistentIndexedCache.stripeIndex(0x10000, 2) != StripedPersistentIndexedCache.stripeIndex(0x20000, 2)
+        StripedPersistentIndexedCache.stripeIndex(Integer.MIN_VALUE, 3) >= 0
+    }
+
+    def "requires at least one stripe"() {
+        when:
+        new StripedPersistentIndexedCache<String, String>([])
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.btree
+
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+class MappedFileBlockStoreTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def cacheFile = tmpDir.file("cache.bin")
+    def factory = new BlockStore.Factory() {
+        Object create(Class<? extends BlockPayload> type) {
+            return new TestPayload()
+        }
+    }
+    def store = new MappedFileBlockStore(cacheFile)
+
+    def cleanup() {
+        store.close()
+    }
+
+    def "can read blocks written to the store"() {
+        given:
+        store.open({} as Runnable, factory)
+        def pointers = writeBlocks(10)
+
+        expect:
+        pointers.eachWithIndex { pos, i ->
+            assert store.read(pos, TestPayload).value == valueFor(i)
+        }
+        store.readFirst(TestPayload).value == valueFor(0)
+    }
+
+    def "can read blocks of a file that has been mapped from multiple threads"() {
+        given:
+        store.open({} as Runnable, factory)
+        def pointers = writeBlocks(2000)
+        def executor = Executors.newFixedThreadPool(4)
+
+        when:
+        def results = executor.invokeAll((0..<4).collect { thread ->
+            { ->
+                pointers.eachWithIndex { pos, i ->
+                    assert store.read(pos, TestPayload).value == valueFor(i)
+                }
+                true
+            } as Callable<Boolean>
+        })
+
+        then:
+        results*.get() == [true, true, true, true]
+
+        cleanup:
+        executor.shutdown()
+    }
+
+    def "can read blocks after reopening the store"() {
+        given:
+        store.open({} as Runnable, factory)
+        def pointers = writeBlocks(2000)
+        store.close()
+        def initAction = Mock(Runnable)
+
+        when:
+        store = new MappedFileBlockStore(cacheFile)
+        store.open(initAction, factory)
+
+        then:
+        0 * initAction.run()
+        pointers.eachWithIndex { pos, i ->
+            assert store.read(pos, TestPayload).value == valueFor(i)
+        }
+    }
+
+    def "can overwrite a block"() {
+        given:
+        store.open({} as Runnable, factory)
+        def pointers = writeBlocks(2000)
+        def payload = store.read(pointers[3], TestPayload)
+
+        when:
+        payload.value = "changed"
+        store.write(payload)
+
+        then:
+        store.read(pointers[3], TestPayload).value == "changed"
+        store.read(pointers[4], TestPayload).value == valueFor(4)
+    }
+
+    def "detects corrupted block"() {
+        given:
+        store.open({} as Runnable, factory)
+        def pointers = writeBlocks(1)
+
+        when:
+        store.read(BlockPointer.pos(pointers[0].pos + 1), TestPayload)
+
+        then:
+        thrown(CorruptedCacheException)
+    }
+
+    def "clear discards all blocks"() {
+        given:
+        store.open({} as Runnable, factory)
+        writeBlocks(2000)
+
+        when:
+        store.clear()
+
+        then:
+        cacheFile.length() == 0
+
+        when:
+        store.readFirst(TestPayload)
+
+        then:
+        thrown(CorruptedCacheException)
+    }
+
+    private List<BlockPointer> writeBlocks(int count) {
+        def pointers = []
+        count.times { i ->
+            def payload = new TestPayload(value: valueFor(i))
+            store.attach(payload)
+            store.write(payload)
+            pointers << payload.pos
+        }
+        return pointers
+    }
+
+    private static String valueFor(int i) {
+        return "value ${i} ".multiply(20)
+    }
+
+    static class TestPayload extends BlockPayload {
+        String value
+
+        @Override
+        protected int getSize() {
+            return 4 * 1024
+        }
+
+        @Override
+        protected byte getType() {
+            return 0x77
+        }
+
+        @Override
+        protected void read(DataInputStream inputStream) throws Exception {
+            value = inputStream.readUTF()
+        }
+
+        @Override
+        protected void write(DataOutputStream outputStream) throws Exception {
+            outputStream.writeUTF(value)
+        }
+    }
+}
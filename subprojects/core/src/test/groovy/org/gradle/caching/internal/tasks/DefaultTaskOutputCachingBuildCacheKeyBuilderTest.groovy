@@ -0,0 +1,41 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.tasks
+
+import com.google.common.hash.HashCode
+import org.gradle.internal.hash.ContentHashFunction
+import spock.lang.Specification
+
+class DefaultTaskOutputCachingBuildCacheKeyBuilderTest extends Specification {
+    def "key depends on content hash function other than MD5"() {
+        expect:
+        key(null) == key(ContentHashFunction.MD5)
+        key(ContentHashFunction.MURMUR3) != key(ContentHashFunction.MD5)
+    }
+
+    private static String key(ContentHashFunction hashFunction) {
+        def builder = new DefaultTaskOutputCachingBuildCacheKeyBuilder()
+        builder.appendTaskClass("org.gradle.SomeTask")
+        if (hashFunction != null) {
+            builder.appendContentHashFunction(hashFunction)
+        }
+        builder.appendClassloaderHash(HashCode.fromInt(1))
+        builder.appendActionsClassloaderHashes([HashCode.fromInt(2)])
+        builder.appendInputPropertyHash("input", HashCode.fromInt(3))
+        return builder.build().hashCode
+    }
+}
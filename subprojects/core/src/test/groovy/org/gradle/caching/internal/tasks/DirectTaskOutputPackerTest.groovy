@@ -0,0 +1,450 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.tasks
+
+import org.gradle.api.internal.file.TmpDirTemporaryFileProvider
+import org.gradle.api.internal.tasks.ResolvedTaskOutputFilePropertySpec
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.nativeplatform.filesystem.FileSystem
+import spock.lang.Unroll
+
+import static org.gradle.api.internal.tasks.CacheableTaskOutputFilePropertySpec.OutputType.DIRECTORY
+import static org.gradle.api.internal.tasks.CacheableTaskOutputFilePropertySpec.OutputType.FILE
+
+class DirectTaskOutputPackerTest extends AbstractTaskOutputPackerSpec {
+    def fileSystem = Mock(FileSystem)
+    def executorFactory = new DefaultExecutorFactory()
+    def temporaryFileProvider = new TmpDirTemporaryFileProvider()
+    private directPacker = new DirectTaskOutputPacker(fileSystem, temporaryFileProvider, executorFactory, 1)
+
+    @Override
+    TaskOutputPacker getPacker() {
+        return directPacker
+    }
+
+    def cleanup() {
+        directPacker.stop()
+        executorFactory.stop()
+    }
+
+    @Unroll
+    def "can pack single task output file with file mode #mode"() {
+        def sourceOutputFile = tempDir.file("source.txt")
+        sourceOutputFile << "output"
+        sourceOutputFile.lastModified = fileDate
+        def targetOutputFile = tempDir.file("target.txt")
+        def output = new ByteArrayOutputStream()
+        def unixMode = Integer.parseInt(mode, 8)
+
+        when:
+        pack output, new ResolvedTaskOutputFilePropertySpec("test", FILE, sourceOutputFile)
+
+        then:
+        1 * fileSystem.getUnixMode(sourceOutputFile) >> unixMode
+        0 * _
+
+        when:
+        unpack new ByteArrayInputStream(output.toByteArray()), new ResolvedTaskOutputFilePropertySpec("test", FILE, targetOutputFile)
+
+        then:
+        1 * fileSystem.chmod(targetOutputFile, unixMode)
+        targetOutputFile.text == "output"
+        targetOutputFile.lastModified() == fileDate
+        0 * _
+
+        where:
+        mode   | fileDate
+        "0644" | 123456789000L
+        "0755" | 123456789000L
+    }
+
+    @Unroll
+    def "can pack task output directory with #description contents read from #source"() {
+        def sourceOutputDir = tempDir.file("source").createDir()
+        def sourceSubDir = sourceOutputDir.file("subdir").createDir()
+        def sourceDataFile = sourceSubDir.file("data.bin")
+        sourceDataFile.bytes = contents
+        def targetOutputDir = tempDir.file("target").createDir()
+        def targetDataFile = targetOutputDir.file("subdir/data.bin")
+        def cacheEntry = tempDir.file("cache-entry")
+
+        when:
+        cacheEntry.withOutputStream { output ->
+            pack output, new ResolvedTaskOutputFilePropertySpec("test", DIRECTORY, sourceOutputDir)
+        }
+
+        then:
+        1 * fileSystem.getUnixMode(sourceSubDir) >> 0711
+        1 * fileSystem.getUnixMode(sourceDataFile) >> 0600
+        0 * _
+
+        when:
+        def input = source == "file" ? new FileInputStream(cacheEntry) : new ByteArrayInputStream(cacheEntry.bytes)
+        try {
+            unpack input, new ResolvedTaskOutputFilePropertySpec("test", DIRECTORY, targetOutputDir)
+        } finally {
+            input.close()
+        }
+
+        then:
+        1 * fileSystem.chmod(targetOutputDir, 0755)
+        1 * fileSystem.chmod(targetOutputDir.file("subdir"), 0711)
+        1 * fileSystem.chmod(targetDataFile, 0600)
+        targetDataFile.bytes == contents
+        0 * _
+
+        where:
+        description      | contents                | source
+        "compressible"   | ("abcd" * 100000).bytes | "file"
+        "compressible"   | ("abcd" * 100000).bytes | "stream"
+        "incompressible" | randomBytes(100000)     | "file"
+        "incompressible" | randomBytes(100000)     | "stream"
+    }
+
+    def "can pack multiple files read from file"() {
+        def sourceDir = tempDir.file("source").createDir()
+        def targetDir = tempDir.file("target")
+        def files = (1..10).collect { index ->
+            def file = sourceDir.file("file-${index}.bin")
+            file.bytes = index % 2 ? randomBytes(1000 * index) : ("x" * 1000 * index).bytes
+            file
+        }
+        def cacheEntry = tempDir.file("cache-entry")
+        fileSystem.getUnixMode(_) >> 0644
+
+        when:
+        cacheEntry.withOutputStream { output ->
+            pack output, new ResolvedTaskOutputFilePropertySpec("test", DIRECTORY, sourceDir)
+        }
+        def input = new FileInputStream(cacheEntry)
+        try {
+            unpack input, new ResolvedTaskOutputFilePropertySpec("test", DIRECTORY, targetDir)
+        } finally {
+            input.close()
+        }
+
+        then:
+        files.each { file ->
+            assert targetDir.file(file.name).bytes == file.bytes
+        }
+    }
+
+    @Unroll
+    def "can pack task output with missing #type (pre-existing as: #preExistsAs)"() {
+        def sourceOutput = tempDir.file("source")
+        def targetOutput = tempDir.file("target")
+        switch (preExistsAs) {
+            case "file":
+                targetOutput.createNewFile()
+                break
+            case "dir":
+                targetOutput.createDir()
+                break
+            case "none":
+                break
+        }
+        def output = new ByteArrayOutputStream()
+
+        when:
+        pack output, new ResolvedTaskOutputFilePropertySpec("test", type, sourceOutput)
+        unpack new ByteArrayInputStream(output.toByteArray()), new ResolvedTaskOutputFilePropertySpec("test", type, targetOutput)
+
+        then:
+        !targetOutput.exists()
+        0 * _
+
+        where:
+        type      | preExistsAs
+        FILE      | "file"
+        FILE      | "dir"
+        FILE      | "none"
+        DIRECTORY | "file"
+        DIRECTORY | "dir"
+        DIRECTORY | "none"
+    }
+
+    def "can pack single task output file with long name"() {
+        def propertyName = "prop-" + ("x" * 100)
+        def sourceOutputFile = tempDir.file("source.txt")
+        sourceOutputFile << "output"
+        def targetOutputFile = tempDir.file("target.txt")
+        def output = new ByteArrayOutputStream()
+
+        when:
+        pack output, new ResolvedTaskOutputFilePropertySpec(propertyName, FILE, sourceOutputFile)
+
+        then:
+        1 * fileSystem.getUnixMode(sourceOutputFile) >> 0644
+        0 * _
+
+        when:
+        unpack new ByteArrayInputStream(output.toByteArray()), new ResolvedTaskOutputFilePropertySpec(propertyName, FILE, targetOutputFile)
+
+        then:
+        1 * fileSystem.chmod(targetOutputFile, 0644)
+        targetOutputFile.text == "output"
+        0 * _
+    }
+
+    def "can pack task output with all optional, null outputs"() {
+        def output = new ByteArrayOutputStream()
+
+        when:
+        pack output,
+            new ResolvedTaskOutputFilePropertySpec("out1", FILE, null),
+            new ResolvedTaskOutputFilePropertySpec("out2", DIRECTORY, null)
+        unpack new ByteArrayInputStream(output.toByteArray()),
+            new ResolvedTaskOutputFilePropertySpec("out1", FILE, null),
+            new ResolvedTaskOutputFilePropertySpec("out2", DIRECTORY, null)
+
+        then:
+        noExceptionThrown()
+        0 * _
+    }
+
+    def "can pack task output with missing files"() {
+        def sourceDir = tempDir.file("source")
+        def targetDir = tempDir.file("target")
+        def output = new ByteArrayOutputStream()
+
+        when:
+        pack output,
+            new ResolvedTaskOutputFilePropertySpec("missingFile", FILE, sourceDir.file("missing.txt")),
+            new ResolvedTaskOutputFilePropertySpec("missingDir", DIRECTORY, sourceDir.file("missing"))
+        unpack new ByteArrayInputStream(output.toByteArray()),
+            new ResolvedTaskOutputFilePropertySpec("missingFile", FILE, targetDir.file("missing.txt")),
+            new ResolvedTaskOutputFilePropertySpec("missingDir", DIRECTORY, targetDir.file("missing"))
+
+        then:
+        noExceptionThrown()
+        !targetDir.file("missing.txt").exists()
+        !targetDir.file("missing").exists()
+        0 * _
+    }
+
+    def "can pack task output with empty output directory"() {
+        def sourceDir = tempDir.file("source").createDir()
+        def targetDir = tempDir.file("target")
+        def output = new ByteArrayOutputStream()
+
+        when:
+        pack output, new ResolvedTaskOutputFilePropertySpec("empty", DIRECTORY, sourceDir)
+
+        then:
+        0 * _
+
+        when:
+        unpack new ByteArrayInputStream(output.toByteArray()), new ResolvedTaskOutputFilePropertySpec("empty", DIRECTORY, targetDir)
+
+        then:
+        1 * fileSystem.chmod(targetDir, 0755)
+        targetDir.assertIsEmptyDir()
+        0 * _
+    }
+
+    def "parent directory is created for output file"() {
+        def targetOutputFile = tempDir.file("build/some-dir/output.txt")
+        targetOutputFile << "Some data"
+
+        when:
+        TaskOutputPackerUtils.ensureDirectoryForProperty(FILE, targetOutputFile)
+
+        then:
+        targetOutputFile.parentFile.assertIsEmptyDir()
+    }
+
+    def "directory is created for output directory"() {
+        def targetOutputDir = tempDir.file("build/output")
+
+        when:
+        TaskOutputPackerUtils.ensureDirectoryForProperty(DIRECTORY, targetOutputDir)
+
+        then:
+        targetOutputDir.assertIsEmptyDir()
+    }
+
+    def "cleans up leftover files in output directory"() {
+        def targetOutputDir = tempDir.file("build/output")
+        targetOutputDir.file("sub-dir/data.txt") << "Some data"
+
+        when:
+        TaskOutputPackerUtils.ensureDirectoryForProperty(DIRECTORY, targetOutputDir)
+
+        then:
+        targetOutputDir.assertIsEmptyDir()
+    }
+
+    def "creates directories even if there is a pre-existing file in its place"() {
+        def targetOutputDir = tempDir.file("build/output")
+        targetOutputDir << "This should become a directory"
+
+        when:
+        TaskOutputPackerUtils.ensureDirectoryForProperty(DIRECTORY, targetOutputDir)
+
+        then:
+        targetOutputDir.assertIsEmptyDir()
+    }
+
+    def "creates parent directories for output file even if there is a pre-existing directory in its place"() {
+        def targetOutputFile = tempDir.file("build/some-dir/output.txt")
+        targetOutputFile.createDir()
+
+        when:
+        TaskOutputPackerUtils.ensureDirectoryForProperty(FILE, targetOutputFile)
+
+        then:
+        targetOutputFile.parentFile.assertIsEmptyDir()
+    }
+
+    def "reads origin metadata"() {
+        def output = new ByteArrayOutputStream()
+        writeOrigin.execute(_) >> { OutputStream metadata -> metadata << "origin" }
+        def origin = null
+        readOrigin.execute(_) >> { InputStream metadata -> origin = metadata.text; null }
+
+        when:
+        pack output, writeOrigin, new ResolvedTaskOutputFilePropertySpec("out", FILE, null)
+        unpack new ByteArrayInputStream(output.toByteArray()), readOrigin, new ResolvedTaskOutputFilePropertySpec("out", FILE, null)
+
+        then:
+        origin == "origin"
+    }
+
+    def "fails for entry in other format"() {
+        when:
+        unpack new ByteArrayInputStream([0x1f, 0x8b, 0, 0, 0, 0, 0, 0] as byte[])
+
+        then:
+        def ex = thrown IllegalStateException
+        ex.message == "Cached result format error, not a cache entry."
+    }
+
+    def "only compresses files that compress well"() {
+        def compressible = ("abcd" * 1000).bytes
+        def incompressible = randomBytes(4000)
+        def small = ("abcd" * 10).bytes
+
+        expect:
+        DirectTaskOutputPacker.isCompressible(compressible, compressible.length)
+        !DirectTaskOutputPacker.isCompressible(incompressible, incompressible.length)
+        !DirectTaskOutputPacker.isCompressible(small, small.length)
+    }
+
+    @Unroll
+    def "can pack file that is larger than the sample that decides compression read from #source"() {
+        fileSystem.getUnixMode(_) >> 0644
+        def sourceOutputFile = tempDir.file("source.bin")
+        sourceOutputFile.bytes = ("abcd" * 20000).bytes
+        sourceOutputFile.append(randomBytes(100000))
+        def targetOutputFile = tempDir.file("target.bin")
+        def cacheEntry = tempDir.file("cache-entry")
+
+        when:
+        cacheEntry.withOutputStream { output ->
+            pack output, new ResolvedTaskOutputFilePropertySpec("test", FILE, sourceOutputFile)
+        }
+        def input = source == "file" ? new FileInputStream(cacheEntry) : new ByteArrayInputStream(cacheEntry.bytes)
+        try {
+            unpack input, new ResolvedTaskOutputFilePropertySpec("test", FILE, targetOutputFile)
+        } finally {
+            input.close()
+        }
+
+        then:
+        targetOutputFile.bytes == sourceOutputFile.bytes
+
+        where:
+        source << ["file", "stream"]
+    }
+
+    @Unroll
+    def "can pack and unpack multiple properties in parallel read from #source"() {
+        directPacker = new DirectTaskOutputPacker(fileSystem, temporaryFileProvider, executorFactory, 4)
+        fileSystem.getUnixMode(_) >> 0644
+        def sourceDir = tempDir.file("source").createDir()
+        def paths = ["top.txt", "a/one.txt", "a/nested/two.bin", "b/three.txt", "c/four.bin", "d/e/f/five.txt"]
+        paths.each { path ->
+            def file = sourceDir.file(path)
+            file.parentFile.mkdirs()
+            file.bytes = path.endsWith(".bin") ? randomBytes(20000) : (path * 1000).bytes
+        }
+        def emptyDir = sourceDir.file("empty").createDir()
+        def sourceFile = tempDir.file("source.txt")
+        sourceFile.text = "single file"
+        def targetDir = tempDir.file("target")
+        targetDir.file("stale.txt") << "stale"
+        def targetFile = tempDir.file("target.txt")
+        def cacheEntry = tempDir.file("cache-entry")
+
+        when:
+        cacheEntry.withOutputStream { output ->
+            pack output, new ResolvedTaskOutputFilePropertySpec("dir", DIRECTORY, sourceDir), new ResolvedTaskOutputFilePropertySpec("file", FILE, sourceFile), new ResolvedTaskOutputFilePropertySpec("missing", FILE, tempDir.file("missing.txt"))
+        }
+        def input = source == "file" ? new FileInputStream(cacheEntry) : new ByteArrayInputStream(cacheEntry.bytes)
+        try {
+            unpack input, new ResolvedTaskOutputFilePropertySpec("dir", DIRECTORY, targetDir), new ResolvedTaskOutputFilePropertySpec("file", FILE, targetFile), new ResolvedTaskOutputFilePropertySpec("missing", FILE, tempDir.file("target-missing.txt"))
+        } finally {
+            input.close()
+        }
+
+        then:
+        paths.each { path ->
+            assert targetDir.file(path).bytes == sourceDir.file(path).bytes
+        }
+        targetDir.file(emptyDir.name).directory
+        !targetDir.file("stale.txt").exists()
+        targetFile.text == "single file"
+        !tempDir.file("target-missing.txt").exists()
+
+        where:
+        source << ["file", "stream"]
+    }
+
+    def "entries packed in parallel can be unpacked sequentially"() {
+        fileSystem.getUnixMode(_) >> 0644
+        def sourceDir = tempDir.file("source").createDir()
+        (1..6).each { index ->
+            sourceDir.file("dir-${index}/file.txt").text = "file ${index}"
+        }
+        def targetDir = tempDir.file("target")
+        def cacheEntry = tempDir.file("cache-entry")
+        def parallelPacker = new DirectTaskOutputPacker(fileSystem, temporaryFileProvider, executorFactory, 4)
+
+        when:
+        cacheEntry.withOutputStream { output ->
+            parallelPacker.pack([new ResolvedTaskOutputFilePropertySpec("dir", DIRECTORY, sourceDir)] as SortedSet, output, writeOrigin)
+        }
+        def input = new FileInputStream(cacheEntry)
+        try {
+            unpack input, new ResolvedTaskOutputFilePropertySpec("dir", DIRECTORY, targetDir)
+        } finally {
+            input.close()
+            parallelPacker.stop()
+        }
+
+        then:
+        (1..6).each { index ->
+            assert targetDir.file("dir-${index}/file.txt").text == "file ${index}"
+        }
+    }
+
+    private static byte[] randomBytes(int size) {
+        def bytes = new byte[size]
+        new Random(size).nextBytes(bytes)
+        return bytes
+    }
+}
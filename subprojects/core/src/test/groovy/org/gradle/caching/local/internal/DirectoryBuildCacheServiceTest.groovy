@@ -19,6 +19,7 @@ package org.gradle.caching.local.internal
 import org.gradle.cache.CacheBuilder
 import org.gradle.cache.CacheRepository
 import org.gradle.cache.PersistentCache
+import org.gradle.caching.BuildCacheEntryReader
 import org.gradle.caching.BuildCacheKey
 import org.gradle.internal.operations.BuildOperationExecutor
 import org.gradle.test.fixtures.file.CleanupTestDirectory
@@ -47,10 +48,11 @@ class DirectoryBuildCacheServiceTest extends Specification {
 
     def "does not store partial result"() {
         def hashCode = "1234abcd"
+        def shardDir = cacheDir.file("12")
         when:
         service.store(key) { OutputStream output ->
-            // Check that partial result file is created inside the cache directory
-            def cacheDirFiles = cacheDir.listFiles()
+            // Check that partial result file is created inside the shard directory
+            def cacheDirFiles = shardDir.listFiles()
             assert cacheDirFiles.length == 1
 
             def partialCacheFile = cacheDirFiles[0]
@@ -63,7 +65,52 @@ class DirectoryBuildCacheServiceTest extends Specification {
         then:
         def ex = thrown RuntimeException
         ex.message == "Simulated write error"
-        cacheDir.listFiles() as List == []
+        shardDir.listFiles() as List == []
         1 * key.getHashCode() >> hashCode
     }
+
+    def "stores entry in shard directory and loads it without locking"() {
+        def reader = Mock(BuildCacheEntryReader)
+        key.getHashCode() >> "1234abcd"
+
+        when:
+        service.store(key) { OutputStream output ->
+            output << "abcd"
+        }
+
+        then:
+        cacheDir.file("12/1234abcd").text == "abcd"
+
+        when:
+        def loaded = service.load(key, reader)
+
+        then:
+        loaded
+        1 * reader.readFrom(_) >> { InputStream input -> assert input.text == "abcd" }
+        0 * persistentCache._
+    }
+
+    def "reports missing entry as cache miss"() {
+        def reader = Mock(BuildCacheEntryReader)
+        key.getHashCode() >> "1234abcd"
+
+        expect:
+        !service.load(key, reader)
+        0 * reader._
+    }
+
+    def "records access times in journal when closed"() {
+        key.getHashCode() >> "1234abcd"
+        service.store(key) { OutputStream output ->
+            output << "abcd"
+        }
+        service.load(key, Mock(BuildCacheEntryReader))
+
+        when:
+        service.close()
+
+        then:
+        cacheDir.file("access.journal").text.startsWith("1234abcd ")
+        1 * persistentCache.close()
+    }
 }
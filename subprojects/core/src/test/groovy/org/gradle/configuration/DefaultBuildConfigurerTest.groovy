@@ -26,7 +26,8 @@ class DefaultBuildConfigurerTest extends Specification {
     private gradle = Mock(GradleInternal)
     private rootProject = Mock(ProjectInternal)
     private projectConfigurer = Mock(ProjectConfigurer)
-    private configurer = new DefaultBuildConfigurer(projectConfigurer)
+    private projectConfigurationCache = Mock(ProjectConfigurationCache)
+    private configurer = new DefaultBuildConfigurer(projectConfigurer, projectConfigurationCache)
 
     def setup() {
         gradle.startParameter >> startParameter
@@ -49,4 +50,35 @@ class DefaultBuildConfigurerTest extends Specification {
         startParameter.isConfigureOnDemand() >> true
         1 * projectConfigurer.configure(rootProject)
     }
+
+    def "configures root project and projects required by cached configuration"() {
+        def project1 = Mock(ProjectInternal)
+        def project2 = Mock(ProjectInternal)
+
+        when:
+        configurer.configure(gradle)
+
+        then:
+        1 * projectConfigurationCache.getProjectsToConfigure(gradle) >> [project1, project2]
+
+        then:
+        1 * projectConfigurer.configure(rootProject)
+
+        then:
+        1 * projectConfigurer.configure(project1)
+
+        then:
+        1 * projectConfigurer.configure(project2)
+        0 * projectConfigurer._
+    }
+
+    def "does not use cached configuration for on demand mode"() {
+        when:
+        configurer.configure(gradle)
+
+        then:
+        startParameter.isConfigureOnDemand() >> true
+        1 * projectConfigurer.configure(rootProject)
+        0 * projectConfigurationCache._
+    }
 }
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.configuration
+
+import com.google.common.hash.Hashing
+import org.gradle.StartParameter
+import org.gradle.api.Task
+import org.gradle.api.internal.GradleInternal
+import org.gradle.api.internal.hash.FileHasher
+import org.gradle.api.internal.project.ProjectInternal
+import org.gradle.cache.internal.DefaultCacheRepository
+import org.gradle.cache.internal.DefaultCacheScopeMapping
+import org.gradle.execution.TaskGraphExecuter
+import org.gradle.groovy.scripts.ScriptSource
+import org.gradle.internal.classpath.DefaultClassPath
+import org.gradle.internal.resource.TextResource
+import org.gradle.test.fixtures.file.TestFile
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.testfixtures.internal.InMemoryCacheFactory
+import org.gradle.util.GradleVersion
+import org.gradle.util.TestUtil
+import org.junit.Rule
+import spock.lang.Specification
+
+class ProjectConfigurationCacheTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def cacheRepository = new DefaultCacheRepository(new DefaultCacheScopeMapping(tmpDir.file("user-home"), null, GradleVersion.current()), new InMemoryCacheFactory())
+    def fileHasher = Stub(FileHasher) {
+        hash(_ as File) >> { File file -> Hashing.md5().hashBytes(file.bytes) }
+    }
+    def startParameter = new StartParameter()
+    def buildSrcClassPath = []
+    def tasks = []
+    def taskGraph = Stub(TaskGraphExecuter) {
+        getAllTasks() >> { tasks }
+    }
+    ProjectInternal root
+    ProjectInternal a
+    ProjectInternal b
+    ProjectInternal c
+    GradleInternal gradle
+
+    def setup() {
+        def rootDir = tmpDir.createDir("root")
+        root = TestUtil.createRootProject(rootDir)
+        a = TestUtil.createChildProject(root, "a", rootDir.createDir("a"))
+        b = TestUtil.createChildProject(a, "b", rootDir.createDir("a/b"))
+        c = TestUtil.createChildProject(root, "c", rootDir.createDir("c"))
+        startParameter.taskNames = [":a:b:build"]
+        gradle = Stub(GradleInternal) {
+            getRootProject() >> root
+            getDefaultProject() >> root
+            getStartParameter() >> startParameter
+            getIncludedBuilds() >> []
+            getTaskGraph() >> taskGraph
+        }
+        tasks = [task(b), task(a)]
+    }
+
+    def "configures nothing up front when cache is disabled"() {
+        def cache = new ProjectConfigurationCache(cacheRepository, fileHasher, false)
+
+        when:
+        cache.store(gradle)
+
+        then:
+        cache.getProjectsToConfigure(gradle) == null
+        !cache.used
+    }
+
+    def "configures projects that own the tasks of the task graph and their parents when nothing has changed"() {
+        given:
+        def script = buildScript(b, "task build")
+        buildWith(script)
+
+        when:
+        def cache = newCache()
+        def projects = cache.getProjectsToConfigure(gradle)
+
+        then:
+        projects == [root, a, b]
+        cache.used
+    }
+
+    def "configures all projects when an executed script has changed"() {
+        given:
+        buildWith(buildScript(b, "task build"))
+
+        when:
+        b.buildFile.text = "task build { doLast { } }"
+        def cache = newCache()
+
+        then:
+        cache.getProjectsToConfigure(gradle) == null
+        !cache.used
+    }
+
+    def "configures all projects when a build file has been added"() {
+        given:
+        buildWith(buildScript(b, "task build"))
+
+        when:
+        c.buildFile.text = "task other"
+
+        then:
+        newCache().getProjectsToConfigure(gradle) == null
+    }
+
+    def "configures all projects when different tasks are requested"() {
+        given:
+        buildWith(buildScript(b, "task build"))
+
+        when:
+        startParameter.taskNames = [":a:build"]
+
+        then:
+        newCache().getProjectsToConfigure(gradle) == null
+    }
+
+    def "configures all projects when an init script has changed or been added"() {
+        given:
+        def initScript = tmpDir.createFile("init.gradle")
+        initScript.text = "println 'init'"
+        startParameter.addInitScript(initScript)
+        buildWith(buildScript(b, "task build"))
+
+        expect:
+        newCache().getProjectsToConfigure(gradle) == [root, a, b]
+
+        when:
+        initScript.text = "println 'changed'"
+
+        then:
+        newCache().getProjectsToConfigure(gradle) == null
+
+        when:
+        buildWith(buildScript(b, "task build"))
+        startParameter.addInitScript(tmpDir.createFile("other.gradle"))
+
+        then:
+        newCache().getProjectsToConfigure(gradle) == null
+    }
+
+    def "configures all projects when the class path built from buildSrc has changed"() {
+        given:
+        def jar = tmpDir.createFile("buildSrc/build/libs/buildSrc.jar")
+        jar.text = "classes"
+        def classesDir = tmpDir.createDir("buildSrc/build/classes")
+        def classFile = classesDir.createFile("org/Plugin.class")
+        classFile.text = "class"
+        buildSrcClassPath = [jar, classesDir]
+        buildWith(buildScript(b, "task build"))
+
+        expect:
+        newCache().getProjectsToConfigure(gradle) == [root, a, b]
+
+        when:
+        classFile.text = "changed"
+
+        then:
+        newCache().getProjectsToConfigure(gradle) == null
+
+        when:
+        buildWith(buildScript(b, "task build"))
+        buildSrcClassPath = [jar, classesDir, tmpDir.createFile("lib.jar")]
+
+        then:
+        newCache().getProjectsToConfigure(gradle) == null
+    }
+
+    def "does not cache configuration when a script that is not backed by a file has been executed"() {
+        given:
+        def script = Stub(ScriptSource) {
+            getResource() >> Stub(TextResource)
+        }
+        buildWith(script)
+
+        expect:
+        newCache().getProjectsToConfigure(gradle) == null
+    }
+
+    def "does not cache configuration of builds that were configured using the cache"() {
+        given:
+        buildWith(buildScript(b, "task build"))
+        def cache = newCache()
+        cache.getProjectsToConfigure(gradle)
+
+        when:
+        tasks = [task(c)]
+        cache.store(gradle)
+
+        then:
+        newCache().getProjectsToConfigure(gradle) == [root, a, b]
+    }
+
+    private void buildWith(ScriptSource script) {
+        def cache = newCache()
+        assert cache.getProjectsToConfigure(gradle) == null
+        cache.scriptClassLoaded(script, null)
+        cache.store(gradle)
+    }
+
+    private ProjectConfigurationCache newCache() {
+        def cache = new ProjectConfigurationCache(cacheRepository, fileHasher, true)
+        cache.buildSrcClassPathResolved(new DefaultClassPath(buildSrcClassPath))
+        return cache
+    }
+
+    private ScriptSource buildScript(ProjectInternal project, String text) {
+        TestFile file = new TestFile(project.buildFile)
+        file.text = text
+        return Stub(ScriptSource) {
+            getResource() >> Stub(TextResource) {
+                getFile() >> file
+            }
+        }
+    }
+
+    private Task task(ProjectInternal project) {
+        return Stub(Task) {
+            getProject() >> project
+        }
+    }
+}
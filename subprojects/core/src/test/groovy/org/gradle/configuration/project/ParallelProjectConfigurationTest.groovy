@@ -0,0 +1,354 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.configuration.project
+
+import org.gradle.api.CircularReferenceException
+import org.gradle.api.InvalidUserCodeException
+import org.gradle.api.internal.GradleInternal
+import org.gradle.api.internal.project.ProjectInternal
+import org.gradle.api.internal.project.ProjectStateInternal
+import org.gradle.internal.resources.DefaultResourceLockCoordinationService
+import org.gradle.internal.work.DefaultWorkerLeaseService
+import org.gradle.test.fixtures.concurrent.ConcurrentSpec
+import org.gradle.util.Path
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+
+class ParallelProjectConfigurationTest extends ConcurrentSpec {
+    def workerLeaseService = new DefaultWorkerLeaseService(new DefaultResourceLockCoordinationService(), true, 4)
+    def configuration = new ParallelProjectConfiguration(workerLeaseService, true)
+    def gradle = Stub(GradleInternal) {
+        getIdentityPath() >> Path.ROOT
+    }
+    def root = project(":", null)
+
+    def setup() {
+        root.state.executed()
+    }
+
+    def cleanup() {
+        workerLeaseService.stop()
+    }
+
+    def "runs action directly when not configuring projects in parallel"() {
+        def action = Mock(Runnable)
+
+        when:
+        configuration.withProjectLock(project(":a"), action)
+        configuration.assertCanConfigure([root, project(":b")])
+
+        then:
+        1 * action.run()
+    }
+
+    def "project can configure itself and its descendants"() {
+        def a = project(":a")
+        def child = project(":a:child", a)
+
+        when:
+        configuration.configure(a)
+
+        then:
+        1 * a.evaluate() >> {
+            configuration.assertCanConfigure([a, child])
+        }
+    }
+
+    def "fails fast when project configures another project"() {
+        def a = project(":a")
+        def b = project(":b")
+        def failures = []
+
+        when:
+        configuration.configure(a)
+
+        then:
+        1 * a.evaluate() >> {
+            try {
+                configuration.assertCanConfigure([a, b])
+            } catch (InvalidUserCodeException e) {
+                failures << e
+            }
+        }
+        failures.size() == 1
+        failures[0].message.startsWith("project ':a' cannot configure project ':b', as projects are configured in parallel.")
+    }
+
+    def "waits for thread that is configuring a project that is evaluated by another project"() {
+        def a = project(":a")
+        def b = project(":b")
+
+        given:
+        a.evaluate() >> {
+            instant.aStarted
+            thread.block()
+            instant.aFinished
+        }
+        b.evaluate() >> {
+            configuration.withProjectLock(a) {
+                instant.dependencyAvailable
+            }
+        }
+
+        when:
+        async {
+            start {
+                configuration.configure(a)
+            }
+            start {
+                thread.blockUntil.aStarted
+                configuration.configure(b)
+            }
+        }
+
+        then:
+        instant.dependencyAvailable > instant.aFinished
+    }
+
+    def "fails instead of waiting when projects evaluate each other"() {
+        def a = project(":a")
+        def b = project(":b")
+        def bothStarted = new CountDownLatch(2)
+        def failures = new CopyOnWriteArrayList()
+
+        given:
+        a.evaluate() >> { dependOn(b, bothStarted, failures) }
+        b.evaluate() >> { dependOn(a, bothStarted, failures) }
+
+        when:
+        async {
+            start {
+                configuration.configure(a)
+            }
+            start {
+                configuration.configure(b)
+            }
+        }
+
+        then:
+        failures.size() == 1
+        failures[0] instanceof CircularReferenceException
+    }
+
+    def "fails fast when projects configured in parallel change the root project they have looked up"() {
+        def a = project(":a")
+        def b = project(":b")
+        def bothStarted = new CountDownLatch(2)
+        def failures = new CopyOnWriteArrayList()
+
+        given:
+        a.evaluate() >> { changeRootProject(bothStarted, failures) }
+        b.evaluate() >> { changeRootProject(bothStarted, failures) }
+
+        when:
+        async {
+            start {
+                configuration.configure(a)
+            }
+            start {
+                configuration.configure(b)
+            }
+        }
+
+        then:
+        failures.size() == 2
+        failures*.message.sort() == [
+            "project ':a' cannot change root project, as projects are configured in parallel. Change it from root project or one of its parent projects instead, or disable parallel configuration.",
+            "project ':b' cannot change root project, as projects are configured in parallel. Change it from root project or one of its parent projects instead, or disable parallel configuration."
+        ]
+    }
+
+    def "project can change itself and its descendants after they have been looked up by another project"() {
+        def a = project(":a")
+        def child = project(":a:child", a)
+        def b = project(":b")
+
+        given:
+        a.state.executed()
+        child.state.executed()
+
+        when:
+        configuration.configure(b)
+        configuration.configure(a)
+
+        then:
+        1 * b.evaluate() >> {
+            configuration.accessed(a)
+            configuration.accessed(child)
+        }
+        1 * a.evaluate() >> {
+            configuration.assertCanMutate(a)
+            configuration.assertCanMutate(child)
+        }
+    }
+
+    def "does not mark projects as accessed when not configuring projects in parallel"() {
+        def a = project(":a")
+
+        when:
+        configuration.accessed(root)
+        configuration.configure(a)
+
+        then:
+        1 * a.evaluate() >> {
+            configuration.assertCanMutate(root)
+        }
+    }
+
+    def "configures project that has not been configured yet when it is looked up by another project"() {
+        def a = project(":a")
+        def b = project(":b")
+        def c = project(":c")
+        def child = project(":c:child", c)
+
+        when:
+        configuration.configure(a)
+
+        then:
+        1 * a.evaluate() >> {
+            configuration.accessed(b)
+            configuration.accessed(child)
+        }
+        1 * b.evaluate() >> {
+            assert configuration.isLockedByCurrentThread(b)
+            b.state.executed()
+        }
+
+        then:
+        1 * c.evaluate() >> { c.state.executed() }
+
+        then:
+        1 * child.evaluate() >> { child.state.executed() }
+        0 * root.evaluate()
+    }
+
+    def "does not configure project that has already been configured when it is looked up by another project"() {
+        def a = project(":a")
+        def b = project(":b")
+        b.state.executed()
+
+        when:
+        configuration.configure(a)
+
+        then:
+        1 * a.evaluate() >> {
+            configuration.accessed(b)
+        }
+        0 * b.evaluate()
+    }
+
+    def "waits for thread that is configuring a project that is looked up by another project"() {
+        def a = project(":a")
+        def b = project(":b")
+
+        given:
+        a.evaluate() >> {
+            instant.aStarted
+            thread.block()
+            a.state.executed()
+            instant.aFinished
+        }
+        b.evaluate() >> {
+            configuration.accessed(a)
+            instant.lookedUp
+        }
+
+        when:
+        async {
+            start {
+                configuration.configure(a)
+            }
+            start {
+                thread.blockUntil.aStarted
+                configuration.configure(b)
+            }
+        }
+
+        then:
+        instant.lookedUp > instant.aFinished
+    }
+
+    def "fails instead of waiting when projects look each other up before they are configured"() {
+        def a = project(":a")
+        def b = project(":b")
+        def bothStarted = new CountDownLatch(2)
+        def failures = new CopyOnWriteArrayList()
+
+        given:
+        a.evaluate() >> { lookUp(a, b, bothStarted, failures) }
+        b.evaluate() >> { lookUp(b, a, bothStarted, failures) }
+
+        when:
+        async {
+            start {
+                configuration.configure(a)
+            }
+            start {
+                configuration.configure(b)
+            }
+        }
+
+        then:
+        failures.size() == 1
+        failures[0] instanceof CircularReferenceException
+    }
+
+    private void lookUp(ProjectInternal current, ProjectInternal project, CountDownLatch started, List failures) {
+        started.countDown()
+        started.await()
+        try {
+            configuration.accessed(project)
+        } catch (CircularReferenceException e) {
+            failures << e
+        } finally {
+            current.state.executed()
+        }
+    }
+
+    private void changeRootProject(CountDownLatch started, List failures) {
+        started.countDown()
+        started.await()
+        try {
+            configuration.assertCanMutate(configuration.accessed(root))
+        } catch (InvalidUserCodeException e) {
+            failures << e
+        }
+    }
+
+    private void dependOn(ProjectInternal project, CountDownLatch started, List failures) {
+        started.countDown()
+        started.await()
+        try {
+            configuration.withProjectLock(project) {}
+        } catch (CircularReferenceException e) {
+            failures << e
+        }
+    }
+
+    private ProjectInternal project(String path, ProjectInternal parent = root) {
+        def project = Mock(ProjectInternal)
+        def state = new ProjectStateInternal()
+        _ * project.state >> state
+        _ * project.gradle >> gradle
+        _ * project.identityPath >> Path.path(path)
+        _ * project.parent >> parent
+        _ * project.parentIdentifier >> parent
+        _ * project.displayName >> (path == ":" ? "root project" : "project '$path'")
+        return project
+    }
+}
@@ -18,13 +18,16 @@ package org.gradle.execution
 
 import org.gradle.api.BuildCancelledException
 import org.gradle.api.internal.project.ProjectInternal
+import org.gradle.configuration.project.ParallelProjectConfiguration
 import org.gradle.initialization.BuildCancellationToken
+import org.gradle.internal.progress.TestBuildOperationExecutor
 import spock.lang.Specification
 
 class TaskPathProjectEvaluatorTest extends Specification {
     private cancellationToken = Mock(BuildCancellationToken)
     private project = Mock(ProjectInternal)
-    private evaluator = new TaskPathProjectEvaluator(cancellationToken)
+    private parallelProjectConfiguration = Mock(ParallelProjectConfiguration)
+    private evaluator = new TaskPathProjectEvaluator(cancellationToken, parallelProjectConfiguration, new TestBuildOperationExecutor())
 
     def "project configuration fails when cancelled"() {
         given:
@@ -60,4 +63,53 @@ class TaskPathProjectEvaluatorTest extends Specification {
         1 * child1.evaluate()
         0 * child2._
     }
+
+    def "configures root project and then each level of the hierarchy in parallel"() {
+        def child1 = Mock(ProjectInternal)
+        def child2 = Mock(ProjectInternal)
+        def grandChild = Mock(ProjectInternal)
+
+        given:
+        parallelProjectConfiguration.enabled >> true
+        project.childProjects >> [child1: child1, child2: child2]
+        child1.childProjects >> [grandChild: grandChild]
+        child2.childProjects >> [:]
+        grandChild.childProjects >> [:]
+
+        when:
+        evaluator.configureHierarchy(project)
+
+        then:
+        1 * project.evaluate()
+
+        then:
+        1 * parallelProjectConfiguration.configure(child1)
+        1 * parallelProjectConfiguration.configure(child2)
+
+        then:
+        1 * parallelProjectConfiguration.configure(grandChild)
+        0 * parallelProjectConfiguration.configure(_)
+        0 * _.evaluate()
+    }
+
+    def "parallel project configuration fails when cancelled"() {
+        def child = Mock(ProjectInternal)
+        def grandChild = Mock(ProjectInternal)
+
+        given:
+        parallelProjectConfiguration.enabled >> true
+        project.childProjects >> [child: child]
+        child.childProjects >> [grandChild: grandChild]
+        cancellationToken.cancellationRequested >>> [false, false, true]
+
+        when:
+        evaluator.configureHierarchy(project)
+
+        then:
+        thrown(BuildCancelledException)
+
+        and:
+        1 * parallelProjectConfiguration.configure(child)
+        0 * parallelProjectConfiguration.configure(grandChild)
+    }
 }
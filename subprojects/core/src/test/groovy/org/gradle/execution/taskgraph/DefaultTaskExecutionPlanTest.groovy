@@ -22,12 +22,14 @@ import org.gradle.api.CircularReferenceException
 import org.gradle.api.Task
 import org.gradle.api.internal.TaskInternal
 import org.gradle.api.internal.TaskOutputsInternal
+import org.gradle.api.internal.changedetection.state.TaskHistoryRepository
 import org.gradle.api.internal.project.ProjectInternal
 import org.gradle.api.internal.tasks.TaskStateInternal
 import org.gradle.api.specs.Spec
 import org.gradle.api.tasks.TaskDependency
 import org.gradle.execution.TaskFailureHandler
 import org.gradle.initialization.BuildCancellationToken
+import org.gradle.internal.Factories
 import org.gradle.internal.resources.ResourceLock
 import org.gradle.internal.resources.ResourceLockCoordinationService
 import org.gradle.internal.work.WorkerLeaseRegistry
@@ -865,6 +867,42 @@ class DefaultTaskExecutionPlanTest extends AbstractProjectBuilderSpec {
         filtered(b)
     }
 
+    def "executes tasks on the longest path first when task history is available"() {
+        given:
+        def history = Mock(TaskHistoryRepository)
+        executionPlan = new DefaultTaskExecutionPlan(cancellationHandler, coordinationService, workerLeaseService, Factories.constant(history))
+        Task a = task("a")
+        Task b = task("b")
+        Task c = task("c", dependsOn: [b])
+        Task d = task("d")
+
+        and:
+        history.getPreviousExecutionTime(a) >> 10
+        history.getPreviousExecutionTime(b) >> 50
+        history.getPreviousExecutionTime(c) >> 50
+        history.getPreviousExecutionTime(d) >> -1
+
+        when:
+        addToGraphAndPopulate([a, c, d])
+
+        then:
+        executes(a, b, c, d)
+        executedTasks == [b, c, d, a]
+    }
+
+    def "executes tasks in plan order when task history is not available"() {
+        given:
+        Task a = task("a")
+        Task b = task("b")
+        Task c = task("c", dependsOn: [b])
+
+        when:
+        addToGraphAndPopulate([a, c])
+
+        then:
+        executedTasks == [a, b, c]
+    }
+
     private void addToGraphAndPopulate(List tasks) {
         executionPlan.addToTaskGraph(tasks)
         executionPlan.determineExecutionPlan()
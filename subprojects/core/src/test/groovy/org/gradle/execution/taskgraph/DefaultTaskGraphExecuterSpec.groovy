@@ -48,7 +48,7 @@ class DefaultTaskGraphExecuterSpec extends Specification {
     def coordinationService = new DefaultResourceLockCoordinationService()
     def workerLeases = new DefaultWorkerLeaseService(coordinationService, true, 1)
     def executorFactory = Mock(ExecutorFactory)
-    def taskExecuter = new DefaultTaskGraphExecuter(listenerManager, new DefaultTaskPlanExecutor(1, executorFactory, workerLeases), Factories.constant(executer), cancellationToken, buildOperationExecutor, workerLeases, coordinationService)
+    def taskExecuter = new DefaultTaskGraphExecuter(listenerManager, new DefaultTaskPlanExecutor(1, executorFactory, workerLeases), Factories.constant(executer), cancellationToken, buildOperationExecutor, workerLeases, coordinationService, null)
     WorkerLeaseRegistry.WorkerLeaseCompletion parentWorkerLease
 
     def setup() {
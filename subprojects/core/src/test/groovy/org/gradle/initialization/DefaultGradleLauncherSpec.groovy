@@ -29,6 +29,7 @@ import org.gradle.api.internal.file.TestFiles
 import org.gradle.api.internal.initialization.ClassLoaderScope
 import org.gradle.api.internal.project.ProjectInternal
 import org.gradle.configuration.BuildConfigurer
+import org.gradle.configuration.ProjectConfigurationCache
 import org.gradle.execution.BuildConfigurationActionExecuter
 import org.gradle.execution.BuildExecuter
 import org.gradle.execution.TaskGraphExecuter
@@ -112,6 +113,7 @@ class DefaultGradleLauncherSpec extends Specification {
 
         buildScopeServices.get(TaskHistoryStore) >> taskArtifactStateCacheAccess
         buildServices.get(WorkerLeaseService) >> workerLeaseService
+        buildServices.get(ProjectConfigurationCache) >> Mock(ProjectConfigurationCache)
     }
 
     def cleanup() {
@@ -18,7 +18,9 @@ package org.gradle.internal.service.scopes
 import org.gradle.StartParameter
 import org.gradle.api.internal.GradleInternal
 import org.gradle.api.internal.artifacts.DependencyManagementServices
+import org.gradle.api.internal.changedetection.state.CacheBackedTaskHistoryRepository
 import org.gradle.api.internal.changedetection.state.InMemoryCacheDecoratorFactory
+import org.gradle.api.internal.changedetection.state.TaskHistoryRepository
 import org.gradle.api.internal.plugins.PluginRegistry
 import org.gradle.api.internal.project.ProjectInternal
 import org.gradle.api.internal.tasks.options.OptionReader
@@ -29,6 +31,7 @@ import org.gradle.execution.DefaultBuildExecuter
 import org.gradle.execution.ProjectConfigurer
 import org.gradle.execution.TaskGraphExecuter
 import org.gradle.execution.TaskSelector
+import org.gradle.execution.taskgraph.DefaultTaskExecutionPlan
 import org.gradle.execution.taskgraph.DefaultTaskGraphExecuter
 import org.gradle.initialization.BuildCancellationToken
 import org.gradle.internal.work.WorkerLeaseRegistry
@@ -43,11 +46,15 @@ import org.gradle.internal.service.ServiceRegistry
 import org.gradle.internal.resources.ResourceLockCoordinationService
 import org.gradle.internal.work.WorkerLeaseService
 import org.gradle.model.internal.inspect.ModelRuleSourceDetector
+import org.gradle.util.SetSystemProperties
+import org.junit.Rule
 import spock.lang.Specification
 
 import static org.hamcrest.Matchers.sameInstance
 
 public class GradleScopeServicesTest extends Specification {
+    @Rule
+    SetSystemProperties systemProperties = new SetSystemProperties()
     private GradleInternal gradle = Stub()
     private ServiceRegistry parent = Stub()
     private CacheRepository cacheRepository = Stub()
@@ -139,6 +146,27 @@ public class GradleScopeServicesTest extends Specification {
         graphExecuter sameInstance(secondExecuter)
     }
 
+    def "provides a task history repository"() {
+        when:
+        def repository = registry.get(TaskHistoryRepository)
+        def secondRepository = registry.get(TaskHistoryRepository)
+
+        then:
+        repository instanceof CacheBackedTaskHistoryRepository
+        repository sameInstance(secondRepository)
+    }
+
+    def "task graph executer uses the task history repository for critical path scheduling"() {
+        given:
+        System.setProperty(DefaultTaskExecutionPlan.CRITICAL_PATH_SCHEDULING_PROPERTY, "true")
+
+        when:
+        def graphExecuter = registry.get(TaskGraphExecuter)
+
+        then:
+        graphExecuter.taskExecutionPlan.taskHistoryRepository.create() sameInstance(registry.get(TaskHistoryRepository))
+    }
+
     def "provides a task selector"() {
         when:
         def selector = registry.get(TaskSelector)
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph;
+
+import org.gradle.api.Nullable;
+import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.artifacts.ModuleVersionSelector;
+import org.gradle.api.artifacts.component.ModuleComponentSelector;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelectorScheme;
+import org.gradle.api.specs.Spec;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier;
+import org.gradle.internal.component.model.ComponentResolveMetadata;
+import org.gradle.internal.component.model.ConfigurationMetadata;
+import org.gradle.internal.component.model.DefaultComponentOverrideMetadata;
+import org.gradle.internal.component.model.DependencyMetadata;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.concurrent.StoppableExecutor;
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver;
+import org.gradle.internal.resolve.result.DefaultBuildableComponentResolveResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Speculatively resolves the metadata of the modules that the traversal of a dependency graph is likely to reach soon, using a bounded pool of threads.
+ *
+ * <p>When the traversal attaches a configuration to the graph, the module dependencies of that configuration are submitted for prefetching. Once the metadata of such a module
+ * has been fetched, the dependencies of its default configuration are submitted as well, up to a fixed depth. So while the traversal works through one level of the graph,
+ * the metadata of the next levels is being fetched.</p>
+ *
+ * <p>Prefetching only warms the caches of the metadata resolver, and its results are discarded. The traversal still resolves each selector and each module version itself, in the
+ * same order as without prefetching, so the resulting graph does not depend on prefetching. Before the traversal resolves a dependency, it waits for the prefetching of that
+ * dependency to complete, or takes it over when it has not started yet.</p>
+ *
+ * <p>Only dependencies on a fixed version of a module are prefetched. Dynamic versions and project dependencies are left to the traversal, as resolving them runs version selection
+ * rules or accesses project state.</p>
+ */
+public class ComponentMetadataPrefetcher implements Stoppable {
+    /**
+     * The number of threads to use to prefetch metadata. Prefetching is disabled when this is 0, which is the default.
+     */
+    public static final String PREFETCH_THREADS_PROPERTY_KEY = "org.gradle.internal.dependency.metadata-prefetch-threads";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ComponentMetadataPrefetcher.class);
+    private static final int MAX_DEPTH = 2;
+    private static final int MAX_PREFETCHED_DEPENDENCIES = 10000;
+
+    private final ComponentMetaDataResolver metaDataResolver;
+    private final VersionSelectorScheme versionSelectorScheme;
+    private final Spec<? super DependencyMetadata> edgeFilter;
+    private final StoppableExecutor executor;
+    private final ConcurrentMap<ModuleVersionSelector, PrefetchAction> prefetches = new ConcurrentHashMap<ModuleVersionSelector, PrefetchAction>();
+    private volatile boolean stopped;
+
+    ComponentMetadataPrefetcher(ComponentMetaDataResolver metaDataResolver, VersionSelectorScheme versionSelectorScheme, Spec<? super DependencyMetadata> edgeFilter, StoppableExecutor executor) {
+        this.metaDataResolver = metaDataResolver;
+        this.versionSelectorScheme = versionSelectorScheme;
+        this.edgeFilter = edgeFilter;
+        this.executor = executor;
+    }
+
+    /**
+     * Submits the dependencies of a configuration that has been attached to the graph. Called from the thread that traverses the graph.
+     */
+    void prefetchDependencies(ConfigurationMetadata configuration) {
+        for (DependencyMetadata dependency : configuration.getDependencies()) {
+            if (edgeFilter.isSatisfiedBy(dependency)) {
+                submit(dependency, 1);
+            }
+        }
+    }
+
+    /**
+     * Waits for the prefetching of the given dependency to complete. When the prefetching has not started yet, it is cancelled instead, as the caller is about to resolve the dependency.
+     */
+    void awaitPrefetch(DependencyMetadata dependency) {
+        PrefetchAction action = prefetches.get(dependency.getRequested());
+        if (action != null) {
+            action.claimOrAwait();
+        }
+    }
+
+    @Override
+    public void stop() {
+        stopped = true;
+        executor.stop();
+    }
+
+    private void submit(DependencyMetadata dependency, int depth) {
+        if (stopped || !(dependency.getSelector() instanceof ModuleComponentSelector) || prefetches.size() >= MAX_PREFETCHED_DEPENDENCIES) {
+            return;
+        }
+        ModuleVersionSelector requested = dependency.getRequested();
+        if (prefetches.containsKey(requested) || versionSelectorScheme.parseSelector(requested.getVersion()).isDynamic()) {
+            return;
+        }
+        PrefetchAction action = new PrefetchAction(dependency, depth);
+        if (prefetches.putIfAbsent(requested, action) == null) {
+            executor.execute(action);
+        }
+    }
+
+    private void prefetch(DependencyMetadata dependency, int depth) {
+        ModuleVersionSelector requested = dependency.getRequested();
+        DefaultModuleComponentIdentifier id = new DefaultModuleComponentIdentifier(requested.getGroup(), requested.getName(), requested.getVersion());
+        DefaultBuildableComponentResolveResult result = new DefaultBuildableComponentResolveResult();
+        metaDataResolver.resolve(id, DefaultComponentOverrideMetadata.forDependency(dependency), result);
+        if (result.getFailure() != null || depth >= MAX_DEPTH || !dependency.isTransitive()) {
+            return;
+        }
+        ComponentResolveMetadata metadata = result.getMetaData();
+        ConfigurationMetadata configuration = metadata.getConfiguration(Dependency.DEFAULT_CONFIGURATION);
+        if (configuration == null || !configuration.isTransitive()) {
+            return;
+        }
+        for (DependencyMetadata transitive : configuration.getDependencies()) {
+            submit(transitive, depth + 1);
+        }
+    }
+
+    private class PrefetchAction implements Runnable {
+        private final DependencyMetadata dependency;
+        private final int depth;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        PrefetchAction(DependencyMetadata dependency, int depth) {
+            this.dependency = dependency;
+            this.depth = depth;
+        }
+
+        @Override
+        public void run() {
+            if (stopped || !claimed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                prefetch(dependency, depth);
+            } catch (Throwable t) {
+                LOGGER.debug("Could not prefetch metadata for {}.", dependency, t);
+            } finally {
+                finished.countDown();
+            }
+        }
+
+        void claimOrAwait() {
+            if (claimed.compareAndSet(false, true)) {
+                finished.countDown();
+                return;
+            }
+            try {
+                finished.await();
+            } catch (InterruptedException e) {
+                throw UncheckedException.throwAsUncheckedException(e);
+            }
+        }
+    }
+
+    /**
+     * Creates a prefetcher for each resolution, when prefetching is enabled.
+     */
+    public static class Factory {
+        private final ExecutorFactory executorFactory;
+        private final VersionSelectorScheme versionSelectorScheme;
+        private final int threads;
+
+        public Factory(ExecutorFactory executorFactory, VersionSelectorScheme versionSelectorScheme) {
+            this(executorFactory, versionSelectorScheme, Integer.getInteger(PREFETCH_THREADS_PROPERTY_KEY, 0));
+        }
+
+        Factory(ExecutorFactory executorFactory, VersionSelectorScheme versionSelectorScheme, int threads) {
+            this.executorFactory = executorFactory;
+            this.versionSelectorScheme = versionSelectorScheme;
+            this.threads = threads;
+        }
+
+        @Nullable
+        ComponentMetadataPrefetcher create(ComponentMetaDataResolver metaDataResolver, Spec<? super DependencyMetadata> edgeFilter) {
+            if (threads <= 0) {
+                return null;
+            }
+            return new ComponentMetadataPrefetcher(metaDataResolver, versionSelectorScheme, edgeFilter, executorFactory.create("Dependency metadata prefetch", threads));
+        }
+    }
+}
@@ -19,6 +19,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import org.gradle.api.Action;
+import org.gradle.api.Nullable;
 import org.gradle.api.artifacts.ModuleDependency;
 import org.gradle.api.artifacts.ModuleIdentifier;
 import org.gradle.api.artifacts.ModuleVersionIdentifier;
@@ -89,6 +90,7 @@ public class DependencyGraphBuilder {
     private final ImmutableModuleIdentifierFactory moduleIdentifierFactory;
     private final ModuleExclusions moduleExclusions;
     private final BuildOperationExecutor buildOperationExecutor;
+    private final ComponentMetadataPrefetcher.Factory prefetcherFactory;
 
     public DependencyGraphBuilder(DependencyToComponentIdResolver componentIdResolver, ComponentMetaDataResolver componentMetaDataResolver,
                                   ResolveContextToComponentResolver resolveContextToComponentResolver,
@@ -96,6 +98,15 @@ public class DependencyGraphBuilder {
                                   AttributesSchemaInternal attributesSchema,
                                   ImmutableModuleIdentifierFactory moduleIdentifierFactory, ModuleExclusions moduleExclusions,
                                   BuildOperationExecutor buildOperationExecutor) {
+        this(componentIdResolver, componentMetaDataResolver, resolveContextToComponentResolver, conflictHandler, edgeFilter, attributesSchema, moduleIdentifierFactory, moduleExclusions, buildOperationExecutor, null);
+    }
+
+    public DependencyGraphBuilder(DependencyToComponentIdResolver componentIdResolver, ComponentMetaDataResolver componentMetaDataResolver,
+                                  ResolveContextToComponentResolver resolveContextToComponentResolver,
+                                  ConflictHandler conflictHandler, Spec<? super DependencyMetadata> edgeFilter,
+                                  AttributesSchemaInternal attributesSchema,
+                                  ImmutableModuleIdentifierFactory moduleIdentifierFactory, ModuleExclusions moduleExclusions,
+                                  BuildOperationExecutor buildOperationExecutor, @Nullable ComponentMetadataPrefetcher.Factory prefetcherFactory) {
         this.idResolver = componentIdResolver;
         this.metaDataResolver = componentMetaDataResolver;
         this.moduleResolver = resolveContextToComponentResolver;
@@ -105,6 +116,7 @@ public class DependencyGraphBuilder {
         this.moduleIdentifierFactory = moduleIdentifierFactory;
         this.moduleExclusions = moduleExclusions;
         this.buildOperationExecutor = buildOperationExecutor;
+        this.prefetcherFactory = prefetcherFactory;
     }
 
     public void resolve(final ResolveContext resolveContext, final DependencyGraphVisitor modelVisitor) {
@@ -116,7 +128,14 @@ public class DependencyGraphBuilder {
         final ResolveState resolveState = new ResolveState(idGenerator, rootModule, resolveContext.getName(), idResolver, metaDataResolver, edgeFilter, attributesSchema, moduleIdentifierFactory, moduleExclusions);
         conflictHandler.registerResolver(new DirectDependencyForcingResolver(resolveState.root.moduleRevision));
 
-        traverseGraph(resolveState);
+        ComponentMetadataPrefetcher prefetcher = prefetcherFactory == null ? null : prefetcherFactory.create(metaDataResolver, edgeFilter);
+        try {
+            traverseGraph(resolveState, prefetcher);
+        } finally {
+            if (prefetcher != null) {
+                prefetcher.stop();
+            }
+        }
 
         resolveState.root.moduleRevision.setSelectionReason(VersionSelectionReasons.ROOT);
 
@@ -127,8 +146,11 @@ public class DependencyGraphBuilder {
     /**
      * Traverses the dependency graph, resolving conflicts and building the paths from the root configuration.
      */
-    private void traverseGraph(final ResolveState resolveState) {
+    private void traverseGraph(final ResolveState resolveState, @Nullable ComponentMetadataPrefetcher prefetcher) {
         resolveState.onMoreSelected(resolveState.root);
+        if (prefetcher != null) {
+            prefetcher.prefetchDependencies(resolveState.root.getMetadata());
+        }
         final List<DependencyEdge> dependencies = Lists.newArrayList();
         final List<DependencyEdge> dependenciesMissingLocalMetadata = Lists.newArrayList();
         final Map<ModuleVersionIdentifier, ComponentIdentifier> componentIdentifierCache = Maps.newHashMap();
@@ -143,7 +165,7 @@ public class DependencyGraphBuilder {
                 dependenciesMissingLocalMetadata.clear();
                 node.visitOutgoingDependencies(dependencies);
 
-                resolveEdges(node, dependencies, dependenciesMissingLocalMetadata, resolveState, componentIdentifierCache);
+                resolveEdges(node, dependencies, dependenciesMissingLocalMetadata, resolveState, componentIdentifierCache, prefetcher);
 
             } else {
                 // We have some batched up conflicts. Resolve the first, and continue traversing the graph
@@ -201,15 +223,40 @@ public class DependencyGraphBuilder {
                               final List<DependencyEdge> dependencies,
                               final List<DependencyEdge> dependenciesMissingMetadataLocally,
                               final ResolveState resolveState,
-                              final Map<ModuleVersionIdentifier, ComponentIdentifier> componentIdentifierCache) {
+                              final Map<ModuleVersionIdentifier, ComponentIdentifier> componentIdentifierCache,
+                              @Nullable ComponentMetadataPrefetcher prefetcher) {
         if (dependencies.isEmpty()) {
             return;
         }
+        if (prefetcher != null) {
+            awaitPrefetches(dependencies, prefetcher);
+        }
         performSelectionSerially(dependencies, resolveState);
         computePreemptiveDownloadList(dependencies, dependenciesMissingMetadataLocally, componentIdentifierCache);
         downloadMetadataConcurrently(node, dependenciesMissingMetadataLocally);
         attachToTargetRevisionsSerially(dependencies);
+        if (prefetcher != null) {
+            prefetchNextLevel(dependencies, prefetcher);
+        }
+    }
+
+    private void awaitPrefetches(List<DependencyEdge> dependencies, ComponentMetadataPrefetcher prefetcher) {
+        for (DependencyEdge dependency : dependencies) {
+            prefetcher.awaitPrefetch(dependency.dependencyMetadata);
+        }
+    }
 
+    /**
+     * Starts fetching the metadata of the dependencies of the configurations that have just been attached, while the traversal works through the rest of the current level.
+     */
+    private void prefetchNextLevel(List<DependencyEdge> dependencies, ComponentMetadataPrefetcher prefetcher) {
+        for (DependencyEdge dependency : dependencies) {
+            if (dependency.isTransitive()) {
+                for (ConfigurationNode targetConfiguration : dependency.targetConfigurations) {
+                    prefetcher.prefetchDependencies(targetConfiguration.metaData);
+                }
+            }
+        }
     }
 
     private void attachToTargetRevisionsSerially(List<DependencyEdge> dependencies) {
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph
+
+import org.gradle.api.artifacts.component.ProjectComponentSelector
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionComparator
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionSelectorScheme
+import org.gradle.api.specs.Specs
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
+import org.gradle.internal.component.external.model.DefaultModuleComponentSelector
+import org.gradle.internal.component.model.ComponentResolveMetadata
+import org.gradle.internal.component.model.ConfigurationMetadata
+import org.gradle.internal.component.model.DependencyMetadata
+import org.gradle.internal.concurrent.StoppableExecutor
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver
+import spock.lang.Specification
+
+import static org.gradle.api.internal.artifacts.DefaultModuleVersionSelector.newSelector
+
+class ComponentMetadataPrefetcherTest extends Specification {
+    def metaDataResolver = Mock(ComponentMetaDataResolver)
+    def submitted = []
+    def executor = Stub(StoppableExecutor) {
+        execute(_) >> { Runnable action -> submitted << action }
+    }
+    def prefetcher = new ComponentMetadataPrefetcher(metaDataResolver, new DefaultVersionSelectorScheme(new DefaultVersionComparator()), Specs.satisfyAll(), executor)
+
+    def "fetches metadata of module dependencies of configuration"() {
+        def a = dependency("a", "1.0")
+        def b = dependency("b", "2.0")
+
+        when:
+        prefetcher.prefetchDependencies(configuration(a, b))
+
+        then:
+        submitted.size() == 2
+
+        when:
+        runSubmitted()
+
+        then:
+        1 * metaDataResolver.resolve(id("a", "1.0"), _, _) >> { args -> args[2].notFound(id("a", "1.0")) }
+        1 * metaDataResolver.resolve(id("b", "2.0"), _, _) >> { args -> args[2].notFound(id("b", "2.0")) }
+    }
+
+    def "does not prefetch dynamic versions or project dependencies"() {
+        def project = Stub(DependencyMetadata) {
+            getRequested() >> newSelector("group", "p", "1.0")
+            getSelector() >> Stub(ProjectComponentSelector)
+        }
+
+        when:
+        prefetcher.prefetchDependencies(configuration(dependency("a", "1.+"), dependency("b", "[1.0,2.0)"), dependency("c", "latest.release"), project))
+
+        then:
+        submitted.empty
+    }
+
+    def "submits each dependency once"() {
+        def a = dependency("a", "1.0")
+
+        when:
+        prefetcher.prefetchDependencies(configuration(a))
+        prefetcher.prefetchDependencies(configuration(dependency("a", "1.0")))
+
+        then:
+        submitted.size() == 1
+    }
+
+    def "prefetches dependencies of default configuration of fetched modules up to a fixed depth"() {
+        def c = dependency("c", "1.0")
+        def b = dependency("b", "1.0")
+        def a = dependency("a", "1.0")
+
+        given:
+        metaDataResolver.resolve(id("a", "1.0"), _, _) >> { args -> args[2].resolved(component(b)) }
+        metaDataResolver.resolve(id("b", "1.0"), _, _) >> { args -> args[2].resolved(component(c)) }
+
+        when:
+        prefetcher.prefetchDependencies(configuration(a))
+        runSubmitted()
+
+        then:
+        submitted*.dependency == [a, b]
+    }
+
+    def "does not prefetch dependencies of a non-transitive dependency"() {
+        def b = dependency("b", "1.0")
+        def a = dependency("a", "1.0", false)
+
+        given:
+        metaDataResolver.resolve(id("a", "1.0"), _, _) >> { args -> args[2].resolved(component(b)) }
+
+        when:
+        prefetcher.prefetchDependencies(configuration(a))
+        runSubmitted()
+
+        then:
+        submitted*.dependency == [a]
+    }
+
+    def "traversal takes over prefetching that has not started"() {
+        def a = dependency("a", "1.0")
+
+        when:
+        prefetcher.prefetchDependencies(configuration(a))
+        prefetcher.awaitPrefetch(a)
+        runSubmitted()
+
+        then:
+        0 * metaDataResolver._
+    }
+
+    def "does not run prefetching once stopped"() {
+        def a = dependency("a", "1.0")
+
+        when:
+        prefetcher.prefetchDependencies(configuration(a))
+        prefetcher.stop()
+        runSubmitted()
+
+        then:
+        0 * metaDataResolver._
+    }
+
+    private void runSubmitted() {
+        for (int i = 0; i < submitted.size(); i++) {
+            submitted[i].run()
+        }
+    }
+
+    private static DefaultModuleComponentIdentifier id(String name, String version) {
+        return new DefaultModuleComponentIdentifier("group", name, version)
+    }
+
+    private DependencyMetadata dependency(String name, String version, boolean transitive = true) {
+        def selector = newSelector("group", name, version)
+        return Stub(DependencyMetadata) {
+            getRequested() >> selector
+            getSelector() >> DefaultModuleComponentSelector.newSelector(selector)
+            isTransitive() >> transitive
+        }
+    }
+
+    private ConfigurationMetadata configuration(DependencyMetadata... dependencies) {
+        return Stub(ConfigurationMetadata) {
+            getDependencies() >> (dependencies as List)
+            isTransitive() >> true
+        }
+    }
+
+    private ComponentResolveMetadata component(DependencyMetadata... dependencies) {
+        def configuration = configuration(dependencies)
+        return Stub(ComponentResolveMetadata) {
+            getConfiguration("default") >> configuration
+        }
+    }
+}
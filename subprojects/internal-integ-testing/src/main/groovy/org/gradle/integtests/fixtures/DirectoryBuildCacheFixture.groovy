@@ -61,6 +61,12 @@ trait DirectoryBuildCacheFixture extends BuildCacheFixture{
     }
 
     static List<TestFile> listCacheFiles(TestFile cacheDir) {
-        cacheDir.listFiles().findAll { it.name ==~ /\p{XDigit}{32}/}.sort()
+        // Entries are stored in shard directories
+        cacheDir.listFiles().collectMany { it.directory ? it.listFiles() as List : [it] }.findAll { it.name ==~ /\p{XDigit}{32}/}.sort()
+    }
+
+    Set<String> listAccessedCacheEntryNames() {
+        def journal = cacheDir.file("access.journal")
+        journal.exists() ? journal.readLines()*.tokenize(" ")*.first() as Set : [] as Set
     }
 }
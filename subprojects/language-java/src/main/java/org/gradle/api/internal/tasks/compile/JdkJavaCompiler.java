@@ -15,6 +15,7 @@
  */
 package org.gradle.api.internal.tasks.compile;
 
+import com.google.common.base.Splitter;
 import org.gradle.api.internal.tasks.SimpleWorkResult;
 import org.gradle.api.tasks.WorkResult;
 import org.gradle.api.tasks.compile.CompileOptions;
@@ -26,8 +27,10 @@ import org.slf4j.LoggerFactory;
 import javax.tools.JavaCompiler;
 import javax.tools.JavaFileObject;
 import javax.tools.StandardJavaFileManager;
+import java.io.File;
 import java.io.Serializable;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.List;
 
 public class JdkJavaCompiler implements Compiler<JavaCompileSpec>, Serializable {
@@ -42,21 +45,43 @@ public class JdkJavaCompiler implements Compiler<JavaCompileSpec>, Serializable
     public WorkResult execute(JavaCompileSpec spec) {
         LOGGER.info("Compiling with JDK Java compiler API.");
 
-        JavaCompiler.CompilationTask task = createCompileTask(spec);
-        boolean success = task.call();
-        if (!success) {
-            throw new CompilationFailedException();
+        JavaCompiler compiler = javaHomeBasedJavaCompilerFactory.create();
+        CompileOptions compileOptions = spec.getCompileOptions();
+        Charset charset = compileOptions.getEncoding() != null ? Charset.forName(compileOptions.getEncoding()) : null;
+        StandardJavaFileManagerCache fileManagers = StandardJavaFileManagerCache.getInstance();
+        List<String> options = new JavaCompilerArgumentsBuilder(spec).build();
+        StandardJavaFileManager fileManager = fileManagers.acquire(compiler, charset, options, archivesOf(spec));
+        boolean completed = false;
+        try {
+            JavaCompiler.CompilationTask task = createCompileTask(compiler, fileManager, options, spec);
+            boolean success = task.call();
+            completed = true;
+            if (!success) {
+                throw new CompilationFailedException();
+            }
+        } finally {
+            fileManagers.release(fileManager, completed);
         }
 
         return new SimpleWorkResult(true);
     }
 
-    private JavaCompiler.CompilationTask createCompileTask(JavaCompileSpec spec) {
-        List<String> options = new JavaCompilerArgumentsBuilder(spec).build();
-        JavaCompiler compiler = javaHomeBasedJavaCompilerFactory.create();
-        CompileOptions compileOptions = spec.getCompileOptions();
-        StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, compileOptions.getEncoding() != null ? Charset.forName(compileOptions.getEncoding()) : null);
+    private JavaCompiler.CompilationTask createCompileTask(JavaCompiler compiler, StandardJavaFileManager fileManager, List<String> options, JavaCompileSpec spec) {
         Iterable<? extends JavaFileObject> compilationUnits = fileManager.getJavaFileObjectsFromFiles(spec.getSource());
-        return compiler.getTask(null, null, null, options, null, compilationUnits);
+        return compiler.getTask(null, fileManager, null, options, null, compilationUnits);
+    }
+
+    private static List<File> archivesOf(JavaCompileSpec spec) {
+        List<File> archives = new ArrayList<File>();
+        if (spec.getCompileClasspath() != null) {
+            archives.addAll(spec.getCompileClasspath());
+        }
+        String bootClasspath = spec.getCompileOptions().getBootClasspath();
+        if (bootClasspath != null) {
+            for (String path : Splitter.on(File.pathSeparatorChar).omitEmptyStrings().split(bootClasspath)) {
+                archives.add(new File(path));
+            }
+        }
+        return archives;
     }
 }
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.compile;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableSet;
+import org.gradle.api.Nullable;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.os.OperatingSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reuses the file managers of the Java compiler between compilations that run in the same process, such as the Gradle daemon or a compiler daemon.
+ * A file manager keeps the archives of the class path open and indexed, so that later compilations against the same archives do not have to open and
+ * scan them again.
+ *
+ * <p>A file manager is used by one compilation at a time. The archives that a file manager has been used with are remembered along with their size and
+ * modification time, and a file manager is discarded when one of these archives has changed since. Archives are kept open, so file managers are not reused on Windows,
+ * where this would prevent the archives from being deleted.</p>
+ *
+ * <p>The compiler options that change the platform class path or the module paths, such as {@code -bootclasspath}, {@code --release} or {@code --module-path}, are handled by
+ * the file manager and cannot be reset, so file managers are only reused between compilations that use the same values for these options.</p>
+ *
+ * <p>At most a fixed number of idle file managers are kept. The file manager that has been idle the longest is closed when another one is handed back, and all idle
+ * file managers are closed when the cache is stopped, such as when the Gradle daemon stops.</p>
+ */
+public class StandardJavaFileManagerCache implements Stoppable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StandardJavaFileManagerCache.class);
+    private static final StandardJavaFileManagerCache INSTANCE = new StandardJavaFileManagerCache(!OperatingSystem.current().isWindows(), 1000, 16);
+    // Looked up by name, as some of these locations do not exist in older versions of Java
+    private static final Set<String> RESET_LOCATION_NAMES = ImmutableSet.of(
+        "CLASS_OUTPUT", "SOURCE_OUTPUT", "NATIVE_HEADER_OUTPUT", "CLASS_PATH", "SOURCE_PATH", "ANNOTATION_PROCESSOR_PATH", "PLATFORM_CLASS_PATH"
+    );
+    private static final List<StandardLocation> RESET_LOCATIONS = resetLocations();
+    private static final Set<String> PLATFORM_OPTIONS_WITH_VALUE = ImmutableSet.of(
+        "-bootclasspath", "-extdirs", "-endorseddirs", "--release", "--system", "--module-path", "-p", "--upgrade-module-path", "--patch-module", "--module-source-path"
+    );
+    private static final String[] PLATFORM_OPTION_PREFIXES = {
+        "-Xbootclasspath", "-Djava.ext.dirs=", "-Djava.endorsed.dirs=", "--release=", "--system=", "--module-path=", "--upgrade-module-path=", "--patch-module=", "--module-source-path="
+    };
+
+    private final boolean reuseFileManagers;
+    private final int maxArchivesPerFileManager;
+    private final int maxIdleFileManagers;
+    private final Object lock = new Object();
+    private final Map<FileManagerKey, List<CachedFileManager>> idleFileManagers = new HashMap<FileManagerKey, List<CachedFileManager>>();
+    // The idle file managers, from the least to the most recently handed back
+    private final LinkedList<CachedFileManager> idleOrder = new LinkedList<CachedFileManager>();
+    private final Map<StandardJavaFileManager, CachedFileManager> busyFileManagers = new IdentityHashMap<StandardJavaFileManager, CachedFileManager>();
+
+    StandardJavaFileManagerCache(boolean reuseFileManagers, int maxArchivesPerFileManager, int maxIdleFileManagers) {
+        this.reuseFileManagers = reuseFileManagers;
+        this.maxArchivesPerFileManager = maxArchivesPerFileManager;
+        this.maxIdleFileManagers = maxIdleFileManagers;
+    }
+
+    public static StandardJavaFileManagerCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns a file manager for a compilation that uses the given compiler options and archives. The file manager must be handed back using
+     * {@link #release(StandardJavaFileManager, boolean)} once the compilation has finished.
+     */
+    public StandardJavaFileManager acquire(JavaCompiler compiler, @Nullable Charset charset, List<String> options, Iterable<File> archives) {
+        if (!reuseFileManagers) {
+            return compiler.getStandardFileManager(null, null, charset);
+        }
+
+        FileManagerKey key = new FileManagerKey(compiler.getClass(), charset, platformOptionsOf(options));
+        CachedFileManager cached = null;
+        synchronized (lock) {
+            List<CachedFileManager> candidates = idleFileManagers.get(key);
+            if (candidates != null && !candidates.isEmpty()) {
+                cached = candidates.remove(candidates.size() - 1);
+                idleOrder.remove(cached);
+            }
+        }
+
+        if (cached != null && !cached.canBeUsedWith(archives)) {
+            LOGGER.debug("Discarding Java compiler file manager as archives it has opened have changed.");
+            close(cached.fileManager);
+            cached = null;
+        }
+        if (cached != null && !cached.resetLocations()) {
+            close(cached.fileManager);
+            cached = null;
+        }
+        if (cached == null) {
+            cached = new CachedFileManager(key, compiler.getStandardFileManager(null, null, charset));
+        }
+        cached.recordArchives(archives);
+
+        synchronized (lock) {
+            busyFileManagers.put(cached.fileManager, cached);
+        }
+        return cached.fileManager;
+    }
+
+    /**
+     * Hands back a file manager once the compilation that used it has finished.
+     *
+     * @param reusable false when the compilation did not complete normally and the file manager should not be reused.
+     */
+    public void release(StandardJavaFileManager fileManager, boolean reusable) {
+        StandardJavaFileManager discarded = fileManager;
+        synchronized (lock) {
+            CachedFileManager cached = busyFileManagers.remove(fileManager);
+            if (cached != null && reusable && cached.archives.size() <= maxArchivesPerFileManager) {
+                List<CachedFileManager> idle = idleFileManagers.get(cached.key);
+                if (idle == null) {
+                    idle = new ArrayList<CachedFileManager>();
+                    idleFileManagers.put(cached.key, idle);
+                }
+                idle.add(cached);
+                idleOrder.addLast(cached);
+                if (idleOrder.size() <= maxIdleFileManagers) {
+                    return;
+                }
+                CachedFileManager evicted = idleOrder.removeFirst();
+                idleFileManagers.get(evicted.key).remove(evicted);
+                discarded = evicted.fileManager;
+            }
+        }
+        close(discarded);
+    }
+
+    /**
+     * Closes the idle file managers. File managers that are in use are closed or kept when they are handed back, as usual.
+     */
+    @Override
+    public void stop() {
+        List<CachedFileManager> idle;
+        synchronized (lock) {
+            idle = new ArrayList<CachedFileManager>(idleOrder);
+            idleOrder.clear();
+            idleFileManagers.clear();
+        }
+        for (CachedFileManager cached : idle) {
+            close(cached.fileManager);
+        }
+    }
+
+    private static List<StandardLocation> resetLocations() {
+        List<StandardLocation> locations = new ArrayList<StandardLocation>();
+        for (StandardLocation location : StandardLocation.values()) {
+            if (RESET_LOCATION_NAMES.contains(location.name())) {
+                locations.add(location);
+            }
+        }
+        return locations;
+    }
+
+    private static List<String> platformOptionsOf(List<String> options) {
+        List<String> platformOptions = new ArrayList<String>();
+        for (int i = 0; i < options.size(); i++) {
+            String option = options.get(i);
+            if (PLATFORM_OPTIONS_WITH_VALUE.contains(option)) {
+                platformOptions.add(option);
+                if (i + 1 < options.size()) {
+                    platformOptions.add(options.get(++i));
+                }
+            } else {
+                for (String prefix : PLATFORM_OPTION_PREFIXES) {
+                    if (option.startsWith(prefix)) {
+                        platformOptions.add(option);
+                        break;
+                    }
+                }
+            }
+        }
+        return platformOptions;
+    }
+
+    private static void close(StandardJavaFileManager fileManager) {
+        try {
+            fileManager.close();
+        } catch (IOException e) {
+            LOGGER.debug("Could not close Java compiler file manager.", e);
+        }
+    }
+
+    private static class CachedFileManager {
+        private final FileManagerKey key;
+        private final StandardJavaFileManager fileManager;
+        private final Map<File, FileStamp> archives = new HashMap<File, FileStamp>();
+
+        CachedFileManager(FileManagerKey key, StandardJavaFileManager fileManager) {
+            this.key = key;
+            this.fileManager = fileManager;
+        }
+
+        boolean canBeUsedWith(Iterable<File> candidates) {
+            for (File archive : candidates) {
+                FileStamp stamp = archives.get(archive);
+                if (stamp != null && !stamp.equals(FileStamp.of(archive))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void recordArchives(Iterable<File> candidates) {
+            for (File archive : candidates) {
+                // Also record missing archives, as the compiler remembers that these are missing
+                if (!archives.containsKey(archive) && !archive.isDirectory()) {
+                    archives.put(archive, FileStamp.of(archive));
+                }
+            }
+        }
+
+        /**
+         * Locations are set from the compiler arguments and would otherwise leak into the next compilation when it does not specify them.
+         */
+        boolean resetLocations() {
+            try {
+                for (StandardLocation location : RESET_LOCATIONS) {
+                    fileManager.setLocation(location, null);
+                }
+                return true;
+            } catch (IOException e) {
+                LOGGER.debug("Could not reset Java compiler file manager.", e);
+                return false;
+            }
+        }
+    }
+
+    private static class FileManagerKey {
+        private final Class<?> compilerType;
+        private final Charset charset;
+        private final List<String> platformOptions;
+
+        FileManagerKey(Class<?> compilerType, @Nullable Charset charset, List<String> platformOptions) {
+            this.compilerType = compilerType;
+            this.charset = charset;
+            this.platformOptions = platformOptions;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            FileManagerKey other = (FileManagerKey) o;
+            return compilerType.equals(other.compilerType) && Objects.equal(charset, other.charset) && platformOptions.equals(other.platformOptions);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(compilerType, charset, platformOptions);
+        }
+    }
+
+    private static class FileStamp {
+        private final long length;
+        private final long lastModified;
+
+        FileStamp(long length, long lastModified) {
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        static FileStamp of(File file) {
+            return new FileStamp(file.length(), file.lastModified());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            FileStamp other = (FileStamp) o;
+            return length == other.length && lastModified == other.lastModified;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (int) (length ^ (length >>> 32)) + (int) (lastModified ^ (lastModified >>> 32));
+        }
+    }
+}
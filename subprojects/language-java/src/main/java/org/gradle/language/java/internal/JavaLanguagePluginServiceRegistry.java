@@ -21,6 +21,7 @@ import org.gradle.api.internal.component.ArtifactType;
 import org.gradle.api.internal.component.ComponentTypeRegistry;
 import org.gradle.api.internal.file.FileCollectionFactory;
 import org.gradle.api.internal.tasks.compile.AnnotationProcessorDetector;
+import org.gradle.api.internal.tasks.compile.StandardJavaFileManagerCache;
 import org.gradle.internal.service.ServiceRegistration;
 import org.gradle.internal.service.scopes.PluginServiceRegistry;
 import org.gradle.jvm.JvmLibrary;
@@ -29,6 +30,8 @@ import org.gradle.language.java.artifact.JavadocArtifact;
 public class JavaLanguagePluginServiceRegistry implements PluginServiceRegistry {
     @Override
     public void registerGlobalServices(ServiceRegistration registration) {
+        // Closes the file managers kept open by the Java compiler when the process stops
+        registration.add(StandardJavaFileManagerCache.class, StandardJavaFileManagerCache.getInstance());
     }
 
     @Override
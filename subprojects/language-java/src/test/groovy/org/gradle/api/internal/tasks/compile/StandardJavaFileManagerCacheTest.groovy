@@ -0,0 +1,300 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.compile
+
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.util.Requires
+import org.gradle.util.TestPrecondition
+import org.junit.Rule
+import spock.lang.Specification
+
+import javax.tools.JavaCompiler
+import javax.tools.StandardJavaFileManager
+import javax.tools.StandardLocation
+import javax.tools.ToolProvider
+import java.nio.charset.Charset
+
+class StandardJavaFileManagerCacheTest extends Specification {
+    @Rule TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def compiler = Mock(JavaCompiler)
+    def fileManager1 = Mock(StandardJavaFileManager)
+    def fileManager2 = Mock(StandardJavaFileManager)
+    def fileManager3 = Mock(StandardJavaFileManager)
+    def fileManager4 = Mock(StandardJavaFileManager)
+    def archive = tmpDir.file("lib.jar").createFile()
+    def cache = new StandardJavaFileManagerCache(true, 10, 2)
+
+    def "reuses file manager for later compilation"() {
+        when:
+        def first = cache.acquire(compiler, null, [], [archive])
+        cache.release(first, true)
+        def second = cache.acquire(compiler, null, [], [archive])
+
+        then:
+        1 * compiler.getStandardFileManager(null, null, null) >> fileManager1
+        first == fileManager1
+        second == fileManager1
+        0 * fileManager1.close()
+    }
+
+    def "resets locations before reusing file manager"() {
+        given:
+        compiler.getStandardFileManager(null, null, null) >> fileManager1
+        cache.release(cache.acquire(compiler, null, [], [archive]), true)
+
+        when:
+        cache.acquire(compiler, null, [], [archive])
+
+        then:
+        1 * fileManager1.setLocation(StandardLocation.CLASS_PATH, null)
+        1 * fileManager1.setLocation(StandardLocation.CLASS_OUTPUT, null)
+        1 * fileManager1.setLocation(StandardLocation.SOURCE_PATH, null)
+    }
+
+    def "uses separate file managers for concurrent compilations"() {
+        when:
+        def first = cache.acquire(compiler, null, [], [archive])
+        def second = cache.acquire(compiler, null, [], [archive])
+
+        then:
+        2 * compiler.getStandardFileManager(null, null, null) >>> [fileManager1, fileManager2]
+        first == fileManager1
+        second == fileManager2
+    }
+
+    def "uses separate file managers for different encodings"() {
+        def utf8 = Charset.forName("UTF-8")
+
+        when:
+        cache.release(cache.acquire(compiler, null, [], [archive]), true)
+        def fileManager = cache.acquire(compiler, utf8, [], [archive])
+
+        then:
+        1 * compiler.getStandardFileManager(null, null, null) >> fileManager1
+        1 * compiler.getStandardFileManager(null, null, utf8) >> fileManager2
+        fileManager == fileManager2
+    }
+
+    def "uses separate file managers for different platform class path options"() {
+        def bootClasspath = ["-bootclasspath", archive.path]
+
+        when:
+        cache.release(cache.acquire(compiler, null, ["-g"] + bootClasspath, [archive]), true)
+        def withoutBootClasspath = cache.acquire(compiler, null, ["-g"], [archive])
+        cache.release(withoutBootClasspath, true)
+        def withBootClasspath = cache.acquire(compiler, null, bootClasspath, [archive])
+        def withOtherExtDirs = cache.acquire(compiler, null, ["-extdirs", tmpDir.file("ext").path], [archive])
+        def withPrependedBootClasspath = cache.acquire(compiler, null, ["-Xbootclasspath/p:" + archive.path], [archive])
+
+        then:
+        4 * compiler.getStandardFileManager(null, null, null) >>> [fileManager1, fileManager2, fileManager3, fileManager4]
+        withoutBootClasspath == fileManager2
+        withBootClasspath == fileManager1
+        withOtherExtDirs == fileManager3
+        withPrependedBootClasspath == fileManager4
+    }
+
+    def "uses separate file managers for different module path and release options"() {
+        def modulePath = ["--module-path", archive.path]
+
+        when:
+        cache.release(cache.acquire(compiler, null, modulePath, [archive]), true)
+        def withModulePath = cache.acquire(compiler, null, modulePath, [archive])
+        def withRelease = cache.acquire(compiler, null, ["--release", "8"], [archive])
+        def withSystem = cache.acquire(compiler, null, ["--system=none"], [archive])
+
+        then:
+        3 * compiler.getStandardFileManager(null, null, null) >>> [fileManager1, fileManager2, fileManager3]
+        withModulePath == fileManager1
+        withRelease == fileManager2
+        withSystem == fileManager3
+    }
+
+    @Requires(TestPrecondition.JDK8_OR_LATER)
+    def "resets native header output location before reusing file manager"() {
+        given:
+        compiler.getStandardFileManager(null, null, null) >> fileManager1
+        cache.release(cache.acquire(compiler, null, ["-h", tmpDir.file("headers").path], [archive]), true)
+
+        when:
+        cache.acquire(compiler, null, [], [archive])
+
+        then:
+        1 * fileManager1.setLocation(StandardLocation.NATIVE_HEADER_OUTPUT, null)
+    }
+
+    def "closes file manager that has been idle the longest when too many file managers are idle"() {
+        given:
+        compiler.getStandardFileManager(null, null, null) >>> [fileManager1, fileManager2, fileManager3, fileManager4]
+        def first = cache.acquire(compiler, null, [], [archive])
+        def second = cache.acquire(compiler, null, [], [archive])
+        def third = cache.acquire(compiler, null, [], [archive])
+
+        when:
+        cache.release(first, true)
+        cache.release(second, true)
+
+        then:
+        0 * _.close()
+
+        when:
+        cache.release(third, true)
+
+        then:
+        1 * fileManager1.close()
+        0 * _.close()
+
+        when:
+        def fileManager = cache.acquire(compiler, null, [], [archive])
+
+        then:
+        fileManager == fileManager3
+    }
+
+    def "closes idle file managers when stopped"() {
+        given:
+        compiler.getStandardFileManager(null, null, null) >>> [fileManager1, fileManager2, fileManager3]
+        def idle = cache.acquire(compiler, null, [], [archive])
+        def busy = cache.acquire(compiler, null, [], [archive])
+        cache.release(idle, true)
+
+        when:
+        cache.stop()
+
+        then:
+        1 * fileManager1.close()
+        0 * fileManager2.close()
+
+        when:
+        cache.release(busy, true)
+        def fileManager = cache.acquire(compiler, null, [], [archive])
+
+        then:
+        fileManager == fileManager2
+    }
+
+    @Requires(TestPrecondition.JDK8_OR_EARLIER)
+    def "compilation without boot class path does not use boot class path of earlier compilation"() {
+        def compiler = ToolProvider.systemJavaCompiler
+        def source = tmpDir.createFile("src/Foo.java") << "class Foo { String s; }"
+        def emptyBootClasspath = tmpDir.createDir("empty-boot-classpath")
+        def classesDir = tmpDir.createDir("classes")
+
+        expect:
+        !compile(compiler, source, ["-d", classesDir.path, "-bootclasspath", emptyBootClasspath.path])
+        compile(compiler, source, ["-d", classesDir.path])
+        classesDir.file("Foo.class").file
+    }
+
+    private boolean compile(JavaCompiler compiler, File source, List<String> options) {
+        def fileManager = cache.acquire(compiler, null, options, [])
+        try {
+            def errors = new StringWriter()
+            return compiler.getTask(errors, fileManager, null, options, null, fileManager.getJavaFileObjects(source)).call()
+        } finally {
+            cache.release(fileManager, true)
+        }
+    }
+
+    def "discards file manager when an archive it has used has changed"() {
+        given:
+        compiler.getStandardFileManager(null, null, null) >>> [fileManager1, fileManager2]
+        cache.release(cache.acquire(compiler, null, [], [archive]), true)
+
+        when:
+        archive << "some content"
+        def fileManager = cache.acquire(compiler, null, [], [archive])
+
+        then:
+        fileManager == fileManager2
+        1 * fileManager1.close()
+    }
+
+    def "discards file manager when an archive that was missing has been created"() {
+        def missing = tmpDir.file("missing.jar")
+
+        given:
+        compiler.getStandardFileManager(null, null, null) >>> [fileManager1, fileManager2]
+        cache.release(cache.acquire(compiler, null, [], [missing]), true)
+
+        when:
+        missing.createFile() << "content"
+        def fileManager = cache.acquire(compiler, null, [], [missing])
+
+        then:
+        fileManager == fileManager2
+        1 * fileManager1.close()
+    }
+
+    def "reuses file manager when archives that it has not used have changed"() {
+        def other = tmpDir.file("other.jar").createFile()
+
+        given:
+        compiler.getStandardFileManager(null, null, null) >>> [fileManager1, fileManager2]
+        cache.release(cache.acquire(compiler, null, [], [archive]), true)
+
+        when:
+        other << "some content"
+        def fileManager = cache.acquire(compiler, null, [], [archive, other])
+
+        then:
+        fileManager == fileManager1
+    }
+
+    def "closes file manager of compilation that did not complete"() {
+        given:
+        compiler.getStandardFileManager(null, null, null) >>> [fileManager1, fileManager2]
+
+        when:
+        cache.release(cache.acquire(compiler, null, [], [archive]), false)
+
+        then:
+        1 * fileManager1.close()
+
+        when:
+        def fileManager = cache.acquire(compiler, null, [], [archive])
+
+        then:
+        fileManager == fileManager2
+    }
+
+    def "closes file manager that has used too many archives"() {
+        def archives = (1..11).collect { tmpDir.file("lib${it}.jar").createFile() }
+
+        given:
+        compiler.getStandardFileManager(null, null, null) >>> [fileManager1, fileManager2]
+
+        when:
+        cache.release(cache.acquire(compiler, null, [], archives), true)
+
+        then:
+        1 * fileManager1.close()
+    }
+
+    def "does not reuse file managers when disabled"() {
+        def cache = new StandardJavaFileManagerCache(false, 10, 2)
+
+        when:
+        cache.release(cache.acquire(compiler, null, [], [archive]), true)
+        def fileManager = cache.acquire(compiler, null, [], [archive])
+
+        then:
+        2 * compiler.getStandardFileManager(null, null, null) >>> [fileManager1, fileManager2]
+        1 * fileManager1.close()
+        fileManager == fileManager2
+    }
+}
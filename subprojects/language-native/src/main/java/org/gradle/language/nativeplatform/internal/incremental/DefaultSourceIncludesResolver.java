@@ -22,11 +22,22 @@ import org.gradle.language.nativeplatform.internal.IncludeDirectives;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+/**
+ * Resolves the includes of source files against a list of include directories.
+ *
+ * <p>The resolution of each include is remembered for each search path, which is either the include directories, or the directory of a source file followed
+ * by the include directories, so that the includes shared by many files are looked up in the file system only once. So, an instance should only be used while
+ * the files in the include directories do not change, such as for a single compilation.</p>
+ */
 public class DefaultSourceIncludesResolver implements SourceIncludesResolver {
     private final List<File> includePaths;
+    private final Map<String, IncludeResolution> systemIncludes = new HashMap<String, IncludeResolution>();
+    private final Map<File, Map<String, IncludeResolution>> quotedIncludes = new HashMap<File, Map<String, IncludeResolution>>();
 
     public DefaultSourceIncludesResolver(List<File> includePaths) {
         this.includePaths = includePaths;
@@ -35,8 +46,12 @@ public class DefaultSourceIncludesResolver implements SourceIncludesResolver {
     @Override
     public ResolvedSourceIncludes resolveIncludes(File sourceFile, IncludeDirectives includes) {
         BuildableResolvedSourceIncludes resolvedSourceIncludes = new BuildableResolvedSourceIncludes();
-        searchForDependencies(prependSourceDir(sourceFile, includePaths), includes.getQuotedIncludes(), resolvedSourceIncludes);
-        searchForDependencies(includePaths, includes.getSystemIncludes(), resolvedSourceIncludes);
+        for (Include include : includes.getQuotedIncludes()) {
+            resolveQuotedInclude(sourceFile.getParentFile(), include.getValue()).applyTo(resolvedSourceIncludes);
+        }
+        for (Include include : includes.getSystemIncludes()) {
+            resolveSystemInclude(include.getValue()).applyTo(resolvedSourceIncludes);
+        }
         if (!includes.getMacroIncludes().isEmpty()) {
             resolvedSourceIncludes.resolved(includes.getMacroIncludes().get(0).getValue(), null);
         }
@@ -44,21 +59,56 @@ public class DefaultSourceIncludesResolver implements SourceIncludesResolver {
         return resolvedSourceIncludes;
     }
 
-    private List<File> prependSourceDir(File sourceFile, List<File> includePaths) {
-        List<File> quotedSearchPath = new ArrayList<File>(includePaths.size() + 1);
-        quotedSearchPath.add(sourceFile.getParentFile());
-        quotedSearchPath.addAll(includePaths);
-        return quotedSearchPath;
+    /**
+     * Quoted includes are searched for in the directory of the source file, then in the include directories.
+     */
+    private IncludeResolution resolveQuotedInclude(File sourceDir, String include) {
+        Map<String, IncludeResolution> resolutions = quotedIncludes.get(sourceDir);
+        if (resolutions == null) {
+            resolutions = new HashMap<String, IncludeResolution>();
+            quotedIncludes.put(sourceDir, resolutions);
+        }
+        IncludeResolution resolution = resolutions.get(include);
+        if (resolution == null) {
+            resolution = new IncludeResolution(include);
+            if (!resolution.search(sourceDir)) {
+                resolution.append(resolveSystemInclude(include));
+            }
+            resolutions.put(include, resolution);
+        }
+        return resolution;
     }
 
-    private void searchForDependencies(List<File> searchPath, List<Include> includes, BuildableResolvedSourceIncludes dependencies) {
-        for (Include include : includes) {
-            searchForDependency(searchPath, include.getValue(), dependencies);
+    private IncludeResolution resolveSystemInclude(String include) {
+        IncludeResolution resolution = systemIncludes.get(include);
+        if (resolution == null) {
+            resolution = new IncludeResolution(include);
+            for (File searchDir : includePaths) {
+                if (resolution.search(searchDir)) {
+                    break;
+                }
+            }
+            systemIncludes.put(include, resolution);
         }
+        return resolution;
     }
 
-    private void searchForDependency(List<File> searchPath, String include, BuildableResolvedSourceIncludes dependencies) {
-        for (File searchDir : searchPath) {
+    /**
+     * The locations checked for an include, and the file it resolved to, if any.
+     */
+    private static class IncludeResolution {
+        private final String include;
+        private final List<File> checkedLocations = new ArrayList<File>();
+        private File resolved;
+
+        IncludeResolution(String include) {
+            this.include = include;
+        }
+
+        /**
+         * Looks for the include in the given directory, returning true when found.
+         */
+        boolean search(File searchDir) {
             File candidate = new File(searchDir, include);
             // TODO: SLG This isn't correct, we need to consider directories too
             // If a source file is #include <type_trait>
@@ -66,11 +116,26 @@ public class DefaultSourceIncludesResolver implements SourceIncludesResolver {
             // and /B/type_trait is the header we want.
             // We need /A/type_trait to be recorded as a directory in case it becomes a file later.
             if (!candidate.isDirectory()) {
-                dependencies.searched(candidate);
+                checkedLocations.add(candidate);
             }
             if (candidate.isFile()) {
-                dependencies.resolved(include, candidate);
-                return;
+                resolved = FileUtils.canonicalize(candidate);
+                return true;
+            }
+            return false;
+        }
+
+        void append(IncludeResolution other) {
+            checkedLocations.addAll(other.checkedLocations);
+            resolved = other.resolved;
+        }
+
+        void applyTo(BuildableResolvedSourceIncludes dependencies) {
+            for (File checkedLocation : checkedLocations) {
+                dependencies.searched(checkedLocation);
+            }
+            if (resolved != null) {
+                dependencies.resolved(new ResolvedInclude(include, resolved));
             }
         }
     }
@@ -85,7 +150,11 @@ public class DefaultSourceIncludesResolver implements SourceIncludesResolver {
 
         void resolved(String rawInclude, File resolved) {
             File dependencyFile = resolved == null ? null : FileUtils.canonicalize(resolved);
-            dependencies.add(new ResolvedInclude(rawInclude, dependencyFile));
+            resolved(new ResolvedInclude(rawInclude, dependencyFile));
+        }
+
+        void resolved(ResolvedInclude include) {
+            dependencies.add(include);
         }
 
         @Override
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.language.nativeplatform.internal.incremental.sourceparser;
+
+import com.google.common.cache.Weigher;
+import com.google.common.hash.HashCode;
+import org.gradle.api.internal.cache.CrossBuildInMemoryCache;
+import org.gradle.api.internal.cache.CrossBuildInMemoryCacheFactory;
+import org.gradle.api.internal.hash.FileHasher;
+import org.gradle.language.nativeplatform.internal.IncludeDirectives;
+
+import java.io.File;
+
+/**
+ * Reuses the include directives parsed from a file with the same content, across tasks and builds in the same process.
+ * Many header files are included by the sources of many tasks, and rarely change between builds.
+ */
+public class CachingCSourceParser implements CSourceParser {
+    // Bounds the number of include directives retained, rather than the number of files, as files have very different numbers of includes
+    private static final long MAXIMUM_INCLUDES = 2000000;
+    private static final Weigher<HashCode, IncludeDirectives> INCLUDE_COUNT = new Weigher<HashCode, IncludeDirectives>() {
+        @Override
+        public int weigh(HashCode key, IncludeDirectives value) {
+            return 1 + value.getIncludesAndImports().size();
+        }
+    };
+
+    private final CSourceParser delegate;
+    private final FileHasher hasher;
+    private final CrossBuildInMemoryCache<HashCode, IncludeDirectives> cache;
+
+    public CachingCSourceParser(CSourceParser delegate, FileHasher hasher, CrossBuildInMemoryCacheFactory cacheFactory) {
+        this.delegate = delegate;
+        this.hasher = hasher;
+        this.cache = cacheFactory.newCache("C source include directives", INCLUDE_COUNT, MAXIMUM_INCLUDES);
+    }
+
+    @Override
+    public IncludeDirectives parseSource(File sourceFile) {
+        HashCode hash = hasher.hash(sourceFile);
+        IncludeDirectives includeDirectives = cache.get(hash);
+        if (includeDirectives == null) {
+            // Parse without holding the lock of the cache, so that other tasks can parse files at the same time
+            includeDirectives = delegate.parseSource(sourceFile);
+            cache.put(hash, includeDirectives);
+        }
+        return includeDirectives;
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.language.nativeplatform.internal.incremental.sourceparser;
+
+import com.google.common.collect.Lists;
+import org.apache.commons.io.IOUtils;
+import org.gradle.api.UncheckedIOException;
+import org.gradle.language.nativeplatform.internal.Include;
+import org.gradle.language.nativeplatform.internal.IncludeDirectives;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * Finds the {@code #include} and {@code #import} directives of a source file, by scanning the characters of the file once comments and line continuations have been removed.
+ *
+ * <p>A line is a directive when, ignoring leading and trailing whitespace, it consists of a '#', the directive name in any case, and a single {@code <value>},
+ * {@code "value"} or macro name, with optional whitespace in between. Only the lines that are directives are copied.</p>
+ */
+public class ScanningCSourceParser implements CSourceParser {
+    private static final char[] INCLUDE = "include".toCharArray();
+    private static final char[] IMPORT = "import".toCharArray();
+
+    @Override
+    public IncludeDirectives parseSource(File sourceFile) {
+        return new DefaultIncludeDirectives(parseFile(sourceFile));
+    }
+
+    private List<Include> parseFile(File file) {
+        List<Include> includes = Lists.newArrayList();
+        try {
+            Reader reader = new PreprocessingReader(new BufferedReader(new FileReader(file)));
+            try {
+                char[] chars = readFully(reader, file.length());
+                int length = chars.length;
+                int lineStart = 0;
+                while (lineStart < length) {
+                    int lineEnd = lineStart;
+                    while (lineEnd < length && chars[lineEnd] != '\n' && chars[lineEnd] != '\r') {
+                        lineEnd++;
+                    }
+                    parseLine(chars, lineStart, lineEnd, includes);
+                    lineStart = lineEnd + 1;
+                }
+            } finally {
+                IOUtils.closeQuietly(reader);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return includes;
+    }
+
+    private static char[] readFully(Reader reader, long expectedLength) throws IOException {
+        // Most files have no more characters than bytes, so usually the whole file is read into the initial buffer
+        char[] buffer = new char[(int) Math.min(Math.max(expectedLength + 1, 16), Integer.MAX_VALUE - 8)];
+        int length = 0;
+        while (true) {
+            if (length == buffer.length) {
+                char[] larger = new char[buffer.length * 2];
+                System.arraycopy(buffer, 0, larger, 0, length);
+                buffer = larger;
+            }
+            int read = reader.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        if (length == buffer.length) {
+            return buffer;
+        }
+        char[] result = new char[length];
+        System.arraycopy(buffer, 0, result, 0, length);
+        return result;
+    }
+
+    private static void parseLine(char[] chars, int start, int end, List<Include> includes) {
+        // Trim, in the same way as String.trim()
+        while (start < end && chars[start] <= ' ') {
+            start++;
+        }
+        while (end > start && chars[end - 1] <= ' ') {
+            end--;
+        }
+        if (start == end || chars[start] != '#') {
+            return;
+        }
+        int pos = skipWhitespace(chars, start + 1, end);
+
+        boolean isImport;
+        if (matchesIgnoreCase(chars, pos, end, INCLUDE)) {
+            isImport = false;
+            pos += INCLUDE.length;
+        } else if (matchesIgnoreCase(chars, pos, end, IMPORT)) {
+            // Only the lower case directive is treated as an import
+            isImport = matches(chars, pos, IMPORT);
+            pos += IMPORT.length;
+        } else {
+            return;
+        }
+        pos = skipWhitespace(chars, pos, end);
+        if (pos == end || !isValue(chars, pos, end)) {
+            return;
+        }
+
+        includes.add(DefaultInclude.parse(new String(chars, pos, end - pos), isImport));
+    }
+
+    /**
+     * Returns true when the given characters are a {@code <value>}, a {@code "value"} or a macro name.
+     */
+    private static boolean isValue(char[] chars, int start, int end) {
+        char first = chars[start];
+        if (first == '<' || first == '"') {
+            char last = first == '<' ? '>' : '"';
+            if (end - start < 3 || chars[end - 1] != last) {
+                return false;
+            }
+            for (int i = start + 1; i < end - 1; i++) {
+                if (chars[i] == last) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        for (int i = start; i < end; i++) {
+            if (!isWordCharacter(chars[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipWhitespace(char[] chars, int pos, int end) {
+        while (pos < end && isWhitespace(chars[pos])) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean matchesIgnoreCase(char[] chars, int pos, int end, char[] word) {
+        if (end - pos < word.length) {
+            return false;
+        }
+        for (int i = 0; i < word.length; i++) {
+            char ch = chars[pos + i];
+            if (ch >= 'A' && ch <= 'Z') {
+                ch = (char) (ch + ('a' - 'A'));
+            }
+            if (ch != word[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(char[] chars, int pos, char[] word) {
+        for (int i = 0; i < word.length; i++) {
+            if (chars[pos + i] != word[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The whitespace characters matched by '\s' in a regular expression
+    private static boolean isWhitespace(char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\u000B' || ch == '\f' || ch == '\r';
+    }
+
+    // The word characters matched by '\w' in a regular expression
+    private static boolean isWordCharacter(char ch) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9') || ch == '_';
+    }
+}
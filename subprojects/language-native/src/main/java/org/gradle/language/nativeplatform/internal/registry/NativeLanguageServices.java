@@ -16,16 +16,31 @@
 
 package org.gradle.language.nativeplatform.internal.registry;
 
+import org.gradle.api.internal.cache.CrossBuildInMemoryCacheFactory;
+import org.gradle.api.internal.hash.FileHasher;
 import org.gradle.internal.service.ServiceRegistration;
+import org.gradle.internal.service.scopes.GradleUserHomeScopePluginServices;
 import org.gradle.internal.service.scopes.PluginServiceRegistry;
 import org.gradle.language.nativeplatform.internal.incremental.DefaultCompilationStateCacheFactory;
 import org.gradle.language.nativeplatform.internal.incremental.IncrementalCompilerBuilder;
+import org.gradle.language.nativeplatform.internal.incremental.sourceparser.CSourceParser;
+import org.gradle.language.nativeplatform.internal.incremental.sourceparser.CachingCSourceParser;
+import org.gradle.language.nativeplatform.internal.incremental.sourceparser.ScanningCSourceParser;
 
-public class NativeLanguageServices implements PluginServiceRegistry {
+public class NativeLanguageServices implements PluginServiceRegistry, GradleUserHomeScopePluginServices {
     @Override
     public void registerGlobalServices(ServiceRegistration registration) {
     }
 
+    @Override
+    public void registerGradleUserHomeServices(ServiceRegistration registration) {
+        registration.addProvider(new Object() {
+            CSourceParser createCSourceParser(FileHasher fileHasher, CrossBuildInMemoryCacheFactory cacheFactory) {
+                return new CachingCSourceParser(new ScanningCSourceParser(), fileHasher, cacheFactory);
+            }
+        });
+    }
+
     @Override
     public void registerBuildSessionServices(ServiceRegistration registration) {
     }
@@ -166,6 +166,29 @@ class DefaultSourceIncludesResolverTest extends Specification {
         }
     }
 
+    def "resolves each include once for each search path"() {
+        given:
+        def includeDir = testDirectory.file("include")
+        def header = includeDir.createFile("header.h")
+        def otherSourceDir = testDirectory.createDir("other")
+        def otherSourceFile = otherSourceDir.file("other.c")
+        def resolver = new DefaultSourceIncludesResolver([includeDir])
+        systemIncludes << "header.h"
+        quotedIncludes << "header.h"
+
+        when:
+        def first = resolver.resolveIncludes(sourceFile, includes)
+        header.delete()
+        def second = resolver.resolveIncludes(sourceFile, includes)
+        def other = resolver.resolveIncludes(otherSourceFile, includes)
+
+        then:
+        first.resolvedIncludes as List == deps(header)
+        second.resolvedIncludes as List == deps(header)
+        other.resolvedIncludes as List == deps(header)
+        other.checkedLocations as List == [otherSourceDir.file("header.h"), header]
+    }
+
     def include(String value) {
         return DefaultInclude.parse(value, false)
     }
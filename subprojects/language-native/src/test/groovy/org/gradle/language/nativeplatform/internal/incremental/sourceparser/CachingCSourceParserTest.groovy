@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.language.nativeplatform.internal.incremental.sourceparser
+
+import com.google.common.hash.HashCode
+import org.gradle.api.internal.cache.CrossBuildInMemoryCacheFactory
+import org.gradle.api.internal.hash.FileHasher
+import org.gradle.internal.event.DefaultListenerManager
+import org.gradle.language.nativeplatform.internal.IncludeDirectives
+import spock.lang.Specification
+
+class CachingCSourceParserTest extends Specification {
+    def delegate = Mock(CSourceParser)
+    def hasher = Mock(FileHasher)
+    def parser = new CachingCSourceParser(delegate, hasher, new CrossBuildInMemoryCacheFactory(new DefaultListenerManager()))
+    def file1 = new File("file1.h")
+    def file2 = new File("file2.h")
+    def directives = Stub(IncludeDirectives)
+    def otherDirectives = Stub(IncludeDirectives)
+
+    def "parses file once for each content hash"() {
+        when:
+        def result1 = parser.parseSource(file1)
+        def result2 = parser.parseSource(file2)
+
+        then:
+        1 * hasher.hash(file1) >> HashCode.fromInt(1)
+        1 * hasher.hash(file2) >> HashCode.fromInt(1)
+        1 * delegate.parseSource(file1) >> directives
+        0 * delegate._
+        result1 == directives
+        result2 == directives
+    }
+
+    def "parses file again when its content has changed"() {
+        when:
+        def result1 = parser.parseSource(file1)
+        def result2 = parser.parseSource(file1)
+
+        then:
+        2 * hasher.hash(file1) >>> [HashCode.fromInt(1), HashCode.fromInt(2)]
+        2 * delegate.parseSource(file1) >>> [directives, otherDirectives]
+        result1 == directives
+        result2 == otherDirectives
+    }
+}
@@ -22,9 +22,9 @@ import org.junit.Rule
 import spock.lang.Specification
 import spock.lang.Unroll
 
-class RegexBackedCSourceParserTest extends Specification {
+class ScanningCSourceParserTest extends Specification {
     @Rule final TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider()
-    CSourceParser parser = new RegexBackedCSourceParser()
+    CSourceParser parser = new ScanningCSourceParser()
 
     protected TestFile getSourceFile() {
         testDirectory.file('source.c')
@@ -466,4 +466,25 @@ st3"
         then:
         includes == ['"test1"', '"test2"', '"test3"'].collect { include(it) }
     }
+
+    def "finds directives in file with windows line endings"() {
+        when:
+        sourceFile << '#include "test1"\r\n#import <system1>\r\n\r\n#include DEFINED\r\n'
+
+        then:
+        includes == ['"test1"', 'DEFINED'].collect { include(it) }
+        imports == ['<system1>'].collect { include(it, true) }
+    }
+
+    def "treats directive names in any case as includes"() {
+        when:
+        sourceFile << """
+    #INCLUDE "test1"
+    #Import "test2"
+"""
+
+        then:
+        includes == ['"test1"', '"test2"'].collect { include(it) }
+        noImports()
+    }
 }
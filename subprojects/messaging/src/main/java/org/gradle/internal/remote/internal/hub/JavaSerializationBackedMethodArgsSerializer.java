@@ -18,11 +18,27 @@ package org.gradle.internal.remote.internal.hub;
 
 import org.gradle.internal.serialize.Decoder;
 import org.gradle.internal.serialize.Encoder;
-import org.gradle.internal.serialize.Message;
+import org.gradle.internal.serialize.ExceptionReplacingObjectInputStream;
+import org.gradle.internal.serialize.ExceptionReplacingObjectOutputStream;
 import org.gradle.internal.serialize.Serializer;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes method arguments using Java serialization. Each instance returned by {@link #forTypes(Class[])} is used for a single connection, and
+ * remembers the class descriptors it has written or read, so that the descriptor for a given class is sent over the connection only once.
+ */
 class JavaSerializationBackedMethodArgsSerializer implements MethodArgsSerializer {
     private static final Object[] ZERO_ARGS = new Object[0];
+    private static final int NEW_CLASS_DESCRIPTOR = -1;
     private final ClassLoader classLoader;
 
     public JavaSerializationBackedMethodArgsSerializer(ClassLoader classLoader) {
@@ -49,14 +65,66 @@ class JavaSerializationBackedMethodArgsSerializer implements MethodArgsSerialize
     }
 
     private class ArraySerializer implements Serializer<Object[]> {
+        private final Map<Class<?>, Integer> writtenClassDescriptors = new HashMap<Class<?>, Integer>();
+        private final List<ObjectStreamClass> readClassDescriptors = new ArrayList<ObjectStreamClass>();
+
         @Override
         public Object[] read(Decoder decoder) throws Exception {
-            return (Object[]) Message.receive(decoder.getInputStream(), classLoader);
+            return (Object[]) new ClassDescriptorCachingObjectInputStream(decoder.getInputStream(), classLoader, readClassDescriptors).readObject();
         }
 
         @Override
         public void write(Encoder encoder, Object[] value) throws Exception {
-            Message.send(value, encoder.getOutputStream());
+            ObjectOutputStream outputStream = new ClassDescriptorCachingObjectOutputStream(encoder.getOutputStream(), writtenClassDescriptors);
+            try {
+                outputStream.writeObject(value);
+            } finally {
+                outputStream.flush();
+            }
+        }
+    }
+
+    private static class ClassDescriptorCachingObjectOutputStream extends ExceptionReplacingObjectOutputStream {
+        private final Map<Class<?>, Integer> classDescriptors;
+
+        ClassDescriptorCachingObjectOutputStream(OutputStream outputStream, Map<Class<?>, Integer> classDescriptors) throws IOException {
+            super(outputStream);
+            this.classDescriptors = classDescriptors;
+        }
+
+        @Override
+        protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
+            Integer id = classDescriptors.get(desc.forClass());
+            if (id != null) {
+                writeInt(id);
+                return;
+            }
+            writeInt(NEW_CLASS_DESCRIPTOR);
+            super.writeClassDescriptor(desc);
+            classDescriptors.put(desc.forClass(), classDescriptors.size());
+        }
+    }
+
+    private static class ClassDescriptorCachingObjectInputStream extends ExceptionReplacingObjectInputStream {
+        private final List<ObjectStreamClass> classDescriptors;
+
+        ClassDescriptorCachingObjectInputStream(InputStream inputStream, ClassLoader classLoader, List<ObjectStreamClass> classDescriptors) throws IOException {
+            super(inputStream, classLoader);
+            this.classDescriptors = classDescriptors;
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            int id = readInt();
+            if (id == NEW_CLASS_DESCRIPTOR) {
+                ObjectStreamClass desc = super.readClassDescriptor();
+                classDescriptors.add(desc);
+                return desc;
+            }
+            if (id < 0 || id >= classDescriptors.size()) {
+                throw new IOException(String.format("Unexpected class descriptor id %d found.", id));
+            }
+            return classDescriptors.get(id);
         }
     }
 }
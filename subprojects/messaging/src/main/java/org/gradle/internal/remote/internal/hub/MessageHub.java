@@ -17,6 +17,7 @@
 package org.gradle.internal.remote.internal.hub;
 
 import org.gradle.api.Action;
+import org.gradle.internal.UncheckedException;
 import org.gradle.internal.concurrent.AsyncStoppable;
 import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.concurrent.StoppableExecutor;
@@ -27,9 +28,11 @@ import org.gradle.internal.remote.internal.RecoverableMessageIOException;
 import org.gradle.internal.remote.internal.RemoteConnection;
 import org.gradle.internal.remote.internal.hub.protocol.*;
 import org.gradle.internal.remote.internal.hub.queue.EndPointQueue;
+import org.gradle.internal.remote.internal.hub.queue.MultiEndPointQueue;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -40,15 +43,25 @@ import java.util.concurrent.locks.ReentrantLock;
  * Use {@link #addHandler(String, Object)} to create a worker for incoming messages on a given channel.
  * Use {@link #addConnection(RemoteConnection)} to attach another router to this router.
  *
+ * <p>The number of messages queued in each direction is bounded. When too many incoming messages are waiting for handlers, this hub stops reading from its
+ * connections, which in turn blocks the sending hub once the connection's buffers are full. When too many outgoing messages are waiting to be written to
+ * a connection, dispatching an outgoing message blocks. Handler threads are never blocked when dispatching outgoing messages, so that two hubs cannot
+ * end up waiting for each other.</p>
  */
 public class MessageHub implements AsyncStoppable {
     private enum State {Running, Stopping, Stopped}
 
     private static final Discard DISCARD = new Discard();
+    public static final int DEFAULT_MAX_QUEUED_MESSAGES = 10000;
     private final StoppableExecutor workers;
     private final String displayName;
     private final Action<? super Throwable> errorHandler;
     private final Lock lock = new ReentrantLock();
+    private final Condition queuesDrained = lock.newCondition();
+    private final ThreadLocal<Boolean> handlerThread = new ThreadLocal<Boolean>();
+    private final int maxQueuedMessages;
+    private int queuedIncomingMessages;
+    private int activeConnectionDispatchers;
     private State state = State.Running;
     private final IncomingQueue incomingQueue = new IncomingQueue(lock);
     private final OutgoingQueue outgoingQueue = new OutgoingQueue(incomingQueue, lock);
@@ -58,8 +71,17 @@ public class MessageHub implements AsyncStoppable {
      * @param errorHandler Notified when some asynch. activity fails. Must be thread-safe.
      */
     public MessageHub(String displayName, ExecutorFactory executorFactory, Action<? super Throwable> errorHandler) {
+        this(displayName, executorFactory, errorHandler, DEFAULT_MAX_QUEUED_MESSAGES);
+    }
+
+    /**
+     * @param errorHandler Notified when some asynch. activity fails. Must be thread-safe.
+     * @param maxQueuedMessages The maximum number of incoming and outgoing messages to queue before applying back pressure.
+     */
+    public MessageHub(String displayName, ExecutorFactory executorFactory, Action<? super Throwable> errorHandler, int maxQueuedMessages) {
         this.displayName = displayName;
         this.errorHandler = errorHandler;
+        this.maxQueuedMessages = maxQueuedMessages;
         workers = executorFactory.create(displayName + " workers");
     }
 
@@ -127,8 +149,13 @@ public class MessageHub implements AsyncStoppable {
                 streamFailureHandler = DISCARD;
             }
             ChannelIdentifier identifier = new ChannelIdentifier(channelName);
-            EndPointQueue queue = incomingQueue.getChannel(identifier).newEndpoint();
-            workers.execute(new Handler(queue, dispatch, boundedDispatch, rejectedMessageListener, streamFailureHandler));
+            MultiEndPointQueue channelQueue = incomingQueue.getChannel(identifier);
+            if (!channelQueue.hasEndpoints()) {
+                // Messages received while the channel had no handler are only counted once a handler is added
+                queuedIncomingMessages += countChannelMessages(channelQueue.getQueued());
+            }
+            EndPointQueue queue = channelQueue.newEndpoint();
+            workers.execute(new Handler(channelQueue, queue, dispatch, boundedDispatch, rejectedMessageListener, streamFailureHandler));
         } finally {
             lock.unlock();
         }
@@ -144,6 +171,7 @@ public class MessageHub implements AsyncStoppable {
         try {
             assertRunning("add connection");
             ConnectionState connectionState = connections.add(connection);
+            activeConnectionDispatchers++;
             workers.execute(new ConnectionDispatch(connectionState));
             workers.execute(new ConnectionReceive(connectionState));
         } finally {
@@ -191,6 +219,7 @@ public class MessageHub implements AsyncStoppable {
                 connections.noFurtherConnections();
             } finally {
                 state = State.Stopping;
+                queuesDrained.signalAll();
             }
         } finally {
             lock.unlock();
@@ -268,7 +297,7 @@ public class MessageHub implements AsyncStoppable {
                         if (message == null || message instanceof EndOfStream) {
                             return;
                         }
-                        addToIncoming(message);
+                        addReceivedToIncoming(message);
                     }
                 } finally {
                     lock.lock();
@@ -293,6 +322,43 @@ public class MessageHub implements AsyncStoppable {
         }
     }
 
+    private void addReceivedToIncoming(InterHubMessage message) {
+        lock.lock();
+        try {
+            if (message instanceof ChannelMessage) {
+                // Stop reading from the connection until the handlers have caught up. Messages for a channel without a handler are not counted, as nothing takes them
+                MultiEndPointQueue channelQueue = incomingQueue.getChannel(((ChannelMessage) message).getChannel());
+                while (channelQueue.hasEndpoints() && queuedIncomingMessages >= maxQueuedMessages && state == State.Running) {
+                    awaitQueuesDrained();
+                }
+                if (channelQueue.hasEndpoints()) {
+                    queuedIncomingMessages++;
+                }
+            }
+            incomingQueue.queue(message);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitQueuesDrained() {
+        try {
+            queuesDrained.await();
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+    }
+
+    private static int countChannelMessages(List<InterHubMessage> messages) {
+        int count = 0;
+        for (InterHubMessage message : messages) {
+            if (message instanceof ChannelMessage) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     private class ConnectionDispatch implements Runnable {
         private final RemoteConnection<InterHubMessage> connection;
         private final EndPointQueue queue;
@@ -312,6 +378,8 @@ public class MessageHub implements AsyncStoppable {
                         lock.lock();
                         try {
                             queue.take(messages);
+                            outgoingQueue.channelMessagesTaken(countChannelMessages(messages));
+                            queuesDrained.signalAll();
                         } finally {
                             lock.unlock();
                         }
@@ -332,6 +400,8 @@ public class MessageHub implements AsyncStoppable {
                 } finally {
                     lock.lock();
                     try {
+                        activeConnectionDispatchers--;
+                        queuesDrained.signalAll();
                         connectionState.dispatchFinished();
                     } finally {
                         lock.unlock();
@@ -361,6 +431,13 @@ public class MessageHub implements AsyncStoppable {
             lock.lock();
             try {
                 assertRunning("dispatch message");
+                if (handlerThread.get() == null) {
+                    // Wait for the connections to catch up. Only wait while some connection is writing messages
+                    while (outgoingQueue.getQueuedChannelMessages() >= maxQueuedMessages && activeConnectionDispatchers > 0 && state == State.Running) {
+                        awaitQueuesDrained();
+                    }
+                    assertRunning("dispatch message");
+                }
                 outgoingQueue.dispatch(new ChannelMessage(channelIdentifier, message));
             } finally {
                 lock.unlock();
@@ -369,13 +446,15 @@ public class MessageHub implements AsyncStoppable {
     }
 
     private class Handler implements Runnable {
+        private final MultiEndPointQueue channelQueue;
         private final EndPointQueue queue;
         private final Dispatch<Object> dispatch;
         private final BoundedDispatch<Object> boundedDispatch;
         private final RejectedMessageListener listener;
         private final StreamFailureHandler streamFailureHandler;
 
-        public Handler(EndPointQueue queue, Dispatch<Object> dispatch, BoundedDispatch<Object> boundedDispatch, RejectedMessageListener listener, StreamFailureHandler streamFailureHandler) {
+        public Handler(MultiEndPointQueue channelQueue, EndPointQueue queue, Dispatch<Object> dispatch, BoundedDispatch<Object> boundedDispatch, RejectedMessageListener listener, StreamFailureHandler streamFailureHandler) {
+            this.channelQueue = channelQueue;
             this.queue = queue;
             this.dispatch = dispatch;
             this.boundedDispatch = boundedDispatch;
@@ -384,6 +463,7 @@ public class MessageHub implements AsyncStoppable {
         }
 
         public void run() {
+            handlerThread.set(true);
             try {
                 List<InterHubMessage> messages = new ArrayList<InterHubMessage>();
                 try {
@@ -391,6 +471,8 @@ public class MessageHub implements AsyncStoppable {
                         lock.lock();
                         try {
                             queue.take(messages);
+                            queuedIncomingMessages -= countChannelMessages(messages);
+                            queuesDrained.signalAll();
                         } finally {
                             lock.unlock();
                         }
@@ -417,13 +499,23 @@ public class MessageHub implements AsyncStoppable {
                 } finally {
                     lock.lock();
                     try {
+                        // Messages left for this handler will not be taken, so stop counting them
+                        List<InterHubMessage> discarded = new ArrayList<InterHubMessage>();
+                        queue.drain(discarded);
                         queue.stop();
+                        if (!channelQueue.hasEndpoints()) {
+                            discarded.addAll(channelQueue.getQueued());
+                        }
+                        queuedIncomingMessages -= countChannelMessages(discarded);
+                        queuesDrained.signalAll();
                     } finally {
                         lock.unlock();
                     }
                 }
             } catch (Throwable t) {
                 errorHandler.execute(t);
+            } finally {
+                handlerThread.remove();
             }
         }
     }
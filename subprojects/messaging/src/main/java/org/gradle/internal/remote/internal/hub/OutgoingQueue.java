@@ -28,12 +28,35 @@ import java.util.concurrent.locks.Lock;
 
 class OutgoingQueue extends MultiEndPointQueue {
     private final IncomingQueue incomingQueue;
+    private int queuedChannelMessages;
 
     OutgoingQueue(IncomingQueue incomingQueue, Lock lock) {
         super(lock);
         this.incomingQueue = incomingQueue;
     }
 
+    @Override
+    public void dispatch(InterHubMessage message) {
+        if (message instanceof ChannelMessage) {
+            queuedChannelMessages++;
+        }
+        super.dispatch(message);
+    }
+
+    /**
+     * Returns the number of channel messages that have been queued and not yet taken by a connection or discarded.
+     */
+    int getQueuedChannelMessages() {
+        return queuedChannelMessages;
+    }
+
+    /**
+     * Called when a connection has taken the given number of channel messages from this queue.
+     */
+    void channelMessagesTaken(int count) {
+        queuedChannelMessages -= count;
+    }
+
     void endOutput() {
         dispatch(new EndOfStream());
     }
@@ -44,6 +67,7 @@ class OutgoingQueue extends MultiEndPointQueue {
         for (InterHubMessage message : rejected) {
             if (message instanceof ChannelMessage) {
                 ChannelMessage channelMessage = (ChannelMessage) message;
+                queuedChannelMessages--;
                 incomingQueue.queue(new RejectedMessage(channelMessage.getChannel(), channelMessage.getPayload()));
             }
         }
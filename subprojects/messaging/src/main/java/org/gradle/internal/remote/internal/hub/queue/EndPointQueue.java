@@ -55,6 +55,14 @@ public class EndPointQueue implements Dispatch<InterHubMessage> {
         queue.clear();
     }
 
+    /**
+     * Takes the queued messages without waiting for more.
+     */
+    public void drain(Collection<InterHubMessage> drainTo) {
+        drainTo.addAll(queue);
+        queue.clear();
+    }
+
     public void stop() {
         owner.stopped(this);
     }
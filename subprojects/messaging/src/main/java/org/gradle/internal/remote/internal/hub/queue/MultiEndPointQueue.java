@@ -52,6 +52,20 @@ public class MultiEndPointQueue implements Dispatch<InterHubMessage> {
         queue.dispatch(new EndOfStream());
     }
 
+    /**
+     * Returns true if any endpoint is attached to this queue, false if messages are held until an endpoint is added.
+     */
+    public boolean hasEndpoints() {
+        return !endpoints.isEmpty();
+    }
+
+    /**
+     * Returns the messages that have not yet been forwarded to an endpoint.
+     */
+    public List<InterHubMessage> getQueued() {
+        return Collections.unmodifiableList(queue);
+    }
+
     public void drain(Collection<InterHubMessage> drainTo) {
         drainTo.addAll(queue);
         queue.clear();
@@ -35,6 +35,7 @@ class ConnectionSetTest extends AbstractQueueTest {
         given:
         def incoming = incomingQueue.getChannel(channel).newEndpoint()
         outgoingQueue.dispatch(outgoingMessage)
+        assert outgoingQueue.queuedChannelMessages == 1
 
         when:
         connections.noFurtherConnections()
@@ -46,6 +47,7 @@ class ConnectionSetTest extends AbstractQueueTest {
         messages[0] instanceof RejectedMessage
         messages[0].payload == "payload"
         messages[1] instanceof EndOfStream
+        outgoingQueue.queuedChannelMessages == 0
      }
 
     def "does not discard queued outgoing messages when stop requested until all connections finished"() {
@@ -40,4 +40,30 @@ class JavaSerializationBackedMethodArgsSerializerTest extends SerializerSpec {
         serialize(["a", 12L, "b"] as Object[], arraySerializer) == ["a", 12L, "b"] as Object[]
     }
 
+    def "sends the descriptor for a class only once"() {
+        given:
+        def serializer = new JavaSerializationBackedMethodArgsSerializer(getClass().classLoader)
+        def writer = serializer.forTypes([Object] as Class[])
+        def reader = serializer.forTypes([Object] as Class[])
+
+        when:
+        def first = toBytes([new Payload(name: "a", count: 1)] as Object[], writer)
+        def second = toBytes([new Payload(name: "b", count: 2)] as Object[], writer)
+
+        then:
+        second.length < first.length
+
+        and:
+        def firstRead = fromBytes(first, reader)
+        firstRead[0].name == "a"
+        firstRead[0].count == 1
+        def secondRead = fromBytes(second, reader)
+        secondRead[0].name == "b"
+        secondRead[0].count == 2
+    }
+
+    static class Payload implements Serializable {
+        String name
+        int count
+    }
 }
@@ -26,6 +26,7 @@ import org.gradle.internal.remote.internal.hub.protocol.ChannelMessage
 import org.gradle.internal.remote.internal.hub.protocol.EndOfStream
 import org.gradle.internal.remote.internal.hub.protocol.InterHubMessage
 import org.gradle.test.fixtures.concurrent.ConcurrentSpec
+import org.gradle.test.fixtures.ConcurrentTestUtil
 import spock.lang.Timeout
 
 import java.util.concurrent.BlockingQueue
@@ -283,6 +284,106 @@ class MessageHubTest extends ConcurrentSpec {
         instant.message1Received < instant.message2Received
     }
 
+    def "stops receiving from connection when too many incoming messages are queued"() {
+        def boundedHub = new MessageHub("<bounded-hub>", executorFactory, errorHandler, 2)
+        def connection = new TestConnection()
+        def received = new CopyOnWriteArrayList()
+        def handler = {
+            if (received.empty) {
+                instant.firstReceived
+                thread.blockUntil.released
+            }
+            received << it
+        } as Dispatch<String>
+
+        given:
+        5.times { connection.queueIncoming(new ChannelMessage(new ChannelIdentifier("channel"), "message ${it}".toString())) }
+        boundedHub.addHandler("channel", handler)
+        boundedHub.addConnection(connection)
+
+        when:
+        thread.blockUntil.firstReceived
+        Thread.sleep(100)
+
+        then:
+        !connection.incoming.empty
+
+        when:
+        instant.released
+        ConcurrentTestUtil.poll {
+            assert received == (0..4).collect { "message ${it}".toString() }
+        }
+
+        then:
+        connection.incoming.empty
+
+        cleanup:
+        connection.stop()
+        boundedHub.stop()
+    }
+
+    def "does not count incoming messages for channels without a handler"() {
+        def boundedHub = new MessageHub("<bounded-hub>", executorFactory, errorHandler, 2)
+        def connection = new TestConnection()
+        def received = new CopyOnWriteArrayList()
+        def handler = { received << it } as Dispatch<String>
+
+        given:
+        5.times { connection.queueIncoming(new ChannelMessage(new ChannelIdentifier("other"), "other ${it}".toString())) }
+        connection.queueIncoming(new ChannelMessage(new ChannelIdentifier("channel"), "message"))
+        boundedHub.addHandler("channel", handler)
+        boundedHub.addConnection(connection)
+
+        when:
+        ConcurrentTestUtil.poll {
+            assert received == ["message"]
+        }
+
+        then:
+        connection.incoming.empty
+
+        cleanup:
+        connection.stop()
+        boundedHub.stop()
+    }
+
+    def "outgoing dispatch blocks when too many messages are queued for a connection"() {
+        def boundedHub = new MessageHub("<bounded-hub>", executorFactory, errorHandler, 2)
+        RemoteConnection<InterHubMessage> outgoing = Mock()
+        def connection = new MockOutgoingConnection(outgoing)
+
+        given:
+        boundedHub.addConnection(connection)
+
+        when:
+        async {
+            start {
+                5.times {
+                    boundedHub.getOutgoing("channel", String).dispatch("message ${it}".toString())
+                }
+                instant.allDispatched
+            }
+            thread.blockUntil.firstWritten
+            Thread.sleep(100)
+            instant.released
+        }
+
+        then:
+        1 * outgoing.dispatch({ it.payload == "message 0" }) >> {
+            instant.firstWritten
+            thread.blockUntil.released
+        }
+        4 * outgoing.dispatch(_)
+        _ * outgoing.flush()
+
+        and:
+        instant.allDispatched > instant.released
+
+        cleanup:
+        connection.stop()
+        boundedHub.stop()
+    }
+
     def "queued incoming messages are dispatched when handler added"() {
         def connection = new TestConnection()
         Dispatch<String> handler = Mock()
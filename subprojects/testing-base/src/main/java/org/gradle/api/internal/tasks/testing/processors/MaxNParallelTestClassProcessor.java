@@ -17,36 +17,74 @@
 package org.gradle.api.internal.tasks.testing.processors;
 
 import org.gradle.internal.Factory;
+import org.gradle.api.internal.tasks.testing.DefaultTestClassDescriptor;
 import org.gradle.api.internal.tasks.testing.TestClassProcessor;
 import org.gradle.api.internal.tasks.testing.TestClassRunInfo;
+import org.gradle.api.internal.tasks.testing.TestCompleteEvent;
+import org.gradle.api.internal.tasks.testing.TestDescriptorInternal;
 import org.gradle.api.internal.tasks.testing.TestResultProcessor;
+import org.gradle.api.internal.tasks.testing.TestStartEvent;
+import org.gradle.api.internal.tasks.testing.worker.WorkerTestClassProcessor;
+import org.gradle.api.tasks.testing.TestOutputEvent;
 import org.gradle.internal.concurrent.CompositeStoppable;
 import org.gradle.internal.UncheckedException;
 import org.gradle.internal.actor.Actor;
 import org.gradle.internal.actor.ActorFactory;
 import org.gradle.internal.dispatch.DispatchException;
+import org.gradle.internal.dispatch.StreamCompletion;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
 
 /**
  * Manages a set of parallel TestClassProcessors. Uses a simple round-robin algorithm to assign test classes to
  * processors.
+ *
+ * <p>When the expected duration of test classes is known, for example from a previous run, the test classes are instead queued longest-first,
+ * and each processor pulls the next test class from the queue when it has finished its current one, so that the processors finish at about the
+ * same time. A processor has finished a test class when it reports that the test class has completed, or that it could not execute it. This requires
+ * a test framework that executes each test class as soon as it receives it.</p>
  */
 public class MaxNParallelTestClassProcessor implements TestClassProcessor {
     private final int maxProcessors;
     private final Factory<TestClassProcessor> factory;
     private final ActorFactory actorFactory;
+    private final Map<String, Long> expectedDurations;
+    private final long defaultDuration;
     private TestResultProcessor resultProcessor;
     private int pos;
     private List<TestClassProcessor> processors = new ArrayList<TestClassProcessor>();
     private List<Actor> actors = new ArrayList<Actor>();
+    private final Object lock = new Object();
+    private final PriorityQueue<TestClassRunInfo> queuedTestClasses;
+    private final List<PullingProcessor> pullingProcessors = new ArrayList<PullingProcessor>();
     private Actor resultProcessorActor;
 
     public MaxNParallelTestClassProcessor(int maxProcessors, Factory<TestClassProcessor> factory, ActorFactory actorFactory) {
+        this(maxProcessors, factory, actorFactory, Collections.<String, Long>emptyMap());
+    }
+
+    /**
+     * @param expectedDurations The expected duration of each test class in milliseconds, by class name.
+     */
+    public MaxNParallelTestClassProcessor(int maxProcessors, Factory<TestClassProcessor> factory, ActorFactory actorFactory, Map<String, Long> expectedDurations) {
         this.maxProcessors = maxProcessors;
         this.factory = factory;
         this.actorFactory = actorFactory;
+        this.expectedDurations = expectedDurations;
+        this.defaultDuration = averageDuration(expectedDurations);
+        this.queuedTestClasses = new PriorityQueue<TestClassRunInfo>(11, new Comparator<TestClassRunInfo>() {
+            @Override
+            public int compare(TestClassRunInfo testClass1, TestClassRunInfo testClass2) {
+                return Long.valueOf(expectedDuration(testClass2)).compareTo(expectedDuration(testClass1));
+            }
+        });
     }
 
     @Override
@@ -58,14 +96,16 @@ public class MaxNParallelTestClassProcessor implements TestClassProcessor {
 
     @Override
     public void processTestClass(TestClassRunInfo testClass) {
+        if (isPulling()) {
+            synchronized (lock) {
+                queuedTestClasses.add(testClass);
+                dispatchQueuedTestClasses();
+            }
+            return;
+        }
         TestClassProcessor processor;
         if (processors.size() < maxProcessors) {
-            processor = factory.create();
-            Actor actor = actorFactory.createActor(processor);
-            processor = actor.getProxy(TestClassProcessor.class);
-            actors.add(actor);
-            processors.add(processor);
-            processor.startProcessing(resultProcessor);
+            processor = startProcessor(factory.create(), resultProcessor);
         } else {
             processor = processors.get(pos);
             pos = (pos + 1) % processors.size();
@@ -73,12 +113,194 @@ public class MaxNParallelTestClassProcessor implements TestClassProcessor {
         processor.processTestClass(testClass);
     }
 
+    private boolean isPulling() {
+        return maxProcessors > 1 && !expectedDurations.isEmpty();
+    }
+
+    private TestClassProcessor startProcessor(TestClassProcessor processor, TestResultProcessor resultProcessor) {
+        Actor actor = actorFactory.createActor(processor);
+        processor = actor.getProxy(TestClassProcessor.class);
+        actors.add(actor);
+        processors.add(processor);
+        processor.startProcessing(resultProcessor);
+        return processor;
+    }
+
+    /**
+     * Hands the queued test classes, longest first, to the idle processors, and starts new processors while there are fewer than the maximum.
+     * Called while holding the lock.
+     */
+    private void dispatchQueuedTestClasses() {
+        while (!queuedTestClasses.isEmpty()) {
+            PullingProcessor idleProcessor = null;
+            for (PullingProcessor processor : pullingProcessors) {
+                if (processor.isIdle()) {
+                    idleProcessor = processor;
+                    break;
+                }
+            }
+            if (idleProcessor == null) {
+                if (pullingProcessors.size() == maxProcessors) {
+                    return;
+                }
+                idleProcessor = new PullingProcessor();
+                pullingProcessors.add(idleProcessor);
+                idleProcessor.start();
+            }
+            idleProcessor.process(queuedTestClasses.poll());
+        }
+    }
+
+    private boolean hasLiveProcessor() {
+        for (PullingProcessor processor : pullingProcessors) {
+            if (!processor.failed) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long expectedDuration(TestClassRunInfo testClass) {
+        Long duration = expectedDurations.get(testClass.getTestClassName());
+        return duration == null ? defaultDuration : duration;
+    }
+
+    // Assume that test classes that did not run before take an average amount of time
+    private static long averageDuration(Map<String, Long> durations) {
+        if (durations.isEmpty()) {
+            return 0;
+        }
+        long totalDuration = 0;
+        for (Long duration : durations.values()) {
+            totalDuration += duration;
+        }
+        return totalDuration / durations.size();
+    }
+
     @Override
     public void stop() {
         try {
+            synchronized (lock) {
+                // Processors that have failed do not pull test classes anymore, and report their failure when they are stopped
+                while (!queuedTestClasses.isEmpty() && hasLiveProcessor()) {
+                    lock.wait();
+                }
+            }
             CompositeStoppable.stoppable(processors).add(actors).add(resultProcessorActor).stop();
         } catch (DispatchException e) {
             throw UncheckedException.throwAsUncheckedException(e.getCause());
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+    }
+
+    /**
+     * A processor that pulls queued test classes one at a time. Tracks the events of its worker, which are delivered on the thread of the worker's connection, to find out when the worker has finished its
+     * current test class, and when it has stopped without completing its test suite, for example because it crashed.
+     */
+    private class PullingProcessor implements TestResultProcessor, StreamCompletion {
+        private final Set<Object> runningTestClasses = new HashSet<Object>();
+        private TestClassProcessor processor;
+        private Object workerSuiteId;
+        private boolean busy;
+        private boolean failed;
+
+        void start() {
+            final TestClassProcessor delegate = factory.create();
+            processor = startProcessor(new TestClassProcessor() {
+                @Override
+                public void startProcessing(TestResultProcessor resultProcessor) {
+                    delegate.startProcessing(resultProcessor);
+                }
+
+                @Override
+                public void processTestClass(TestClassRunInfo testClass) {
+                    try {
+                        delegate.processTestClass(testClass);
+                    } catch (RuntimeException e) {
+                        // For example, the worker could not be started
+                        synchronized (lock) {
+                            failed();
+                        }
+                        throw e;
+                    }
+                }
+
+                @Override
+                public void stop() {
+                    delegate.stop();
+                }
+            }, this);
+        }
+
+        boolean isIdle() {
+            return !busy && !failed;
+        }
+
+        void process(TestClassRunInfo testClass) {
+            busy = true;
+            processor.processTestClass(testClass);
+        }
+
+        @Override
+        public void started(TestDescriptorInternal test, TestStartEvent event) {
+            resultProcessor.started(test, event);
+            synchronized (lock) {
+                if (test instanceof WorkerTestClassProcessor.WorkerTestSuiteDescriptor) {
+                    workerSuiteId = test.getId();
+                } else if (test instanceof DefaultTestClassDescriptor) {
+                    runningTestClasses.add(test.getId());
+                }
+            }
+        }
+
+        @Override
+        public void completed(Object testId, TestCompleteEvent event) {
+            resultProcessor.completed(testId, event);
+            synchronized (lock) {
+                if (runningTestClasses.remove(testId)) {
+                    finished();
+                } else if (testId.equals(workerSuiteId)) {
+                    workerSuiteId = null;
+                }
+            }
+        }
+
+        @Override
+        public void output(Object testId, TestOutputEvent event) {
+            resultProcessor.output(testId, event);
+        }
+
+        @Override
+        public void failure(Object testId, Throwable result) {
+            resultProcessor.failure(testId, result);
+            synchronized (lock) {
+                // The worker reports a test class that it could not execute as a failure of its test suite
+                if (testId.equals(workerSuiteId)) {
+                    finished();
+                }
+            }
+        }
+
+        @Override
+        public void endStream() {
+            synchronized (lock) {
+                if (workerSuiteId != null) {
+                    failed();
+                }
+            }
+        }
+
+        private void finished() {
+            busy = false;
+            dispatchQueuedTestClasses();
+            lock.notifyAll();
+        }
+
+        private void failed() {
+            failed = true;
+            dispatchQueuedTestClasses();
+            lock.notifyAll();
         }
     }
 }
@@ -16,9 +16,13 @@
 
 package org.gradle.api.internal.tasks.testing.processors
 
+import org.gradle.api.internal.tasks.testing.DefaultTestClassDescriptor
 import org.gradle.api.internal.tasks.testing.TestClassProcessor
 import org.gradle.api.internal.tasks.testing.TestClassRunInfo
+import org.gradle.api.internal.tasks.testing.TestCompleteEvent
 import org.gradle.api.internal.tasks.testing.TestResultProcessor
+import org.gradle.api.internal.tasks.testing.TestStartEvent
+import org.gradle.api.internal.tasks.testing.worker.WorkerTestClassProcessor
 import org.gradle.internal.actor.Actor
 import org.gradle.internal.actor.ActorFactory
 import spock.lang.Specification
@@ -89,6 +93,7 @@ class MaxNParallelTestClassProcessorTest extends Specification {
         TestClassRunInfo test = Mock()
         TestClassProcessor processor1 = Mock()
         TestClassProcessor processor2 = Mock()
+        TestClassProcessor forkProcessor = Mock()
         TestClassProcessor asyncProcessor1 = Mock()
         TestClassProcessor asyncProcessor2 = Mock()
         Actor actor1 = Mock()
@@ -128,6 +133,7 @@ class MaxNParallelTestClassProcessorTest extends Specification {
         TestClassRunInfo test = Mock()
         TestClassProcessor processor1 = Mock()
         TestClassProcessor processor2 = Mock()
+        TestClassProcessor forkProcessor = Mock()
         TestClassProcessor asyncProcessor1 = Mock()
         TestClassProcessor asyncProcessor2 = Mock()
         Actor actor1 = Mock()
@@ -167,4 +173,159 @@ class MaxNParallelTestClassProcessorTest extends Specification {
         then:
         1 * asyncProcessor2.processTestClass(test)
     }
+
+    def pullsTestClassesLongestFirstWhenProcessorsFinishTheirTestClassWhenDurationsAreKnown() {
+        def processor = new MaxNParallelTestClassProcessor(2, factory, actorFactory, [Slow: 100L, Medium: 60L, Fast1: 30L, Fast2: 20L])
+        TestClassRunInfo slow = testClass("Slow")
+        TestClassRunInfo medium = testClass("Medium")
+        TestClassRunInfo fast1 = testClass("Fast1")
+        TestClassRunInfo fast2 = testClass("Fast2")
+        TestClassRunInfo unknown = testClass("Unknown")
+        TestClassProcessor forkProcessor = Mock()
+        TestClassProcessor asyncProcessor1 = Mock()
+        TestClassProcessor asyncProcessor2 = Mock()
+        TestResultProcessor results1 = null
+        TestResultProcessor results2 = null
+
+        startProcessor(processor)
+
+        when:
+        processor.processTestClass(fast1)
+        processor.processTestClass(unknown)
+
+        then:
+        2 * factory.create() >> forkProcessor
+        1 * actorFactory.createActor({ it instanceof TestClassProcessor }) >> actor(asyncProcessor1)
+        1 * asyncProcessor1.startProcessing(_) >> { results1 = it[0] }
+        1 * asyncProcessor1.processTestClass(fast1)
+
+        then:
+        1 * actorFactory.createActor({ it instanceof TestClassProcessor }) >> actor(asyncProcessor2)
+        1 * asyncProcessor2.startProcessing(_) >> { results2 = it[0] }
+        1 * asyncProcessor2.processTestClass(unknown)
+
+        when:
+        processor.processTestClass(fast2)
+        processor.processTestClass(slow)
+        processor.processTestClass(medium)
+
+        then:
+        0 * asyncProcessor1._
+        0 * asyncProcessor2._
+
+        when:
+        runTestClass(results2, 1, "Unknown")
+
+        then:
+        1 * asyncResultProcessor.started({ it.id == 1 }, _)
+        1 * asyncResultProcessor.completed(1, _)
+        1 * asyncProcessor2.processTestClass(slow)
+        0 * asyncProcessor1._
+
+        when:
+        runTestClass(results1, 2, "Fast1")
+
+        then:
+        1 * asyncProcessor1.processTestClass(medium)
+        0 * asyncProcessor2._
+
+        when:
+        runTestClass(results1, 3, "Medium")
+        runTestClass(results1, 4, "Fast2")
+
+        then:
+        1 * asyncProcessor1.processTestClass(fast2)
+        0 * asyncProcessor2._
+
+        when:
+        processor.stop()
+
+        then:
+        1 * asyncProcessor1.stop()
+        1 * asyncProcessor2.stop()
+    }
+
+    def pullsNextTestClassWhenProcessorCouldNotExecuteTestClass() {
+        def processor = new MaxNParallelTestClassProcessor(2, factory, actorFactory, [Slow: 100L, Fast: 30L])
+        TestClassRunInfo slow = testClass("Slow")
+        TestClassRunInfo fast = testClass("Fast")
+        TestClassRunInfo other = testClass("Other")
+        TestClassProcessor forkProcessor = Mock()
+        TestClassProcessor asyncProcessor1 = Mock()
+        TestClassProcessor asyncProcessor2 = Mock()
+        TestResultProcessor results1 = null
+        def workerSuite = new WorkerTestClassProcessor.WorkerTestSuiteDescriptor(1, "worker")
+
+        startProcessor(processor)
+        2 * factory.create() >> forkProcessor
+        actorFactory.createActor({ it instanceof TestClassProcessor }) >>> [actor(asyncProcessor1), actor(asyncProcessor2)]
+        asyncProcessor1.startProcessing(_) >> { results1 = it[0] }
+
+        processor.processTestClass(fast)
+        processor.processTestClass(slow)
+        processor.processTestClass(other)
+
+        when:
+        results1.started(workerSuite, new TestStartEvent(0))
+        results1.failure(1, new RuntimeException())
+
+        then:
+        1 * asyncResultProcessor.failure(1, _)
+        1 * asyncProcessor1.processTestClass(other)
+    }
+
+    def doesNotWaitForQueuedTestClassesWhenAllProcessorsHaveCrashed() {
+        def processor = new MaxNParallelTestClassProcessor(2, factory, actorFactory, [Slow: 100L, Fast: 30L])
+        TestClassProcessor forkProcessor = Mock()
+        TestClassProcessor asyncProcessor1 = Mock()
+        TestClassProcessor asyncProcessor2 = Mock()
+        TestResultProcessor results1 = null
+        TestResultProcessor results2 = null
+
+        startProcessor(processor)
+        2 * factory.create() >> forkProcessor
+        actorFactory.createActor({ it instanceof TestClassProcessor }) >>> [actor(asyncProcessor1), actor(asyncProcessor2)]
+        asyncProcessor1.startProcessing(_) >> { results1 = it[0] }
+        asyncProcessor2.startProcessing(_) >> { results2 = it[0] }
+
+        processor.processTestClass(testClass("Fast"))
+        processor.processTestClass(testClass("Slow"))
+        processor.processTestClass(testClass("Other"))
+        results1.started(new WorkerTestClassProcessor.WorkerTestSuiteDescriptor(1, "worker 1"), new TestStartEvent(0))
+        results2.started(new WorkerTestClassProcessor.WorkerTestSuiteDescriptor(2, "worker 2"), new TestStartEvent(0))
+
+        when:
+        results1.endStream()
+        results2.endStream()
+        processor.stop()
+
+        then:
+        0 * asyncProcessor1.processTestClass(_)
+        0 * asyncProcessor2.processTestClass(_)
+        1 * asyncProcessor1.stop()
+        1 * asyncProcessor2.stop()
+    }
+
+    private void startProcessor(MaxNParallelTestClassProcessor processor) {
+        1 * actorFactory.createActor(resultProcessor) >> resultProcessorActor
+        1 * resultProcessorActor.getProxy(TestResultProcessor) >> asyncResultProcessor
+        processor.startProcessing(resultProcessor)
+    }
+
+    private Actor actor(TestClassProcessor asyncProcessor) {
+        Actor actor = Mock()
+        _ * actor.getProxy(TestClassProcessor) >> asyncProcessor
+        return actor
+    }
+
+    private static void runTestClass(TestResultProcessor results, Object id, String className) {
+        results.started(new DefaultTestClassDescriptor(id, className), new TestStartEvent(0))
+        results.completed(id, new TestCompleteEvent(0))
+    }
+
+    private TestClassRunInfo testClass(String name) {
+        TestClassRunInfo testClass = Mock()
+        _ * testClass.testClassName >> name
+        return testClass
+    }
 }
@@ -25,11 +25,18 @@ import org.gradle.internal.serialize.Encoder;
 import org.gradle.internal.serialize.FlushableEncoder;
 import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
 import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 public class TestResultSerializer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TestResultSerializer.class);
+
     private static final int RESULT_VERSION = 3;
 
     private final File resultsFile;
@@ -108,6 +115,38 @@ public class TestResultSerializer {
         }
     }
 
+    /**
+     * Reads the duration of each test class, in milliseconds. Returns an empty map when there are no results, the results were written by a different version or cannot be read.
+     */
+    public Map<String, Long> readClassDurations() {
+        if (!isHasResults()) {
+            return Collections.emptyMap();
+        }
+        final Map<String, Long> durations = new HashMap<String, Long>();
+        try {
+            InputStream inputStream = new FileInputStream(resultsFile);
+            try {
+                Decoder decoder = new KryoBackedDecoder(inputStream);
+                if (decoder.readSmallInt() != RESULT_VERSION) {
+                    return Collections.emptyMap();
+                }
+                readResults(decoder, new Action<TestClassResult>() {
+                    @Override
+                    public void execute(TestClassResult classResult) {
+                        durations.put(classResult.getClassName(), classResult.getDuration());
+                    }
+                });
+            } finally {
+                inputStream.close();
+            }
+        } catch (Exception e) {
+            // The durations are only used to balance test classes across forks, so do not fail the build
+            LOGGER.debug("Could not read test class durations from {}.", resultsFile, e);
+            return Collections.emptyMap();
+        }
+        return durations;
+    }
+
     public boolean isHasResults() {
         return resultsFile.exists() && resultsFile.length() > 0;
     }
@@ -102,6 +102,7 @@ import org.gradle.util.SingleMessageLogger;
 
 import javax.inject.Inject;
 import java.io.File;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -627,6 +628,10 @@ public class Test extends ConventionTask implements JavaForkOptions, PatternFilt
         }
 
         File binaryResultsDir = getBinResultsDir();
+        // Used to balance the test classes across forks, so only read when tests may run in more than one fork
+        Map<String, Long> previousTestClassDurations = getMaxParallelForks() > 1
+            ? new TestResultSerializer(binaryResultsDir).readClassDurations()
+            : Collections.<String, Long>emptyMap();
         getProject().delete(binaryResultsDir);
         getProject().mkdir(binaryResultsDir);
 
@@ -650,7 +655,8 @@ public class Test extends ConventionTask implements JavaForkOptions, PatternFilt
             testExecuter = new DefaultTestExecuter(getProcessBuilderFactory(), getActorFactory(), getModuleRegistry(),
                 getServices().get(WorkerLeaseRegistry.class),
                 getServices().get(BuildOperationExecutor.class),
-                getServices().get(StartParameter.class).getMaxWorkerCount());
+                getServices().get(StartParameter.class).getMaxWorkerCount(),
+                previousTestClassDurations);
         }
 
         JavaVersion javaVersion = getJavaVersion();
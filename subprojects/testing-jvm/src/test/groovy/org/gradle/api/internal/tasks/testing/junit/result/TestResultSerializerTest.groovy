@@ -67,6 +67,38 @@ class TestResultSerializerTest extends Specification {
         readClass2.results.empty
     }
 
+    def "reads test class durations"() {
+        def class1 = new TestClassResult(1, 'Class1', 1000)
+        class1.add(new TestMethodResult(1, "method1", TestResult.ResultType.SUCCESS, 100, 1100))
+        class1.add(new TestMethodResult(2, "method2", TestResult.ResultType.SUCCESS, 200, 1300))
+        def class2 = new TestClassResult(2, 'Class2', 5678)
+        def serializer = new TestResultSerializer(tmp.createDir("results"))
+
+        when:
+        serializer.write([class1, class2])
+
+        then:
+        serializer.readClassDurations() == [Class1: 300L, Class2: 0L]
+    }
+
+    def "reads no test class durations when there are no results"() {
+        expect:
+        new TestResultSerializer(tmp.createDir("results")).readClassDurations().isEmpty()
+    }
+
+    def "reads no test class durations when the results cannot be read"() {
+        def class1 = new TestClassResult(1, 'Class1', 1000)
+        class1.add(new TestMethodResult(1, "method1", TestResult.ResultType.SUCCESS, 100, 1100))
+        def resultsDir = tmp.createDir("results")
+        def serializer = new TestResultSerializer(resultsDir)
+        serializer.write([class1, new TestClassResult(2, 'Class2', 5678)])
+        def resultsFile = resultsDir.file("results.bin")
+        resultsFile.bytes = Arrays.copyOf(resultsFile.bytes, (int) (resultsFile.length() / 2))
+
+        expect:
+        serializer.readClassDurations().isEmpty()
+    }
+
     List<TestClassResult> serialize(Collection<TestClassResult> results) {
         def serializer = new TestResultSerializer(tmp.createDir("results"))
         serializer.write(results)
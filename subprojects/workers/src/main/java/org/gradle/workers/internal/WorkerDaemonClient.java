@@ -16,55 +16,32 @@
 
 package org.gradle.workers.internal;
 
+import org.gradle.api.logging.LogLevel;
 import org.gradle.internal.concurrent.Stoppable;
-import org.gradle.internal.operations.BuildOperationContext;
-import org.gradle.internal.operations.BuildOperationExecutor;
-import org.gradle.internal.progress.BuildOperationState;
-import org.gradle.internal.operations.CallableBuildOperation;
-import org.gradle.internal.progress.BuildOperationDescriptor;
-import org.gradle.internal.work.WorkerLeaseRegistry.WorkerLease;
-import org.gradle.internal.work.WorkerLeaseRegistry.WorkerLeaseCompletion;
 import org.gradle.process.internal.health.memory.JvmMemoryStatus;
 import org.gradle.process.internal.worker.WorkerProcess;
 
-class WorkerDaemonClient<T extends WorkSpec> implements Worker<T>, Stoppable {
+/**
+ * A worker daemon process. Clients can outlive the build session that started them, so this type does not hold on to any session scoped services.
+ * The worker lease and build operation of each execution are managed by {@link WorkerDaemonFactory}.
+ */
+class WorkerDaemonClient<T extends WorkSpec> implements Stoppable {
     private final DaemonForkOptions forkOptions;
+    private final LogLevel logLevel;
     private final WorkerDaemonProcess<T> workerDaemonProcess;
     private final WorkerProcess workerProcess;
-    private final BuildOperationExecutor buildOperationExecutor;
     private int uses;
 
-    public WorkerDaemonClient(DaemonForkOptions forkOptions, WorkerDaemonProcess<T> workerDaemonProcess, WorkerProcess workerProcess, BuildOperationExecutor buildOperationExecutor) {
+    public WorkerDaemonClient(DaemonForkOptions forkOptions, LogLevel logLevel, WorkerDaemonProcess<T> workerDaemonProcess, WorkerProcess workerProcess) {
         this.forkOptions = forkOptions;
+        this.logLevel = logLevel;
         this.workerDaemonProcess = workerDaemonProcess;
         this.workerProcess = workerProcess;
-        this.buildOperationExecutor = buildOperationExecutor;
-    }
-
-    @Override
-    public DefaultWorkResult execute(final T spec, WorkerLease parentWorkerWorkerLease, final BuildOperationState parentBuildOperation) {
-        WorkerLeaseCompletion workerLease = parentWorkerWorkerLease.startChild();
-        try {
-            return buildOperationExecutor.call(new CallableBuildOperation<DefaultWorkResult>() {
-                @Override
-                public DefaultWorkResult call(BuildOperationContext context) {
-                    uses++;
-                    return workerDaemonProcess.execute(spec);
-                }
-
-                @Override
-                public BuildOperationDescriptor.Builder description() {
-                    return BuildOperationDescriptor.displayName(spec.getDisplayName()).parent(parentBuildOperation);
-                }
-            });
-        } finally {
-            workerLease.leaseFinish();
-        }
     }
 
-    @Override
     public DefaultWorkResult execute(T spec) {
-        throw new UnsupportedOperationException();
+        uses++;
+        return workerDaemonProcess.execute(spec);
     }
 
     public boolean isCompatibleWith(DaemonForkOptions required) {
@@ -84,6 +61,10 @@ class WorkerDaemonClient<T extends WorkSpec> implements Worker<T>, Stoppable {
         return forkOptions;
     }
 
+    LogLevel getLogLevel() {
+        return logLevel;
+    }
+
     public int getUses() {
         return uses;
     }
@@ -16,30 +16,53 @@
 
 package org.gradle.workers.internal;
 
+import com.google.common.primitives.Ints;
 import org.gradle.api.Transformer;
+import org.gradle.api.logging.LogLevel;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
 import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.concurrent.StoppableExecutor;
 import org.gradle.util.CollectionUtils;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
-public class WorkerDaemonClientsManager {
+/**
+ * Keeps track of the worker daemons. Lives as long as the Gradle daemon, so that idle worker daemons, and the classes they have loaded, can be reused by later builds.
+ *
+ * <p>Remembers which worker daemons were used most by recent builds, and can start daemons for these in the background when a build session starts.
+ * The number of daemons to start this way is set using the {@value #PRESTARTED_DAEMONS_PROPERTY_KEY} system property and defaults to 0.</p>
+ */
+public class WorkerDaemonClientsManager implements Stoppable {
 
     private static final Logger LOGGER = Logging.getLogger(WorkerDaemonFactory.class);
+    static final String PRESTARTED_DAEMONS_PROPERTY_KEY = "org.gradle.workers.internal.prestarted-daemons";
+    private static final int MAX_USAGE_HISTORY = 16;
 
     private final Object lock = new Object();
     private final List<WorkerDaemonClient> allClients = new ArrayList<WorkerDaemonClient>();
     private final List<WorkerDaemonClient> idleClients = new ArrayList<WorkerDaemonClient>();
+    private final Map<WorkerDaemonClient, DaemonUsage> usageByClient = new IdentityHashMap<WorkerDaemonClient, DaemonUsage>();
+    private final List<DaemonUsage> usageHistory = new ArrayList<DaemonUsage>();
+    private final int prestartedDaemons;
+    private final StoppableExecutor prestartExecutor;
+    private boolean stopped;
 
-    private WorkerDaemonStarter workerDaemonStarter;
+    public WorkerDaemonClientsManager(ExecutorFactory executorFactory) {
+        this(executorFactory, Integer.getInteger(PRESTARTED_DAEMONS_PROPERTY_KEY, 0));
+    }
 
-    public WorkerDaemonClientsManager(WorkerDaemonStarter workerDaemonStarter) {
-        this.workerDaemonStarter = workerDaemonStarter;
+    WorkerDaemonClientsManager(ExecutorFactory executorFactory, int prestartedDaemons) {
+        this.prestartedDaemons = prestartedDaemons;
+        this.prestartExecutor = executorFactory.create("Worker daemon prestart");
     }
 
     // TODO - should supply and check for the same parameters as passed to reserveNewClient()
@@ -61,27 +84,142 @@ public class WorkerDaemonClientsManager {
         }
     }
 
-    public <T extends WorkSpec> WorkerDaemonClient<T> reserveNewClient(Class<? extends WorkerProtocol<T>> workerProtocolImplementationClass, File workingDir, DaemonForkOptions forkOptions) {
+    public <T extends WorkSpec> WorkerDaemonClient<T> reserveNewClient(WorkerDaemonStarter workerDaemonStarter, Class<? extends WorkerProtocol<T>> workerProtocolImplementationClass, File workingDir, DaemonForkOptions forkOptions) {
         //allow the daemon to be started concurrently
         WorkerDaemonClient client = workerDaemonStarter.startDaemon(workerProtocolImplementationClass, workingDir, forkOptions);
         synchronized (lock) {
             allClients.add(client);
+            recordUsage(client, new DaemonUsage(workerProtocolImplementationClass, workingDir, forkOptions));
         }
         return client;
     }
 
     public void release(WorkerDaemonClient client) {
         synchronized (lock) {
+            DaemonUsage usage = usageByClient.get(client);
+            if (usage != null) {
+                usage.uses++;
+            }
             idleClients.add(client);
         }
     }
 
+    /**
+     * Called when a build session starts to use worker daemons. Stops the idle daemons that were started with a different log level, as these
+     * would not forward the log messages the new session expects, and starts daemons in the background for the requests most used by earlier builds.
+     */
+    public void buildSessionStarted(final WorkerDaemonStarter workerDaemonStarter) {
+        synchronized (lock) {
+            List<WorkerDaemonClient> clientsToStop = new ArrayList<WorkerDaemonClient>();
+            for (WorkerDaemonClient client : idleClients) {
+                if (client.getLogLevel() != workerDaemonStarter.getLogLevel()) {
+                    clientsToStop.add(client);
+                }
+            }
+            stopIdleClients(clientsToStop);
+
+            for (final DaemonUsage usage : selectUsagesToPrestart()) {
+                prestartExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        prestart(workerDaemonStarter, usage);
+                    }
+                });
+            }
+        }
+    }
+
+    private List<DaemonUsage> selectUsagesToPrestart() {
+        List<DaemonUsage> selected = new ArrayList<DaemonUsage>();
+        if (prestartedDaemons <= 0 || stopped) {
+            return selected;
+        }
+        List<DaemonUsage> mostUsed = CollectionUtils.sort(usageHistory, new Comparator<DaemonUsage>() {
+            @Override
+            public int compare(DaemonUsage o1, DaemonUsage o2) {
+                return Ints.compare(o2.uses, o1.uses);
+            }
+        });
+        for (DaemonUsage usage : mostUsed) {
+            if (selected.size() == prestartedDaemons) {
+                break;
+            }
+            if (usage.uses > 0 && !hasCompatibleClient(usage.forkOptions, selected)) {
+                selected.add(usage);
+            }
+        }
+        return selected;
+    }
+
+    private boolean hasCompatibleClient(DaemonForkOptions forkOptions, List<DaemonUsage> selected) {
+        for (WorkerDaemonClient client : allClients) {
+            if (client.isCompatibleWith(forkOptions)) {
+                return true;
+            }
+        }
+        for (DaemonUsage usage : selected) {
+            if (usage.forkOptions.isCompatibleWith(forkOptions)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void prestart(WorkerDaemonStarter workerDaemonStarter, DaemonUsage usage) {
+        WorkerDaemonClient client;
+        try {
+            client = workerDaemonStarter.startDaemon(usage.workerProtocolImplementationClass, usage.workingDir, usage.forkOptions);
+        } catch (Exception e) {
+            LOGGER.info("Could not prestart worker daemon with fork options {}.", usage.forkOptions, e);
+            return;
+        }
+        synchronized (lock) {
+            if (!stopped) {
+                allClients.add(client);
+                idleClients.add(client);
+                usageByClient.put(client, usage);
+                return;
+            }
+        }
+        client.stop();
+    }
+
+    private void recordUsage(WorkerDaemonClient client, DaemonUsage usage) {
+        for (DaemonUsage previous : usageHistory) {
+            if (previous.isSameRequestAs(usage)) {
+                usage = previous;
+                break;
+            }
+        }
+        usageByClient.put(client, usage);
+        usageHistory.remove(usage);
+        usageHistory.add(usage);
+        if (usageHistory.size() > MAX_USAGE_HISTORY) {
+            // Forget the least used request, other than the one just made
+            DaemonUsage leastUsed = usageHistory.get(0);
+            for (DaemonUsage candidate : usageHistory.subList(0, usageHistory.size() - 1)) {
+                if (candidate.uses < leastUsed.uses) {
+                    leastUsed = candidate;
+                }
+            }
+            usageHistory.remove(leastUsed);
+        }
+    }
+
+    @Override
     public void stop() {
+        synchronized (lock) {
+            stopped = true;
+        }
+        prestartExecutor.stop();
         synchronized (lock) {
             LOGGER.debug("Stopping {} worker daemon(s).", allClients.size());
             CompositeStoppable.stoppable(allClients).stop();
             LOGGER.info("Stopped {} worker daemon(s).", allClients.size());
             allClients.clear();
+            idleClients.clear();
+            usageByClient.clear();
         }
     }
 
@@ -95,17 +233,46 @@ public class WorkerDaemonClientsManager {
             List<WorkerDaemonClient> sortedClients = CollectionUtils.sort(idleClients, new Comparator<WorkerDaemonClient>() {
                 @Override
                 public int compare(WorkerDaemonClient o1, WorkerDaemonClient o2) {
-                    return new Integer(o1.getUses()).compareTo(o2.getUses());
+                    return Ints.compare(o1.getUses(), o2.getUses());
                 }
             });
             List<WorkerDaemonClient> clientsToStop = selectionFunction.transform(new ArrayList<WorkerDaemonClient>(sortedClients));
-            if (!clientsToStop.isEmpty()) {
-                idleClients.removeAll(clientsToStop);
-                allClients.removeAll(clientsToStop);
-                LOGGER.debug("Stopping {} worker daemon(s).", clientsToStop.size());
-                CompositeStoppable.stoppable(clientsToStop).stop();
-                LOGGER.info("Stopped {} worker daemon(s).", clientsToStop.size());
+            stopIdleClients(clientsToStop);
+        }
+    }
+
+    private void stopIdleClients(List<WorkerDaemonClient> clientsToStop) {
+        if (!clientsToStop.isEmpty()) {
+            idleClients.removeAll(clientsToStop);
+            allClients.removeAll(clientsToStop);
+            for (WorkerDaemonClient client : clientsToStop) {
+                usageByClient.remove(client);
             }
+            LOGGER.debug("Stopping {} worker daemon(s).", clientsToStop.size());
+            CompositeStoppable.stoppable(clientsToStop).stop();
+            LOGGER.info("Stopped {} worker daemon(s).", clientsToStop.size());
+        }
+    }
+
+    /**
+     * A request for a worker daemon, and how many times daemons started for it have been used.
+     */
+    private static class DaemonUsage {
+        final Class workerProtocolImplementationClass;
+        final File workingDir;
+        final DaemonForkOptions forkOptions;
+        int uses;
+
+        DaemonUsage(Class workerProtocolImplementationClass, File workingDir, DaemonForkOptions forkOptions) {
+            this.workerProtocolImplementationClass = workerProtocolImplementationClass;
+            this.workingDir = workingDir;
+            this.forkOptions = forkOptions;
+        }
+
+        boolean isSameRequestAs(DaemonUsage other) {
+            return workerProtocolImplementationClass.equals(other.workerProtocolImplementationClass)
+                && forkOptions.isCompatibleWith(other.forkOptions)
+                && other.forkOptions.isCompatibleWith(forkOptions);
         }
     }
 }
@@ -18,10 +18,14 @@ package org.gradle.workers.internal;
 
 import net.jcip.annotations.ThreadSafe;
 import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.operations.BuildOperationContext;
 import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.CallableBuildOperation;
+import org.gradle.internal.progress.BuildOperationDescriptor;
 import org.gradle.internal.progress.BuildOperationState;
 import org.gradle.internal.work.WorkerLeaseRegistry;
 import org.gradle.internal.work.WorkerLeaseRegistry.WorkerLease;
+import org.gradle.internal.work.WorkerLeaseRegistry.WorkerLeaseCompletion;
 import org.gradle.process.internal.health.memory.MemoryManager;
 import org.gradle.process.internal.health.memory.TotalPhysicalMemoryProvider;
 
@@ -29,6 +33,8 @@ import java.io.File;
 
 /**
  * Controls the lifecycle of the worker daemon and provides access to it.
+ *
+ * <p>The worker daemons are owned by the {@link WorkerDaemonClientsManager}, which lives as long as the Gradle daemon, so idle worker daemons are reused by later builds.</p>
  */
 @ThreadSafe
 public class WorkerDaemonFactory implements WorkerFactory, Stoppable {
@@ -37,26 +43,29 @@ public class WorkerDaemonFactory implements WorkerFactory, Stoppable {
     private final WorkerDaemonExpiration workerDaemonExpiration;
     private final WorkerLeaseRegistry workerLeaseRegistry;
     private final BuildOperationExecutor buildOperationExecutor;
+    private final WorkerDaemonStarter workerDaemonStarter;
 
-    public WorkerDaemonFactory(WorkerDaemonClientsManager clientsManager, MemoryManager memoryManager, WorkerLeaseRegistry workerLeaseRegistry, BuildOperationExecutor buildOperationExecutor) {
+    public WorkerDaemonFactory(WorkerDaemonClientsManager clientsManager, MemoryManager memoryManager, WorkerLeaseRegistry workerLeaseRegistry, BuildOperationExecutor buildOperationExecutor, WorkerDaemonStarter workerDaemonStarter) {
         this.clientsManager = clientsManager;
         this.memoryManager = memoryManager;
         this.workerDaemonExpiration = new WorkerDaemonExpiration(clientsManager, getTotalPhysicalMemory());
         memoryManager.addMemoryHolder(workerDaemonExpiration);
         this.workerLeaseRegistry = workerLeaseRegistry;
         this.buildOperationExecutor = buildOperationExecutor;
+        this.workerDaemonStarter = workerDaemonStarter;
+        clientsManager.buildSessionStarted(workerDaemonStarter);
     }
 
     @Override
     public <T extends WorkSpec> Worker<T> getWorker(final Class<? extends WorkerProtocol<T>> workerImplementationClass, final File workingDir, final DaemonForkOptions forkOptions) {
         return new Worker<T>() {
-            public DefaultWorkResult execute(T spec, WorkerLease parentWorkerWorkerLease, BuildOperationState parentBuildOperation) {
+            public DefaultWorkResult execute(final T spec, WorkerLease parentWorkerWorkerLease, final BuildOperationState parentBuildOperation) {
                 WorkerDaemonClient<T> client = clientsManager.reserveIdleClient(forkOptions);
                 if (client == null) {
-                    client = clientsManager.reserveNewClient(workerImplementationClass, workingDir, forkOptions);
+                    client = clientsManager.reserveNewClient(workerDaemonStarter, workerImplementationClass, workingDir, forkOptions);
                 }
                 try {
-                    return client.execute(spec, parentWorkerWorkerLease, parentBuildOperation);
+                    return executeInClient(client, spec, parentWorkerWorkerLease, parentBuildOperation);
                 } finally {
                     clientsManager.release(client);
                 }
@@ -69,9 +78,30 @@ public class WorkerDaemonFactory implements WorkerFactory, Stoppable {
         };
     }
 
+    private <T extends WorkSpec> DefaultWorkResult executeInClient(final WorkerDaemonClient<T> client, final T spec, WorkerLease parentWorkerWorkerLease, final BuildOperationState parentBuildOperation) {
+        WorkerLeaseCompletion workerLease = parentWorkerWorkerLease.startChild();
+        try {
+            return buildOperationExecutor.call(new CallableBuildOperation<DefaultWorkResult>() {
+                @Override
+                public DefaultWorkResult call(BuildOperationContext context) {
+                    return client.execute(spec);
+                }
+
+                @Override
+                public BuildOperationDescriptor.Builder description() {
+                    return BuildOperationDescriptor.displayName(spec.getDisplayName()).parent(parentBuildOperation);
+                }
+            });
+        } finally {
+            workerLease.leaseFinish();
+        }
+    }
+
+    /**
+     * Does not stop the worker daemons, which remain available for later builds.
+     */
     @Override
     public void stop() {
-        clientsManager.stop();
         memoryManager.removeMemoryHolder(workerDaemonExpiration);
     }
 
@@ -33,6 +33,7 @@ import org.gradle.workers.WorkerExecutor;
 public class WorkersServices implements PluginServiceRegistry {
     @Override
     public void registerGlobalServices(ServiceRegistration registration) {
+        registration.addProvider(new GlobalScopeServices());
     }
 
     @Override
@@ -52,15 +53,19 @@ public class WorkersServices implements PluginServiceRegistry {
     public void registerProjectServices(ServiceRegistration registration) {
     }
 
+    private static class GlobalScopeServices {
+        WorkerDaemonClientsManager createWorkerDaemonClientsManager(ExecutorFactory executorFactory) {
+            return new WorkerDaemonClientsManager(executorFactory);
+        }
+    }
+
     private static class BuildSessionScopeServices {
-        WorkerDaemonClientsManager createWorkerDaemonClientsManager(WorkerProcessFactory workerFactory,
-                                                                    StartParameter startParameter,
-                                                                    BuildOperationExecutor buildOperationExecutor) {
-            return new WorkerDaemonClientsManager(new WorkerDaemonStarter(workerFactory, startParameter, buildOperationExecutor));
+        WorkerDaemonStarter createWorkerDaemonStarter(WorkerProcessFactory workerFactory, StartParameter startParameter) {
+            return new WorkerDaemonStarter(workerFactory, startParameter);
         }
 
-        WorkerDaemonFactory createWorkerDaemonFactory(WorkerDaemonClientsManager workerDaemonClientsManager, MemoryManager memoryManager, WorkerLeaseRegistry workerLeaseRegistry, BuildOperationExecutor buildOperationExecutor) {
-            return new WorkerDaemonFactory(workerDaemonClientsManager, memoryManager, workerLeaseRegistry, buildOperationExecutor);
+        WorkerDaemonFactory createWorkerDaemonFactory(WorkerDaemonClientsManager workerDaemonClientsManager, MemoryManager memoryManager, WorkerLeaseRegistry workerLeaseRegistry, BuildOperationExecutor buildOperationExecutor, WorkerDaemonStarter workerDaemonStarter) {
+            return new WorkerDaemonFactory(workerDaemonClientsManager, memoryManager, workerLeaseRegistry, buildOperationExecutor, workerDaemonStarter);
         }
 
         WorkerExecutor createWorkerExecutor(Instantiator instantiator, WorkerDaemonFactory daemonWorkerFactory, IsolatedClassloaderWorkerFactory isolatedClassloaderWorkerFactory, NoIsolationWorkerFactory noIsolationWorkerFactory, FileResolver fileResolver, ExecutorFactory executorFactory, WorkerLeaseRegistry workerLeaseRegistry, BuildOperationExecutor buildOperationExecutor, AsyncWorkTracker asyncWorkTracker) {
@@ -16,27 +16,12 @@
 
 package org.gradle.workers.internal
 
-import org.gradle.internal.operations.BuildOperationContext
-import org.gradle.internal.operations.BuildOperationExecutor
-import org.gradle.internal.operations.CallableBuildOperation
-import org.gradle.internal.progress.BuildOperationState
+import org.gradle.api.logging.LogLevel
 import spock.lang.Specification
 
-import static org.gradle.internal.work.WorkerLeaseRegistry.WorkerLease
-import static org.gradle.internal.work.WorkerLeaseRegistry.WorkerLeaseCompletion
-
 class WorkerDaemonClientTest extends Specification {
-    BuildOperationExecutor buildOperationExecutor = Mock(BuildOperationExecutor)
-    BuildOperationState buildOperation = Mock(BuildOperationState)
-    WorkerLease workerOperation = Mock(WorkerLease)
-    WorkerLeaseCompletion completion = Mock(WorkerLeaseCompletion)
-
     WorkerDaemonClient client
 
-    def setup() {
-        _ * workerOperation.startChild() >> completion
-    }
-
     def "underlying worker is executed when client is executed"() {
         def workerDaemonProcess = Mock(WorkerDaemonProcess)
 
@@ -44,12 +29,9 @@ class WorkerDaemonClientTest extends Specification {
         client = client(workerDaemonProcess)
 
         when:
-        client.execute(Stub(WorkSpec), workerOperation, buildOperation)
+        client.execute(Stub(WorkSpec))
 
         then:
-        1 * buildOperationExecutor.call(_ as CallableBuildOperation) >> { args -> args[0].call(Mock(BuildOperationContext)) }
-
-        and:
         1 * workerDaemonProcess.execute(_)
     }
 
@@ -59,58 +41,29 @@ class WorkerDaemonClientTest extends Specification {
         assert client.uses == 0
 
         when:
-        5.times { client.execute(Stub(WorkSpec), workerOperation, buildOperation) }
-
-        then:
-        5 * buildOperationExecutor.call(_ as CallableBuildOperation) >> { args -> args[0].call(Mock(BuildOperationContext)) }
+        5.times { client.execute(Stub(WorkSpec)) }
 
         then:
         client.uses == 5
     }
 
-    def "build operation is started and finished when client is executed"() {
-        def operation = Mock(WorkerLease)
-        def completion = Mock(WorkerLeaseCompletion)
+    def "is compatible with fork options that the daemon's fork options satisfy"() {
+        def daemonForkOptions = new DaemonForkOptions("128m", "1g", ["-Dfoo=bar", "-Dbar=baz"])
 
         given:
-        client = client()
-
-        when:
-        client.execute(Stub(WorkSpec), operation, buildOperation)
+        client = client(Mock(WorkerDaemonProcess), daemonForkOptions)
 
-        then:
-        1 * operation.startChild() >> completion
-        1 * completion.leaseFinish()
-    }
-
-    def "build worker operation is finished even if worker fails"() {
-        def operation = Mock(WorkerLease)
-        def completion = Mock(WorkerLeaseCompletion)
-        def workerDaemonProcess = Mock(WorkerDaemonProcess)
-
-        given:
-        client = client(workerDaemonProcess)
-
-        when:
-        client.execute(Stub(WorkSpec), operation, buildOperation)
-
-        then:
-        1 * operation.startChild() >> completion
-        1 * buildOperationExecutor.call(_ as CallableBuildOperation) >> { args -> args[0].call(Mock(BuildOperationContext)) }
-
-        then:
-        thrown(RuntimeException)
-        1 * workerDaemonProcess.execute(_) >> { throw new RuntimeException() }
-        1 * completion.leaseFinish()
+        expect:
+        client.isCompatibleWith(new DaemonForkOptions(null, "512m", ["-Dfoo=bar"]))
+        !client.isCompatibleWith(new DaemonForkOptions(null, "2g", []))
     }
 
     WorkerDaemonClient client() {
         return client(Mock(WorkerDaemonProcess))
     }
 
-    WorkerDaemonClient client(WorkerDaemonProcess workerDaemonProcess) {
-        def daemonForkOptions = Mock(DaemonForkOptions)
+    WorkerDaemonClient client(WorkerDaemonProcess workerDaemonProcess, DaemonForkOptions daemonForkOptions = Mock(DaemonForkOptions)) {
         def workerProcess = workerDaemonProcess.start()
-        return new WorkerDaemonClient(daemonForkOptions, workerDaemonProcess, workerProcess, buildOperationExecutor)
+        return new WorkerDaemonClient(daemonForkOptions, LogLevel.LIFECYCLE, workerDaemonProcess, workerProcess)
     }
 }
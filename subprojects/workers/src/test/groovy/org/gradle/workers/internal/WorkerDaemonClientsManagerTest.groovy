@@ -17,6 +17,8 @@
 package org.gradle.workers.internal
 
 import org.gradle.api.Transformer
+import org.gradle.api.logging.LogLevel
+import org.gradle.internal.concurrent.DefaultExecutorFactory
 import org.gradle.util.ConcurrentSpecification
 import spock.lang.Subject
 
@@ -28,7 +30,7 @@ class WorkerDaemonClientsManagerTest extends ConcurrentSpecification {
     def starter = Stub(WorkerDaemonStarter)
     def serverImpl = Stub(WorkerProtocol)
 
-    @Subject manager = new WorkerDaemonClientsManager(starter)
+    @Subject manager = new WorkerDaemonClientsManager(new DefaultExecutorFactory())
 
     def "does not reserve idle client when no clients"() {
         expect:
@@ -59,7 +61,7 @@ class WorkerDaemonClientsManagerTest extends ConcurrentSpecification {
         starter.startDaemon(serverImpl.class, workingDir, options) >> newClient
 
         when:
-        def client = manager.reserveNewClient(serverImpl.class, workingDir, options)
+        def client = manager.reserveNewClient(starter, serverImpl.class, workingDir, options)
 
         then:
         newClient == client
@@ -71,8 +73,8 @@ class WorkerDaemonClientsManagerTest extends ConcurrentSpecification {
         starter.startDaemon(serverImpl.class, workingDir, options) >>> [client1, client2]
 
         when:
-        manager.reserveNewClient(serverImpl.class, workingDir, options)
-        manager.reserveNewClient(serverImpl.class, workingDir, options)
+        manager.reserveNewClient(starter, serverImpl.class, workingDir, options)
+        manager.reserveNewClient(starter, serverImpl.class, workingDir, options)
         manager.stop()
 
         then:
@@ -85,7 +87,7 @@ class WorkerDaemonClientsManagerTest extends ConcurrentSpecification {
         starter.startDaemon(serverImpl.class, workingDir, options) >> client
 
         when:
-        manager.reserveNewClient(serverImpl.class, workingDir, options)
+        manager.reserveNewClient(starter, serverImpl.class, workingDir, options)
 
         then:
         manager.reserveIdleClient(options) == null
@@ -110,7 +112,7 @@ class WorkerDaemonClientsManagerTest extends ConcurrentSpecification {
         }
 
         when:
-        3.times { manager.reserveNewClient(serverImpl.class, workingDir, options) }
+        3.times { manager.reserveNewClient(starter, serverImpl.class, workingDir, options) }
         [client1, client2, client3].each { manager.release(it) }
         manager.selectIdleClientsToStop(stopMostPreferredClient)
 
@@ -140,7 +142,7 @@ class WorkerDaemonClientsManagerTest extends ConcurrentSpecification {
         }
 
         when:
-        3.times { manager.reserveNewClient(serverImpl.class, workingDir, options) }
+        3.times { manager.reserveNewClient(starter, serverImpl.class, workingDir, options) }
         manager.release(client3)
         manager.selectIdleClientsToStop(stopAll)
 
@@ -149,4 +151,88 @@ class WorkerDaemonClientsManagerTest extends ConcurrentSpecification {
         0 * client2.stop()
         1 * client3.stop()
     }
+
+    def "stops idle clients started with a different log level when a build session starts"() {
+        def client1 = Mock(WorkerDaemonClient) { _ * getLogLevel() >> LogLevel.LIFECYCLE }
+        def client2 = Mock(WorkerDaemonClient) { _ * getLogLevel() >> LogLevel.INFO }
+        starter.startDaemon(serverImpl.class, workingDir, options) >>> [client1, client2]
+        starter.getLogLevel() >> LogLevel.INFO
+
+        when:
+        2.times { manager.reserveNewClient(starter, serverImpl.class, workingDir, options) }
+        manager.release(client1)
+        manager.release(client2)
+        manager.buildSessionStarted(starter)
+
+        then:
+        1 * client1.stop()
+        0 * client2.stop()
+    }
+
+    def "starts daemons for the most used requests when a build session starts"() {
+        def mostUsedOptions = new DaemonForkOptions(null, "1g", [])
+        def lessUsedOptions = new DaemonForkOptions(null, "256m", [])
+        def client1 = Mock(WorkerDaemonClient) { _ * isCompatibleWith(mostUsedOptions) >> true }
+        def client2 = Mock(WorkerDaemonClient)
+        def prestarted = Mock(WorkerDaemonClient)
+        def daemonStarter = Mock(WorkerDaemonStarter)
+        manager = new WorkerDaemonClientsManager(new DefaultExecutorFactory(), 1)
+
+        given:
+        daemonStarter.startDaemon(serverImpl.class, workingDir, mostUsedOptions) >> client1
+        daemonStarter.startDaemon(serverImpl.class, workingDir, lessUsedOptions) >> client2
+        manager.reserveNewClient(daemonStarter, serverImpl.class, workingDir, mostUsedOptions)
+        manager.reserveNewClient(daemonStarter, serverImpl.class, workingDir, lessUsedOptions)
+        manager.release(client1)
+        2.times { manager.release(manager.reserveIdleClient(mostUsedOptions)) }
+        manager.release(client2)
+        manager.selectIdleClientsToStop { it }
+
+        when:
+        manager.buildSessionStarted(daemonStarter)
+        manager.stop()
+
+        then:
+        1 * daemonStarter.startDaemon(serverImpl.class, workingDir, mostUsedOptions) >> prestarted
+        0 * daemonStarter.startDaemon(serverImpl.class, workingDir, lessUsedOptions)
+        1 * prestarted.stop()
+    }
+
+    def "does not start daemons for requests that a running daemon can serve"() {
+        def forkOptions = new DaemonForkOptions(null, "1g", [])
+        def client = Mock(WorkerDaemonClient) { _ * isCompatibleWith(forkOptions) >> true }
+        def daemonStarter = Mock(WorkerDaemonStarter)
+        manager = new WorkerDaemonClientsManager(new DefaultExecutorFactory(), 1)
+
+        given:
+        daemonStarter.startDaemon(serverImpl.class, workingDir, forkOptions) >> client
+        manager.reserveNewClient(daemonStarter, serverImpl.class, workingDir, forkOptions)
+        manager.release(client)
+
+        when:
+        manager.buildSessionStarted(daemonStarter)
+        manager.stop()
+
+        then:
+        0 * daemonStarter.startDaemon(_, _, _)
+    }
+
+    def "does not start daemons when a build session starts by default"() {
+        def forkOptions = new DaemonForkOptions(null, "1g", [])
+        def client = Mock(WorkerDaemonClient)
+        def daemonStarter = Mock(WorkerDaemonStarter)
+
+        given:
+        daemonStarter.startDaemon(serverImpl.class, workingDir, forkOptions) >> client
+        manager.reserveNewClient(daemonStarter, serverImpl.class, workingDir, forkOptions)
+        manager.release(client)
+        manager.selectIdleClientsToStop { it }
+
+        when:
+        manager.buildSessionStarted(daemonStarter)
+        manager.stop()
+
+        then:
+        0 * daemonStarter.startDaemon(_, _, _)
+    }
 }
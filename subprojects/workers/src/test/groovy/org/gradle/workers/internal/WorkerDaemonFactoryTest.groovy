@@ -16,10 +16,13 @@
 
 package org.gradle.workers.internal
 
+import org.gradle.internal.operations.BuildOperationContext
 import org.gradle.internal.operations.BuildOperationExecutor
+import org.gradle.internal.operations.CallableBuildOperation
 import org.gradle.internal.progress.BuildOperationState
 import org.gradle.internal.work.WorkerLeaseRegistry
 import org.gradle.internal.work.WorkerLeaseRegistry.WorkerLease
+import org.gradle.internal.work.WorkerLeaseRegistry.WorkerLeaseCompletion
 import org.gradle.process.internal.health.memory.MemoryManager
 import spock.lang.Specification
 import spock.lang.Subject
@@ -33,8 +36,10 @@ class WorkerDaemonFactoryTest extends Specification {
     def buildOperationExecutor = Mock(BuildOperationExecutor)
     def workerOperation = Mock(WorkerLease)
     def buildOperation= Mock(BuildOperationState)
+    def completion = Mock(WorkerLeaseCompletion)
+    def starter = Mock(WorkerDaemonStarter)
 
-    @Subject factory = new WorkerDaemonFactory(clientsManager, memoryManager, buildOperationWorkerRegistry, buildOperationExecutor)
+    @Subject factory = new WorkerDaemonFactory(clientsManager, memoryManager, buildOperationWorkerRegistry, buildOperationExecutor, starter)
 
     def workingDir = new File("some-dir")
     def options = Stub(DaemonForkOptions)
@@ -61,10 +66,13 @@ class WorkerDaemonFactoryTest extends Specification {
         1 * clientsManager.reserveIdleClient(options) >> null
 
         then:
-        1 * clientsManager.reserveNewClient(workerProtocolImplementation.class, workingDir, options) >> client
+        1 * clientsManager.reserveNewClient(starter, workerProtocolImplementation.class, workingDir, options) >> client
 
         then:
-        1 * client.execute(spec, workerOperation, buildOperation)
+        1 * workerOperation.startChild() >> completion
+        1 * buildOperationExecutor.call(_ as CallableBuildOperation) >> { args -> args[0].call(Mock(BuildOperationContext)) }
+        1 * client.execute(spec)
+        1 * completion.leaseFinish()
 
         then:
         1 * clientsManager.release(client)
@@ -83,7 +91,10 @@ class WorkerDaemonFactoryTest extends Specification {
         1 * clientsManager.reserveIdleClient(options) >> client
 
         then:
-        1 * client.execute(spec, workerOperation, buildOperation)
+        1 * workerOperation.startChild() >> completion
+        1 * buildOperationExecutor.call(_ as CallableBuildOperation) >> { args -> args[0].call(Mock(BuildOperationContext)) }
+        1 * client.execute(spec)
+        1 * completion.leaseFinish()
 
         then:
         1 * clientsManager.release(client)
@@ -102,10 +113,13 @@ class WorkerDaemonFactoryTest extends Specification {
         1 * clientsManager.reserveIdleClient(options) >> client
 
         then:
-        1 * client.execute(spec, workerOperation, buildOperation) >> { throw new RuntimeException("Boo!") }
+        1 * workerOperation.startChild() >> completion
+        1 * buildOperationExecutor.call(_ as CallableBuildOperation) >> { args -> args[0].call(Mock(BuildOperationContext)) }
+        1 * client.execute(spec) >> { throw new RuntimeException("Boo!") }
 
         then:
         thrown(RuntimeException)
+        1 * completion.leaseFinish()
         1 * clientsManager.release(client)
         0 * _._
     }
@@ -114,7 +128,7 @@ class WorkerDaemonFactoryTest extends Specification {
         WorkerDaemonExpiration workerDaemonExpiration
 
         when:
-        def factory = new WorkerDaemonFactory(clientsManager, memoryManager, buildOperationWorkerRegistry, buildOperationExecutor)
+        def factory = new WorkerDaemonFactory(clientsManager, memoryManager, buildOperationWorkerRegistry, buildOperationExecutor, starter)
 
         then:
         1 * memoryManager.addMemoryHolder(_) >> { args -> workerDaemonExpiration = args[0] }
@@ -126,11 +140,19 @@ class WorkerDaemonFactoryTest extends Specification {
         1 * memoryManager.removeMemoryHolder(_) >> { args -> assert args[0] == workerDaemonExpiration }
     }
 
-    def "stops clients"() {
+    def "notifies clients manager that a build session has started"() {
+        when:
+        new WorkerDaemonFactory(clientsManager, memoryManager, buildOperationWorkerRegistry, buildOperationExecutor, starter)
+
+        then:
+        1 * clientsManager.buildSessionStarted(starter)
+    }
+
+    def "does not stop clients so that they can be reused by later builds"() {
         when:
         factory.stop()
 
         then:
-        clientsManager.stop()
+        0 * clientsManager.stop()
     }
 }